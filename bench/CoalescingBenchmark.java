@@ -0,0 +1,182 @@
+/**
+ * @file CoalescingBenchmark.java
+ * @brief Classe CoalescingBenchmark
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+
+/** @class CoalescingBenchmark
+ * @brief Mesura l'efecte de les polítiques de fusió de grups d'afectats (Affectation.setCoalescing) en simulacions
+ * llargues: el nombre de grups per afectació, els ticks per segon i l'error respecte a la simulació exacta.
+ *
+ * Ús: java CoalescingBenchmark [opció=valor ...]. Opcions pròpies: escenari (directori d'entrada; si no n'hi ha, se'n
+ * genera un amb la resta d'opcions, que es passen al generador), ticks i politiques (llista separada per comes de
+ * parells "tolerància:màxim de grups"). La simulació exacta (0:0) sempre s'executa primer i és la referència. Per a
+ * cada política escriu una línia JSON amb els grups, el rendiment, les persones·tic desplaçades i l'error relatiu
+ * màxim i mitjà dels afectats i els morts de cada regió a l'últim tick.
+ */
+public class CoalescingBenchmark {
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private CoalescingBenchmark() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Executa la simulació exacta i cada una de les polítiques demanades.
+     * @param args Opcions "nom=valor".
+     */
+    public static void main(String[] args) throws IOException {
+
+        String scenario = null;
+        int ticks = 2000;
+        String policies = "1:0,2:0,4:0,0:8,0:16";
+
+        ScenarioGenerator.Config config = new ScenarioGenerator.Config();
+        config.regions = 25;
+        config.arn = 0;
+
+        for (String arg : args) {
+
+            String[] pair = arg.split("=", 2);
+
+            switch (pair[0]) {
+                case "escenari" -> scenario = pair[1];
+                case "ticks" -> ticks = Integer.parseInt(pair[1]);
+                case "politiques" -> policies = pair[1];
+                default -> config.set(arg);
+            }
+
+        }
+
+        Path generated = null;
+
+        if (scenario == null) {
+
+            generated = Files.createTempDirectory("virusland-coalescing");
+            ScenarioGenerator.generate(config, generated);
+            scenario = generated.toString();
+
+        }
+
+        try {
+
+            long[][] reference = run(scenario, ticks, 0, 0, null);
+
+            for (String policy : policies.split(",")) {
+
+                String[] pair = policy.trim().split(":");
+                run(scenario, ticks, Integer.parseInt(pair[0]), Integer.parseInt(pair[1]), reference);
+
+            }
+
+        } finally {
+
+            Affectation.setCoalescing(0, 0);
+            if (generated != null) deleteRecursively(generated);
+
+        }
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Simula \p ticks ticks amb la política indicada i escriu el resultat comparat amb \p reference.
+     * @param reference Afectats i morts de cada regió a la simulació exacta (null si aquesta és l'exacta).
+     * @return Els afectats i els morts de cada regió a l'últim tick.
+     */
+    private static long[][] run(String scenario, int ticks, int tolerance, int max_groups, long[][] reference)
+            throws IOException {
+
+        Affectation.setCoalescing(tolerance, max_groups);
+        MutableVirus.setSeed(1);
+
+        boolean instrumented = Instrumentation.enabled();
+        Instrumentation.reset();
+        Instrumentation.setEnabled(true);
+
+        Simulation simulation = new Simulation(new FastInputReader(scenario));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) simulation.simulateNextTick();
+        long elapsed = System.nanoTime() - start;
+
+        Instrumentation.setEnabled(instrumented);
+
+        List<Region> regions = simulation.regionList();
+        long[][] totals = new long[regions.size()][2];
+        int max = 0;
+        long groups = 0, affectations = 0;
+
+        for (int i = 0; i < regions.size(); i++) {
+
+            for (VirusFamily family : simulation.familyList()) {
+                for (Affectation affectation : regions.get(i).affectationsByFamily(family)) {
+
+                    totals[i][0] += Math.round(affectation.affected());
+                    totals[i][1] += Math.round(affectation.deaths());
+                    max = Math.max(max, affectation.groupCount());
+                    groups += affectation.groupCount();
+                    affectations++;
+
+                }
+            }
+
+        }
+
+        double max_error = 0, error_sum = 0;
+        int compared = 0;
+
+        if (reference != null) {
+
+            for (int i = 0; i < totals.length; i++) {
+                for (int j = 0; j < 2; j++) {
+
+                    if (reference[i][j] == 0 && totals[i][j] == 0) continue;
+
+                    double error = Math.abs(totals[i][j] - reference[i][j]) /
+                            (double) Math.max(reference[i][j], totals[i][j]);
+                    max_error = Math.max(max_error, error);
+                    error_sum += error;
+                    compared++;
+
+                }
+            }
+
+        }
+
+        System.out.println(String.format(Locale.ROOT, "{\"tolerancia\":%d,\"max_grups\":%d," +
+                        "\"ticks\":%d,\"ticks_per_s\":%.3f,\"grups_max_per_afectacio\":%d," +
+                        "\"grups_mitjana_per_afectacio\":%.2f,\"grups_fusionats\":%d,\"grups_buits\":%d," +
+                        "\"persones_tic_desplacades\":%d,\"error_relatiu_maxim\":%.6f,\"error_relatiu_mitja\":%.6f}",
+                tolerance, max_groups, ticks, ticks / (elapsed / 1e9), max,
+                affectations == 0 ? 0.0 : (double) groups / affectations,
+                Instrumentation.value(Instrumentation.Counter.GROUPS_COALESCED),
+                Instrumentation.value(Instrumentation.Counter.GROUPS_PRUNED),
+                Instrumentation.value(Instrumentation.Counter.COALESCED_SHIFT),
+                max_error, compared == 0 ? 0.0 : error_sum / compared));
+
+        return totals;
+
+    }
+
+    /** @brief Esborra un directori i tot el seu contingut. */
+    private static void deleteRecursively(Path directory) throws IOException {
+
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(java.util.Comparator.reverseOrder()).toList()) Files.deleteIfExists(path);
+        }
+
+    }
+
+}
@@ -0,0 +1,414 @@
+/**
+ * @file EngineBenchmarks.java
+ * @brief Classe EngineBenchmarks
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+
+/** @class EngineBenchmarks
+ * @brief Microbenchmarks dels nuclis del simulador amb MicroBenchmark: Affectation.transfer (en mode enter i
+ * fraccional), Affectation.pushGroups, AffectedGroup.nextStep, Region.movements, Region.propagate, Region.affectation,
+ * VaccinationScheduler.advance, Virus.checkVirusOverlap, Filter.updateDataNextTick, CohortKernels.sum (escalar i, si hi ha el mòdul
+ * jdk.incubator.vector, vectorial), Affectation.affected i els lectors dels fitxers d'entrada, parametritzats pel nombre
+ * de grups d'afectats, de veïns, de virus, de vacunes en curs i de regions.
+ *
+ * Ús: java EngineBenchmarks [filtre=text] [escalfament=n] [iteracions=n] [lot=n]. Escriu una línia JSON per
+ * resultat a la sortida estàndard.
+ */
+public class EngineBenchmarks {
+
+    // Constants
+
+    private static final int[] GROUPS = {1, 16, 128}; ///< Grups d'afectats per afectació.
+    private static final int[] DEGREES = {2, 8, 32}; ///< Veïns per regió.
+    private static final int[] VIRUSES = {1, 4, 16}; ///< Virus de la mateixa família per regió.
+    private static final int[] REGIONS = {1000, 10000}; ///< Regions dels escenaris generats.
+    private static final int[] COHORTS = {4, 16, 128, 1024}; ///< Grups sumats pels nuclis de CohortKernels.
+    private static final int[] VACCINES = {16, 1024, 65536}; ///< Vacunes en curs del calendari.
+
+    private static final int INHABITANTS = 10_000_000; ///< Habitants de cada regió dels benchmarks.
+    private static final int GROUP_SIZE = 1000; ///< Afectats de cada grup inicial.
+
+
+
+    // Private attributes
+
+    private static final HashMap<Integer, Path> _scenarios = new HashMap<>(); ///< Escenaris generats per regions.
+
+    private static int _filter_regions = -1; ///< Regions de l'escenari de _filter.
+    private static Filter _filter; ///< Filtre sobre una simulació ja avançada.
+
+
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private EngineBenchmarks() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Executa tots els benchmarks (o els que continguin el filtre).
+     * @param args Opcions "nom=valor".
+     */
+    public static void main(String[] args) throws Exception {
+
+        String filter = null;
+        int warmup = 5, iterations = 10, batch = 200;
+
+        for (String arg : args) {
+
+            String[] pair = arg.split("=", 2);
+
+            switch (pair[0]) {
+                case "filtre" -> filter = pair[1];
+                case "escalfament" -> warmup = Integer.parseInt(pair[1]);
+                case "iteracions" -> iterations = Integer.parseInt(pair[1]);
+                case "lot" -> batch = Integer.parseInt(pair[1]);
+                default -> throw new IllegalArgumentException("Opció desconeguda: " + pair[0]);
+            }
+
+        }
+
+        MicroBenchmark bench = new MicroBenchmark(warmup, iterations, batch, filter, System.out);
+
+        try {
+
+            run(bench, batch);
+
+        } finally {
+
+            for (Path directory : _scenarios.values()) {
+                try (var paths = Files.walk(directory)) {
+                    for (Path path : paths.sorted(java.util.Comparator.reverseOrder()).toList())
+                        Files.deleteIfExists(path);
+                }
+            }
+
+        }
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Registra i executa tots els benchmarks. */
+    private static void run(MicroBenchmark bench, int batch) throws Exception {
+
+        bench.run("Affectation.transfer", MicroBenchmark.grid("grups", GROUPS, "fraccional", new int[] {0, 1}),
+                params -> {
+
+            Affectation.setFractional(params.get("fraccional") == 1);
+
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            Virus virus = virus("virus", family);
+            Affectation from = affectation(new Region("origen", 5, INHABITANTS), virus, params.get("grups"));
+            Affectation to = new Region("desti", 5, INHABITANTS).affectation(virus);
+
+            return new Affectation[] {from, to};
+
+        }, state -> (long) Affectation.transfer(state[0], state[1], Math.floor(state[0].affected() / 10)));
+
+        Affectation.setFractional(false);
+
+        bench.run("Affectation.pushGroups", MicroBenchmark.grid("grups", GROUPS), params -> {
+
+            // Els grups pendents tenen els mateixos estats que els existents, com després d'una transferència
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            Virus virus = virus("virus", family);
+            Affectation from = affectation(new Region("origen", 5, INHABITANTS), virus, params.get("grups"));
+            Affectation to = affectation(new Region("desti", 5, INHABITANTS), virus, params.get("grups"));
+
+            Affectation.transfer(from, to, Math.floor(from.affected() / 10));
+
+            return to;
+
+        }, state -> {
+
+            state.pushGroups();
+            return (long) state.affected();
+
+        });
+
+        bench.run("AffectedGroup.nextStep", MicroBenchmark.grid("grups", GROUPS), params -> {
+
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            Virus virus = virus("virus", family);
+            Affectation affectation = new Region("regio", 5, INHABITANTS).affectation(virus);
+            AffectedGroup[] groups = new AffectedGroup[params.get("grups")];
+
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = new AffectedGroup(affectation, virus, GROUP_SIZE);
+                for (int step = 0; step < i % 16; step++) groups[i].nextStep(); // estats variats
+            }
+
+            return groups;
+
+        }, state -> {
+
+            long finished = 0;
+            for (AffectedGroup group : state) if (group.nextStep()) finished++;
+            return finished;
+
+        });
+
+        int[] kernels = CohortKernels.vectorAvailable() ? new int[] {0, 1} : new int[] {0};
+
+        bench.run("CohortKernels.sum", MicroBenchmark.grid("grups", COHORTS, "vectorial", kernels), params -> {
+
+            int groups = params.get("grups");
+            double[] affected = new double[groups], deaths = new double[groups];
+            long[] compartments = new long[groups];
+
+            for (int i = 0; i < groups; i++) {
+                affected[i] = GROUP_SIZE + i;
+                deaths[i] = i % 7;
+                compartments[i] = i % 5 == 0 ? 0 : CohortKernels.bit(CohortKernels.AFFECTED) | // estats variats
+                        CohortKernels.bit(CohortKernels.INCUBATING + i % 2) |
+                        CohortKernels.bit(CohortKernels.LATENCY + i % 3 / 2);
+            }
+
+            CohortKernels.setMode(params.get("vectorial") == 1 ? CohortKernels.Mode.VECTOR : CohortKernels.Mode.SCALAR);
+
+            return new Object[] {affected, deaths, compartments, new double[CohortKernels.SUMS]};
+
+        }, state -> {
+
+            double[] affected = (double[]) state[0], sums = (double[]) state[3];
+            CohortKernels.sum(affected, (double[]) state[1], (long[]) state[2], affected.length, sums);
+            return (long) sums[CohortKernels.AFFECTED];
+
+        });
+
+        bench.run("Affectation.affected", MicroBenchmark.grid("grups", GROUPS, "vectorial", kernels), params -> {
+
+            CohortKernels.setMode(params.get("vectorial") == 1 ? CohortKernels.Mode.VECTOR : CohortKernels.Mode.SCALAR);
+
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            return affectation(new Region("regio", 5, INHABITANTS), virus("virus", family), params.get("grups"));
+
+        }, state -> (long) state.affected());
+
+        CohortKernels.setMode(CohortKernels.vectorAvailable() ? CohortKernels.Mode.VECTOR : CohortKernels.Mode.SCALAR);
+
+        bench.run("Region.movements", MicroBenchmark.grid("grau", DEGREES, "grups", new int[] {1, 16}), params -> {
+
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            Virus virus = virus("virus", family);
+            Region center = new Region("centre", 5, INHABITANTS);
+            affectation(center, virus, params.get("grups"));
+
+            for (int i = 0; i < params.get("grau"); i++) {
+
+                Region neighbour = new Region("vei" + i, 5, INHABITANTS);
+                center.addNeighbour(neighbour, new Region.Neighbour(0.01f, true));
+                neighbour.addNeighbour(center, new Region.Neighbour(0.01f, true));
+
+            }
+
+            return center;
+
+        }, state -> {
+
+            state.movements();
+            return (long) state.inhabitants();
+
+        });
+
+        bench.run("Region.propagate", MicroBenchmark.grid("virus", VIRUSES, "grups", new int[] {1, 16}), params -> {
+
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            Region region = new Region("regio", 5, INHABITANTS);
+
+            for (int v = 0; v < params.get("virus"); v++)
+                affectation(region, virus("virus" + v, family), params.get("grups"));
+
+            return region;
+
+        }, state -> {
+
+            state.propagate();
+            return (long) state.inhabitants();
+
+        });
+
+        bench.run("Region.affectation", MicroBenchmark.grid("virus", VIRUSES), params -> {
+
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            Region region = new Region("regio", 5, INHABITANTS);
+            Virus[] viruses = new Virus[params.get("virus")];
+
+            for (int v = 0; v < viruses.length; v++) {
+                viruses[v] = virus("virus" + v, family);
+                region.affectation(viruses[v]);
+            }
+
+            return new Object[] {region, viruses};
+
+        }, state -> {
+
+            Region region = (Region) state[0];
+            long res = 0;
+            for (Virus virus : (Virus[]) state[1]) res += region.affectation(virus).groupCount();
+
+            return res;
+
+        });
+
+        bench.run("VaccinationScheduler.advance", MicroBenchmark.grid("vacunes", VACCINES), params -> {
+
+            // vacunes que fan efecte durant tot el benchmark: el calendari no ha de fer res a cada tick
+            Vaccine vaccine = new SoftVaccine("vacuna", virus("virus", new VirusFamily("familia", 0.2f)), 1,
+                    Integer.MAX_VALUE / 2, 0.5f, 0.5f, 0.5f, 0.5f);
+            VaccinationScheduler scheduler = new VaccinationScheduler();
+            Region region = new Region("regio", 5, INHABITANTS);
+
+            for (int i = 0; i < params.get("vacunes"); i++) scheduler.vaccinate(region, vaccine, 0.5f);
+
+            return scheduler;
+
+        }, state -> {
+
+            state.advance();
+            return state.tick();
+
+        });
+
+        bench.run("Virus.checkVirusOverlap", MicroBenchmark.grid("virus", VIRUSES), params -> {
+
+            VirusFamily family = new VirusFamily("familia", 0.2f);
+            Region region = new Region("regio", 5, INHABITANTS);
+            Virus first = null;
+
+            for (int v = 0; v < params.get("virus"); v++) {
+                Virus virus = virus("virus" + v, family);
+                affectation(region, virus, 4);
+                if (first == null) first = virus;
+            }
+
+            return new Object[] {first, region};
+
+        }, state -> {
+
+            Region region = (Region) state[1];
+            ((Virus) state[0]).checkVirusOverlap(region, GROUP_SIZE * 100);
+            return (long) region.inhabitants();
+
+        });
+
+        bench.run("Filter.updateDataNextTick", MicroBenchmark.grid("regions", REGIONS), Math.max(1, batch / 20),
+                params -> filter(params.get("regions")), state -> {
+
+            state.updateDataNextTick();
+            return state.summary().hashCode();
+
+        });
+
+        bench.run("FastInputReader", MicroBenchmark.grid("regions", REGIONS), Math.max(1, batch / 50),
+                params -> scenario(params.get("regions")),
+                state -> new FastInputReader(state.toString()).regions().neighbour.length);
+
+        bench.run("ScenarioImage.read", MicroBenchmark.grid("regions", REGIONS), Math.max(1, batch / 50),
+                params -> {
+
+            Path directory = scenario(params.get("regions"));
+            Path image = directory.resolve(ScenarioImage.IMAGE_FILE);
+            if (!Files.exists(image)) ScenarioImage.compile(directory.toString(), image.toString());
+
+            return directory;
+
+        }, state -> ScenarioImage.read(state.toString()).regions().neighbour.length);
+
+        bench.run("RegionReader+VirusReader+InitialStateReader+VaccineReader", MicroBenchmark.grid("regions", REGIONS),
+                Math.max(1, batch / 50), params -> scenario(params.get("regions")), state -> {
+
+            String directory = state.toString();
+            return new RegionReader(directory).neighbours().size() + new VirusReader(directory).viruses().size() +
+                    new InitialStateReader(directory).affectedGroups().size() +
+                    new VaccineReader(directory).vaccines().size();
+
+        });
+
+    }
+
+    /** @return Un virus no mutable amb períodes llargs, perquè els grups d'afectats no s'extingeixin. */
+    private static Virus virus(String name, VirusFamily family) {
+        return new Virus(name, family, 0.6f, 0.05f, 0.3f, 200, 3, 2, 400, 150);
+    }
+
+    /** @brief Crea l'afectació de \p virus a \p region amb \p groups grups d'afectats en ticks diferents.
+     * @return L'afectació creada.
+     */
+    private static Affectation affectation(Region region, Virus virus, int groups) {
+
+        Affectation affectation = region.affectation(virus);
+
+        for (int i = 0; i < groups; i++) {
+
+            affectation.addGroup(new AffectedGroup(affectation, virus, GROUP_SIZE));
+            affectation.pushGroups();
+            affectation.nextStep();
+
+        }
+
+        affectation.pushGroups();
+
+        return affectation;
+
+    }
+
+    /** @return El directori d'un escenari generat amb \p regions regions (es genera la primera vegada). */
+    private static Path scenario(int regions) throws IOException {
+
+        Path directory = _scenarios.get(regions);
+
+        if (directory == null) {
+
+            ScenarioGenerator.Config config = new ScenarioGenerator.Config();
+            config.topologia = "geometric";
+            config.grau = 6;
+            config.regions = regions;
+            config.adn = 2;
+            config.arn = 0;
+            config.focus = 0.1f;
+
+            directory = Files.createTempDirectory("virusland-micro");
+            ScenarioGenerator.generate(config, directory);
+            _scenarios.put(regions, directory);
+
+        }
+
+        return directory;
+
+    }
+
+    /** @return Un filtre sobre una simulació de \p regions regions avançada uns quants ticks. La simulació és
+     * estàtica, així que es reutilitza mentre no canviï el nombre de regions.
+     */
+    private static Filter filter(int regions) throws IOException {
+
+        if (_filter_regions != regions) {
+
+            Simulation simulation = new Simulation(new FastInputReader(scenario(regions).toString()));
+            _filter = new Filter(simulation);
+
+            for (int i = 0; i < 5; i++) {
+                simulation.simulateNextTick();
+                _filter.updateDataNextTick();
+            }
+
+            _filter_regions = regions;
+
+        }
+
+        return _filter;
+
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * @file EnsembleRuns.java
+ * @brief Classe EnsembleRuns
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+
+/** @class EnsembleRuns
+ * @brief Executa un conjunt de simulacions en mode estocàstic (Affectation.setStochastic), cadascuna amb la seva
+ * llavor, i en mesura el rendiment i la fracció de brots que s'extingeixen.
+ *
+ * Ús: java EnsembleRuns [opció=valor ...]. Opcions pròpies: escenari (directori d'entrada; si no n'hi ha, se'n genera
+ * un amb la resta d'opcions, que es passen al generador), intervencions (calendari d'intervencions que s'aplica a cada
+ * membre; InterventionTimeline), membres, ticks i llavor (la del primer membre; la del membre i és llavor + i). Cada membre s'atura en extingir-se el brot (no queda ningú incubant, en latència, amb símptomes ni
+ * contagiós) o en arribar a \p ticks. Escriu una línia JSON amb els membres per hora, la fracció extingida i la
+ * mitjana i els percentils dels morts.
+ */
+public class EnsembleRuns {
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private EnsembleRuns() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Executa els membres del conjunt, un darrere l'altre (la simulació té estat estàtic).
+     * @param args Opcions "nom=valor".
+     */
+    public static void main(String[] args) throws IOException {
+
+        String scenario = null;
+        InterventionTimeline timeline = null;
+        int members = 200, ticks = 365;
+        long seed = 1;
+
+        ScenarioGenerator.Config config = new ScenarioGenerator.Config();
+        config.regions = 25;
+        config.arn = 0;
+
+        for (String arg : args) {
+
+            String[] pair = arg.split("=", 2);
+
+            switch (pair[0]) {
+                case "escenari" -> scenario = pair[1];
+                case "intervencions" -> timeline = InterventionTimeline.read(Path.of(pair[1]));
+                case "membres" -> members = Integer.parseInt(pair[1]);
+                case "ticks" -> ticks = Integer.parseInt(pair[1]);
+                case "llavor" -> seed = Long.parseLong(pair[1]);
+                default -> config.set(arg);
+            }
+
+        }
+
+        Path generated = null;
+
+        if (scenario == null) {
+
+            generated = Files.createTempDirectory("virusland-ensemble");
+            ScenarioGenerator.generate(config, generated);
+            scenario = generated.toString();
+
+        }
+
+        try {
+
+            double[] deaths = new double[members];
+            int extinct = 0;
+            long simulated = 0;
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < members; i++) {
+
+                Affectation.setStochastic(true, seed + i);
+                MutableVirus.setSeed(seed + i);
+
+                Simulation simulation = new Simulation(new FastInputReader(scenario));
+                simulation.setTimeline(timeline);
+
+                int tick = 0;
+                while (tick < ticks && active(simulation)) {
+                    simulation.simulateNextTick();
+                    tick++;
+                }
+
+                if (!active(simulation)) extinct++;
+                simulated += tick;
+                deaths[i] = totalDeaths(simulation);
+
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(deaths);
+
+            System.out.println(String.format(Locale.ROOT, "{\"membres\":%d,\"ticks\":%d,\"membres_per_hora\":%.1f," +
+                            "\"ticks_per_s\":%.1f,\"fraccio_extingida\":%.4f,\"morts_mitjana\":%.1f," +
+                            "\"morts_p05\":%.0f,\"morts_p50\":%.0f,\"morts_p95\":%.0f}",
+                    members, ticks, members / (elapsed / 3.6e12), simulated / (elapsed / 1e9),
+                    (double) extinct / members, Arrays.stream(deaths).average().orElse(0),
+                    percentile(deaths, 0.05), percentile(deaths, 0.5), percentile(deaths, 0.95)));
+
+        } finally {
+
+            Affectation.setStochastic(false, 0);
+            if (generated != null) deleteRecursively(generated);
+
+        }
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @return Si a \p simulation hi ha algú incubant, en latència, amb símptomes o contagiós. */
+    private static boolean active(Simulation simulation) {
+
+        for (Region region : simulation.regionList())
+            for (VirusFamily family : simulation.familyList())
+                for (Affectation affectation : region.affectationsByFamily(family))
+                    if (affectation.incubating() + affectation.symptom() + affectation.latency() +
+                            affectation.contagious() > 0) return true;
+
+        return false;
+
+    }
+
+    /** @return Els morts de totes les afectacions de \p simulation. */
+    private static double totalDeaths(Simulation simulation) {
+
+        double deaths = 0;
+
+        for (Region region : simulation.regionList())
+            for (VirusFamily family : simulation.familyList())
+                for (Affectation affectation : region.affectationsByFamily(family)) deaths += affectation.deaths();
+
+        return deaths;
+
+    }
+
+    /** @return El percentil \p q de \p sorted (ordenat de menor a major). */
+    private static double percentile(double[] sorted, double q) {
+
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.floor(q * sorted.length))];
+
+    }
+
+    /** @brief Esborra un directori i tot el seu contingut. */
+    private static void deleteRecursively(Path directory) throws IOException {
+
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(java.util.Comparator.reverseOrder()).toList()) Files.deleteIfExists(path);
+        }
+
+    }
+
+}
@@ -0,0 +1,677 @@
+/**
+ * @file GoldenScenarios.java
+ * @brief Classe GoldenScenarios
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.InputMismatchException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/** @class GoldenScenarios
+ * @brief Porta de regressió de correcció i de rendiment. Reprodueix sense interfície cada guió (fitxer .guio) del
+ * directori de guions: carrega l'escenari, aplica les intervencions programades (vacunes, confinaments i tancaments)
+ * i simula un nombre fix de ticks. Després compara les dades (Data) de cada afectació a cada tick, una línia per
+ * afectació, amb el fitxer .dades desat i compara els ticks per segon i els bytes assignats per tick amb els de
+ * rendiment.txt. Abans dels guions, la comprovació "lectors" llegeix cada directori d'entrada del directori pare del
+ * de guions (test) amb FastInputReader i amb RegionReader, VirusReader, InitialStateReader i VaccineReader i falla
+ * si les dades difereixen o si només un dels dos el pot llegir. En recollir les dades d'un guió també es comprova a
+ * cada tick que els totals d'afectacions i de grups que manté el motor (Affectation.totalGroups) són els de recórrer
+ * les regions. Les assercions del motor (assert) sempre s'activen, per exemple la que comprova que la llista de
+ * regions actives de Territory és en l'ordre del territori.
+ *
+ * Ús: java GoldenScenarios [actualitzar] [guions=directori] [filtre=text] [tolerancia_temps=x]
+ * [tolerancia_memoria=x] [nuclis=escalar|vectorial|verifica]. Amb "actualitzar" es tornen a escriure els fitxers
+ * .dades i rendiment.txt en lloc de comparar-los. Amb "nuclis" es tria la implementació de CohortKernels; amb
+ * "verifica" cada recompte es calcula amb tots dos nuclis i falla si difereixen. Acaba amb codi 1 si algun guió
+ * falla.
+ *
+ * Format d'un guió (una ordre per línia; # inicia un comentari):
+ *  - escenari <directori>: directori d'entrada, relatiu al directori de guions.
+ *  - generador <opció=valor> ...: en lloc d'escenari, un escenari sintètic de ScenarioGenerator.
+ *  - ticks <n>: ticks a simular.
+ *  - llavor <n>: llavor de les mutacions aleatòries (MutableVirus.setSeed).
+ *  - fraccional: simula en mode fraccional (Affectation.setFractional).
+ *  - regions_actives: només calcula les regions actives (Territory.setActiveRegions).
+ *  - fils <n>: calcula les fases de cada regió amb n fils (Simulation.setThreads). Les dades també es calculen amb un
+ *    sol fil i el guió falla si difereixen.
+ *  - assignacio_maxima <tick> <bytes>: a partir del tick indicat, cap tick no pot assignar més bytes (mesurats amb
+ *    ThreadMXBean al fil que simula). Serveix per comprovar que el càlcul d'un tick estable no reserva memòria. El
+ *    rendiment d'aquests guions sempre es mesura amb els nuclis escalars de CohortKernels, però les dades es
+ *    comproven amb els nuclis triats.
+ *  - <tick> <acció> <arguments>: una intervenció amb el format de InterventionTimeline (vacuna, confinament,
+ *    desconfinament, tancament o obertura).
+ *
+ * Les intervencions d'un tick s'apliquen quan la simulació és en aquest tick, abans de generar el següent.
+ */
+public class GoldenScenarios {
+
+    // Constants
+
+    private static final String SCRIPT_EXTENSION = ".guio"; ///< Extensió dels guions.
+    private static final String DATA_EXTENSION = ".dades"; ///< Extensió de les dades de referència.
+    private static final String PERFORMANCE_FILE = "rendiment.txt"; ///< Rendiment de referència de cada guió.
+
+    private static final int MIN_RUNS = 5; ///< Execucions mínimes d'escalfament i de mesura.
+    private static final long MIN_WARMUP_NANOS = 500_000_000L; ///< Temps d'escalfament mínim per guió.
+    private static final long MIN_MEASURE_NANOS = 500_000_000L; ///< Temps mesurat mínim per guió.
+    private static final long MEMORY_SLACK = 1024; ///< Bytes per tick de marge sobre la tolerància de memòria.
+    private static final int MEASURE_ATTEMPTS = 3; ///< Mesures d'un guió abans de donar-ne el rendiment per dolent.
+    private static final String READERS_CHECK = "lectors"; ///< Nom de la comprovació dels lectors d'entrada.
+
+
+
+    // Private classes
+
+    /** @class Script
+     * @brief Guió llegit d'un fitxer .guio.
+     */
+    private static class Script {
+
+        String name; ///< Nom del guió (el del fitxer sense extensió).
+        Path input; ///< Directori d'entrada (null si l'escenari es genera).
+        ScenarioGenerator.Config generated; ///< Configuració de l'escenari generat (null si n'hi ha directori).
+        int ticks; ///< Ticks a simular.
+        long seed = 1; ///< Llavor de les mutacions.
+        boolean fractional; ///< Si es simula en mode fraccional.
+        boolean active_regions; ///< Si només es calculen les regions actives.
+        int threads = 1; ///< Fils amb què es calculen les fases de cada regió.
+        int steady_tick = -1; ///< Tick a partir del qual es limiten els bytes per tick (-1 si no es limiten).
+        long steady_bytes; ///< Bytes màxims que pot assignar cada tick a partir de steady_tick.
+        final InterventionTimeline interventions = new InterventionTimeline(); ///< Intervencions programades.
+
+    }
+
+    /** @class Run
+     * @brief Resultat d'una execució d'un guió.
+     */
+    private static class Run {
+
+        String data; ///< Dades de totes les afectacions a cada tick (null si no s'han demanat).
+        long nanos; ///< Temps dels ticks (sense la càrrega de l'escenari).
+        long bytes; ///< Bytes assignats durant els ticks.
+        long steady_bytes; ///< Bytes màxims assignats per un tick a partir de Script.steady_tick.
+
+    }
+
+
+
+    // Private attributes
+
+    // Bean per mesurar els bytes assignats (null si la JVM no en té). Es desa perquè obtenir-lo reserva memòria.
+    private static final com.sun.management.ThreadMXBean _threads =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean ? bean : null;
+
+
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private GoldenScenarios() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Executa tots els guions i n'informa del resultat.
+     * @param args Opcions.
+     */
+    public static void main(String[] args) throws IOException {
+
+        // les classes del motor encara no s'han carregat: les seves assercions quedaran activades
+        ClassLoader.getSystemClassLoader().setDefaultAssertionStatus(true);
+
+        boolean update = false;
+        Path directory = Path.of("test", "golden");
+        String filter = null;
+        double time_tolerance = 0.30, memory_tolerance = 0.10;
+
+        for (String arg : args) {
+
+            String[] pair = arg.split("=", 2);
+
+            switch (pair[0]) {
+                case "actualitzar" -> update = true;
+                case "guions" -> directory = Path.of(pair[1]);
+                case "filtre" -> filter = pair[1];
+                case "tolerancia_temps" -> time_tolerance = Double.parseDouble(pair[1]);
+                case "tolerancia_memoria" -> memory_tolerance = Double.parseDouble(pair[1]);
+                case "nuclis" -> {
+                    CohortKernels.Mode mode = switch (pair[1]) {
+                        case "escalar" -> CohortKernels.Mode.SCALAR;
+                        case "vectorial" -> CohortKernels.Mode.VECTOR;
+                        case "verifica" -> CohortKernels.Mode.VERIFY;
+                        default -> throw new IllegalArgumentException("Nuclis desconeguts: " + pair[1]);
+                    };
+                    if (!CohortKernels.setMode(mode))
+                        throw new IllegalArgumentException("Els nuclis vectorials necessiten --add-modules " +
+                                "jdk.incubator.vector");
+                }
+                default -> throw new IllegalArgumentException("Opció desconeguda: " + pair[0]);
+            }
+
+        }
+
+        Map<String, double[]> baseline = readPerformance(directory.resolve(PERFORMANCE_FILE));
+        Map<String, double[]> measured = new LinkedHashMap<>(baseline);
+        List<Path> scripts;
+
+        try (var paths = Files.list(directory)) {
+            scripts = paths.filter(path -> path.toString().endsWith(SCRIPT_EXTENSION)).sorted().toList();
+        }
+
+        int failures = 0;
+
+        if (filter == null || READERS_CHECK.contains(filter)) {
+
+            Path inputs = directory.toAbsolutePath().getParent();
+            List<String> errors = compareReaders(inputs);
+            if (!errors.isEmpty()) failures++;
+
+            System.out.println((errors.isEmpty() ? "OK    " : "FALLA ") + READERS_CHECK + " (" + inputs + ")");
+            for (String error : errors) System.out.println("\t" + error);
+
+        }
+
+        for (Path path : scripts) {
+
+            Script script = readScript(path);
+            if (filter != null && !script.name.contains(filter)) continue;
+
+            List<String> errors = new ArrayList<>();
+            double[] performance = null;
+
+            try {
+
+                Path golden = directory.resolve(script.name + DATA_EXTENSION);
+                String data = run(script, true, script.threads).data;
+
+                if (script.threads > 1) {
+                    String difference = firstDifference(run(script, true, 1).data, data);
+                    if (difference != null) errors.add("amb " + script.threads + " fils respecte a 1: " + difference);
+                }
+
+                if (update) Files.writeString(golden, data, StandardCharsets.UTF_8);
+                else if (!Files.exists(golden)) errors.add("no hi ha dades de referència (" + golden + ")");
+                else {
+                    String difference = firstDifference(Files.readString(golden, StandardCharsets.UTF_8), data);
+                    if (difference != null) errors.add(difference);
+                }
+
+                double[] reference = baseline.get(script.name);
+                performance = measure(script);
+
+                // Les pauses del recol·lector o d'altres processos poden alentir una mesura: es repeteix
+                for (int attempt = 1; !update && reference != null && attempt < MEASURE_ATTEMPTS &&
+                        performance[0] < reference[0] * (1 - time_tolerance); attempt++) {
+
+                    double[] retry = measure(script);
+                    performance = new double[] {Math.max(performance[0], retry[0]), Math.min(performance[1], retry[1]),
+                            Math.min(performance[2], retry[2])};
+
+                }
+
+                measured.put(script.name, performance);
+
+                if (script.steady_tick >= 0 && performance[2] > script.steady_bytes)
+                    errors.add(String.format(Locale.ROOT, "bytes en un tick a partir del tick %d: %.0f (màxim %d)",
+                            script.steady_tick, performance[2], script.steady_bytes));
+
+                if (!update && reference == null) errors.add("no hi ha rendiment de referència");
+                else if (!update) {
+
+                    if (performance[0] < reference[0] * (1 - time_tolerance))
+                        errors.add(String.format(Locale.ROOT, "ticks per segon: %.1f (referència %.1f)",
+                                performance[0], reference[0]));
+
+                    if (performance[1] > reference[1] * (1 + memory_tolerance) + MEMORY_SLACK)
+                        errors.add(String.format(Locale.ROOT, "bytes per tick: %.0f (referència %.0f)",
+                                performance[1], reference[1]));
+
+                }
+
+            } catch (IOException | RuntimeException | AssertionError e) {
+
+                errors.add("no s'ha pogut executar: " + e);
+
+            }
+
+            if (!errors.isEmpty()) failures++;
+
+            System.out.println((errors.isEmpty() ? "OK    " : "FALLA ") + script.name + (performance == null ? "" :
+                    String.format(Locale.ROOT, " (%.1f ticks/s, %.0f bytes/tick)", performance[0], performance[1])));
+            for (String error : errors) System.out.println("\t" + error);
+
+        }
+
+        if (update) writePerformance(directory.resolve(PERFORMANCE_FILE), measured);
+
+        System.out.println(failures == 0 ? "Tots els guions són correctes." : failures + " guions han fallat.");
+        if (failures > 0) System.exit(1);
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Llegeix un guió.
+     * @pre \p path és un fitxer de guió.
+     * @return El guió llegit.
+     * @throws InputMismatchException Si alguna línia no és vàlida.
+     */
+    private static Script readScript(Path path) throws IOException {
+
+        Script res = new Script();
+        String file_name = path.getFileName().toString();
+        res.name = file_name.substring(0, file_name.length() - SCRIPT_EXTENSION.length());
+
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.strip();
+            if (line.isEmpty()) continue;
+
+            String[] words = line.split("\\s+");
+
+            switch (words[0]) {
+                case "escenari" -> res.input = path.resolveSibling(line.substring("escenari".length()).strip());
+                case "generador" -> {
+                    res.generated = new ScenarioGenerator.Config();
+                    for (int i = 1; i < words.length; i++) res.generated.set(words[i]);
+                }
+                case "ticks" -> res.ticks = Integer.parseInt(words[1]);
+                case "llavor" -> res.seed = Long.parseLong(words[1]);
+                case "fraccional" -> res.fractional = true;
+                case "regions_actives" -> res.active_regions = true;
+                case "fils" -> res.threads = Integer.parseInt(words[1]);
+                case "assignacio_maxima" -> {
+                    res.steady_tick = Integer.parseInt(words[1]);
+                    res.steady_bytes = Long.parseLong(words[2]);
+                }
+                default -> {
+                    if (!InterventionTimeline.isIntervention(words))
+                        throw new InputMismatchException(path + ": ordre desconeguda: " + line);
+                    res.interventions.add(words);
+                }
+            }
+
+        }
+
+        if ((res.input == null) == (res.generated == null))
+            throw new InputMismatchException(path + ": cal una ordre escenari o una ordre generador");
+
+        return res;
+
+    }
+
+    /** @brief Executa un guió.
+     * @param script Guió a executar.
+     * @param collect Si s'han de recollir les dades de cada tick (més lent: no serveix per mesurar).
+     * @param threads Fils amb què es calculen les fases de cada regió.
+     * @return El resultat de l'execució.
+     */
+    private static Run run(Script script, boolean collect, int threads) throws IOException {
+
+        Path input = script.input;
+        Path generated = null;
+
+        if (input == null) {
+            generated = input = Files.createTempDirectory("virusland-golden");
+            ScenarioGenerator.generate(script.generated, input);
+        }
+
+        Simulation simulation = null;
+
+        try {
+
+            MutableVirus.setSeed(script.seed);
+            Affectation.setFractional(script.fractional);
+            Territory.setActiveRegions(script.active_regions);
+            simulation = new Simulation(new FastInputReader(input.toString()));
+            simulation.setTimeline(script.interventions);
+            simulation.setThreads(threads);
+            Filter filter = collect ? new Filter(simulation) : null;
+            StringBuilder data = collect ? new StringBuilder() : null;
+
+            Run res = new Run();
+
+            for (int tick = 0; ; tick++) {
+
+                if (collect) {
+                    checkTotals(simulation, tick);
+                    appendTick(data, simulation, filter);
+                }
+                if (tick == script.ticks) break;
+
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+
+                simulation.simulateNextTick();
+
+                res.nanos += System.nanoTime() - start;
+                bytes = allocatedBytes() - bytes;
+                res.bytes += bytes;
+                if (script.steady_tick >= 0 && tick >= script.steady_tick)
+                    res.steady_bytes = Math.max(res.steady_bytes, bytes);
+
+                if (collect) filter.updateDataNextTick();
+
+            }
+
+            if (collect) res.data = data.toString();
+
+            return res;
+
+        } finally {
+
+            if (simulation != null) simulation.setThreads(1); // tanca els fils
+            Affectation.setFractional(false);
+            Territory.setActiveRegions(false);
+
+            if (generated != null) {
+                try (var paths = Files.walk(generated)) {
+                    for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(path);
+                }
+            }
+
+        }
+
+    }
+
+    /** @brief Comprova els totals d'afectacions i de grups que el motor manté a mesura que els crea i els descarta.
+     * @param simulation Simulació executada.
+     * @param tick Tick actual.
+     * @throws IllegalStateException Si no coincideixen amb els de recórrer totes les regions.
+     */
+    private static void checkTotals(Simulation simulation, int tick) {
+
+        long affectations = 0, groups = 0;
+
+        for (Region region : simulation.regionList()) {
+            affectations += region.affectationCount();
+            groups += region.groupCount();
+        }
+
+        if (affectations != Affectation.totalAffectations() || groups != Affectation.totalGroups())
+            throw new IllegalStateException(String.format("tick %d: el motor compta %d afectacions i %d grups, però " +
+                    "n'hi ha %d i %d", tick, Affectation.totalAffectations(), Affectation.totalGroups(), affectations,
+                    groups));
+
+    }
+
+    /** @brief Mesura el rendiment d'un guió, executant-lo diverses vegades.
+     * @return Els ticks per segon, els bytes assignats per tick i els bytes màxims d'un tick a partir de
+     * Script.steady_tick (mínim de les execucions mesurades).
+     */
+    private static double[] measure(Script script) throws IOException {
+
+        // Els nuclis vectorials reserven memòria fins que C2 els compila, en un tick que no es pot fixar: els guions
+        // que limiten la memòria d'un tick es mesuren amb els nuclis escalars
+        CohortKernels.Mode mode = CohortKernels.mode();
+        if (script.steady_tick >= 0) CohortKernels.setMode(CohortKernels.Mode.SCALAR);
+
+        try {
+            return measureRuns(script);
+        } finally {
+            CohortKernels.setMode(mode);
+        }
+
+    }
+
+    /** @brief Executa un guió les vegades que cal per escalfar-lo i mesurar-lo amb els nuclis actuals.
+     * @return El mateix que measure.
+     */
+    private static double[] measureRuns(Script script) throws IOException {
+
+        long nanos = 0;
+
+        for (int runs = 0; runs < MIN_RUNS || nanos < MIN_WARMUP_NANOS; runs++) nanos += run(script, false, script.threads).nanos;
+
+        nanos = 0;
+        long best_nanos = Long.MAX_VALUE, best_bytes = Long.MAX_VALUE, best_steady_bytes = Long.MAX_VALUE;
+
+        for (int runs = 0; runs < MIN_RUNS || nanos < MIN_MEASURE_NANOS; runs++) {
+
+            Run run = run(script, false, script.threads);
+            nanos += run.nanos;
+            best_nanos = Math.min(best_nanos, run.nanos);
+            best_bytes = Math.min(best_bytes, run.bytes);
+            best_steady_bytes = Math.min(best_steady_bytes, run.steady_bytes);
+
+        }
+
+        int ticks = Math.max(1, script.ticks);
+
+        return new double[] {ticks / (best_nanos / 1e9), (double) best_bytes / ticks, best_steady_bytes};
+
+    }
+
+    /** @return Bytes assignats fins ara pel fil actual, que és el que simula (-1 si la JVM no ho permet mesurar). */
+    private static long allocatedBytes() {
+
+        return _threads == null ? -1 : _threads.getCurrentThreadAllocatedBytes();
+
+    }
+
+    /** @brief Afegeix a \p out les dades de totes les afectacions del tick actual, per regions en l'ordre del
+     * territori i, dins de cada regió, per virus en l'ordre de la llista de virus.
+     */
+    private static void appendTick(StringBuilder out, Simulation simulation, Filter filter) {
+
+        IdentityHashMap<Virus, Integer> order = new IdentityHashMap<>();
+        for (Virus virus : simulation.virusList()) order.put(virus, order.size());
+
+        out.append("== Tick ").append(simulation.getTick()).append('\n');
+
+        filter.deleteVirusFilter();
+
+        for (Region region : simulation.regionList()) {
+
+            filter.updateFilter(region);
+
+            List<Data> log = new ArrayList<>(filter.log());
+            log.sort(Comparator.comparingInt(data -> order.get(data.virus())));
+
+            for (Data data : log) out.append(compact(data)).append('\n');
+
+        }
+
+        filter.deleteRegionFilter();
+
+    }
+
+    /** @return Les dades de \p data en una sola línia: la capçalera de Data.toString() seguida dels valors de cada
+     * línia, separats per " | ".
+     */
+    private static String compact(Data data) {
+
+        String[] lines = data.toString().split("\n");
+        StringBuilder res = new StringBuilder(lines[0]);
+
+        for (int i = 1; i < lines.length; i++) {
+
+            String value = lines[i].substring(lines[i].indexOf(':') + 1).strip();
+            if (!value.isEmpty()) res.append(res.length() == lines[0].length() ? " " : " | ").append(value);
+
+        }
+
+        return res.toString();
+
+    }
+
+    /** @return Una descripció de la primera línia diferent entre \p expected i \p actual (null si són iguals). */
+    private static String firstDifference(String expected, String actual) {
+
+        if (expected.equals(actual)) return null;
+
+        String[] expected_lines = expected.split("\n", -1), actual_lines = actual.split("\n", -1);
+        String tick = "";
+
+        for (int i = 0; i < Math.max(expected_lines.length, actual_lines.length); i++) {
+
+            String e = i < expected_lines.length ? expected_lines[i] : "(final)";
+            String a = i < actual_lines.length ? actual_lines[i] : "(final)";
+
+            if (e.startsWith("== ")) tick = e.substring(3);
+            if (!e.equals(a)) return "dades diferents (" + tick + ", línia " + (i + 1) + "): s'esperava \"" +
+                    e.strip() + "\" i s'ha obtingut \"" + a.strip() + "\"";
+
+        }
+
+        return null;
+
+    }
+
+    /** @brief Comprova que FastInputReader llegeix el mateix que RegionReader, VirusReader, InitialStateReader i
+     * VaccineReader a cada directori d'entrada (amb un fitxer regions.txt) que hi ha dins de \p root.
+     * @return Les diferències trobades (buida si no n'hi ha). Un directori que tots dos rebutgen no és una diferència.
+     */
+    private static List<String> compareReaders(Path root) throws IOException {
+
+        List<Path> inputs;
+
+        try (var paths = Files.walk(root)) {
+            inputs = paths.filter(path -> path.getFileName().toString().equals("regions.txt"))
+                    .map(Path::getParent).sorted().toList();
+        }
+
+        List<String> errors = new ArrayList<>();
+
+        for (Path input : inputs) {
+
+            String legacy, fast;
+
+            try {
+                String path = input.toString();
+                RegionReader regions = new RegionReader(path);
+                VirusReader viruses = new VirusReader(path);
+                legacy = describe(new FastInputReader(FastInputReader.RegionTable.of(regions.regions(),
+                        regions.neighbours()), FastInputReader.InitialStateTable.of(new InitialStateReader(path)
+                        .affectedGroups()), viruses.families(), viruses.viruses(), new VaccineReader(path).vaccines()));
+            } catch (IOException | RuntimeException | AssertionError e) {
+                legacy = null;
+            }
+
+            try {
+                fast = describe(new FastInputReader(input.toString()));
+            } catch (IOException | RuntimeException | AssertionError e) {
+                fast = null;
+            }
+
+            String difference = legacy == null || fast == null ? null : firstDifference(legacy, fast);
+
+            if (legacy == null && fast != null) errors.add(input + ": només FastInputReader el llegeix");
+            else if (legacy != null && fast == null) errors.add(input + ": FastInputReader no el llegeix");
+            else if (difference != null) errors.add(input + ": " + difference);
+
+        }
+
+        if (inputs.isEmpty()) errors.add("no hi ha cap directori d'entrada a " + root);
+
+        return errors;
+
+    }
+
+    /** @return Les dades llegides per \p reader, una línia per regió, bloc de veïnatge, estat inicial, família,
+     * virus i vacuna, amb una capçalera per fitxer.
+     */
+    private static String describe(FastInputReader reader) {
+
+        StringBuilder out = new StringBuilder();
+        FastInputReader.RegionTable regions = reader.regions();
+
+        out.append("== regions.txt\n");
+        for (int i = 0; i < regions.name.length; i++)
+            out.append(regions.name[i]).append(' ').append(regions.inhabitants[i]).append(' ')
+                    .append(regions.inside_mobility[i]).append('\n');
+
+        for (int b = 0; b < regions.limit_region.length; b++) {
+            out.append(regions.limit_region[b]).append(':');
+            for (int i = regions.limit_offset[b]; i < regions.limit_offset[b + 1]; i++)
+                out.append(' ').append(regions.neighbour[i]).append(' ').append(regions.flow_rate[i]);
+            out.append('\n');
+        }
+
+        out.append("== virus.txt\n");
+        for (Object family : reader.families()) out.append(fields(family)).append('\n');
+        for (Object virus : reader.viruses()) out.append(fields(virus)).append('\n');
+
+        FastInputReader.InitialStateTable states = reader.initialStates();
+
+        out.append("== estatInicial.txt\n");
+        for (int s = 0; s < states.region_name.length; s++) {
+            out.append(states.region_name[s]).append(':');
+            for (int i = states.offset[s]; i < states.offset[s + 1]; i++)
+                out.append(' ').append(states.virus[i]).append(' ').append(states.percentage[i]);
+            out.append('\n');
+        }
+
+        out.append("== vacunes.txt\n");
+        for (Object vaccine : reader.vaccines()) out.append(fields(vaccine)).append('\n');
+
+        return out.toString();
+
+    }
+
+    /** @return Els camps públics de \p data, en l'ordre de la declaració, separats per espais. */
+    private static String fields(Object data) {
+
+        StringBuilder out = new StringBuilder();
+
+        for (var field : data.getClass().getFields()) {
+            try {
+                out.append(field.getName()).append('=').append(field.get(data)).append(' ');
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return out.toString().strip();
+
+    }
+
+    /** @return El rendiment de referència de cada guió (buit si el fitxer no existeix). */
+    private static Map<String, double[]> readPerformance(Path path) throws IOException {
+
+        Map<String, double[]> res = new LinkedHashMap<>();
+        if (!Files.exists(path)) return res;
+
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+
+            if (line.isBlank() || line.startsWith("#")) continue;
+
+            String[] fields = line.split("\t");
+            res.put(fields[0], new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+
+        }
+
+        return res;
+
+    }
+
+    /** @brief Escriu el rendiment de referència de cada guió. */
+    private static void writePerformance(Path path, Map<String, double[]> performance) throws IOException {
+
+        StringBuilder out = new StringBuilder("# guió\tticks per segon\tbytes per tick\n");
+
+        for (Map.Entry<String, double[]> entry : performance.entrySet())
+            out.append(String.format(Locale.ROOT, "%s\t%.1f\t%.0f%n", entry.getKey(), entry.getValue()[0],
+                    entry.getValue()[1]));
+
+        Files.writeString(path, out, StandardCharsets.UTF_8);
+
+    }
+
+}
@@ -0,0 +1,268 @@
+/**
+ * @file MicroBenchmark.java
+ * @brief Classe MicroBenchmark
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/** @class MicroBenchmark
+ * @brief Arnès mínim de microbenchmarks (sense dependències externes) per als nuclis del simulador. Segueix el model
+ * de JMH: cada benchmark té una preparació (Setup) que no es mesura i una operació (Operation) que sí, es proven totes les combinacions
+ * dels seus paràmetres, hi ha iteracions d'escalfament i de mesura, els resultats es passen a un Blackhole perquè
+ * el JIT no els elimini i, a més del temps per operació, es mesuren els bytes assignats per operació.
+ *
+ * Com que la majoria d'operacions modifiquen l'estat (transferir persones, consumir grups pendents...), cada
+ * iteració prepara un lot d'estats nous abans de començar a mesurar i n'aplica l'operació a cadascun una sola
+ * vegada, l'equivalent a Level.Invocation de JMH però sense mesurar cada invocació per separat.
+ */
+public class MicroBenchmark {
+
+    // Public storage classes
+
+    /** @class Params
+     * @brief Valors dels paràmetres d'una combinació.
+     */
+    public static class Params {
+
+        private final Map<String, Integer> _values = new LinkedHashMap<>(); ///< Valor de cada paràmetre.
+
+        /** @return El valor del paràmetre \p name. */
+        public int get(String name) {
+            Integer value = _values.get(name);
+            if (value == null) throw new IllegalArgumentException("Paràmetre desconegut: " + name);
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder res = new StringBuilder("{");
+            for (Map.Entry<String, Integer> entry : _values.entrySet()) {
+                if (res.length() > 1) res.append(',');
+                res.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            }
+            return res.append('}').toString();
+        }
+
+    }
+
+    /** @class Setup
+     * @brief Preparació d'un benchmark (no es mesura).
+     * @param <S> Tipus de l'estat sobre el qual s'aplica l'operació.
+     */
+    @FunctionalInterface
+    public interface Setup<S> {
+
+        /** @brief Prepara un estat nou per a una invocació. */
+        S setup(Params params) throws Exception;
+
+    }
+
+    /** @class Operation
+     * @brief Operació a mesurar.
+     * @param <S> Tipus de l'estat sobre el qual s'aplica l'operació.
+     */
+    @FunctionalInterface
+    public interface Operation<S> {
+
+        /** @brief Aplica l'operació a \p state.
+         * @return Un valor derivat del resultat, que es consumeix amb el Blackhole.
+         */
+        long run(S state) throws Exception;
+
+    }
+
+    /** @class Blackhole
+     * @brief Consumeix els resultats perquè el JIT no pugui eliminar les operacions mesurades.
+     */
+    public static final class Blackhole {
+
+        private static volatile long _sink; ///< Acumulador visible des de fora.
+
+        /** @brief Consumeix \p value. */
+        public static void consume(long value) {
+            _sink ^= value;
+        }
+
+        /** @return L'acumulador (només perquè el compilador no el consideri mort). */
+        public static long sink() { return _sink; }
+
+    }
+
+
+
+    // Private attributes
+
+    private final int _warmup; ///< Iteracions d'escalfament.
+    private final int _iterations; ///< Iteracions mesurades.
+    private final int _batch; ///< Invocacions per iteració.
+    private final String _filter; ///< Només s'executen els benchmarks que contenen aquest text (null: tots).
+    private final PrintStream _out; ///< Sortida dels resultats.
+
+
+
+    // Constructors
+
+    /** @brief Crea l'arnès.
+     * @pre warmup >= 0 && iterations > 0 && batch > 0.
+     * @param warmup Iteracions d'escalfament.
+     * @param iterations Iteracions mesurades.
+     * @param batch Invocacions per iteració.
+     * @param filter Text que ha de contenir el nom dels benchmarks a executar (null per executar-los tots).
+     * @param out Sortida on s'escriu una línia JSON per resultat.
+     */
+    public MicroBenchmark(int warmup, int iterations, int batch, String filter, PrintStream out) {
+
+        _warmup = warmup;
+        _iterations = iterations;
+        _batch = batch;
+        _filter = filter;
+        _out = out;
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @brief Executa \p operation amb totes les combinacions de paràmetres de \p grid.
+     * @pre \p grid té almenys un valor per paràmetre.
+     * @param name Nom del benchmark.
+     * @param grid Valors de cada paràmetre (es proven totes les combinacions, en ordre).
+     * @param setup Preparació de cada invocació.
+     * @param operation Operació a mesurar.
+     */
+    public <S> void run(String name, Map<String, int[]> grid, Setup<S> setup, Operation<S> operation)
+            throws Exception {
+
+        run(name, grid, _batch, setup, operation);
+
+    }
+
+    /** @brief Executa \p operation amb totes les combinacions de paràmetres de \p grid i un lot propi.
+     * @pre \p grid té almenys un valor per paràmetre && batch > 0.
+     * @param name Nom del benchmark.
+     * @param grid Valors de cada paràmetre (es proven totes les combinacions, en ordre).
+     * @param batch Invocacions per iteració (per a operacions llargues, com llegir fitxers).
+     * @param setup Preparació de cada invocació.
+     * @param operation Operació a mesurar.
+     */
+    public <S> void run(String name, Map<String, int[]> grid, int batch, Setup<S> setup, Operation<S> operation)
+            throws Exception {
+
+        if (_filter != null && !name.contains(_filter)) return;
+
+        for (Params params : combinations(grid)) {
+
+            List<S> states = new ArrayList<>(batch);
+            double[] ns_per_op = new double[_iterations];
+            double[] bytes_per_op = new double[_iterations];
+
+            for (int i = -_warmup; i < _iterations; i++) {
+
+                states.clear();
+                for (int b = 0; b < batch; b++) states.add(setup.setup(params));
+
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+
+                for (S state : states) Blackhole.consume(operation.run(state));
+
+                long elapsed = System.nanoTime() - start;
+                bytes = allocatedBytes() - bytes;
+
+                if (i >= 0) {
+                    ns_per_op[i] = (double) elapsed / batch;
+                    bytes_per_op[i] = (double) bytes / batch;
+                }
+
+            }
+
+            Arrays.sort(ns_per_op);
+
+            _out.println(String.format(Locale.ROOT, "{\"benchmark\":\"%s\",\"params\":%s,\"ns_per_op\":%.1f," +
+                            "\"ns_per_op_min\":%.1f,\"ns_per_op_mediana\":%.1f,\"desviacio\":%.1f,\"bytes_per_op\":%.1f," +
+                            "\"iteracions\":%d,\"lot\":%d}",
+                    name, params, mean(ns_per_op), ns_per_op[0], ns_per_op[ns_per_op.length / 2], deviation(ns_per_op),
+                    mean(bytes_per_op), _iterations, batch));
+
+        }
+
+    }
+
+    /** @brief Crea una graella de paràmetres a partir de parelles (nom, valors).
+     * @param pairs Nom d'un paràmetre seguit d'un int[] amb els seus valors, repetit.
+     * @return La graella de paràmetres.
+     */
+    public static Map<String, int[]> grid(Object... pairs) {
+
+        Map<String, int[]> res = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) res.put((String) pairs[i], (int[]) pairs[i + 1]);
+
+        return res;
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @return Totes les combinacions de valors de \p grid. */
+    private static List<Params> combinations(Map<String, int[]> grid) {
+
+        List<Params> res = new ArrayList<>();
+        res.add(new Params());
+
+        for (Map.Entry<String, int[]> entry : grid.entrySet()) {
+
+            List<Params> next = new ArrayList<>();
+
+            for (Params partial : res) {
+                for (int value : entry.getValue()) {
+                    Params params = new Params();
+                    params._values.putAll(partial._values);
+                    params._values.put(entry.getKey(), value);
+                    next.add(params);
+                }
+            }
+
+            res = next;
+
+        }
+
+        return res;
+
+    }
+
+    /** @return Bytes assignats fins ara pel fil actual (-1 si la JVM no ho permet mesurar). No inclou els fils
+     * auxiliars de l'operació (per exemple, els de FastInputReader), que poden acabar abans de la mesura.
+     */
+    private static long allocatedBytes() {
+
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)
+            return bean.getCurrentThreadAllocatedBytes();
+
+        return -1;
+
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) sum += value;
+        return sum / values.length;
+    }
+
+    private static double deviation(double[] values) {
+        double mean = mean(values), sum = 0;
+        for (double value : values) sum += (value - mean) * (value - mean);
+        return Math.sqrt(sum / values.length);
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * @file ScalingBenchmark.java
+ * @brief Classe ScalingBenchmark
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Locale;
+
+
+/** @class ScalingBenchmark
+ * @brief Mesura com escala Territory.propagateViruses amb el nombre de regions, de virus i de fils, calculant totes
+ * les regions o només les actives (Territory.setActiveRegions). Per a cada combinació genera un escenari amb
+ * ScenarioGenerator, el carrega, simula uns ticks d'escalfament i mesura els ticks per segon, els bytes assignats
+ * per tick i el pic de memòria del heap. Les mutacions fan servir la llavor del generador, de manera que totes les
+ * execucions d'un escenari simulen el mateix sigui quin sigui el nombre de fils (virus_finals no canvia).
+ *
+ * Ús: java ScalingBenchmark [opció=valor ...]. Opcions pròpies: regions, virus, fils i actives (llistes separades per
+ * comes; actives=0,1 compara el càlcul complet amb el de només les regions actives), ticks, escalfament i sortida
+ * (fitxer on afegir els resultats; per defecte la sortida estàndard). La resta d'opcions es passen al generador
+ * (topologia, grau, families...). Cada resultat és una línia JSON.
+ */
+public class ScalingBenchmark {
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private ScalingBenchmark() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Executa totes les combinacions de regions, virus i fils demanades.
+     * @param args Opcions "nom=valor".
+     */
+    public static void main(String[] args) throws IOException {
+
+        int[] regions = {1000, 10000, 100000};
+        int[] viruses = {1, 4};
+        int[] threads = {1, Runtime.getRuntime().availableProcessors()};
+        int[] active = {0};
+        int ticks = 30, warmup = 10;
+        String output = null;
+
+        ArrayList<String> generator_options = new ArrayList<>();
+
+        for (String arg : args) {
+
+            String[] pair = arg.split("=", 2);
+
+            switch (pair[0]) {
+                case "regions" -> regions = ints(pair[1]);
+                case "virus" -> viruses = ints(pair[1]);
+                case "fils" -> threads = ints(pair[1]);
+                case "actives" -> active = ints(pair[1]);
+                case "ticks" -> ticks = Integer.parseInt(pair[1]);
+                case "escalfament" -> warmup = Integer.parseInt(pair[1]);
+                case "sortida" -> output = pair[1];
+                default -> generator_options.add(arg);
+            }
+
+        }
+
+        Path scenarios = Files.createTempDirectory("virusland-bench");
+
+        try (PrintStream out = output == null ? new PrintStream(System.out, true)
+                : new PrintStream(Files.newOutputStream(Path.of(output),
+                java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND), true)) {
+
+            for (int region_count : regions) {
+                for (int virus_count : viruses) {
+
+                    ScenarioGenerator.Config config = new ScenarioGenerator.Config();
+                    for (String option : generator_options) config.set(option);
+                    config.regions = region_count;
+                    config.adn = virus_count / 2;
+                    config.arn = virus_count - config.adn;
+
+                    Path directory = scenarios.resolve(region_count + "_" + virus_count);
+                    ScenarioGenerator.generate(config, directory);
+
+                    for (int thread_count : threads) {
+                        for (int active_only : active) {
+
+                            Territory.setActiveRegions(active_only == 1);
+                            out.println(run(config, directory, thread_count, warmup, ticks));
+
+                        }
+                    }
+
+                    Territory.setActiveRegions(false);
+
+                }
+            }
+
+        } finally {
+
+            deleteRecursively(scenarios);
+
+        }
+
+    }
+
+    /** @brief Simula \p ticks ticks de l'escenari de \p directory després de \p warmup ticks d'escalfament.
+     * @pre \p directory conté un escenari vàlid generat amb \p config.
+     * @param config Configuració amb què s'ha generat l'escenari (només per al resultat).
+     * @param directory Directori de l'escenari.
+     * @param threads Fils de la simulació.
+     * @param warmup Ticks d'escalfament (no es mesuren).
+     * @param ticks Ticks mesurats.
+     * @return Una línia JSON amb el resultat.
+     */
+    public static String run(ScenarioGenerator.Config config, Path directory, int threads, int warmup, int ticks)
+            throws IOException {
+
+        System.gc();
+
+        MutableVirus.setSeed(config.llavor);
+
+        long load_start = System.nanoTime();
+        Simulation simulation = new Simulation(new FastInputReader(directory.toString()));
+        long load_time = System.nanoTime() - load_start;
+
+        simulation.setThreads(threads);
+
+        for (int i = 0; i < warmup; i++) simulation.simulateNextTick();
+
+        resetPeakHeap();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < ticks; i++) simulation.simulateNextTick();
+
+        long elapsed = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+        long peak_heap = peakHeap();
+
+        simulation.setThreads(1);
+
+        return String.format(Locale.ROOT, "{\"topologia\":\"%s\",\"regions\":%d,\"grau\":%d,\"virus\":%d," +
+                        "\"virus_finals\":%d,\"fils\":%d,\"regions_actives\":%b,\"ticks\":%d,\"carrega_ms\":%.1f,\"ticks_per_s\":%.3f," +
+                        "\"bytes_per_tick\":%d,\"bytes_per_s\":%.0f,\"heap_maxim\":%d,\"java\":\"%s\"}",
+                config.topologia, config.regions, config.grau, config.adn + config.arn,
+                simulation.virusList().size(), threads, Territory.activeRegions(), ticks, load_time / 1e6, ticks / (elapsed / 1e9),
+                allocated / ticks, allocated / (elapsed / 1e9), peak_heap, System.getProperty("java.version"));
+
+    }
+
+    /** @brief Bytes assignats fins ara per tots els fils vius (inclosos els de la simulació).
+     * @pre La JVM implementa com.sun.management.ThreadMXBean (HotSpot, OpenJ9).
+     * @return La suma dels bytes assignats per cada fil viu, o -1 si no es pot mesurar.
+     */
+    public static long allocatedBytes() {
+
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)) return -1;
+
+        long total = 0;
+        for (long allocated : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (allocated > 0) total += allocated;
+        }
+
+        return total;
+
+    }
+
+    /** @brief Reinicia el pic d'ús de totes les zones del heap. */
+    public static void resetPeakHeap() {
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+
+    }
+
+    /** @return La suma dels pics d'ús de les zones del heap des de l'últim resetPeakHeap(). */
+    public static long peakHeap() {
+
+        long total = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) total += pool.getPeakUsage().getUsed();
+        }
+
+        return total;
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @return Els enters d'una llista separada per comes. */
+    private static int[] ints(String list) {
+
+        String[] values = list.split(",");
+        int[] res = new int[values.length];
+        for (int i = 0; i < values.length; i++) res[i] = Integer.parseInt(values[i].trim());
+
+        return res;
+
+    }
+
+    /** @brief Esborra un directori i tot el seu contingut. */
+    private static void deleteRecursively(Path directory) throws IOException {
+
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(java.util.Comparator.reverseOrder()).toList()) Files.deleteIfExists(path);
+        }
+
+    }
+
+}
@@ -0,0 +1,464 @@
+/**
+ * @file ScenarioGenerator.java
+ * @brief Classe ScenarioGenerator
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+
+/** @class ScenarioGenerator
+ * @brief Generador d'escenaris sintètics grans. Escriu un directori d'entrada vàlid (regions.txt, virus.txt,
+ * vacunes.txt i estatInicial.txt) amb un graf de regions en quadrícula, geomètric aleatori o de llei de potències.
+ *
+ * Ús: java ScenarioGenerator <directori> [opció=valor ...], amb les opcions de Config (per exemple
+ * "topologia=geometric regions=100000 grau=6 arn=2").
+ */
+public class ScenarioGenerator {
+
+    // Public storage classes
+
+    /** @class Config
+     * @brief Paràmetres de l'escenari a generar.
+     */
+    public static class Config {
+
+        public String topologia = "grid"; ///< grid, geometric o powerlaw.
+        public int regions = 1000; ///< Nombre de regions.
+        public int grau = 4; ///< Grau mitjà (a grid: 4 o 8; a powerlaw: 2 * arestes per regió nova).
+        public int poblacio_min = 1000; ///< Població mínima d'una regió.
+        public int poblacio_max = 1000000; ///< Població màxima d'una regió (distribució log-uniforme).
+        public int mob_interna = 6; ///< Mobilitat interna màxima d'una regió.
+        public float mobilitat = 0.2f; ///< Proporció màxima de la població que surt de la regió cada tick.
+        public int adn = 1; ///< Nombre de virus ADN.
+        public int arn = 1; ///< Nombre de virus ARN.
+        public int families = 1; ///< Nombre de famílies (els virus s'hi reparteixen per torns).
+        public int vacunes = 0; ///< Nombre de vacunes (una per virus, per torns).
+        public float focus = 0.01f; ///< Proporció de regions amb afectats a l'estat inicial.
+        public long llavor = 1; ///< Llavor del generador aleatori.
+
+        /** @brief Llegeix una opció amb format "nom=valor".
+         * @pre \p option té el format "nom=valor" i nom és un camp de Config.
+         * @param option Opció a llegir.
+         */
+        public void set(String option) {
+
+            String[] pair = option.split("=", 2);
+            if (pair.length != 2) throw new IllegalArgumentException("Opció incorrecta: " + option);
+
+            try {
+
+                java.lang.reflect.Field field = Config.class.getField(pair[0]);
+
+                if (field.getType() == int.class) field.setInt(this, Integer.parseInt(pair[1]));
+                else if (field.getType() == long.class) field.setLong(this, Long.parseLong(pair[1]));
+                else if (field.getType() == float.class) field.setFloat(this, Float.parseFloat(pair[1]));
+                else field.set(this, pair[1]);
+
+            } catch (NoSuchFieldException | IllegalAccessException e) {
+
+                throw new IllegalArgumentException("Opció desconeguda: " + pair[0]);
+
+            }
+
+        }
+
+        @Override
+        public String toString() {
+            return "topologia=" + topologia + " regions=" + regions + " grau=" + grau + " poblacio_min=" +
+                    poblacio_min + " poblacio_max=" + poblacio_max + " adn=" + adn + " arn=" + arn + " families=" +
+                    families + " vacunes=" + vacunes + " focus=" + focus + " llavor=" + llavor;
+        }
+
+    }
+
+
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private ScenarioGenerator() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Genera un escenari a partir dels arguments de la línia d'ordres.
+     * @param args Directori de sortida seguit d'opcions "nom=valor".
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length == 0) {
+            System.out.println("Ús: java ScenarioGenerator <directori> [opció=valor ...]");
+            System.out.println("Opcions per defecte: " + new Config());
+            return;
+        }
+
+        Config config = new Config();
+        for (int i = 1; i < args.length; i++) config.set(args[i]);
+
+        generate(config, Path.of(args[0]));
+        System.out.println("Escenari generat a " + args[0] + " (" + config + ")");
+
+    }
+
+    /** @brief Escriu els quatre fitxers d'entrada d'un escenari a \p directory.
+     * @pre config.regions > 0 && config.families > 0.
+     * @post \p directory conté un escenari vàlid per a RegionReader, VirusReader, InitialStateReader i
+     * VaccineReader. Amb la mateixa configuració sempre es genera el mateix escenari.
+     * @param config Paràmetres de l'escenari.
+     * @param directory Directori de sortida (es crea si no existeix).
+     * @throws IOException si no es poden escriure els fitxers.
+     */
+    public static void generate(Config config, Path directory) throws IOException {
+
+        Files.createDirectories(directory);
+
+        SplittableRandom random = new SplittableRandom(config.llavor);
+        int[][] graph = switch (config.topologia) {
+            case "grid" -> grid(config.regions, config.grau >= 8);
+            case "geometric" -> geometric(config.regions, config.grau, random.split());
+            case "powerlaw" -> powerLaw(config.regions, Math.max(1, config.grau / 2), random.split());
+            default -> throw new IllegalArgumentException("Topologia desconeguda: " + config.topologia);
+        };
+
+        writeRegions(config, graph, directory.resolve("regions.txt"), random.split());
+        writeViruses(config, directory.resolve("virus.txt"), random.split());
+        writeVaccines(config, directory.resolve("vacunes.txt"), random.split());
+        writeInitialState(config, directory.resolve("estatInicial.txt"), random.split());
+
+    }
+
+    /** @return El nom de la regió \p i. */
+    public static String regionName(int i) { return "r" + i; }
+
+    /** @return El nom del virus \p i (els primers són ADN i la resta ARN). */
+    public static String virusName(Config config, int i) { return (i < config.adn ? "adn" : "arn") + i; }
+
+
+
+    // Funcions privades
+
+    /** @brief Quadrícula de costat ceil(sqrt(n)) amb 4 (o 8, amb \p diagonals) veïns per regió. */
+    private static int[][] grid(int n, boolean diagonals) {
+
+        int side = (int) Math.ceil(Math.sqrt(n));
+        int[][] res = new int[n][];
+        int[] neighbours = new int[8];
+
+        for (int i = 0; i < n; i++) {
+
+            int x = i % side, y = i / side, count = 0;
+
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+
+                    if (dx == 0 && dy == 0 || !diagonals && dx != 0 && dy != 0) continue;
+
+                    int nx = x + dx, ny = y + dy, j = ny * side + nx;
+                    if (nx >= 0 && nx < side && ny >= 0 && j < n) neighbours[count++] = j;
+
+                }
+            }
+
+            res[i] = Arrays.copyOf(neighbours, count);
+
+        }
+
+        return res;
+
+    }
+
+    /** @brief Graf geomètric aleatori: punts uniformes al quadrat unitat, cada un connectat als seus \p degree
+     * veïns més propers (i simètricament). Es cerca en una quadrícula de cubetes per ser lineal.
+     */
+    private static int[][] geometric(int n, int degree, SplittableRandom random) {
+
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+        }
+
+        int side = Math.max(1, (int) Math.sqrt(n / 2.0));
+        int[] bucket_start = new int[side * side + 1];
+        int[] order = new int[n];
+
+        for (int i = 0; i < n; i++) bucket_start[bucket(x[i], y[i], side) + 1]++;
+        for (int b = 0; b < side * side; b++) bucket_start[b + 1] += bucket_start[b];
+
+        int[] fill = Arrays.copyOf(bucket_start, side * side);
+        for (int i = 0; i < n; i++) order[fill[bucket(x[i], y[i], side)]++] = i;
+
+        ArrayList<HashSet<Integer>> edges = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) edges.add(new HashSet<>());
+
+        int k = Math.min(degree, n - 1);
+        if (k <= 0) return toArrays(edges);
+
+        int[] best = new int[k];
+        double[] best_distance = new double[k];
+
+        for (int i = 0; i < n; i++) {
+
+            int bx = Math.min(side - 1, (int) (x[i] * side)), by = Math.min(side - 1, (int) (y[i] * side));
+            int found = 0;
+
+            for (int radius = 0; found < k || radius <= 1; radius++) {
+
+                found = 0;
+                Arrays.fill(best_distance, Double.MAX_VALUE);
+
+                for (int cy = Math.max(0, by - radius); cy <= Math.min(side - 1, by + radius); cy++) {
+                    for (int cx = Math.max(0, bx - radius); cx <= Math.min(side - 1, bx + radius); cx++) {
+
+                        int b = cy * side + cx;
+
+                        for (int p = bucket_start[b]; p < bucket_start[b + 1]; p++) {
+
+                            int j = order[p];
+                            if (j == i) continue;
+
+                            double d = (x[i] - x[j]) * (x[i] - x[j]) + (y[i] - y[j]) * (y[i] - y[j]);
+                            if (found < k) found++;
+                            if (d >= best_distance[k - 1]) continue;
+
+                            int slot = k - 1;
+                            while (slot > 0 && best_distance[slot - 1] > d) {
+                                best_distance[slot] = best_distance[slot - 1];
+                                best[slot] = best[slot - 1];
+                                slot--;
+                            }
+                            best_distance[slot] = d;
+                            best[slot] = j;
+
+                        }
+
+                    }
+                }
+
+                if (radius > side) break;
+
+            }
+
+            for (int m = 0; m < Math.min(found, k); m++) {
+                edges.get(i).add(best[m]);
+                edges.get(best[m]).add(i);
+            }
+
+        }
+
+        return toArrays(edges);
+
+    }
+
+    /** @return La cubeta del punt (x, y) en una quadrícula de \p side x \p side. */
+    private static int bucket(double x, double y, int side) {
+        return Math.min(side - 1, (int) (y * side)) * side + Math.min(side - 1, (int) (x * side));
+    }
+
+    /** @brief Graf de llei de potències (Barabási-Albert): cada regió nova es connecta a \p m regions existents
+     * escollides amb probabilitat proporcional al seu grau.
+     */
+    private static int[][] powerLaw(int n, int m, SplittableRandom random) {
+
+        ArrayList<HashSet<Integer>> edges = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) edges.add(new HashSet<>());
+
+        int[] endpoints = new int[2 * m * n + 2];
+        int count = 0;
+
+        for (int i = 1; i < n; i++) {
+
+            int links = Math.min(m, i);
+
+            for (int l = 0; l < links; l++) {
+
+                int j = count == 0 ? 0 : endpoints[random.nextInt(count)];
+                if (j == i || !edges.get(i).add(j)) continue;
+
+                edges.get(j).add(i);
+                endpoints[count++] = i;
+                endpoints[count++] = j;
+
+            }
+
+        }
+
+        return toArrays(edges);
+
+    }
+
+    /** @return Les llistes d'adjacència com a arrays. */
+    private static int[][] toArrays(ArrayList<HashSet<Integer>> edges) {
+
+        int[][] res = new int[edges.size()][];
+
+        for (int i = 0; i < res.length; i++) {
+            res[i] = edges.get(i).stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        return res;
+
+    }
+
+    /** @brief Escriu regions.txt: poblacions log-uniformes i la mobilitat repartida entre els veïns. */
+    private static void writeRegions(Config config, int[][] graph, Path file, SplittableRandom random)
+            throws IOException {
+
+        double log_min = Math.log(config.poblacio_min), log_max = Math.log(Math.max(config.poblacio_min,
+                config.poblacio_max));
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+            out.write("regions\n");
+
+            for (int i = 0; i < graph.length; i++) {
+
+                long inhabitants = Math.round(Math.exp(log_min + random.nextDouble() * (log_max - log_min)));
+
+                out.write("nom " + regionName(i) + "\n");
+                out.write("habitants " + inhabitants + "\n");
+                out.write("mob_interna " + (1 + random.nextInt(Math.max(1, config.mob_interna))) + "\n");
+                out.write("*\n");
+
+            }
+
+            out.write("limits_i_mobilitat\n");
+
+            for (int i = 0; i < graph.length; i++) {
+
+                if (graph[i].length == 0) continue;
+
+                out.write(regionName(i) + "\n");
+
+                float share = config.mobilitat / graph[i].length;
+
+                for (int j : graph[i]) {
+                    float rate = share * (0.25f + 0.75f * (float) random.nextDouble());
+                    out.write(regionName(j) + " " + String.format(Locale.ROOT, "%.3f", 100 * rate) + "%\n");
+                }
+
+                out.write("*\n");
+
+            }
+
+        }
+
+    }
+
+    /** @brief Escriu virus.txt: les famílies i els virus ADN i ARN amb paràmetres aleatoris raonables. */
+    private static void writeViruses(Config config, Path file, SplittableRandom random) throws IOException {
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+            out.write("families\n");
+
+            for (int f = 0; f < config.families; f++) {
+                out.write("nom familia" + f + "\n");
+                out.write("tpc_maxim_variacio " + (10 + random.nextInt(21)) + "\n");
+                out.write("*\n");
+            }
+
+            out.write("virus\n");
+
+            for (int v = 0; v < config.adn + config.arn; v++) {
+
+                boolean mutable = v >= config.adn;
+
+                out.write("nom " + virusName(config, v) + "\n");
+                out.write("tipus " + (mutable ? "ARN" : "ADN") + "\n");
+                out.write("familia familia" + (v % config.families) + "\n");
+                out.write("prob_malaltia " + decimal(0.4 + 0.5 * random.nextDouble()) + "\n");
+                out.write("incubacio " + (1 + random.nextInt(5)) + "\n");
+                out.write("latencia " + (1 + random.nextInt(3)) + "\n");
+                out.write("durada_malaltia " + (3 + random.nextInt(8)) + "\n");
+                out.write("durada_contagi " + (3 + random.nextInt(8)) + "\n");
+                out.write("durada_immunitat " + (20 + random.nextInt(60)) + "\n");
+                out.write("mortalitat " + decimal(0.01 + 0.1 * random.nextDouble()) + "\n");
+                out.write("taxa_contagi " + decimal(0.1 + 0.4 * random.nextDouble()) + "\n");
+                out.write("prob_mutacio_copia " + (mutable ? decimal(0.001 * random.nextDouble()) : "0") + "\n");
+                out.write("prob_mutacio_coincidencia " + (mutable ? decimal(0.01 * random.nextDouble()) : "0") + "\n");
+                out.write("*\n");
+
+            }
+
+        }
+
+    }
+
+    /** @brief Escriu vacunes.txt: vacunes inhibidores i atenuadores alternades, una per virus. */
+    private static void writeVaccines(Config config, Path file, SplittableRandom random) throws IOException {
+
+        int viruses = config.adn + config.arn;
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+            out.write("vacunes\n");
+
+            for (int c = 0; c < config.vacunes && viruses > 0; c++) {
+
+                boolean soft = c % 2 == 1;
+
+                out.write("nom vacuna" + c + "\n");
+                out.write("tipus " + (soft ? "atenuadora" : "inhibidora") + "\n");
+                out.write("virus_desti " + virusName(config, c % viruses) + "\n");
+                out.write("efectivitat " + (soft ? 0 : 50 + random.nextInt(50)) + "\n");
+                out.write("temps_activacio " + (1 + random.nextInt(5)) + "\n");
+                out.write("durada " + (50 + random.nextInt(100)) + "\n");
+                out.write("tpc_reduccio_mortalitat " + (soft ? 20 + random.nextInt(60) : 0) + "\n");
+                out.write("tpc_reduccio_durada " + (soft ? 10 + random.nextInt(40) : 0) + "\n");
+                out.write("tpc_reduccio_malaltia " + (soft ? 20 + random.nextInt(60) : 0) + "\n");
+                out.write("tpc_reduccio_contagi " + (soft ? 20 + random.nextInt(60) : 0) + "\n");
+                out.write("*\n");
+
+            }
+
+        }
+
+    }
+
+    /** @brief Escriu estatInicial.txt: cada regió és un focus amb probabilitat config.focus (i la primera sempre
+     * ho és), amb un o dos virus diferents.
+     */
+    private static void writeInitialState(Config config, Path file, SplittableRandom random) throws IOException {
+
+        int viruses = config.adn + config.arn;
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+            for (int i = 0; i < config.regions && viruses > 0; i++) {
+
+                if (i > 0 && random.nextDouble() >= config.focus) continue;
+
+                int first = random.nextInt(viruses);
+                int count = viruses > 1 && random.nextBoolean() ? 2 : 1;
+
+                out.write("regio " + regionName(i) + "\n");
+                out.write("virus_presents\n");
+
+                for (int v = 0; v < count; v++) out.write("nom_virus " + virusName(config, (first + v) % viruses) + "\n");
+                for (int v = 0; v < count; v++) out.write("p_malalts " + (1 + random.nextInt(10)) + "\n");
+
+                out.write("*\n");
+
+            }
+
+        }
+
+    }
+
+    /** @return \p value amb 4 decimals i punt decimal. */
+    private static String decimal(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+}
@@ -2,9 +2,10 @@
 * @file Affectation.java
 * @author Guillem Vidal
 */
-import java.util.LinkedList;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @brief Classe que engloba tots els grups d'afectats d'un sol virus en una sola regió.
@@ -19,38 +20,89 @@ public class Affectation {
      * i quan fa que s'ha aplicat. Aquesta classe fa de wrapper per això.
      */
     public static class VaccineStepper {
+
+        /**
+         * @brief Fase de la vacuna.
+         */
+        public enum Phase {
+
+            NONE, ///< No hi ha vacuna.
+            PENDING, ///< Encara no fa efecte (retard).
+            ACTIVE, ///< Fa efecte.
+            OVER ///< Ha acabat.
+
+        }
         
-        private Vaccine _vaccine;
-        private float _proportion;
-        private int _tick;
+        private final Vaccine _vaccine;
+        private final float _proportion;
+        private final Region _region;
+        private final VaccinationScheduler _scheduler;
+        private final long _start;
+        private Phase _phase;
+        private int _changes;
 
+        /**
+         * @brief Crea una vacuna que no està programada: si vaccine és
+         * null, representa l'absència de vacuna.
+         */
         public VaccineStepper(Vaccine vaccine, float proportion) {
 
+            this(vaccine, proportion, null, null);
+
+        }
+
+        /**
+         * @brief Crea una vacuna aplicada a la regió region al tick actual
+         * del calendari scheduler, que n'avançarà les fases.
+         */
+        VaccineStepper(Vaccine vaccine, float proportion, Region region, VaccinationScheduler scheduler) {
+
             _vaccine = vaccine;
             _proportion = proportion;
-            _tick = 0;
+            _region = region;
+            _scheduler = scheduler;
+            _start = scheduler == null ? 0 : scheduler.tick();
+            _phase = phaseAt(0);
 
         }
 
         public Vaccine vaccine() { return _vaccine; }
 
         /**
-         * @return si hi ha vacuna i si està activa.
+         * @return la regió on s'ha aplicat la vacuna (null si no està programada).
          */
-        public boolean isActive() {
+        public Region region() { return _region; }
 
-            return _vaccine != null && _vaccine.delay() < _tick && !isOver();
+        /**
+         * @return la fase actual de la vacuna.
+         */
+        public Phase phase() { return _phase; }
 
-        }
+        /**
+         * @return quantes vegades ha canviat de fase la vacuna: mentre no
+         * canvia, els valors modificats que se n'han calculat són vàlids.
+         */
+        public int changes() { return _changes; }
 
         /**
-         * @return si la vacuna existeix i ha acabat.
+         * @return els tics que fa que s'ha aplicat la vacuna.
          */
-        public boolean isOver() {
+        public int tick() { return _scheduler == null ? 0 : (int) (_scheduler.tick() - _start); }
 
-            return _vaccine != null && _tick >= (_vaccine.delay() + _vaccine.effectDuration());
+        /**
+         * @return els tics que resten perquè la vacuna acabi.
+         */
+        public int remainingTicks() { return _vaccine.effectDuration() - tick(); }
 
-        }
+        /**
+         * @return si hi ha vacuna i si està activa.
+         */
+        public boolean isActive() { return _phase == Phase.ACTIVE; }
+
+        /**
+         * @return si la vacuna existeix i ha acabat.
+         */
+        public boolean isOver() { return _phase == Phase.OVER; }
 
         /**
          * @brief Calcula el valor modificat segons la vacuna i
@@ -59,7 +111,7 @@ public class Affectation {
          */
         public float modifier(String name, float value) {
 
-            if (!isActive()) {
+            if (_phase != Phase.ACTIVE) {
 
                 return value;
 
@@ -70,73 +122,141 @@ public class Affectation {
         }
 
         /**
-         * @brief Avança un tic de la vacuna.
+         * @return el tic del calendari en què la vacuna canviarà de fase
+         * (el d'aplicació si ja ha acabat).
          */
-        public void nextStep() {
+        long nextChange() {
 
-            _tick++;
+            return _start + switch (_phase) {
+                case PENDING -> Math.min(_vaccine.delay() + 1, _vaccine.delay() + _vaccine.effectDuration());
+                case ACTIVE -> _vaccine.delay() + _vaccine.effectDuration();
+                default -> 0;
+            };
 
         }
 
-    }
+        /**
+         * @brief Actualitza la fase segons el tic del calendari.
+         */
+        void updatePhase() {
 
-    /**
-     * La regió que afecta l'afectació.
-     */
-    private final Region _region;
+            Phase phase = phaseAt(tick());
 
-    /**
-     * Els groups d'afectats de l'afectació.
-     */
-    private final LinkedList<AffectedGroup> _groups;
+            if (phase != _phase) {
 
-    /**
-     * Emmagatzema els grups recentment afegits,
-     * esperant a ser enllaçats amb tots els grups.
-     */
-    private final LinkedList<AffectedGroup> _cache_groups;
+                _phase = phase;
+                _changes++;
+
+            }
+
+        }
+
+        /**
+         * @return la fase de la vacuna quan fa tick tics que s'ha aplicat.
+         */
+        private Phase phaseAt(int tick) {
+
+            if (_vaccine == null) return Phase.NONE;
+            if (tick >= _vaccine.delay() + _vaccine.effectDuration()) return Phase.OVER;
+
+            return tick > _vaccine.delay() ? Phase.ACTIVE : Phase.PENDING;
+
+        }
+
+    }
 
     /**
-     * @brief Iterador que engloba ambdós llistes de grups,
-     * per tal de simplificar la iteració quan un els vol recórrer.
+     * @brief Vectors on es copien els afectats, els morts i els compartiments
+     * de cada grup per sumar-los amb CohortKernels. N'hi ha un per fil
+     * (les regions es poden propagar en paral·lel) i es reutilitza d'un
+     * recompte a l'altre.
      */
-    private class GroupIterator implements Iterator<AffectedGroup> {
+    private static class Cohorts {
 
-        Iterator<AffectedGroup> iter_groups, iter_cache;
+        private double[] affected = new double[16], deaths = new double[16];
+        private long[] compartments = new long[16];
+        private final double[] sums = new double[CohortKernels.SUMS];
 
-        public GroupIterator() {
+        /**
+         * @brief Fa que hi càpiguen groups grups.
+         */
+        private void reserve(int groups) {
+
+            if (affected.length >= groups) return;
 
-            iter_groups = _groups.iterator();
-            iter_cache = _cache_groups.iterator();
+            int capacity = Math.max(groups, affected.length * 2);
+
+            affected = new double[capacity];
+            deaths = new double[capacity];
+            compartments = new long[capacity];
 
         }
 
-        @Override
-        public boolean hasNext() {
+    }
 
-            return iter_groups.hasNext() || iter_cache.hasNext();
+    /**
+     * Vectors dels recomptes de cada fil.
+     */
+    private static final ThreadLocal<Cohorts> _cohorts = ThreadLocal.withInitial(Cohorts::new);
 
-        }
+    /**
+     * Tolerància màxima que es prova per respectar el límit de grups.
+     */
+    private static final int MAX_TOLERANCE = 1 << 20;
 
-        @Override
-        public AffectedGroup next() {
+    /**
+     * Diferència màxima de tics entre dos grups perquè es fusionin (0 per no fusionar-ne cap).
+     */
+    private static int _coalescing_tolerance = 0;
 
-            if (iter_groups.hasNext()) {
+    /**
+     * Nombre màxim de grups per afectació (0 per no limitar-lo).
+     */
+    private static int _max_groups = 0;
 
-                return iter_groups.next();
+    /**
+     * Si les mides dels grups són fraccionàries en lloc de persones senceres.
+     */
+    private static boolean _fractional = false;
 
-            }
+    /**
+     * Si les transicions se sortegen (binomials) en lloc de prendre'n el valor esperat.
+     */
+    private static boolean _stochastic = false;
 
-            if (iter_cache.hasNext()) {
+    /**
+     * Generador del qual es divideix el generador de cada regió en mode estocàstic.
+     */
+    private static SplittableRandom _random = new SplittableRandom();
 
-                return iter_cache.next();
+    /**
+     * Afectacions creades a totes les regions des de l'últim resetTotals
+     * (les regions es calculen en paral·lel).
+     */
+    private static final LongAdder _total_affectations = new LongAdder();
 
-            }
+    /**
+     * Grups d'afectats de totes les afectacions des de l'últim resetTotals:
+     * s'actualitza on s'afegeixen i es descarten, perquè la telemetria no
+     * hagi de recórrer el mapa.
+     */
+    private static final LongAdder _total_groups = new LongAdder();
 
-            throw new NoSuchElementException();
-        }
+    /**
+     * La regió que afecta l'afectació.
+     */
+    private final Region _region;
 
-    }
+    /**
+     * Els groups d'afectats de l'afectació.
+     */
+    private final ArrayList<AffectedGroup> _groups;
+
+    /**
+     * Emmagatzema els grups recentment afegits,
+     * esperant a ser enllaçats amb tots els grups.
+     */
+    private final ArrayList<AffectedGroup> _cache_groups;
 
     /**
      * El virus de l'afectació.
@@ -149,60 +269,77 @@ public class Affectation {
      */
     private VaccineStepper _vaccine;
 
+    /**
+     * Canvis de fase de la vacuna (VaccineStepper.changes) quan se'n van
+     * calcular els paràmetres modificats del virus (-1 si s'han de calcular).
+     */
+    private int _vaccine_changes = -1;
+
+    /**
+     * Paràmetres del virus modificats per la vacuna: es calculen només
+     * quan la vacuna canvia de fase, no a cada grup ni a cada tic.
+     */
+    private float _fall_sick, _death_rate, _spread;
+
+    /**
+     * Durades dels estats del virus modificades per la vacuna.
+     */
+    private int _incubation_time, _symptom_duration, _latency_time, _infection_duration;
+
     /**
      * El nombre total de persones afectades vives.
      */
-    private int _affected;
+    private double _affected;
 
     /**
      * El nombre total de morts.
      */
-    private int _deaths;
+    private double _deaths;
 
     /**
      * El nombre total de persones incubant el virus.
      */
-    private int _incubating;
+    private double _incubating;
 
     /**
      * El nombre total de persones amb símptomes.
      */
-    private int _symptoms;
+    private double _symptoms;
 
     /**
      * El nombre total de persones en latència.
      */
-    private int _latency;
+    private double _latency;
 
     /**
      * El nombre de total de persones contagioses.
      */
-    private int _contagious;
+    private double _contagious;
 
     /**
      * El nombre total de persones que han deixat de tenir símptomes,
      * però encara no són immunes.
      */
-    private int _null_disease;
+    private double _null_disease;
 
     /**
      * El nombre total de persones que han deixat de ser contagioses,
      * però encara no són immunes.
      */
-    private int _null_contagious;
+    private double _null_contagious;
 
     /**
      * El nombre total de persones immunes.
      */
-    private int _immunity;
+    private double _immunity;
 
-    private int _in_incubating, _out_incubating;
-    private int _in_latency, _out_latency;
-    private int _in_symptoms, _out_symptoms;
-    private int _in_contagious, _out_contagious;
-    private int _in_null_disease, _out_null_disease;
-    private int _in_null_contagious, _out_null_contagious;
-    private int _in_immunity, _out_immunity;
+    private double _in_incubating, _out_incubating;
+    private double _in_latency, _out_latency;
+    private double _in_symptoms, _out_symptoms;
+    private double _in_contagious, _out_contagious;
+    private double _in_null_disease, _out_null_disease;
+    private double _in_null_contagious, _out_null_contagious;
+    private double _in_immunity, _out_immunity;
 
     /**
      * Determina si els comptadors estan desactualitzats.
@@ -220,14 +357,16 @@ public class Affectation {
         _virus = virus;
         _vaccine = new VaccineStepper(null, 0f);
 
-        _groups = new LinkedList<>();
-        _cache_groups = new LinkedList<>();
+        _groups = new ArrayList<>();
+        _cache_groups = new ArrayList<>();
 
         _affected = _deaths = 0;
         _incubating = _latency = 0;
         _null_disease = _null_contagious = 0;
         _symptoms = _contagious = 0;
 
+        _total_affectations.increment();
+
     }
 
     /**
@@ -240,76 +379,193 @@ public class Affectation {
      */
     public VaccineStepper vaccine() { return _vaccine; }
 
+    /**
+     * @return la regió de l'afectació.
+     */
+    public Region region() { return _region; }
+
     /**
      * @return el nombre total d'afectats.
      */
-    public int affected() { count(); return _affected; }
+    public double affected() { count(); return _affected; }
 
     /**
      * @return el nombre total de morts.
      */
-    public int deaths() { count(); return _deaths; }
+    public double deaths() { count(); return _deaths; }
 
     /**
      * @return el nombre total de persones no afectades ni mortes.
      */
-    public int healthy() { count(); return _region.inhabitants() - _affected - _deaths; }
+    public double healthy() { count(); return _region.inhabitants() - _affected - _deaths; }
 
     /**
      * @return el nombre total de persones incubant.
      */
-    public int incubating() { count(); return _incubating; }
-    public int inIncubating() { return _in_incubating; }
-    public int outIncubating() { return _out_incubating; }
+    public double incubating() { count(); return _incubating; }
+    public double inIncubating() { return _in_incubating; }
+    public double outIncubating() { return _out_incubating; }
 
     /**
      * @return el nombre total de persones en latència.
      */
-    public int latency() { count(); return _latency; }
-    public int inLatency() { return _in_latency; }
-    public int outLatency() { return _out_latency; }
+    public double latency() { count(); return _latency; }
+    public double inLatency() { return _in_latency; }
+    public double outLatency() { return _out_latency; }
 
     /**
      * @return el nombre total de persones amb símptomes.
      */
-    public int symptom() { count(); return _symptoms; }
-    public int inSymptom() { return _in_symptoms; }
-    public int outSymptom() { return _out_symptoms; }
+    public double symptom() { count(); return _symptoms; }
+    public double inSymptom() { return _in_symptoms; }
+    public double outSymptom() { return _out_symptoms; }
 
     /**
      * @return el nombre total de persones contagioses.
      */
-    public int contagious() { count(); return _contagious; }
-    public int inContagious() { return _in_contagious; }
-    public int outContagious() { return _out_contagious; }
+    public double contagious() { count(); return _contagious; }
+    public double inContagious() { return _in_contagious; }
+    public double outContagious() { return _out_contagious; }
 
     /**
      * @return el nombre total de persones que han deixat de tenir símptomes,
      * però no són immunes.
      */
-    public int nullDisease() { count(); return _null_disease; }
-    public int inNullDisease() { return _in_null_disease; }
-    public int outNullDisease() { return _out_null_disease; }
+    public double nullDisease() { count(); return _null_disease; }
+    public double inNullDisease() { return _in_null_disease; }
+    public double outNullDisease() { return _out_null_disease; }
 
     /**
      * @return el nombre total de persones que han deixat de ser contagioses,
      * però no són immunes.
      */
-    public int nullContagious() { count(); return _null_contagious; }
-    public int inNullContagious() { return _in_null_contagious; }
-    public int outNullContagious() { return _out_null_contagious; }
+    public double nullContagious() { count(); return _null_contagious; }
+    public double inNullContagious() { return _in_null_contagious; }
+    public double outNullContagious() { return _out_null_contagious; }
 
     /**
      * @return el nombre total de persones immunes.
      */
-    public int immunity() { count(); return _immunity; }
-    public int inImmunity() { return _in_immunity; }
-    public int outImmunity() { return _out_immunity; }
+    public double immunity() { count(); return _immunity; }
+    public double inImmunity() { return _in_immunity; }
+    public double outImmunity() { return _out_immunity; }
+
+    /**
+     * @return el nombre de grups d'afectats (inclosos els pendents d'afegir).
+     */
+    public int groupCount() { return _groups.size() + _cache_groups.size(); }
+
+    /**
+     * @return el grup index-èssim, primer els enllaçats i després els pendents d'afegir.
+     */
+    private AffectedGroup group(int index) {
+
+        return index < _groups.size() ? _groups.get(index) : _cache_groups.get(index - _groups.size());
+
+    }
+
+    /**
+     * @brief Configura la fusió de grups semblants de totes les afectacions.
+     * Després de cada tic es fusionen els grups amb els mateixos estats
+     * i una diferència de tics no superior a tolerance. Si una afectació
+     * té més de max_groups grups, es torna a fusionar doblant la tolerància
+     * fins que en tingui prou pocs. La fusió avança els períodes d'algunes
+     * persones; l'error es comptabilitza a Instrumentation.
+     * @pre tolerance >= 0, max_groups >= 0 (0 desactiva cada política).
+     */
+    public static void setCoalescing(int tolerance, int max_groups) {
+
+        _coalescing_tolerance = tolerance;
+        _max_groups = max_groups;
+
+    }
+
+    /**
+     * @return la tolerància de fusió de grups.
+     */
+    public static int coalescingTolerance() { return _coalescing_tolerance; }
+
+    /**
+     * @return el nombre màxim de grups per afectació (0 si no hi ha límit).
+     */
+    public static int maxGroups() { return _max_groups; }
+
+    /**
+     * @brief Configura el mode fraccional de totes les afectacions.
+     * En mode fraccional, les mides dels grups, les afectacions i les regions
+     * són fraccions de persona: cada transferència és una sola multiplicació
+     * sense passada de correcció, els resultats no depenen de la mida de les
+     * regions i només s'arrodoneix en mostrar les dades (Data). En mode enter
+     * (per defecte) es compten persones senceres.
+     * @pre no s'ha creat cap simulació amb el mode anterior que s'hagi de continuar.
+     */
+    public static void setFractional(boolean fractional) {
+
+        _fractional = fractional;
+
+    }
+
+    /**
+     * @return si les mides dels grups són fraccionàries.
+     */
+    public static boolean fractional() { return _fractional; }
+
+    /**
+     * @brief Configura el mode estocàstic de totes les afectacions.
+     * En mode estocàstic, les persones que emmalalteixen, les que moriran,
+     * les que s'infecten i els errors de còpia de les mutacions se sortegen
+     * amb una distribució binomial (BinomialSampler) en lloc de prendre'n el
+     * valor esperat truncat, de manera que un brot petit es pot extingir.
+     * Cada regió té el seu generador, dividit del generador de llavor seed
+     * en l'ordre de creació de les regions: la mateixa llavor reprodueix la
+     * mateixa simulació.
+     * @pre no s'ha creat cap regió de la simulació que es farà en aquest mode,
+     * i si stochastic, no s'està en mode fraccional.
+     */
+    public static void setStochastic(boolean stochastic, long seed) {
+
+        _stochastic = stochastic;
+        _random = new SplittableRandom(seed);
+
+    }
+
+    /**
+     * @brief Torna a comptar les afectacions i els grups des de zero, perquè
+     * els totals siguin els d'una sola simulació.
+     * @pre Les afectacions creades abans no es faran servir més.
+     */
+    static void resetTotals() {
+
+        _total_affectations.reset();
+        _total_groups.reset();
+
+    }
+
+    /**
+     * @return les afectacions de totes les regions (sense recórrer-les).
+     */
+    public static long totalAffectations() { return _total_affectations.sum(); }
+
+    /**
+     * @return els grups d'afectats de totes les afectacions (sense recórrer-les).
+     */
+    public static long totalGroups() { return _total_groups.sum(); }
+
+    /**
+     * @return si les transicions se sortegen.
+     */
+    public static boolean stochastic() { return _stochastic; }
+
+    /**
+     * @return un generador independent per a una regió nova, o null si no
+     * s'està en mode estocàstic.
+     */
+    public static SplittableRandom regionStream() { return _stochastic ? _random.split() : null; }
 
     /**
      * @return els tics que resten perquè la vacuna acabi.
      */
-    public int vaccineRemainingTicks() { return _vaccine._vaccine.effectDuration() - _vaccine._tick; }
+    public int vaccineRemainingTicks() { return _vaccine.remainingTicks(); }
 
     /**
      * @brief Afegeix un grup d'afectats a l'afectació.
@@ -320,6 +576,7 @@ public class Affectation {
         hintModified();
 
         _cache_groups.add(group);
+        _total_groups.increment();
 
     }
 
@@ -330,7 +587,8 @@ public class Affectation {
      */
     private AffectedGroup findGroup(AffectedGroup group) {
 
-        for (AffectedGroup match : _groups) {
+        for (int i = 0; i < _groups.size(); i++) {
+            AffectedGroup match = _groups.get(i);
 
             if (group.equals(match) && match != group) {
 
@@ -349,13 +607,26 @@ public class Affectation {
      */
     public void pushGroups() {
 
-        for (AffectedGroup group : _cache_groups) {
+        for (int i = 0; i < _cache_groups.size(); i++) {
+            AffectedGroup group = _cache_groups.get(i);
+
+            if (group.isEmpty()) {
+
+                AffectedGroup.release(group);
+                _total_groups.decrement();
+                Instrumentation.count(Instrumentation.Counter.GROUPS_PRUNED);
+                continue;
+
+            }
 
             AffectedGroup dest = findGroup(group);
 
             if (dest != null) {
 
                 dest.add(group);
+                AffectedGroup.release(group);
+                _total_groups.decrement();
+                Instrumentation.count(Instrumentation.Counter.GROUPS_MERGED);
 
             } else {
 
@@ -421,24 +692,69 @@ public class Affectation {
 
     /**
      * @brief Si escau, compta totes les persones de l'afectació i les classifica.
+     * Si l'afectació té prou grups perquè els nuclis vectorials surtin a compte
+     * (CohortKernels.vectorized), copia els afectats, els morts i els
+     * compartiments de cada grup als vectors del fil (Cohorts) i els suma
+     * amb CohortKernels; si no, els suma un a un.
      */
     private void count() {
 
         // if (!_modified_count) return;
         _modified_count = false;
 
-        _affected = _deaths = 0;
-        _incubating = _symptoms = _null_disease = 0;
-        _latency = _contagious = _null_contagious = 0;
-        _immunity = 0;
+        Instrumentation.count(Instrumentation.Counter.AFFECTATION_COUNTS);
+
+        int groups = groupCount();
+
+        if (!CohortKernels.vectorized(groups)) {
+
+            _affected = _deaths = 0;
+            _incubating = _symptoms = _null_disease = 0;
+            _latency = _contagious = _null_contagious = 0;
+            _immunity = 0;
+
+            for (int i = 0; i < _groups.size(); i++) {
 
-        for (Iterator<AffectedGroup> iterator = new GroupIterator(); iterator.hasNext();) {
-            AffectedGroup group = iterator.next();
+                countGroup(_groups.get(i));
 
-            countGroup(group);
+            }
+
+            for (int i = 0; i < _cache_groups.size(); i++) {
+
+                countGroup(_cache_groups.get(i));
+
+            }
+
+            return;
+
+        }
+
+        Cohorts cohorts = _cohorts.get();
+
+        cohorts.reserve(groups);
+
+        for (int i = 0; i < groups; i++) {
+            AffectedGroup group = group(i);
+
+            cohorts.affected[i] = group.affected();
+            cohorts.deaths[i] = group.deaths();
+            cohorts.compartments[i] = group.compartments();
 
         }
 
+        double[] sums = cohorts.sums;
+        CohortKernels.sum(cohorts.affected, cohorts.deaths, cohorts.compartments, groups, sums);
+
+        _affected = sums[CohortKernels.AFFECTED];
+        _deaths = sums[CohortKernels.DEATHS];
+        _incubating = sums[CohortKernels.INCUBATING];
+        _symptoms = sums[CohortKernels.SYMPTOMS];
+        _latency = sums[CohortKernels.LATENCY];
+        _contagious = sums[CohortKernels.CONTAGIOUS];
+        _null_disease = sums[CohortKernels.NULL_DISEASE];
+        _null_contagious = sums[CohortKernels.NULL_CONTAGIOUS];
+        _immunity = sums[CohortKernels.IMMUNITY];
+
     }
 
     /**
@@ -456,7 +772,7 @@ public class Affectation {
      * @pre l'afectació from ha de tenir almenys people persones que transferir.
      * @return les transferències exitoses.
      */
-    public static int transfer(Affectation from, Affectation to, int people) {
+    public static double transfer(Affectation from, Affectation to, double people) {
 
         if (to != null) {
 
@@ -466,13 +782,18 @@ public class Affectation {
 
         if (people <= 0 || from.affected() == 0) return 0;
 
-        float proportion = (float)people / from.affected();
-        proportion = Math.min(1f, proportion);
+        if (_fractional) {
+
+            return transferProportion(from, to, Math.min(1.0, people / from.affected()));
 
-        int successful = 0, maximum = 0;
+        }
+
+        double proportion = Math.min(1.0, people / from.affected());
+
+        double successful = 0, maximum = 0;
 
-        for (Iterator<AffectedGroup> iterator = from.new GroupIterator(); iterator.hasNext();) {
-            AffectedGroup group = iterator.next();
+        for (int i = 0, groups = from.groupCount(); i < groups; i++) {
+            AffectedGroup group = from.group(i);
 
             AffectedGroup sub = group.subgroup(proportion);
 
@@ -484,35 +805,33 @@ public class Affectation {
 
             }
 
-            if (to != null) {
-                sub.move(to);
-                to.addGroup(sub);
-            }
+            from.give(sub, to);
 
         }
 
-        if (successful == people || from.affected() == 0)
+        if (successful >= people || from.affected() == 0)
             return successful; // we're done!
 
         /**
          * Això és una aproximació d'una distribució homogènia.
          * El que busca és repartir de manera igualitària els moviments restants.
          */
-        int affected = from.affected(), numerator = (people - successful) * maximum;
-        int sample = numerator / affected + (numerator % affected > 0 ? 1 : 0);
+        double sample = scaleUp((long)(people - successful), (long)maximum, (long)from.affected());
+
+        for (int i = 0, groups = from.groupCount(); i < groups && people > successful; i++) {
+            AffectedGroup group = from.group(i);
 
-        for (Iterator<AffectedGroup> iterator = from.new GroupIterator(); iterator.hasNext() && people > successful;) {
-            AffectedGroup group = iterator.next();
+            if (group.affected() == 0) continue;
 
-            int amount = Math.min(sample, group.affected());
+            double amount = Math.min(sample, group.affected());
 
             if (successful + amount >= people) {
 
-                proportion = (float)(people - successful) / group.affected();
+                proportion = (people - successful) / group.affected();
 
             } else {
 
-                proportion = (float)amount / group.affected();
+                proportion = amount / group.affected();
 
             }
 
@@ -520,14 +839,153 @@ public class Affectation {
 
             successful += sub.affected();
 
-            if (to != null) {
-                sub.move(to);
-                to.addGroup(sub);
-            }
+            from.give(sub, to);
+
+        }
+
+        return successful;
+    }
+
+    /**
+     * @brief Transferència del mode fraccional: cada grup de from cedeix
+     * exactament la proporció proportion de les seves persones a to.
+     * @pre 0 <= proportion <= 1.
+     * @return les transferències exitoses.
+     */
+    private static double transferProportion(Affectation from, Affectation to, double proportion) {
+
+        double successful = 0;
+
+        for (int i = 0, groups = from.groupCount(); i < groups; i++) {
+
+            AffectedGroup sub = from.group(i).subgroup(proportion);
+
+            successful += sub.affected();
+
+            from.give(sub, to);
 
         }
 
         return successful;
+
+    }
+
+    /**
+     * @brief Mou el subgrup sub, extret d'aquesta afectació, a l'afectació to.
+     * Si to és null o el subgrup és buit, el subgrup es descarta.
+     */
+    private void give(AffectedGroup sub, Affectation to) {
+
+        if (to == null || sub.isEmpty()) {
+
+            AffectedGroup.release(sub);
+            return;
+
+        }
+
+        sub.move(to);
+        to.addGroup(sub);
+        Instrumentation.count(Instrumentation.Counter.GROUPS_TRANSFERRED);
+
+    }
+
+    /**
+     * @brief Calcula la part proportion de people persones. En mode fraccional
+     * és el producte exacte; en mode enter, el producte en doble precisió
+     * arrodonit cap avall i limitat a people, de manera que un subgrup mai no
+     * és més gran que el grup d'on surt.
+     * @pre people >= 0, proportion >= 0.
+     * @return people * proportion.
+     */
+    public static double part(double people, double proportion) {
+
+        if (_fractional) {
+
+            return people * proportion;
+
+        }
+
+        return Math.min(people, Math.floor(people * proportion));
+
+    }
+
+    /**
+     * @brief Calcula quantes de people persones de la regió region fan una
+     * transició de probabilitat probability. En mode estocàstic se sorteja
+     * amb el generador de la regió; si no, és la part esperada (part).
+     * @pre people >= 0, probability >= 0.
+     * @return el nombre de persones que fan la transició (com a molt people).
+     */
+    public static double draw(Region region, double people, double probability) {
+
+        if (_stochastic) {
+
+            return BinomialSampler.sample(region.random(), (long)people, probability);
+
+        }
+
+        return part(people, probability);
+
+    }
+
+    /**
+     * @brief Calcula la part proporcional value * numerator / denominator. En mode
+     * enter, el resultat s'arrodoneix cap avall com a scale.
+     * @pre value >= 0, numerator >= 0, denominator > 0.
+     * @return value * numerator / denominator.
+     */
+    public static double apportion(double value, double numerator, double denominator) {
+
+        if (_fractional) {
+
+            return value * numerator / denominator;
+
+        }
+
+        return scale((long)value, (long)numerator, (long)denominator);
+
+    }
+
+    /**
+     * @brief Calcula la part proporcional value * numerator / denominator sense desbordar
+     * el producte intermedi, que amb poblacions de milions de persones no cap en un long.
+     * @pre value >= 0, numerator >= 0, denominator > 0 i el resultat cap en un long.
+     * @return el resultat arrodonit cap avall.
+     */
+    public static long scale(long value, long numerator, long denominator) {
+
+        long high = Math.multiplyHigh(value, numerator), low = value * numerator;
+
+        if (high == 0 && low >= 0) {
+
+            return low / denominator;
+
+        }
+
+        return BigInteger.valueOf(value).multiply(BigInteger.valueOf(numerator))
+                .divide(BigInteger.valueOf(denominator)).longValueExact();
+
+    }
+
+    /**
+     * @brief Com scale, però arrodonint cap amunt.
+     * @return value * numerator / denominator arrodonit cap amunt.
+     */
+    public static long scaleUp(long value, long numerator, long denominator) {
+
+        long high = Math.multiplyHigh(value, numerator), low = value * numerator;
+
+        if (high == 0 && low >= 0) {
+
+            return low / denominator + (low % denominator > 0 ? 1 : 0);
+
+        }
+
+        BigInteger[] division = BigInteger.valueOf(value).multiply(BigInteger.valueOf(numerator))
+                .divideAndRemainder(BigInteger.valueOf(denominator));
+
+        return division[0].longValueExact() + (division[1].signum() > 0 ? 1 : 0);
+
     }
 
     /**
@@ -537,6 +995,39 @@ public class Affectation {
     public void applyVaccine(VaccineStepper vaccine) {
 
         _vaccine = vaccine;
+        _vaccine_changes = -1;
+
+    }
+
+    /**
+     * @return la probabilitat d'emmalaltir, modificada per la vacuna.
+     */
+    public float fallSickProbability() { refreshVaccine(); return _fall_sick; }
+
+    /**
+     * @return la taxa de mortalitat, modificada per la vacuna.
+     */
+    public float deathRate() { refreshVaccine(); return _death_rate; }
+
+    /**
+     * @return la durada de l'estat de malaltia state, modificada per la vacuna.
+     */
+    public int diseaseTime(AffectedGroup.DiseaseState state) {
+
+        refreshVaccine();
+
+        return state == AffectedGroup.DiseaseState.INCUBATING ? _incubation_time : _symptom_duration;
+
+    }
+
+    /**
+     * @return la durada de l'estat de contagi state, modificada per la vacuna.
+     */
+    public int contagiousTime(AffectedGroup.ContagiousState state) {
+
+        refreshVaccine();
+
+        return state == AffectedGroup.ContagiousState.LATENCY ? _latency_time : _infection_duration;
 
     }
 
@@ -545,6 +1036,9 @@ public class Affectation {
      * Si un grup d'afectats acaba tots els períodes,
      * esdevé el grup d'afectat mort
      * o es suma al grup d'afectats mort actual.
+     * El grup mort ja no canvia: no s'avança ni es torna a buscar
+     * on fusionar-lo, de manera que només els grups que acaben en
+     * aquest tic recorren la llista.
      */
     public void nextStep() {
 
@@ -553,8 +1047,22 @@ public class Affectation {
         _in_null_disease = _out_null_disease = _in_null_contagious = _out_null_contagious = 0;
         _in_immunity = _out_immunity = 0;
 
-        for (Iterator<AffectedGroup> iterator = _groups.iterator(); iterator.hasNext();) {
-            AffectedGroup group = iterator.next();
+        if (!_groups.isEmpty()) hintModified();
+
+        for (int i = 0; i < _groups.size(); i++) {
+            AffectedGroup group = _groups.get(i);
+
+            if (group.isEmpty()) {
+
+                AffectedGroup.release(_groups.remove(i--));
+                _total_groups.decrement();
+                Instrumentation.count(Instrumentation.Counter.GROUPS_PRUNED);
+                continue;
+
+            }
+
+            // només n'hi ha un: els que moren després s'hi sumen
+            if (group.isDead()) continue;
 
             if (group.nextStep()) {
 
@@ -563,7 +1071,52 @@ public class Affectation {
                 if (dead_zone != null) {
 
                     dead_zone.add(group);
-                    iterator.remove();
+                    AffectedGroup.release(_groups.remove(i--));
+                    _total_groups.decrement();
+
+                }
+
+            }
+
+        }
+
+        if (_coalescing_tolerance > 0) {
+
+            coalesce(_coalescing_tolerance);
+
+        }
+
+        for (int tolerance = Math.max(1, _coalescing_tolerance * 2);
+             _max_groups > 0 && _groups.size() > _max_groups && tolerance <= MAX_TOLERANCE; tolerance *= 2) {
+
+            coalesce(tolerance);
+
+        }
+
+    }
+
+    /**
+     * @brief Fusiona cada grup amb el primer grup anterior que té els mateixos
+     * estats i una diferència de tics no superior a tolerance.
+     */
+    private void coalesce(int tolerance) {
+
+        hintModified();
+
+        for (int index = 1; index < _groups.size(); index++) {
+            AffectedGroup group = _groups.get(index);
+
+            for (int i = 0; i < index; i++) {
+                AffectedGroup dest = _groups.get(i);
+
+                if (dest.distance(group) <= tolerance) {
+
+                    Instrumentation.count(Instrumentation.Counter.GROUPS_COALESCED);
+                    Instrumentation.add(Instrumentation.Counter.COALESCED_SHIFT, Math.round(dest.coalesce(group)));
+
+                    AffectedGroup.release(_groups.remove(index--));
+                    _total_groups.decrement();
+                    break;
 
                 }
 
@@ -578,12 +1131,11 @@ public class Affectation {
      */
     public void propagateVirus() {
 
-        int healthy = _region.inhabitants() - affected() - deaths();
-        float spread = _vaccine.modifier("contagiousness", _virus.spreadRate());
-        spread = _vaccine.modifier("virusEffectiveness", spread); // TEMP
-        float contacts = spread * _region.insideMobility() * contagious() / _region.inhabitants();
+        double healthy = _region.inhabitants() - affected() - deaths();
+        refreshVaccine();
+        float contacts = _spread * _region.insideMobility() * (float)contagious() / (float)_region.inhabitants();
 
-        int newly_affected = Math.min(healthy, (int)(contacts * healthy));
+        double newly_affected = Math.min(healthy, draw(_region, healthy, contacts));
 
         if (newly_affected > 0) {
 
@@ -601,7 +1153,7 @@ public class Affectation {
     public void modifiedDisease(AffectedGroup group) {
 
         AffectedGroup.DiseaseState disease_state = group.diseaseState();
-        int affected = group.affected();
+        double affected = group.affected();
 
         if (disease_state != null) {
 
@@ -630,7 +1182,7 @@ public class Affectation {
     public void modifiedContagious(AffectedGroup group) {
 
         AffectedGroup.ContagiousState contagious_state = group.contagiousState();
-        int affected = group.affected();
+        double affected = group.affected();
 
         if (contagious_state != null) {
 
@@ -658,7 +1210,7 @@ public class Affectation {
      */
     public void modifiedImmunity(AffectedGroup group) {
 
-        int affected = group.affected();
+        double affected = group.affected();
 
         if (!group.isDead()) {
 
@@ -674,4 +1226,27 @@ public class Affectation {
 
     }
 
+    /**
+     * @brief Si la vacuna ha canviat de fase des de l'últim càlcul, torna a
+     * calcular els paràmetres del virus que modifica.
+     */
+    private void refreshVaccine() {
+
+        if (_vaccine_changes == _vaccine.changes()) return;
+
+        _fall_sick = _vaccine.modifier("fallSick", _virus.fallSickProbability());
+        _death_rate = _vaccine.modifier("mortality", _virus.deathRate());
+
+        _spread = _vaccine.modifier("contagiousness", _virus.spreadRate());
+        _spread = _vaccine.modifier("virusEffectiveness", _spread); // TEMP
+
+        _incubation_time = (int) _vaccine.modifier("duration", _virus.incubationTime());
+        _symptom_duration = (int) _vaccine.modifier("duration", _virus.symptomDuration());
+        _latency_time = (int) _vaccine.modifier("duration", _virus.latencyTime());
+        _infection_duration = (int) _vaccine.modifier("duration", _virus.infectionDuration());
+
+        _vaccine_changes = _vaccine.changes();
+
+    }
+
 }
@@ -3,11 +3,30 @@
 * @author Guillem Vidal
 */
 
+import java.util.ArrayList;
+
 /**
  * @brief Classe que engloba el comportament d'un grup d'afectats en una sola afectació.
  */
 public class AffectedGroup implements Cloneable {
 
+    /**
+     * Nombre màxim de grups descartats que es guarden per fil.
+     */
+    private static final int MAX_FREE_GROUPS = 1 << 14;
+
+    /**
+     * Persones per sota de les quals un grup es considera buit (en mode enter, només 0).
+     */
+    private static final double EMPTY = 1e-9;
+
+    /**
+     * Grups descartats (fusionats o buits) de cada fil, que es reutilitzen en lloc de crear-ne
+     * de nous perquè el càlcul d'un tic no reservi memòria un cop la simulació és estable.
+     * Un sol fil calcula els moviments, on es creen i es descarten la majoria de subgrups.
+     */
+    private static final ThreadLocal<ArrayList<AffectedGroup>> _free_groups = ThreadLocal.withInitial(ArrayList::new);
+
     /**
      * @brief Enumerador de l'estat de contagi del grup.
      */
@@ -22,9 +41,14 @@ public class AffectedGroup implements Cloneable {
         };
 
         public ContagiousState next() { // són dos enums bro
-            return values()[ordinal() + 1];
+            return VALUES[ordinal() + 1];
         }
 
+        /**
+         * Taula dels valors (values() en fa una còpia a cada crida).
+         */
+        private static final ContagiousState[] VALUES = values();
+
     }
 
     /**
@@ -41,21 +65,26 @@ public class AffectedGroup implements Cloneable {
         };
 
         public DiseaseState next() { // ni el vscode sap què fer amb aquesta funció
-            return values()[ordinal() + 1]; // com odio el java
+            return VALUES[ordinal() + 1]; // com odio el java
         }
 
+        /**
+         * Taula dels valors (values() en fa una còpia a cada crida).
+         */
+        private static final DiseaseState[] VALUES = values();
+
     }
 
     private Affectation _affectation;
-    private final Virus _virus;
+    private Virus _virus; // no és final perquè els grups descartats es reutilitzen
 
     private DiseaseState _disease_state;
     private ContagiousState _contagious_state;
     private boolean _dead_zone;
 
-    private int _affected;
-    private int _deaths;
-    private int _final_deaths;
+    private double _affected;
+    private double _deaths;
+    private double _final_deaths;
 
     private int _disease_tick;
     private int _contagious_tick;
@@ -64,42 +93,43 @@ public class AffectedGroup implements Cloneable {
     public DiseaseState diseaseState() { return _disease_state; }
     public ContagiousState contagiousState() { return _contagious_state; }
 
-    public int affected() { return _affected; }
-    public int deaths() { return _deaths; }
+    public double affected() { return _affected; }
+    public double deaths() { return _deaths; }
 
     public boolean isDead() { return _dead_zone; }
 
     /**
-     * @return el nombre de tics que ha de durar l'estat de malaltia, segons el virus i la vacuna.
+     * @return la màscara dels compartiments que compten els afectats del grup
+     * (CohortKernels.bit de cada suma). Un grup mort no en compta cap.
      */
-    private static int diseaseNextTime(
-            Virus virus, Affectation.VaccineStepper vaccine,
-            DiseaseState disease_state
-    ) {
+    public long compartments() {
+
+        if (_dead_zone) return 0;
+
+        long mask = CohortKernels.bit(CohortKernels.AFFECTED);
+
+        if (_disease_state == DiseaseState.INCUBATING) mask |= CohortKernels.bit(CohortKernels.INCUBATING);
+        else if (_disease_state == DiseaseState.SYMPTOMS) mask |= CohortKernels.bit(CohortKernels.SYMPTOMS);
 
-        return (int)vaccine.modifier("duration",
-                switch (disease_state) {
-                    case INCUBATING -> virus.incubationTime();
-                    case SYMPTOMS -> virus.symptomDuration();
-                }
-        );
+        if (_contagious_state == ContagiousState.LATENCY) mask |= CohortKernels.bit(CohortKernels.LATENCY);
+        else if (_contagious_state == ContagiousState.CONTAGIOUS) mask |= CohortKernels.bit(CohortKernels.CONTAGIOUS);
+
+        if (_disease_state == null && _contagious_state == null) mask |= CohortKernels.bit(CohortKernels.IMMUNITY);
+        else if (_disease_state == null) mask |= CohortKernels.bit(CohortKernels.NULL_DISEASE);
+        else if (_contagious_state == null) mask |= CohortKernels.bit(CohortKernels.NULL_CONTAGIOUS);
+
+        return mask;
 
     }
 
     /**
-     * @return el nombre de tics que ha de durar l'estat de contagi, segons el virus i la vacuna.
+     * @return si el grup no té cap persona afectada ni morta (ni cap mort pendent).
+     * En mode fraccional, les quantitats per sota de EMPTY compten com a zero
+     * perquè els grups que s'han anat repartint puguin desaparèixer.
      */
-    private static int contagiousNextTime(
-            Virus virus, Affectation.VaccineStepper vaccine,
-            ContagiousState contagiousness_state
-    ) {
+    public boolean isEmpty() {
 
-        return (int)vaccine.modifier("duration",
-                switch (contagiousness_state) {
-                    case LATENCY -> virus.latencyTime();
-                    case CONTAGIOUS -> virus.infectionDuration();
-                }
-        );
+        return Math.abs(_affected) < EMPTY && Math.abs(_deaths) < EMPTY && Math.abs(_final_deaths) < EMPTY;
 
     }
 
@@ -107,9 +137,114 @@ public class AffectedGroup implements Cloneable {
      * @brief Constructor genèric del grup d'afectats,
      * assumeix que comencen tots els períodes des de l'inici.
      */
-    public AffectedGroup(Affectation affectation, Virus virus, int affected) {
+    public AffectedGroup(Affectation affectation, Virus virus, double affected) {
+        super();
+
+        Instrumentation.count(Instrumentation.Counter.GROUPS_CREATED);
+
+        init(affectation, virus, affected);
+
+    }
+
+    /**
+     * @brief Constructor de funcionament intern. Serveix per instanciar un grup
+     * que no té gent emmalaltida, sinó només contagiada.
+     */
+    private AffectedGroup(
+            Affectation affectation, Virus virus, double affected,
+            ContagiousState contagious_state, int contagious_tick
+    ) {
         super();
 
+        Instrumentation.count(Instrumentation.Counter.GROUPS_CREATED);
+
+        init(affectation, virus, affected, contagious_state, contagious_tick);
+
+    }
+
+    /**
+     * @brief Obté un grup d'afectats que comença tots els períodes des de l'inici.
+     * Reutilitza un grup descartat si n'hi ha; si no, en crea un.
+     * @return el grup, equivalent a new AffectedGroup(affectation, virus, affected).
+     */
+    public static AffectedGroup obtain(Affectation affectation, Virus virus, double affected) {
+
+        AffectedGroup group = reuse();
+
+        if (group == null) {
+
+            return new AffectedGroup(affectation, virus, affected);
+
+        }
+
+        group.init(affectation, virus, affected);
+
+        return group;
+
+    }
+
+    /**
+     * @brief Obté un grup d'afectats que no té gent emmalaltida, sinó només contagiada.
+     * Reutilitza un grup descartat si n'hi ha; si no, en crea un.
+     */
+    private static AffectedGroup obtain(
+            Affectation affectation, Virus virus, double affected,
+            ContagiousState contagious_state, int contagious_tick
+    ) {
+
+        AffectedGroup group = reuse();
+
+        if (group == null) {
+
+            return new AffectedGroup(affectation, virus, affected, contagious_state, contagious_tick);
+
+        }
+
+        group.init(affectation, virus, affected, contagious_state, contagious_tick);
+
+        return group;
+
+    }
+
+    /**
+     * @brief Guarda un grup que ja no forma part de cap afectació per reutilitzar-lo.
+     * @pre cap afectació no conté el grup ni el tornarà a fer servir.
+     */
+    public static void release(AffectedGroup group) {
+
+        ArrayList<AffectedGroup> free_groups = _free_groups.get();
+
+        if (free_groups.size() < MAX_FREE_GROUPS) {
+
+            group._affectation = null;
+            group._virus = null;
+
+            free_groups.add(group);
+
+        }
+
+    }
+
+    /**
+     * @return un grup descartat d'aquest fil per reutilitzar-lo, o null si no n'hi ha cap.
+     */
+    private static AffectedGroup reuse() {
+
+        ArrayList<AffectedGroup> free_groups = _free_groups.get();
+
+        if (free_groups.isEmpty()) return null;
+
+        Instrumentation.count(Instrumentation.Counter.GROUPS_REUSED);
+
+        return free_groups.remove(free_groups.size() - 1);
+
+    }
+
+    /**
+     * @brief Inicialitza el grup perquè comenci tots els períodes des de l'inici.
+     */
+    private void init(Affectation affectation, Virus virus, double affected) {
+
         _affectation = affectation;
         _virus = virus;
 
@@ -131,14 +266,12 @@ public class AffectedGroup implements Cloneable {
     }
 
     /**
-     * @brief Constructor de funcionament intern. Serveix per instanciar un grup
-     * que no té gent emmalaltida, sinó només contagiada.
+     * @brief Inicialitza el grup perquè no tingui gent emmalaltida, sinó només contagiada.
      */
-    private AffectedGroup(
-            Affectation affectation, Virus virus, int affected,
+    private void init(
+            Affectation affectation, Virus virus, double affected,
             ContagiousState contagious_state, int contagious_tick
     ) {
-        super();
 
         _affectation = affectation;
         _virus = virus;
@@ -183,6 +316,55 @@ public class AffectedGroup implements Cloneable {
                 _dead_zone == group._dead_zone && _immunity_tick == group._immunity_tick;
     }
 
+    /**
+     * @brief Calcula com de lluny estan dos grups de ser iguals.
+     * @return la diferència màxima entre els tics dels períodes si ambdós grups tenen els mateixos
+     * estats, afectació i virus; si no, Integer.MAX_VALUE.
+     */
+    public int distance(AffectedGroup group) {
+
+        if (_affectation != group._affectation || _virus != group._virus ||
+                _disease_state != group._disease_state || _contagious_state != group._contagious_state ||
+                _dead_zone != group._dead_zone) {
+
+            return Integer.MAX_VALUE;
+
+        }
+
+        return Math.max(Math.abs(_disease_tick - group._disease_tick),
+                Math.max(Math.abs(_contagious_tick - group._contagious_tick),
+                        Math.abs(_immunity_tick - group._immunity_tick)));
+
+    }
+
+    /**
+     * @brief Fusiona un grup semblant (mateixos estats, afectació i virus) en aquest.
+     * Cada període conserva el tic més avançat dels dos grups, de manera que les morts
+     * ja comptades mai superen les que corresponen al tic resultant.
+     * @pre distance(group) != Integer.MAX_VALUE.
+     * @return les persones·tic que s'han desplaçat (l'error introduït per la fusió).
+     */
+    public double coalesce(AffectedGroup group) {
+
+        int disease_tick = Math.max(_disease_tick, group._disease_tick);
+        int contagious_tick = Math.max(_contagious_tick, group._contagious_tick);
+        int immunity_tick = Math.max(_immunity_tick, group._immunity_tick);
+
+        double shift = _affected * Math.max(disease_tick - _disease_tick,
+                Math.max(contagious_tick - _contagious_tick, immunity_tick - _immunity_tick)) +
+                group._affected * Math.max(disease_tick - group._disease_tick,
+                Math.max(contagious_tick - group._contagious_tick, immunity_tick - group._immunity_tick));
+
+        _disease_tick = disease_tick;
+        _contagious_tick = contagious_tick;
+        _immunity_tick = immunity_tick;
+
+        add(group);
+
+        return shift;
+
+    }
+
     /**
      * @brief Suma dos grups d'afectats en un de sol.
      * @pre ambdós tenen els mateixos estats, afectació i virus.
@@ -210,22 +392,34 @@ public class AffectedGroup implements Cloneable {
 
     /**
      * @brief Extreu una determinada proporció de persones del grup d'afectats.
+     * Cada quantitat es reparteix amb Affectation.part.
      * @post assegura que group.add(group.subgroup(x)) == group inicial.
      * @return el subgrup generat.
      */
-    public AffectedGroup subgroup(float proportion) {
+    public AffectedGroup subgroup(double proportion) {
 
         _affectation.hintModified();
 
-        AffectedGroup sub = clone();
+        AffectedGroup sub = reuse();
+
+        if (sub == null) {
 
-        sub._affected = (int)(_affected * proportion);
+            sub = clone();
+            Instrumentation.count(Instrumentation.Counter.GROUPS_CREATED);
+
+        } else {
+
+            sub.copy(this);
+
+        }
+
+        sub._affected = Affectation.part(_affected, proportion);
         _affected -= sub._affected;
 
-        sub._deaths = (int)(_deaths * proportion);
+        sub._deaths = Affectation.part(_deaths, proportion);
         _deaths -= sub._deaths;
 
-        sub._final_deaths = (int)(_final_deaths * proportion);
+        sub._final_deaths = Affectation.part(_final_deaths, proportion);
         _final_deaths -= sub._final_deaths;
 
         return sub;
@@ -240,15 +434,15 @@ public class AffectedGroup implements Cloneable {
 
         if (_disease_state == DiseaseState.SYMPTOMS) {
 
-            float sick_proportion = _affectation.vaccine().modifier("fallSick", _virus.fallSickProbability());
-            int sick = (int)(_affected * sick_proportion), healthy = _affected - sick;
+            float sick_proportion = _affectation.fallSickProbability();
+            double sick = Affectation.draw(_affectation.region(), _affected, sick_proportion), healthy = _affected - sick;
 
-            float death_rate = _affectation.vaccine().modifier("mortality", _virus.deathRate());
-            _final_deaths = (int)(sick * death_rate);
+            float death_rate = _affectation.deathRate();
+            _final_deaths = Affectation.draw(_affectation.region(), sick, death_rate);
 
             _affected = sick;
 
-            AffectedGroup healthy_group = new AffectedGroup(
+            AffectedGroup healthy_group = obtain(
                     _affectation, _virus, healthy,
                     _contagious_state, _contagious_tick
             );
@@ -266,7 +460,7 @@ public class AffectedGroup implements Cloneable {
 
         if (_disease_state == DiseaseState.SYMPTOMS) {
 
-            int cur_deaths = _final_deaths * _disease_tick / _virus.symptomDuration();
+            double cur_deaths = Affectation.apportion(_final_deaths, _disease_tick, _virus.symptomDuration());
 
             _affected -= cur_deaths - _deaths; // subgrups disminueix final_deaths
             _deaths = cur_deaths;
@@ -283,7 +477,7 @@ public class AffectedGroup implements Cloneable {
 
         if (_disease_state == null) return true;
 
-        int next_time = diseaseNextTime(_virus, _affectation.vaccine(), _disease_state);
+        int next_time = _affectation.diseaseTime(_disease_state);
 
         _disease_tick++;
         if (_disease_tick >= next_time) {
@@ -310,7 +504,7 @@ public class AffectedGroup implements Cloneable {
 
         if (_contagious_state == null) return true;
 
-        int next_time = contagiousNextTime(_virus, _affectation.vaccine(), _contagious_state);
+        int next_time = _affectation.contagiousTime(_contagious_state);
 
         _contagious_tick++;
         if (_contagious_tick >= next_time) {
@@ -331,6 +525,9 @@ public class AffectedGroup implements Cloneable {
      */
     private boolean immunityNextStep() {
 
+        // un cop mort, el tic es queda fixat perquè tots els grups morts siguin iguals i es fusionin
+        if (_dead_zone) return true;
+
         if (_immunity_tick == 0) {
 
             _affectation.modifiedImmunity(this);
@@ -366,6 +563,28 @@ public class AffectedGroup implements Cloneable {
 
     }
 
+    /**
+     * @brief Copia tots els camps de group en aquest grup.
+     */
+    private void copy(AffectedGroup group) {
+
+        _affectation = group._affectation;
+        _virus = group._virus;
+
+        _disease_state = group._disease_state;
+        _contagious_state = group._contagious_state;
+        _dead_zone = group._dead_zone;
+
+        _affected = group._affected;
+        _deaths = group._deaths;
+        _final_deaths = group._final_deaths;
+
+        _disease_tick = group._disease_tick;
+        _contagious_tick = group._contagious_tick;
+        _immunity_tick = group._immunity_tick;
+
+    }
+
     /**
      * @return un clon del grup d'afectats.
      */
@@ -0,0 +1,196 @@
+/**
+ * @file BinomialSampler.java
+ * @brief Classe BinomialSampler
+ */
+
+import java.util.SplittableRandom;
+
+
+/** @class BinomialSampler
+ * @brief Generador de valors d'una distribució binomial B(n, p) per al mode estocàstic (Affectation.setStochastic).
+ *
+ * Amb p > 0.5 es genera n - B(n, 1 - p). Si la mitjana n·p és petita es fa servir la inversió seqüencial (BINV), que
+ * només necessita un nombre aleatori i tantes iteracions com la mitjana; si és gran, l'algorisme BTPE de
+ * Kachitvichyanukul i Schmeiser (1988), de cost constant, que accepta gairebé sempre a la primera a la regió
+ * triangular i només calcula logaritmes en els casos difícils. Les poblacions són de milions de persones, de manera que
+ * el cost no pot dependre de n.
+ */
+public class BinomialSampler {
+
+    // Constants
+
+    private static final double INVERSION_MEAN = 30; ///< Mitjana fins a la qual es fa servir la inversió.
+
+
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private BinomialSampler() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Genera un valor de B(n, p).
+     * @pre n >= 0.
+     * @param random Generador de nombres aleatoris.
+     * @param n Nombre d'intents.
+     * @param p Probabilitat d'èxit de cada intent (es limita a [0, 1]).
+     * @return Un nombre d'èxits entre 0 i n.
+     */
+    public static long sample(SplittableRandom random, long n, double p) {
+
+        if (n <= 0 || p <= 0) return 0;
+        if (p >= 1) return n;
+
+        double r = Math.min(p, 1 - p);
+        long x = n * r <= INVERSION_MEAN ? inversion(random, n, r) : btpe(random, n, r);
+
+        return p > 0.5 ? n - x : x;
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Inversió seqüencial: recorre la funció de distribució des de 0 fins que supera el nombre aleatori.
+     * @pre n > 0, 0 < p <= 0.5 i n·p petit.
+     */
+    private static long inversion(SplittableRandom random, long n, double p) {
+
+        double q = 1 - p;
+        double qn = Math.exp(n * Math.log1p(-p));
+        double mean = n * p;
+        double bound = Math.min(n, mean + 10 * Math.sqrt(mean * q + 1));
+
+        long x = 0;
+        double px = qn;
+        double u = random.nextDouble();
+
+        while (u > px) {
+
+            x++;
+
+            // Per errors d'arrodoniment la cua pot no arribar a u: es torna a començar
+            if (x > bound) {
+                x = 0;
+                px = qn;
+                u = random.nextDouble();
+            }
+            else {
+                u -= px;
+                px = (n - x + 1) * p * px / (x * q);
+            }
+
+        }
+
+        return x;
+
+    }
+
+    /** @brief BTPE: acceptació-rebuig amb una funció envolupant de triangle, paral·lelograms i cues exponencials.
+     * @pre n > 0, 0 < p <= 0.5 i n·p > INVERSION_MEAN.
+     */
+    private static long btpe(SplittableRandom random, long n, double p) {
+
+        double q = 1 - p;
+        double npq = n * p * q;
+        double fm = n * p + p;
+        long m = (long) Math.floor(fm);
+
+        double p1 = Math.floor(2.195 * Math.sqrt(npq) - 4.6 * q) + 0.5;
+        double xm = m + 0.5, xl = xm - p1, xr = xm + p1;
+        double c = 0.134 + 20.5 / (15.3 + m);
+
+        double a = (fm - xl) / (fm - xl * p);
+        double lambda_l = a * (1 + a / 2);
+        a = (xr - fm) / (xr * q);
+        double lambda_r = a * (1 + a / 2);
+
+        double p2 = p1 * (1 + 2 * c), p3 = p2 + c / lambda_l, p4 = p3 + c / lambda_r;
+
+        while (true) {
+
+            double u = random.nextDouble() * p4;
+            double v = random.nextDouble();
+            long y;
+
+            if (u <= p1) {
+
+                // Triangle central: s'accepta sempre
+                return (long) Math.floor(xm - p1 * v + u);
+
+            }
+            else if (u <= p2) {
+
+                // Paral·lelograms
+                double x = xl + (u - p1) / c;
+                v = v * c + 1 - Math.abs(m - x + 0.5) / p1;
+                if (v > 1) continue;
+                y = (long) Math.floor(x);
+
+            }
+            else if (u <= p3) {
+
+                // Cua esquerra
+                y = (long) Math.floor(xl + Math.log(v) / lambda_l);
+                if (y < 0) continue;
+                v = v * (u - p2) * lambda_l;
+
+            }
+            else {
+
+                // Cua dreta
+                y = (long) Math.floor(xr - Math.log(v) / lambda_r);
+                if (y > n) continue;
+                v = v * (u - p3) * lambda_r;
+
+            }
+
+            long k = Math.abs(y - m);
+
+            if (k <= 20 || k >= npq / 2 - 1) {
+
+                // Avaluació explícita de f(y) / f(m) amb la recurrència de la binomial
+                double s = p / q, b = s * (n + 1), f = 1;
+
+                if (m < y) for (long i = m + 1; i <= y; i++) f *= b / i - s;
+                else if (m > y) for (long i = y + 1; i <= m; i++) f /= b / i - s;
+
+                if (v <= f) return y;
+                continue;
+
+            }
+
+            // Proves ràpides amb cotes de log f(y) / f(m) i, si no decideixen, aproximació de Stirling
+            double rho = (k / npq) * ((k * (k / 3.0 + 0.625) + 1.0 / 6) / npq + 0.5);
+            double t = -(double) k * k / (2 * npq);
+            double log_v = Math.log(v);
+
+            if (log_v < t - rho) return y;
+            if (log_v > t + rho) continue;
+
+            double x1 = y + 1, f1 = m + 1, z = n + 1 - m, w = n - y + 1;
+
+            double bound = xm * Math.log(f1 / x1) + (n - m + 0.5) * Math.log(z / w) +
+                    (y - m) * Math.log(w * p / (x1 * q)) +
+                    stirling(f1) + stirling(z) + stirling(x1) + stirling(w);
+
+            if (log_v <= bound) return y;
+
+        }
+
+    }
+
+    /** @return El terme de correcció de l'aproximació de Stirling de log(x!) (sèrie asimptòtica). */
+    private static double stirling(double x) {
+
+        double x2 = x * x;
+
+        return (13860 - (462 - (132 - (99 - 140 / x2) / x2) / x2) / x2) / x / 166320;
+
+    }
+
+}
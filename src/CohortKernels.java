@@ -0,0 +1,197 @@
+/**
+ * @file CohortKernels.java
+ * @brief Classe CohortKernels
+ */
+
+import java.util.Arrays;
+
+
+/** @class CohortKernels
+ * @brief Nuclis de càlcul sobre els grups d'afectats d'una afectació desats en vectors primitius: per a cada grup,
+ * els afectats, els morts i una màscara dels compartiments als quals pertany (AffectedGroup.compartments).
+ *
+ * Aquesta classe és la implementació escalar, que suma en el mateix ordre que Affectation. Si VectorCohortKernels
+ * (directori vector) s'ha compilat i el mòdul jdk.incubator.vector és present en executar (amb "--add-modules
+ * jdk.incubator.vector"), per defecte es fa servir aquesta implementació, que fa els mateixos càlculs amb
+ * instruccions SIMD; si no, la implementació escalar. En mode VERIFY es calculen tots dos i s'aturen les
+ * diferències: en mode enter les sumes han de coincidir exactament, i en mode fraccional, llevat de l'error
+ * d'arrodoniment de sumar en un altre ordre.
+ */
+public class CohortKernels {
+
+    // Public storage classes
+
+    /** @enum Mode
+     * @brief Implementació dels nuclis.
+     */
+    public enum Mode {
+
+        SCALAR, ///< Implementació escalar.
+        VECTOR, ///< Implementació amb l'API de vectors.
+        VERIFY ///< Totes dues, comparant-ne els resultats.
+
+    }
+
+
+
+    // Constants
+
+    public static final int AFFECTED = 0; ///< Índex de les sumes: afectats vius.
+    public static final int DEATHS = 1; ///< Índex de les sumes: morts.
+    public static final int INCUBATING = 2; ///< Índex de les sumes: incubant.
+    public static final int SYMPTOMS = 3; ///< Índex de les sumes: amb símptomes.
+    public static final int LATENCY = 4; ///< Índex de les sumes: en latència.
+    public static final int CONTAGIOUS = 5; ///< Índex de les sumes: contagiosos.
+    public static final int NULL_DISEASE = 6; ///< Índex de les sumes: sense símptomes ni immunitat.
+    public static final int NULL_CONTAGIOUS = 7; ///< Índex de les sumes: no contagiosos ni immunes.
+    public static final int IMMUNITY = 8; ///< Índex de les sumes: immunes.
+    public static final int SUMS = 9; ///< Mida del vector de sumes.
+
+    private static final double FRACTIONAL_TOLERANCE = 1e-9; ///< Error relatiu admès en mode fraccional.
+
+
+
+    // Private attributes
+
+    private static final CohortKernels _scalar = new CohortKernels(); ///< Implementació escalar.
+    private static final CohortKernels _vector = loadVector(); ///< Implementació vectorial (null si no n'hi ha).
+
+    private static Mode _mode = _vector != null ? Mode.VECTOR : Mode.SCALAR; ///< Mode actual.
+    private static CohortKernels _kernels = _vector != null ? _vector : _scalar; ///< Implementació del mode actual.
+
+
+
+    // Constructors
+
+    /** @brief Només el crea aquesta classe i VectorCohortKernels. */
+    protected CohortKernels() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Tria la implementació dels nuclis.
+     * @pre True
+     * @param mode Mode que es vol fer servir.
+     * @return Si s'ha pogut triar: VECTOR i VERIFY necessiten el mòdul jdk.incubator.vector.
+     * @post Si retorna true, els càlculs següents es fan amb \p mode; si no, no canvia res.
+     */
+    public static boolean setMode(Mode mode) {
+
+        if (mode != Mode.SCALAR && _vector == null) return false;
+
+        _mode = mode;
+        _kernels = mode == Mode.SCALAR ? _scalar : _vector;
+
+        return true;
+
+    }
+
+    /** @return El mode actual dels nuclis. */
+    public static Mode mode() { return _mode; }
+
+    /** @return Si la implementació vectorial està disponible. */
+    public static boolean vectorAvailable() { return _vector != null; }
+
+    /** @return Si \p n grups se sumen amb la implementació vectorial: en mode VECTOR, si en són prou perquè surti a
+     * compte copiar-los a vectors primitius; en mode VERIFY, sempre, per comprovar-los.
+     */
+    public static boolean vectorized(int n) {
+
+        return _mode == Mode.VERIFY || (_mode == Mode.VECTOR && n >= _vector.minGroups());
+
+    }
+
+    /** @brief Suma els afectats i els morts de \p n grups per compartiments.
+     * @pre Els vectors tenen com a mínim \p n elements i sums.length >= SUMS.
+     * @param affected Afectats de cada grup.
+     * @param deaths Morts de cada grup.
+     * @param compartments Màscara dels compartiments de cada grup (bit 1 << índex de la suma).
+     * @param n Nombre de grups.
+     * @param sums Sumes resultants, per índex (AFFECTED, DEATHS...).
+     * @post sums[DEATHS] és la suma de tots els morts i cada altra suma, la dels afectats dels grups amb el bit
+     * corresponent a la màscara.
+     */
+    public static void sum(double[] affected, double[] deaths, long[] compartments, int n, double[] sums) {
+
+        Arrays.fill(sums, 0, SUMS, 0);
+
+        if (_mode != Mode.VERIFY) {
+
+            _kernels.sumCompartments(affected, deaths, compartments, 0, n, sums);
+            return;
+
+        }
+
+        double[] expected = new double[SUMS];
+        _scalar.sumCompartments(affected, deaths, compartments, 0, n, expected);
+        _vector.sumCompartments(affected, deaths, compartments, 0, n, sums);
+
+        for (int i = 0; i < SUMS; i++) {
+
+            double tolerance = Affectation.fractional() ? FRACTIONAL_TOLERANCE * Math.max(1, Math.abs(expected[i])) : 0;
+
+            if (Math.abs(sums[i] - expected[i]) > tolerance) {
+                throw new IllegalStateException("Els nuclis vectorials difereixen dels escalars a la suma " + i +
+                        " de " + n + " grups: " + sums[i] + " en lloc de " + expected[i]);
+            }
+
+        }
+
+    }
+
+    /** @return El bit de la màscara de compartiments corresponent a la suma \p index. */
+    public static long bit(int index) { return 1L << index; }
+
+
+
+    // Funcions protegides
+
+    /** @brief Implementació de sum: afegeix a \p sums els grups de l'interval [from, to).
+     * Suma els grups en ordre, de manera que el resultat és el mateix que sumar-los un a un.
+     */
+    protected void sumCompartments(double[] affected, double[] deaths, long[] compartments, int from, int to,
+                                   double[] sums) {
+
+        for (int i = from; i < to; i++) {
+
+            double people = affected[i];
+            long mask = compartments[i];
+
+            sums[DEATHS] += deaths[i];
+
+            if ((mask & bit(AFFECTED)) != 0) sums[AFFECTED] += people;
+            if ((mask & bit(INCUBATING)) != 0) sums[INCUBATING] += people;
+            if ((mask & bit(SYMPTOMS)) != 0) sums[SYMPTOMS] += people;
+            if ((mask & bit(LATENCY)) != 0) sums[LATENCY] += people;
+            if ((mask & bit(CONTAGIOUS)) != 0) sums[CONTAGIOUS] += people;
+            if ((mask & bit(NULL_DISEASE)) != 0) sums[NULL_DISEASE] += people;
+            if ((mask & bit(NULL_CONTAGIOUS)) != 0) sums[NULL_CONTAGIOUS] += people;
+            if ((mask & bit(IMMUNITY)) != 0) sums[IMMUNITY] += people;
+
+        }
+
+    }
+
+    /** @return Nombre mínim de grups a partir del qual la implementació és més ràpida que sumar-los un a un. */
+    protected int minGroups() { return Integer.MAX_VALUE; }
+
+
+
+    // Funcions privades
+
+    /** @return La implementació vectorial, o null si el mòdul jdk.incubator.vector no és present. */
+    private static CohortKernels loadVector() {
+
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+
+        try {
+            // per reflexió, perquè la resta del programa es pugui compilar i executar sense el mòdul ni la classe
+            return (CohortKernels) Class.forName("VectorCohortKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+
+    }
+
+}
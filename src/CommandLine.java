@@ -7,48 +7,65 @@
  * @brief Classe encarregada de gestionar la línia d'ordres en el seu thread individual.
  * Conté el bucle principal del programa amb les diferents opcions i formes que l'usuari té per interactuar
  * amb el programa.
+ *
+ * La simulació avança al Thread de \p runner: la línia d'ordres hi encua les ordres que la modifiquen i mostra les
+ * dades de l'última instantània publicada. Un altre Thread (publishToUI) envia les instantànies noves a la interfície
+ * gràfica, de manera que també s'actualitza durant les execucions en segon pla.
  * @author Jordi Badia
  */
 public class CommandLine {
 
     // Constants
 
-    private static final int MENU_OPTIONS = 8; ///< Nombre d'opcions del menú principal.
+    private static final int MENU_OPTIONS = 10; ///< Nombre d'opcions del menú principal.
     private static final int FILTER_OPTIONS = 3; ///< Nombre d'opcions del menú de filtres.
     private static final int LOCKDOWN_OPTIONS = 4; ///< Nombre d'opcions del menú de confinaments.
     private static final int LIST_OPTIONS = 4; ///< Nombre d'opcions del menú de llistar.
+    private static final int INSTRUMENTATION_OPTIONS = 2; ///< Nombre d'opcions del menú d'instrumentació.
+    private static final int RUN_OPTIONS = 2; ///< Nombre d'opcions del menú d'execució.
+    private static final int MAX_RUN_TICKS = 100000; ///< Ticks màxims d'una execució en segon pla.
+    private static final long UI_POLL_MILLIS = 100; ///< Temps màxim entre dues comprovacions dels filtres per la UI.
 
 
 
     //Private attributes
 
     private static UI ui; ///< Classe UI que permet la interacció de CommandLine amb el Thread dels Charts i el Graph.
-    private static Simulation simulation; ///< Objecte simulation que realitza la simulació.
-    private static Filter filter; ///< Objecte Filter que filtra la informació generada per \p simulation.
+    private static Simulation simulation; ///< Objecte simulation que realitza la simulació (només es llegeixen les
+    /// llistes que no canvien; la resta es modifica i es llegeix a través de \p runner).
+    private static SimulationRunner runner; ///< Motor que fa avançar \p simulation en el seu Thread.
+    private static volatile Filter filter; ///< Filtres de l'usuari sobre l'última instantània mostrada.
 
     private static Output view; ///< Guarda el tipus de vista que s'està mostrant en tot moment per pantalla.
     private static Menu menu; ///< Guarda el menú que es mostrarà en tot moment per pantalla.
 
 
 
+
     // Constructors
 
     /** @brief Inicialitza l'objecte actual.
      * @pre True.
-     * @post Els atributs privats apunten a \p u, \p s, \p f i es mostra el menú principal i el resum de la situació inicial.
+     * @post Els atributs privats apunten a \p u, \p s, \p r, no hi ha cap filtre i es mostra el menú principal i el
+     * resum de la situació inicial. S'inicia el Thread que envia les instantànies a \p u.
      * @param u UI inicialitzada a partir de \p s.
      * @param s Simulation inicialitzada.
-     * @param f Filter inicialitzat a partir de \p s.
+     * @param r Motor de \p s.
      */
-    public CommandLine(UI u, Simulation s, Filter f) {
+    public CommandLine(UI u, Simulation s, SimulationRunner r) {
 
         ui = u;
         simulation = s;
-        filter = f;
+        runner = r;
+        filter = new Filter(runner.snapshot(), null, null);
 
         view = Output.SUMMARY_VIEW;
         menu = Menu.MAIN;
 
+        Thread publisher = new Thread(CommandLine::publishToUI, "Publicació de la interfície");
+        publisher.setDaemon(true);
+        publisher.start();
+
     }
 
 
@@ -60,13 +77,15 @@ public class CommandLine {
      * @post Mostra per pantalla el que l'usuari soliciti fins que decideixi acabar, llegeix una nova opció i l'executa.
      * Opcions:
      * 1. Establir filtres: obre el menú de filtres i permet modificar-los
-     * 2. Generar tick següent: genera el següent tick
-     * 3. Generar més d'un tick: rep un enter entre 1 i 20 i genera tants ticks com l'enter entrat.
+     * 2. Generar tick següent: genera el següent tick i l'espera.
+     * 3. Generar més d'un tick: rep un enter entre 1 i MAX_RUN_TICKS i genera tants ticks en segon pla.
      * 4. Aplicar vacuna: l'usuari tria una regió i una vacuna, així com la proporció de la població a la que aplicar-la.
      * 5. Actualitzat un confinament: s'obre el menú de confinaments i l'usuari pot aplicar-ne i treure'n, així com tancaments.
      * 6. Veure log o resum: alterna vistes de resum i log cada cop que és activada (es recomana log per seguiments concrets).
      * 7. Consultar llistes: sobre el menú de llistes i es poden visualitzar aquelles que es vulguin (virus, vacunes, regions i famílies)
-     * 8. Sortir: tanca l'execució del programa exitosament.
+     * 8. Instrumentació: obre el menú d'instrumentació, que mostra el temps de cada fase dels ticks i els comptadors del motor.
+     * 9. Execució en segon pla: mostra l'estat de l'execució i permet posar-la en pausa, reprendre-la o cancel·lar-la.
+     * 10. Sortir: tanca l'execució del programa exitosament.
      */
     public void processCmd() {
 
@@ -86,7 +105,9 @@ public class CommandLine {
                 case 5 -> updateLockdown();
                 case 6 -> toggleData();
                 case 7 -> listMenu();
-                case 8 -> System.exit(0);
+                case 8 -> instrumentationMenu();
+                case 9 -> runMenu();
+                case 10 -> System.exit(0);
 
             }
 
@@ -100,29 +121,39 @@ public class CommandLine {
 
     /** @brief Mostra per consola a través de Writer els continguts pertinents.
      * @pre True.
-     * @post Mostra el tipus de vist i menú que toquin segons \p view i \p menu i actualitza els PieCharts.
+     * @post Mostra el tipus de vist i menú que toquin segons \p view i \p menu amb les dades de l'última instantània.
      */
     private static void printOutput() {
 
         char sum_or_log = 'x';
 
+        filter = new Filter(runner.snapshot(), filter.region(), filter.virus());
+        SimulationSnapshot snapshot = filter.snapshot();
+
         Writer.clearConsole();
 
         switch (view) {
 
             case SUMMARY_VIEW -> {
-                Writer.writeSummary(simulation.getTick(), filter.summary());
+                Writer.writeSummary(snapshot.tick(), filter.summary());
                 sum_or_log = 's';
             }
             case LOG_VIEW -> {
-                Writer.writeLog(simulation.getTick(),filter.log());
+                Writer.writeLog(snapshot.tick(),filter.log());
                 sum_or_log = 'l';
             }
             case REGION_LIST -> Writer.list(simulation.regionList().iterator(), false);
-            case VIRUS_LIST -> Writer.list(simulation.virusList().iterator(), false);
+            case VIRUS_LIST -> Writer.list(snapshot.viruses().iterator(), false);
             case FAMILY_LIST -> Writer.list(simulation.familyList().iterator(), false);
             case VACCINE_LIST -> Writer.list(simulation.vaccineList().iterator(), false);
+            case INSTRUMENTATION -> Writer.writeInstrumentation(Instrumentation.report());
+            case RUN -> Writer.writeRunState(snapshot.tick(), runner.remainingTicks(), runner.paused());
+
+        }
 
+        if (view == Output.SUMMARY_VIEW || view == Output.LOG_VIEW) {
+            if (runner.remainingTicks() > 0) Writer.writeRunState(snapshot.tick(), runner.remainingTicks(),
+                    runner.paused());
         }
 
         switch (menu) {
@@ -131,11 +162,11 @@ public class CommandLine {
             case FILTER -> Writer.showFilterMenu(filter);
             case LIST -> Writer.showListMenu();
             case LOCKDOWN -> Writer.showLockdownMenu();
+            case INSTRUMENTATION -> Writer.showInstrumentationMenu(Instrumentation.enabled());
+            case RUN -> Writer.showRunMenu(runner.paused());
 
         }
 
-        sendDataToUI(simulation.getTick(),filter.region(),filter.virus());
-
     }
 
     /** @brief Desplega el menú de filtres i permet actualitzar-los.
@@ -176,32 +207,64 @@ public class CommandLine {
 
     /** @brief Si encara és útil, genera el següent tick
      * @pre True.
-     * @post Si encara hi ha immunes o infectats permet generar el següent tick i actualitzar la informació.
+     * @post Si encara hi ha immunes o infectats, el motor ha generat el següent tick i l'última instantània el mostra.
      * En cas contrari no fa res.
      */
     private static void nextTick() {
 
-        if (filter.contagiousPopulation()) {
+        runner.step();
+
+    }
 
-            simulation.simulateNextTick();
+    /** @brief Si encara és útil, genera en segon pla tants ticks com determini l'usuari.
+     * @pre True.
+     * @post Llegeix un nombre entre 1 i MAX_RUN_TICKS i el motor començarà a generar tants ticks (mentre valgui la
+     * pena) com l'enter llegit. No espera que acabin: el menú continua disponible.
+     */
+    private static void moreThanOneTicks() {
 
-            filter.updateDataNextTick();
+        int ticks_to_generate = Interact.getOption("Nombre de ticks a generar (1-" + MAX_RUN_TICKS +
+                ", 0 per sortir): ", MAX_RUN_TICKS, true);
 
-        }
+        if (ticks_to_generate > 0)
+            runner.run(ticks_to_generate);
 
     }
 
-    /** @brief Si encara és útil, genera tants ticks com determini l'usuari.
+    /** @brief Mostra l'estat de l'execució en segon pla i permet controlar-la.
      * @pre True.
-     * @post Llegeix un nombre entre 1 i 20 i genera tants ticks (mentre valgui la pena) com l'enter llegit.
+     * @post Mostra el tick de l'última instantània, els ticks pendents i si l'execució està en pausa, i llegeix l'opció
+     * elegida per l'usuari. Cap opció espera el motor.
+     * Opcions:
+     * 1. Posar en pausa o reprendre l'execució.
+     * 2. Cancel·lar l'execució (els ticks pendents no es calculen).
+     * 0. Tornar al menú principal (l'execució continua).
      */
-    private static void moreThanOneTicks() {
+    private static void runMenu() {
+
+        view = Output.RUN;
+        menu = Menu.RUN;
+
+        printOutput();
+
+        int option = Interact.getOption("Opció: ", RUN_OPTIONS, true);
 
-        int ticks_to_generate = Interact.getOption("Nombre de ticks a generar (1-20, 0 per sortir): ",
-                20, true);
+        switch (option) {
+
+            case 0 -> {
+                menu = Menu.MAIN;
+                view = Output.SUMMARY_VIEW;
+                return;
+            }
+            case 1 -> {
+                if (runner.paused()) runner.resume();
+                else runner.pause();
+            }
+            case 2 -> runner.cancel();
 
-        for (int i = 0; i < ticks_to_generate; i++)
-            nextTick();
+        }
+
+        runMenu();
 
     }
 
@@ -226,8 +289,11 @@ public class CommandLine {
         if (vaccine != null)
             percentage = Interact.getRate("Entra el percentatge de població al que aplicar la vacuna " +
                 "(0-100, 0 per tornar al menú): ", 100) / 100;
-        if (percentage != 0f)
-            simulation.applyVaccine(vaccine, region, percentage);
+        if (percentage != 0f) {
+            Vaccine chosen = vaccine;
+            float proportion = percentage;
+            runner.execute(() -> simulation.applyVaccine(chosen, region, proportion));
+        }
 
         view = Output.SUMMARY_VIEW;
         menu = Menu.MAIN;
@@ -288,19 +354,23 @@ public class CommandLine {
 
                 if (new_ratio == 1f) break;
 
-                simulation.setHarshLockdown(r1, true, new_ratio);
+                Region region = r1;
+                runner.execute(() -> simulation.setHarshLockdown(region, true, new_ratio));
                 ui.hardLock(r1);
             }
             case 2 -> {
-                simulation.setHarshLockdown(r1, false, 0);
+                Region region = r1;
+                runner.execute(() -> simulation.setHarshLockdown(region, false, 0));
                 ui.hardUnlock(r1);
             }
             case 3 -> {
-                simulation.setBorderState(r1, r2, false);
+                Region first = r1, second = r2;
+                runner.execute(() -> simulation.setBorderState(first, second, false));
                 ui.lockEdge(r1,r2);
             }
             case 4 -> {
-                simulation.setBorderState(r1, r2, true);
+                Region first = r1, second = r2;
+                runner.execute(() -> simulation.setBorderState(first, second, true));
                 ui.unlockEdge(r1,r2);
             }
 
@@ -363,29 +433,109 @@ public class CommandLine {
 
     }
 
-    /** @brief envia la informació generada pels filtres a la UI per fer els PieCharts.
-     * @pre \p tick >= 0.
-     * @post Actualitza els PieChart amb els filtres de \p filter.
-     * @param tick Tick que s'està mostrant a la interfície.
-     * @param region Regió sobre la qual es mostra informació (pot ser null).
-     * @param virus Virus sobre el qual es mostra informació (pot ser null).
+    /** @brief Mostra les mesures de la instrumentació i permet activar-la, desactivar-la i reiniciar-la.
+     * @pre True.
+     * @post Mostra l'informe d'instrumentació (percentils 50 i 99 i màxim de la durada de cada fase i comptadors des
+     * de l'última reinicialització) i el menú d'instrumentació, i llegeix l'opció elegida per l'usuari.
+     * Opcions:
+     * 1. Activar/desactivar instrumentació: alterna si es prenen mesures als ticks següents.
+     * 2. Reiniciar mesures: esborra els histogrames i els comptadors.
+     * 0. Tornar al menú principal
+     */
+    private static void instrumentationMenu() {
+
+        view = Output.INSTRUMENTATION;
+        menu = Menu.INSTRUMENTATION;
+
+        printOutput();
+
+        int option = Interact.getOption("Opció: ", INSTRUMENTATION_OPTIONS, true);
+
+        switch (option) {
+
+            case 0 -> {
+                menu = Menu.MAIN;
+                view = Output.SUMMARY_VIEW;
+                return;
+            }
+            case 1 -> Instrumentation.setEnabled(!Instrumentation.enabled());
+            case 2 -> Instrumentation.reset();
+
+        }
+
+        instrumentationMenu();
+
+    }
+
+    /** @brief Bucle del Thread que envia les dades a la UI: espera instantànies noves (o canvis dels filtres) i les
+     * envia amb sendDataToUI.
+     * @pre True.
+     * @post No acaba mai (el Thread és un dimoni).
+     */
+    private static void publishToUI() {
+
+        SimulationSnapshot last = null;
+        Region last_region = null;
+        Virus last_virus = null;
+
+        while (true) {
+
+            SimulationSnapshot snapshot;
+
+            try {
+                snapshot = runner.awaitSnapshot(last, UI_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            Filter selection = filter;
+            Region region = selection.region();
+            Virus virus = selection.virus();
+
+            // Si no ha canviat ni la instantània ni els filtres, les dades publicades ja són les actuals
+            if (snapshot == last && region == last_region && virus == last_virus) continue;
+
+            last = snapshot;
+            last_region = region;
+            last_virus = virus;
+
+            sendDataToUI(new Filter(snapshot, region, virus));
+
+        }
+
+    }
+
+    /** @brief envia la informació generada pels filtres a la UI per fer els PieCharts i el mapa de calor.
+     * @pre \p view és un filtre d'una instantània.
+     * @post Publica les dades dels PieCharts amb els filtres de \p view i les del mapa de calor amb el filtre de virus.
+     * No espera que la interfície les dibuixi.
+     * @param view Filtre de la instantània a mostrar.
      */
-    private static void sendDataToUI(int tick, Region region, Virus virus) {
+    private static void sendDataToUI(Filter view) {
 
-        ui.changePieChartTitle("Tick " + tick + (filter.contagiousPopulation() ? "" : " (situació final)") +
+        SimulationSnapshot snapshot = view.snapshot();
+        Region region = view.region();
+        Virus virus = view.virus();
+
+        String title = "Tick " + snapshot.tick() + (snapshot.contagiousPopulation() ? "" : " (situació final)") +
                 "\nFiltre de regió: " + (region == null ? "cap" : region.name()) + "\nFiltre de virus: " +
-                (virus == null ? "cap" : virus.name()));
+                (virus == null ? "cap" : virus.name());
+        String left_title, right_title;
 
-        if (!filter.contagiousPopulation()) {
-            ui.changeLeftPieChartTitle("Infectats erradicats");
-            ui.changeRightPieChartTitle("Infectats erradicats");
+        if (!snapshot.contagiousPopulation()) {
+            left_title = right_title = "Infectats erradicats";
         }
         else {
-            ui.changeLeftPieChartTitle(filter.summary().contagiated() != 0 ? "Malalts" : "Cap malalt");
-            ui.changeRightPieChartTitle(filter.summary().contagiated() != 0 ? "Infectats" : "Cap infectat");
+            boolean contagiated = view.summary().contagiated() != 0;
+            left_title = contagiated ? "Malalts" : "Cap malalt";
+            right_title = contagiated ? "Infectats" : "Cap infectat";
         }
 
-        ui.updateChartsData(filter.getTitlesArray(), filter.generalData(), filter.diseaseData(), filter.contagiousData());
+        ui.publishCharts(title, left_title, right_title, view.getTitlesArray(), view.generalData(),
+                view.diseaseData(), view.contagiousData());
+
+        ui.publishHeatmap(snapshot, virus, "Tick " + snapshot.tick() + " · virus: " +
+                (virus == null ? "tots" : virus.name()));
 
     }
 
@@ -401,7 +551,7 @@ public class CommandLine {
             filter.deleteVirusFilter();
         else {
 
-            Virus virus = Interact.getElement(simulation.virusList(), "Número del virus a posar com a filtre " +
+            Virus virus = Interact.getElement(filter.snapshot().viruses(), "Número del virus a posar com a filtre " +
                             "(0 per tornar al menú): ",
                     true);
 
@@ -442,6 +592,8 @@ public class CommandLine {
         VIRUS_LIST, ///< Mostra la llista de virus
         FAMILY_LIST, ///< Mostra la llista de famílies
         VACCINE_LIST, ///< Mostra la llista de vacunes
+        INSTRUMENTATION, ///< Mostra les mesures de la instrumentació
+        RUN, ///< Mostra l'estat de l'execució en segon pla
         BLANK, ///< No mostra res
 
     }
@@ -453,6 +605,8 @@ public class CommandLine {
         FILTER, ///< Menú de filtres
         LIST, ///< Menú de llistes
         LOCKDOWN, ///< Menú de confinaments
+        INSTRUMENTATION, ///< Menú d'instrumentació
+        RUN, ///< Menú d'execució en segon pla
         BLANK ///< No mostris cap menú
 
     }
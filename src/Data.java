@@ -10,68 +10,77 @@ import java.util.TreeMap;
 /** @class Data
  * @brief Classe encarregada de guardar les dades d'una afectació causada per un virus en una regió, o bé
  * la suma d'un conjunt de Data (en aquest cas \p _virus i/o \p _region serien nulls).
+ *
+ * Només el constructor Data(Region, Virus) i updateData() llegeixen la simulació; la resta de mètodes fan servir els
+ * valors guardats. store() en copia els valors a una array de doubles (un TickFrame), i a partir d'aquesta array es
+ * pot tornar a crear la Data en un altre Thread mentre la simulació avança.
  * @author Jordi Badia
  */
 public class Data {
 
+    // Constants
+    public static final int FIELDS = 26; ///< Valors que store() copia de cada objecte.
+
     // Private general attributes
     private final Virus _virus; ///< Virus sobre el que tracten les dades de l'objecte (pot ser null).
     private final Region _region; ///< Regió sobre la qual tracten les dades de l'objecte (pot ser null).
     private Vaccine _vaccine;
     ///< Si \p _virus i \p _region no són nulls i hi ha vacuna a l'afectació corresponent, la guarda. Null altrament.
     private int _vaccine_remaining_tick; ///< Si \p _vaccine no és null, guarda el ticks restants d'aquesta
+    private double _region_inhabitants; ///< Si \p _region no és null, els seus habitants quan s'han llegit les dades.
+    private double _region_foreign; ///< Si \p _region no és null, els seus turistes quan s'han llegit les dades.
 
     // Private specific attributes
-    private long _total_inhabitants; ///< Total d'habitants representats per l'objecte.
+    private double _total_inhabitants; ///< Total d'habitants representats per l'objecte.
     /*
     Si _region != null, tindran el mateix valor que inhabitants, si no tindrà la suma de tots els inhabitants que
     l'han formada.
     */
 
     // Dades acumulades
-    private int _total_symptoms; ///< Total de simptomàtics apareguts al llarg de la simulació.
-    private int _total_contagious; ///< Total de contagiosos apareguts al llarg de la simulació.
-    private int _total_deaths; ///< Total de morts al llarg de la simulació.
+    private double _total_symptoms; ///< Total de simptomàtics apareguts al llarg de la simulació.
+    private double _total_contagious; ///< Total de contagiosos apareguts al llarg de la simulació.
+    private double _total_deaths; ///< Total de morts al llarg de la simulació.
 
     //Dades relatives
 
     // Sobre incubats
-    private int _incubating; ///< Gent incubant en aquest moment.
-    private int _in_incubating; ///< Gent que comença a incubar en aquest moment.
-    private int _out_incubating; ///< Gent que ha deixat d'incubar.
+    private double _incubating; ///< Gent incubant en aquest moment.
+    private double _in_incubating; ///< Gent que comença a incubar en aquest moment.
+    private double _out_incubating; ///< Gent que ha deixat d'incubar.
 
     // Sobre malalts
-    private int _symptom; ///< Malalts en aquest moment.
-    private int _in_symptom; ///< Nous malalts.
-    private int _out_symptom; ///< Gent que ha deixat d'estar malalta.
+    private double _symptom; ///< Malalts en aquest moment.
+    private double _in_symptom; ///< Nous malalts.
+    private double _out_symptom; ///< Gent que ha deixat d'estar malalta.
 
     //Sobre latències
-    private int _latency; ///< Gent en estat de latència en aquest moment.
-    private int _in_latency; ///< Gent que comença l'estat de latència en aquest moment.
-    private int _out_latency; ///< Gent que deixa d'estar en latència.
+    private double _latency; ///< Gent en estat de latència en aquest moment.
+    private double _in_latency; ///< Gent que comença l'estat de latència en aquest moment.
+    private double _out_latency; ///< Gent que deixa d'estar en latència.
 
     // Sobre contagiosos
-    private int _contagious; ///< Contagiosos en aquest moment.
-    private int _in_contagious; ///< Nous contagiosos.
-    private int _out_contagious; ///< Gent que deixa de ser contagiosa.
+    private double _contagious; ///< Contagiosos en aquest moment.
+    private double _in_contagious; ///< Nous contagiosos.
+    private double _out_contagious; ///< Gent que deixa de ser contagiosa.
 
     //Sobre immunitat
-    private int _immunity; ///< Immunes en aquest moment
-    private int _in_immunity; ///< Gent que comença a estar immunes en aquest moment
-    private int _out_immunity; ///< Gent que deixa de ser immune
+    private double _immunity; ///< Immunes en aquest moment
+    private double _in_immunity; ///< Gent que comença a estar immunes en aquest moment
+    private double _out_immunity; ///< Gent que deixa de ser immune
 
     //Sobre nulls malalts
-    private int _null_disease; ///< Gent que ha agafat el virus, però no ha emmalaltit i encara no és immune.
-    private int _in_null_disease; ///< Nova gent que no és ni immune ni té símptomes.
-    private int _out_null_disease; ///< Gent que ha passat a estat d'immunitat
+    private double _null_disease; ///< Gent que ha agafat el virus, però no ha emmalaltit i encara no és immune.
+    private double _in_null_disease; ///< Nova gent que no és ni immune ni té símptomes.
+    private double _out_null_disease; ///< Gent que ha passat a estat d'immunitat
 
     //Sobre nulls contagiosos
-    private int _null_contagious; ///< Gent que ja no és contagiosa, però encara té símptomes.
-    private int _in_null_contagious; ///< Nova gent que encara no és contagiosa, però encara té símptomes.
-    private int _out_null_contagious; ///< Gent que era contagiosa, però encara tenia símptomes i ja no.
+    private double _null_contagious; ///< Gent que ja no és contagiosa, però encara té símptomes.
+    private double _in_null_contagious; ///< Nova gent que encara no és contagiosa, però encara té símptomes.
+    private double _out_null_contagious; ///< Gent que era contagiosa, però encara tenia símptomes i ja no.
 
     //Sobre morts
-    private int _in_deaths; ///< Nous morts.
+    private double _in_deaths; ///< Nous morts.
 
 
 
@@ -88,7 +97,8 @@ public class Data {
         _region = region;
         _virus = virus;
 
-        _total_inhabitants = region.inhabitants();
+        _total_inhabitants = _region_inhabitants = region.inhabitants();
+        _region_foreign = region.foreign();
 
         Affectation affectation = region.affectation(virus);
 
@@ -123,24 +133,105 @@ public class Data {
      * @param region La regió que representa el conjunt de Data de \p iterator (pot ser null).
      * @param virus El virus que representa el conjunt de Data de \p iterator (pot ser null).
      * @param iterator Iterator de l'estructura de la collection amb els objectes Data a sumar.
+     * @param inhabitants Habitants de \p region (no es fa servir si \p region és null).
+     * @param foreign Turistes de \p region (no es fa servir si \p region és null).
      */
-    public Data(Region region, Virus virus, Iterator<Data> iterator) {
+    public Data(Region region, Virus virus, Iterator<Data> iterator, double inhabitants, double foreign) {
 
         _region = region;
         _virus = virus;
+        _region_inhabitants = inhabitants;
+        _region_foreign = foreign;
 
-        if (_region != null && _virus != null) {
+        while (iterator.hasNext()) {
 
-            Affectation affectation = _region.affectation(_virus);
+            Data data = iterator.next();
 
-            _vaccine = affectation.vaccine().vaccine();
-            _vaccine_remaining_tick = _vaccine == null ? 0 : affectation.vaccineRemainingTicks();
+            // Amb els dos filtres només hi ha un objecte, el de l'afectació, que té la vacuna
+            if (_region != null && _virus != null) {
+                _vaccine = data._vaccine;
+                _vaccine_remaining_tick = data._vaccine_remaining_tick;
+            }
+
+            this.addData(data);
 
         }
 
-        while (iterator.hasNext())
+    }
+
+    /** @brief Constructor de les dades d'una regió on el virus no hi és present.
+     * @pre \p region i \p virus no són null.
+     * @post Totes les dades són 0, excepte els habitants.
+     * @param region Regió.
+     * @param virus Virus.
+     * @param inhabitants Habitants de la regió.
+     * @param foreign Turistes de la regió.
+     */
+    public Data(Region region, Virus virus, double inhabitants, double foreign) {
+
+        _region = region;
+        _virus = virus;
+        _total_inhabitants = _region_inhabitants = inhabitants;
+        _region_foreign = foreign;
+
+    }
+
+    /** @brief Constructor a partir dels valors copiats per store().
+     * @pre \p values conté FIELDS valors copiats per store() a partir de \p offset.
+     * @post L'objecte té els valors de l'objecte que els va copiar i no depèn de \p values.
+     * @param region Regió de les dades.
+     * @param virus Virus de les dades.
+     * @param vaccine Vacuna de l'afectació (pot ser null).
+     * @param vaccine_remaining_tick Ticks restants de \p vaccine.
+     * @param inhabitants Habitants de \p region.
+     * @param foreign Turistes de \p region.
+     * @param values Valors copiats.
+     * @param offset Posició del primer valor a \p values.
+     */
+    public Data(Region region, Virus virus, Vaccine vaccine, int vaccine_remaining_tick, double inhabitants,
+                double foreign, double[] values, int offset) {
+
+        _region = region;
+        _virus = virus;
+        _vaccine = vaccine;
+        _vaccine_remaining_tick = vaccine_remaining_tick;
+        _region_inhabitants = inhabitants;
+        _region_foreign = foreign;
+
+        _total_inhabitants = values[offset];
+        _total_symptoms = values[offset + 1];
+        _total_contagious = values[offset + 2];
+        _total_deaths = values[offset + 3];
+
+        _incubating = values[offset + 4];
+        _in_incubating = values[offset + 5];
+        _out_incubating = values[offset + 6];
+
+        _symptom = values[offset + 7];
+        _in_symptom = values[offset + 8];
+        _out_symptom = values[offset + 9];
+
+        _latency = values[offset + 10];
+        _in_latency = values[offset + 11];
+        _out_latency = values[offset + 12];
+
+        _contagious = values[offset + 13];
+        _in_contagious = values[offset + 14];
+        _out_contagious = values[offset + 15];
 
-            this.addData(iterator.next());
+        _immunity = values[offset + 16];
+        _in_immunity = values[offset + 17];
+        _out_immunity = values[offset + 18];
+
+        _null_disease = values[offset + 19];
+        _in_null_disease = values[offset + 20];
+        _out_null_disease = values[offset + 21];
+
+        _null_contagious = values[offset + 22];
+        _in_null_contagious = values[offset + 23];
+        _out_null_contagious = values[offset + 24];
+
+        _in_deaths = values[offset + 25];
 
     }
 
@@ -167,7 +258,7 @@ public class Data {
      */
     private float transmissionRatio() {
 
-        return (_contagious + _latency ) == 0 ? 0 : (float)_in_latency / (_contagious + _latency);
+        return (_contagious + _latency ) == 0 ? 0 : (float)_in_latency / (float)(_contagious + _latency);
 
     }
 
@@ -175,7 +266,7 @@ public class Data {
      * @pre True.
      * @return El total de contagiosos durant tota la simulació + gent en estat de latència
      */
-    private int totalContagiated() {
+    private double totalContagiated() {
 
         return _total_contagious + _latency;
 
@@ -183,18 +274,34 @@ public class Data {
 
     /** @brief Retorna el total d'infectats actual (sense els immunes).
      * @pre True.
-     * @return Gent en latència + contagiosos + null_contagious.
+     * @return Gent en latència + contagiosos + null_contagious, arrodonida a persones senceres.
      */
-    public int contagiated() {
-        return _latency + _contagious + _null_contagious;
+    public long contagiated() {
+        return round(_latency + _contagious + _null_contagious);
     }
 
     /** @brief Retorna el total d'infectats actual (inclosos els immunes).
      * @pre True.
-     * @return Gent en latència + contagiosos + null_contagious + immunes.
+     * @return Gent en latència + contagiosos + null_contagious + immunes, arrodonida a persones senceres.
      */
-    public int virusPresence() {
-        return contagiated() + _immunity;
+    public long virusPresence() {
+        return round(_latency + _contagious + _null_contagious + _immunity);
+    }
+
+    /** @brief Retorna els nous infectats d'aquest tick.
+     * @pre True.
+     * @return Gent que ha començat a incubar en aquest tick.
+     */
+    public double newInfections() {
+        return _in_incubating;
+    }
+
+    /** @brief Retorna els morts acumulats.
+     * @pre True.
+     * @return Total de morts al llarg de la simulació.
+     */
+    public double deaths() {
+        return _total_deaths;
     }
 
     /** @brief Actualitza la informació actual per la generada en el següent tick.
@@ -206,6 +313,9 @@ public class Data {
 
         Affectation affectation = _region.affectation(_virus);
 
+        _region_inhabitants = _region.inhabitants();
+        _region_foreign = _region.foreign();
+
         if (affectation != null) {
 
             _vaccine = affectation.vaccine().vaccine();
@@ -249,6 +359,69 @@ public class Data {
 
     }
 
+    /** @brief Copia els valors de l'objecte (tots excepte la regió, el virus, la vacuna i els habitants i turistes de la
+     * regió) a \p values.
+     * @pre \p values té com a mínim offset + FIELDS posicions.
+     * @post values[offset] ... values[offset + FIELDS - 1] tenen els valors en l'ordre que llegeix el constructor
+     * Data(Region, Virus, Vaccine, int, double, double, double[], int).
+     * @param values Array on es copien els valors.
+     * @param offset Posició del primer valor a \p values.
+     */
+    public void store(double[] values, int offset) {
+
+        values[offset] = _total_inhabitants;
+        values[offset + 1] = _total_symptoms;
+        values[offset + 2] = _total_contagious;
+        values[offset + 3] = _total_deaths;
+
+        values[offset + 4] = _incubating;
+        values[offset + 5] = _in_incubating;
+        values[offset + 6] = _out_incubating;
+
+        values[offset + 7] = _symptom;
+        values[offset + 8] = _in_symptom;
+        values[offset + 9] = _out_symptom;
+
+        values[offset + 10] = _latency;
+        values[offset + 11] = _in_latency;
+        values[offset + 12] = _out_latency;
+
+        values[offset + 13] = _contagious;
+        values[offset + 14] = _in_contagious;
+        values[offset + 15] = _out_contagious;
+
+        values[offset + 16] = _immunity;
+        values[offset + 17] = _in_immunity;
+        values[offset + 18] = _out_immunity;
+
+        values[offset + 19] = _null_disease;
+        values[offset + 20] = _in_null_disease;
+        values[offset + 21] = _out_null_disease;
+
+        values[offset + 22] = _null_contagious;
+        values[offset + 23] = _in_null_contagious;
+        values[offset + 24] = _out_null_contagious;
+
+        values[offset + 25] = _in_deaths;
+
+    }
+
+    /** @brief Getter de la vacuna de l'afectació.
+     * @pre True.
+     * @return La vacuna aplicada a l'afectació (null si no n'hi ha o les dades no són d'una afectació).
+     */
+    public Vaccine vaccine() {
+        return _vaccine;
+    }
+
+    /** @brief Getter dels ticks restants de la vacuna.
+     * @pre True.
+     * @return Els ticks que li queden a vaccine() (0 si no n'hi ha).
+     */
+    public int vaccineRemainingTicks() {
+        return _vaccine_remaining_tick;
+    }
+
     /** @brief Suma les dades de \p data a les de l'objecte actual
      * @pre True.
      * @post Les dades de l'objecte actual han estat incrementades amb les de \p dada.
@@ -300,33 +473,28 @@ public class Data {
      */
     public String toString() {
 
-        Affectation affectation = _region.affectation(_virus);
-
-        _vaccine = affectation.vaccine().vaccine();
-        _vaccine_remaining_tick = _vaccine == null ? 0 : affectation.vaccineRemainingTicks();
-
         return _virus.name() + " a " + _region.name() + ":\n" +
                 (_vaccine == null ? "" : "\tVacuna aplicada: " + _vaccine + " (" + _vaccine_remaining_tick +
                 " ticks restants)\n") +
-                "\tHabitants: " + _region.inhabitants() + "\n" +
-                "\tTuristes: " + _region.foreign() + "\n" +
+                "\tHabitants: " + round(_region_inhabitants) + "\n" +
+                "\tTuristes: " + round(_region_foreign) + "\n" +
                 "\tDades acumulades:\n" +
-                "\t\tTotal de malalts al llarg de l'execució: " + _total_symptoms + " (+" + _in_symptom + ")\n" +
-                "\t\tTotal de contagiosos al llarg de l'execució: " + _total_contagious + " (+" + _in_contagious + ")\n" +
-                "\t\tTotal de contagiats al llarg de l'execució: " + totalContagiated() + " (+" + _in_latency + ")\n" +
-                "\t\tTotal de morts al llarg de l'execució: " + _total_deaths + " (+" + _in_deaths + ")\n" +
+                "\t\tTotal de malalts al llarg de l'execució: " + round(_total_symptoms) + " (+" + round(_in_symptom) + ")\n" +
+                "\t\tTotal de contagiosos al llarg de l'execució: " + round(_total_contagious) + " (+" + round(_in_contagious) + ")\n" +
+                "\t\tTotal de contagiats al llarg de l'execució: " + round(totalContagiated()) + " (+" + round(_in_latency) + ")\n" +
+                "\t\tTotal de morts al llarg de l'execució: " + round(_total_deaths) + " (+" + round(_in_deaths) + ")\n" +
                 "\tDades del tick:\n" +
                 "\t\tTaxa de transmissió: " + transmissionRatio() + "\n" +
                 "\t\tGrup de simptomàtics:\n" +
-                "\t\t\tIncubant: " + _incubating + " (+" + _in_incubating + ") (-" + _out_incubating + ")\n" +
-                "\t\t\tSimptomàtics: " + _symptom + " (+" + _in_symptom + ") (-" + _out_symptom + ")\n" +
-                "\t\t\tSense símptomes: " + _null_disease + " (+" + _in_null_disease + ") (-" + _out_null_disease + ")\n" +
+                "\t\t\tIncubant: " + round(_incubating) + " (+" + round(_in_incubating) + ") (-" + round(_out_incubating) + ")\n" +
+                "\t\t\tSimptomàtics: " + round(_symptom) + " (+" + round(_in_symptom) + ") (-" + round(_out_symptom) + ")\n" +
+                "\t\t\tSense símptomes: " + round(_null_disease) + " (+" + round(_in_null_disease) + ") (-" + round(_out_null_disease) + ")\n" +
                 "\t\tGrup de contagiosos:" + "\n" +
-                "\t\t\tLatència: " + _latency + " (+" + _in_latency + ") (-" + _out_latency + ")\n" +
-                "\t\t\tContagiosos: " + _contagious + " (+" + _in_contagious + ") (-" + _out_contagious + ")\n" +
-                "\t\t\tNo contagiosos: " + _null_contagious + " (+" + _in_null_contagious + ") (-" + _out_null_contagious + ")\n" +
+                "\t\t\tLatència: " + round(_latency) + " (+" + round(_in_latency) + ") (-" + round(_out_latency) + ")\n" +
+                "\t\t\tContagiosos: " + round(_contagious) + " (+" + round(_in_contagious) + ") (-" + round(_out_contagious) + ")\n" +
+                "\t\t\tNo contagiosos: " + round(_null_contagious) + " (+" + round(_in_null_contagious) + ") (-" + round(_out_null_contagious) + ")\n" +
                 "\t\tGrup d'immunes:" + "\n" +
-                "\t\t\tImmunes: " + _immunity + " (+" + _in_immunity + ") (-" + _out_immunity+ ")\n";
+                "\t\t\tImmunes: " + round(_immunity) + " (+" + round(_in_immunity) + ") (-" + round(_out_immunity) + ")\n";
 
     }
 
@@ -340,11 +508,6 @@ public class Data {
 
         if (_virus != null && _region != null) {
 
-            Affectation affectation = _region.affectation(_virus);
-
-            _vaccine = affectation.vaccine().vaccine();
-            _vaccine_remaining_tick = _vaccine == null ? 0 : affectation.vaccineRemainingTicks();
-
             res += "Presència del virus " + _virus.name() + " a la regió " + _region.name() + ":\n" +
             (_vaccine == null ? "" : "\tVacuna aplicada: " + _vaccine + " (" + _vaccine_remaining_tick +
                     " ticks restants)\n");
@@ -357,77 +520,88 @@ public class Data {
             res += "Dades sense filtres:\n";
 
         if (_region != null) {
-            res += "\tHabitants: " + _region.inhabitants() + "\n";
-            res += "\tTuristes: " + _region.foreign() + "\n";
+            res += "\tHabitants: " + round(_region_inhabitants) + "\n";
+            res += "\tTuristes: " + round(_region_foreign) + "\n";
         }
 
         res += "\tSituació en aquest moment:\n" +
-                "\t\tNombre de malalts: " + _symptom + " (+" + _in_symptom + ")\n" +
-                "\t\tMorts des del pas anterior: " + _in_deaths + "\n" +
-                "\t\tNous contagis: " + _in_latency + "\n" +
+                "\t\tNombre de malalts: " + round(_symptom) + " (+" + round(_in_symptom) + ")\n" +
+                "\t\tMorts des del pas anterior: " + round(_in_deaths) + "\n" +
+                "\t\tNous contagis: " + round(_in_latency) + "\n" +
                 "\t\tTaxa de transmissió: " + transmissionRatio() + "\n" +
                 "\tEvolució des de l'inici:\n" +
-                "\t\tTotal de contagis: " + totalContagiated() + "\n" +
-                "\t\tTotal de morts: " + _total_deaths + "\n" +
-                "\t\tTotal de malalts: " + _total_symptoms + "\n";
+                "\t\tTotal de contagis: " + round(totalContagiated()) + "\n" +
+                "\t\tTotal de morts: " + round(_total_deaths) + "\n" +
+                "\t\tTotal de malalts: " + round(_total_symptoms) + "\n";
 
         return res;
 
     }
 
-    /** @brief Retorna un TreeMap de la informació general de l'objecte actual. Indexa enters per concepte (String).
+    /** @brief Retorna un TreeMap de la informació general de l'objecte actual. Indexa enters llargs per concepte (String).
      * @pre True.
-     * @return Un TreeMap amb els immunes, contagiats, morts i no contagiats, indexant enters amb noms.
+     * @return Un TreeMap amb els immunes, contagiats, morts i no contagiats, indexant enters llargs amb noms.
      */
-    public TreeMap<String,Integer> generalData() {
+    public TreeMap<String,Long> generalData() {
 
-        TreeMap<String,Integer> res = new TreeMap<>();
+        TreeMap<String,Long> res = new TreeMap<>();
 
-        res.put("Immunes", _immunity);
+        res.put("Immunes", round(_immunity));
         res.put("Contagiats", contagiated());
-        res.put("Morts", _total_deaths);
+        res.put("Morts", round(_total_deaths));
 
-        int non_contagious = (int)(_total_inhabitants - contagiated() - _total_deaths - _immunity);
-        res.put("No contagiats", Math.max(non_contagious, 0));
+        double non_contagious = _total_inhabitants - (_latency + _contagious + _null_contagious) - _total_deaths -
+                _immunity;
+        res.put("No contagiats", Math.max(round(non_contagious), 0L));
 
         return res;
 
     }
 
-    /** @brief Retorna un TreeMap de la informació dels malalts de l'objecte actual. Indexa enters per concepte (String).
+    /** @brief Retorna un TreeMap de la informació dels malalts de l'objecte actual. Indexa enters llargs per concepte (String).
      * @pre True.
-     * @return Un TreeMap amb els incubadors, simptomàtics i sense símptomes, indexant enters amb noms.
+     * @return Un TreeMap amb els incubadors, simptomàtics i sense símptomes, indexant enters llargs amb noms.
      */
-    public TreeMap<String,Integer> diseaseData() {
+    public TreeMap<String,Long> diseaseData() {
 
-        TreeMap<String,Integer> res = new TreeMap<>();
+        TreeMap<String,Long> res = new TreeMap<>();
 
         if (contagiated() == 0) return res;
 
-        res.put("Incubació", _incubating);
-        res.put("Simptomàtics", _symptom);
-        res.put("Sense símptomes", _null_disease);
+        res.put("Incubació", round(_incubating));
+        res.put("Simptomàtics", round(_symptom));
+        res.put("Sense símptomes", round(_null_disease));
 
         return res;
 
     }
 
-    /** @brief Retorna un TreeMap de la informació dels contagiosos de l'objecte actual. Indexa enters per concepte (String).
+    /** @brief Retorna un TreeMap de la informació dels contagiosos de l'objecte actual. Indexa enters llargs per concepte (String).
      * @pre True.
      * @return Un TreeMap amb els que estan en latència, contagiosos i no contagiosos.
      */
-    public TreeMap<String,Integer> contagiousData() {
+    public TreeMap<String,Long> contagiousData() {
 
-        TreeMap<String,Integer> res = new TreeMap<>();
+        TreeMap<String,Long> res = new TreeMap<>();
 
         if (contagiated() == 0) return res;
 
-        res.put("Latència", _latency);
-        res.put("Contagiosos", _contagious);
-        res.put("No contagiosos", _null_contagious);
+        res.put("Latència", round(_latency));
+        res.put("Contagiosos", round(_contagious));
+        res.put("No contagiosos", round(_null_contagious));
 
         return res;
 
     }
 
+    /** @brief Arrodoneix una quantitat de persones per mostrar-la.
+     * @pre True.
+     * @return \p people arrodonit a la persona més propera (en mode enter, \p people exactament).
+     */
+    private static long round(double people) {
+
+        return Math.round(people);
+
+    }
+
 }
@@ -0,0 +1,1015 @@
+/**
+ * @file FastInputReader.java
+ * @brief Classe FastInputReader
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/** @class FastInputReader
+ * @brief Classe encarregada de llegir els quatre fitxers d'entrada (regions, virus, estat inicial i vacunes) amb el
+ * mateix format que RegionReader, VirusReader, InitialStateReader i VaccineReader, però projectant-los a memòria i
+ * tokenitzant-los byte a byte. Les dades massives (regions, relacions de veïnatge i estats inicials) es guarden
+ * directament en arrays de tipus primitius i els quatre fitxers es llegeixen en paral·lel.
+ */
+public class FastInputReader {
+
+    // Public storage classes
+
+    /** @class RegionTable
+     * @brief Inner class de FastInputReader que emmagatzema les regions i les relacions de veïnatge en arrays.
+     * Les relacions de veïnatge es guarden en format CSR: els veïns del bloc \p b són les posicions
+     * [limit_offset[b], limit_offset[b + 1]) de \p neighbour i \p flow_rate.
+     */
+    public static class RegionTable {
+
+        public String[] name; ///< Nom de cada regió.
+        public long[] inhabitants; ///< Total d'habitants de cada regió.
+        public int[] inside_mobility; ///< Mobilitat interna de cada regió.
+
+        public String[] limit_region; ///< Nom de la regió de cada bloc de "limits_i_mobilitat".
+        public int[] limit_offset; ///< Inici de cada bloc dins de \p neighbour (té un element més que els blocs).
+        public String[] neighbour; ///< Nom de la regió fronterera.
+        public float[] flow_rate; ///< Mobilitat cap a la regió fronterera amb el mateix índex a \p neighbour.
+
+        public int[] limit_region_id; ///< Índex a \p name de la regió de cada bloc (null si no s'ha resolt).
+        public int[] neighbour_id; ///< Índex a \p name de cada regió fronterera (null si no s'ha resolt).
+
+        /** @brief Construeix la taula a partir de les dades llegides per RegionReader.
+         * @pre \p regions != null && \p neighbours != null.
+         * @param regions Dades de les regions.
+         * @param neighbours Dades de les relacions de veïnatge.
+         * @return Una taula amb les mateixes dades organitzades en arrays.
+         */
+        public static RegionTable of(ArrayList<RegionReader.RegionData> regions,
+                                     ArrayList<RegionReader.NeighbourData> neighbours) {
+
+            RegionTable table = new RegionTable();
+
+            table.name = new String[regions.size()];
+            table.inhabitants = new long[regions.size()];
+            table.inside_mobility = new int[regions.size()];
+
+            for (int i = 0; i < regions.size(); i++) {
+
+                table.name[i] = regions.get(i).name;
+                table.inhabitants[i] = regions.get(i).inhabitants;
+                table.inside_mobility[i] = regions.get(i).inside_mobility;
+
+            }
+
+            int total = 0;
+            for (RegionReader.NeighbourData data : neighbours) total += data.neighbour.size();
+
+            table.limit_region = new String[neighbours.size()];
+            table.limit_offset = new int[neighbours.size() + 1];
+            table.neighbour = new String[total];
+            table.flow_rate = new float[total];
+
+            int k = 0;
+
+            for (int b = 0; b < neighbours.size(); b++) {
+
+                RegionReader.NeighbourData data = neighbours.get(b);
+
+                table.limit_region[b] = data.region_name;
+                table.limit_offset[b] = k;
+
+                for (int i = 0; i < data.neighbour.size(); i++, k++) {
+
+                    table.neighbour[k] = data.neighbour.get(i);
+                    table.flow_rate[k] = data.flow_rate.get(i);
+
+                }
+
+            }
+
+            table.limit_offset[neighbours.size()] = k;
+
+            return table;
+
+        }
+
+    }
+
+    /** @class InitialStateTable
+     * @brief Inner class de FastInputReader que emmagatzema els estats inicials en arrays. Els virus presents a
+     * l'estat \p s són les posicions [offset[s], offset[s + 1]) de \p virus i \p percentage.
+     */
+    public static class InitialStateTable {
+
+        public String[] region_name; ///< Nom de la regió de cada estat inicial.
+        public int[] offset; ///< Inici de cada estat dins de \p virus (té un element més que els estats).
+        public String[] virus; ///< Nom del virus que causa l'afectació.
+        public float[] percentage; ///< Proporció de la població afectada pel virus amb el mateix índex a \p virus.
+
+        public int[] region_id; ///< Índex de la regió de cada estat dins de RegionTable (null si no s'ha resolt).
+        public int[] virus_id; ///< Índex de cada virus dins de la llista de virus (null si no s'ha resolt).
+
+        /** @brief Construeix la taula a partir de les dades llegides per InitialStateReader.
+         * @pre \p states != null.
+         * @param states Dades dels estats inicials.
+         * @return Una taula amb les mateixes dades organitzades en arrays.
+         */
+        public static InitialStateTable of(ArrayList<InitialStateReader.InitialStateData> states) {
+
+            InitialStateTable table = new InitialStateTable();
+
+            int total = 0;
+            for (InitialStateReader.InitialStateData data : states) total += data.virus_affectation.size();
+
+            table.region_name = new String[states.size()];
+            table.offset = new int[states.size() + 1];
+            table.virus = new String[total];
+            table.percentage = new float[total];
+
+            int k = 0;
+
+            for (int s = 0; s < states.size(); s++) {
+
+                InitialStateReader.InitialStateData data = states.get(s);
+
+                table.region_name[s] = data.region_name;
+                table.offset[s] = k;
+
+                for (int i = 0; i < data.virus_affectation.size(); i++, k++) {
+
+                    table.virus[k] = data.virus_affectation.get(i);
+                    table.percentage[k] = data.percentage_affectation.get(i);
+
+                }
+
+            }
+
+            table.offset[states.size()] = k;
+
+            return table;
+
+        }
+
+    }
+
+
+
+    // Constants
+
+    private static final String REGIONS_FILE = "regions.txt"; ///< Nom de l'arxiu de regions.
+    private static final String VIRUS_FILE = "virus.txt"; ///< Nom de l'arxiu de virus.
+    private static final String INITIAL_STATE_FILE = "estatInicial.txt"; ///< Nom de l'arxiu d'estats inicials.
+    private static final String VACCINES_FILE = "vacunes.txt"; ///< Nom de l'arxiu de vacunes.
+
+    static final String[] INPUT_FILES = {REGIONS_FILE, VIRUS_FILE, INITIAL_STATE_FILE, VACCINES_FILE};
+    ///< Fitxers d'entrada que es llegeixen.
+
+    private static final int READER_THREADS = 4; ///< Un fil per cada fitxer d'entrada.
+
+    // Paraules clau dels fitxers d'entrada
+    private static final byte[] STAR = bytes("*");
+    private static final byte[] NOM = bytes("nom");
+    private static final byte[] HABITANTS = bytes("habitants");
+    private static final byte[] MOB_INTERNA = bytes("mob_interna");
+    private static final byte[] LIMITS_I_MOBILITAT = bytes("limits_i_mobilitat");
+    private static final byte[] TPC_MAXIM_VARIACIO = bytes("tpc_maxim_variacio");
+    private static final byte[] VIRUS = bytes("virus");
+    private static final byte[] TIPUS = bytes("tipus");
+    private static final byte[] FAMILIA = bytes("familia");
+    private static final byte[] PROB_MALALTIA = bytes("prob_malaltia");
+    private static final byte[] INCUBACIO = bytes("incubacio");
+    private static final byte[] LATENCIA = bytes("latencia");
+    private static final byte[] DURADA_MALALTIA = bytes("durada_malaltia");
+    private static final byte[] DURADA_CONTAGI = bytes("durada_contagi");
+    private static final byte[] DURADA_IMMUNITAT = bytes("durada_immunitat");
+    private static final byte[] MORTALITAT = bytes("mortalitat");
+    private static final byte[] TAXA_CONTAGI = bytes("taxa_contagi");
+    private static final byte[] PROB_MUTACIO_COPIA = bytes("prob_mutacio_copia");
+    private static final byte[] PROB_MUTACIO_COINCIDENCIA = bytes("prob_mutacio_coincidencia");
+    private static final byte[] NOM_VIRUS = bytes("nom_virus");
+    private static final byte[] P_MALALTS = bytes("p_malalts");
+    private static final byte[] REGIO = bytes("regio");
+    private static final byte[] VIRUS_PRESENTS = bytes("virus_presents");
+    private static final byte[] VIRUS_DESTI = bytes("virus_desti");
+    private static final byte[] EFECTIVITAT = bytes("efectivitat");
+    private static final byte[] TEMPS_ACTIVACIO = bytes("temps_activacio");
+    private static final byte[] DURADA = bytes("durada");
+    private static final byte[] TPC_REDUCCIO_MORTALITAT = bytes("tpc_reduccio_mortalitat");
+    private static final byte[] TPC_REDUCCIO_DURADA = bytes("tpc_reduccio_durada");
+    private static final byte[] TPC_REDUCCIO_MALALTIA = bytes("tpc_reduccio_malaltia");
+    private static final byte[] TPC_REDUCCIO_CONTAGI = bytes("tpc_reduccio_contagi");
+
+
+
+    // Private attributes
+
+    private final RegionTable _regions; ///< Regions i relacions de veïnatge llegides.
+    private final InitialStateTable _initial_states; ///< Estats inicials llegits.
+    private final ArrayList<VirusReader.FamilyData> _families; ///< Famílies de virus llegides.
+    private final ArrayList<VirusReader.VirusData> _viruses; ///< Virus llegits.
+    private final ArrayList<VaccineReader.VaccineData> _vaccines; ///< Vacunes llegides.
+
+
+
+    // Constructors
+
+    /** @brief Llegeix en paral·lel els quatre fitxers d'entrada i guarda les dades llegides.
+     * @pre Un \p path a un directori que contingui els fitxers d'entrada amb un format correcte.
+     * @post Les taules i llistes d'aquest objecte contenen les mateixes dades que llegirien RegionReader,
+     * VirusReader, InitialStateReader i VaccineReader.
+     * @param path La ruta a un directori que contingui els fitxers d'entrada.
+     * @throws IOException si algun dels fitxers no existeix o no es pot llegir.
+     */
+    public FastInputReader(String path) throws IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(READER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "input-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+
+            Future<RegionTable> regions = executor.submit(() -> readRegions(map(path, REGIONS_FILE)));
+            Future<VirusFile> viruses = executor.submit(() -> readViruses(map(path, VIRUS_FILE)));
+            Future<InitialStateTable> states = executor.submit(() -> readInitialStates(map(path, INITIAL_STATE_FILE)));
+            Future<ArrayList<VaccineReader.VaccineData>> vaccines =
+                    executor.submit(() -> readVaccines(map(path, VACCINES_FILE)));
+
+            _regions = join(regions);
+            _initial_states = join(states);
+
+            VirusFile virus_file = join(viruses);
+            _families = virus_file.families;
+            _viruses = virus_file.viruses;
+
+            _vaccines = join(vaccines);
+
+        } finally {
+
+            executor.shutdownNow();
+
+        }
+
+    }
+
+
+
+    /** @brief Construeix el lector amb dades ja llegides (per exemple, d'una ScenarioImage).
+     * @pre Cap paràmetre és null.
+     * @param regions Taula de regions i relacions de veïnatge.
+     * @param initial_states Taula d'estats inicials.
+     * @param families Dades de les famílies de virus.
+     * @param viruses Dades dels virus.
+     * @param vaccines Dades de les vacunes.
+     */
+    FastInputReader(RegionTable regions, InitialStateTable initial_states, ArrayList<VirusReader.FamilyData> families,
+                    ArrayList<VirusReader.VirusData> viruses, ArrayList<VaccineReader.VaccineData> vaccines) {
+
+        _regions = regions;
+        _initial_states = initial_states;
+        _families = families;
+        _viruses = viruses;
+        _vaccines = vaccines;
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @brief Getter de la taula de regions i relacions de veïnatge.
+     * @pre True.
+     * @return La taula de regions i relacions de veïnatge.
+     */
+    public RegionTable regions() {
+        return _regions;
+    }
+
+    /** @brief Getter de la taula d'estats inicials.
+     * @pre True.
+     * @return La taula d'estats inicials.
+     */
+    public InitialStateTable initialStates() {
+        return _initial_states;
+    }
+
+    /** @brief Getter de la llista de dades de famílies de virus.
+     * @pre True.
+     * @return La llista de dades de famílies de virus.
+     */
+    public ArrayList<VirusReader.FamilyData> families() {
+        return _families;
+    }
+
+    /** @brief Getter de la llista de dades de virus.
+     * @pre True.
+     * @return La llista de dades de virus.
+     */
+    public ArrayList<VirusReader.VirusData> viruses() {
+        return _viruses;
+    }
+
+    /** @brief Getter de la llista de dades de vacunes.
+     * @pre True.
+     * @return La llista de dades de vacunes.
+     */
+    public ArrayList<VaccineReader.VaccineData> vaccines() {
+        return _vaccines;
+    }
+
+
+
+    // Funcions privades
+
+    /** @return Els bytes UTF-8 de \p s. */
+    private static byte[] bytes(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+
+    /** @brief Projecta a memòria el fitxer \p file_name del directori \p path.
+     * @pre True.
+     * @param path Directori on es troba el fitxer.
+     * @param file_name Nom del fitxer.
+     * @return Un tokenitzador de línies sobre el contingut del fitxer.
+     * @throws IOException si el fitxer no existeix o no es pot projectar.
+     */
+    private static Lines map(String path, String file_name) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Path.of(path + File.separator + file_name),
+                StandardOpenOption.READ)) {
+
+            return new Lines(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+        }
+
+    }
+
+    /** @brief Espera el resultat d'una lectura i en propaga les excepcions originals.
+     * @pre True.
+     * @param future Lectura en curs.
+     * @return El resultat de la lectura.
+     * @throws IOException si la lectura ha fallat per un error d'entrada/sortida.
+     */
+    private static <T> T join(Future<T> future) throws IOException {
+
+        try {
+
+            return future.get();
+
+        } catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+
+            throw new IllegalStateException(cause);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("Lectura interrompuda", e);
+
+        }
+
+    }
+
+    /** @brief Llegeix el fitxer de regions amb el mateix format que RegionReader.
+     * @pre El format de l'arxiu és el correcte.
+     * @param in Línies del fitxer REGIONS_FILE.
+     * @return La taula de regions i relacions de veïnatge.
+     */
+    private static RegionTable readRegions(Lines in) {
+
+        if (!in.next()) throw new NoSuchElementException("No line found"); // Títol de la secció ("regions")
+
+        Columns regions = new Columns();
+        String name = null;
+        long inhabitants = 0;
+        int inside_mobility = 0;
+
+        while (in.next()) {
+
+            if (in.keyIs(NOM)) name = in.text();
+            else if (in.keyIs(HABITANTS)) inhabitants = in.longValue();
+            else if (in.keyIs(MOB_INTERNA)) inside_mobility = in.intValue();
+            else if (in.keyIs(STAR)) {
+
+                regions.add(name, inhabitants, inside_mobility);
+                name = null;
+                inhabitants = 0;
+                inside_mobility = 0;
+
+            }
+            else if (in.keyIs(LIMITS_I_MOBILITAT)) break;
+            else throw new InputMismatchException("Lectura inesperada: " + in.key());
+
+        }
+
+        Columns limits = new Columns();
+        Columns neighbours = new Columns();
+        int closed_end = 0; // Final de l'últim bloc tancat: els veïns d'un bloc sense tancar es descarten
+
+        while (in.next()) {
+
+            if (in.isBlank() || in.isComment()) continue;
+
+            String region_name = in.firstField(); // Guarda el poble sobre el que donarem els veïns
+            boolean closed = in.lineIs(STAR);
+            int first = neighbours.size;
+
+            while (!closed && in.next()) {
+
+                if (in.lineIs(STAR)) {
+
+                    limits.add(region_name, first, 0);
+                    closed_end = neighbours.size;
+                    closed = true;
+
+                } else {
+
+                    neighbours.add(in.firstField(), in.percentValue());
+
+                }
+
+            }
+
+        }
+
+        RegionTable table = new RegionTable();
+
+        table.name = regions.strings();
+        table.inhabitants = regions.longs();
+        table.inside_mobility = regions.ints(1);
+
+        table.limit_region = limits.strings();
+        table.limit_offset = Arrays.copyOf(limits.ints(0), limits.size + 1);
+        table.limit_offset[limits.size] = closed_end;
+        table.neighbour = Arrays.copyOf(neighbours.strings(), closed_end);
+        table.flow_rate = Arrays.copyOf(neighbours.floats(), closed_end);
+
+        return table;
+
+    }
+
+    /** @brief Llegeix el fitxer de virus amb el mateix format que VirusReader.
+     * @pre El format de l'arxiu és correcte.
+     * @param in Línies del fitxer VIRUS_FILE.
+     * @return Les famílies i els virus llegits.
+     */
+    private static VirusFile readViruses(Lines in) {
+
+        if (!in.next()) throw new NoSuchElementException("No line found"); // Títol de la secció ("families")
+
+        VirusFile res = new VirusFile();
+        VirusReader.FamilyData family = new VirusReader.FamilyData();
+
+        while (in.next()) {
+
+            if (in.isBlank() || in.isComment()) continue;
+
+            if (in.keyIs(NOM)) family.name = in.text();
+            else if (in.keyIs(TPC_MAXIM_VARIACIO)) family.mutate_max_var = in.floatValue() / 100;
+            else if (in.keyIs(STAR)) {
+
+                res.families.add(family);
+                family = new VirusReader.FamilyData();
+
+            }
+            else if (in.keyIs(VIRUS)) break;
+            else throw new InputMismatchException("Lectura inesperada: " + in.key());
+
+        }
+
+        VirusReader.VirusData virus = new VirusReader.VirusData();
+
+        while (in.next()) {
+
+            if (in.isBlank() || in.isComment()) continue;
+
+            if (in.rawKeyIs(NOM)) virus.name = in.text();
+            else if (in.rawKeyIs(TIPUS)) virus.type = in.text();
+            else if (in.rawKeyIs(FAMILIA)) virus.family = in.text();
+            else if (in.rawKeyIs(PROB_MALALTIA)) virus.fall_sick_probability = in.floatValue();
+            else if (in.rawKeyIs(INCUBACIO)) virus.incubation_time = in.intValue();
+            else if (in.rawKeyIs(LATENCIA)) virus.latency_time = in.intValue();
+            else if (in.rawKeyIs(DURADA_MALALTIA)) virus.symptom_duration = in.intValue();
+            else if (in.rawKeyIs(DURADA_CONTAGI)) virus.infection_duration = in.intValue();
+            else if (in.rawKeyIs(DURADA_IMMUNITAT)) virus.immunity_duration = in.intValue();
+            else if (in.rawKeyIs(MORTALITAT)) virus.death_rate = in.floatValue();
+            else if (in.rawKeyIs(TAXA_CONTAGI)) virus.spread_rate = in.floatValue();
+            else if (in.rawKeyIs(PROB_MUTACIO_COPIA)) virus.mutate_error_probability = in.floatValue();
+            else if (in.rawKeyIs(PROB_MUTACIO_COINCIDENCIA)) virus.mutate_family_probability = in.floatValue();
+            else if (in.rawKeyIs(STAR)) {
+
+                res.viruses.add(virus);
+                virus = new VirusReader.VirusData();
+
+            }
+            else throw new InputMismatchException("Lectura inesperada: " + in.rawKey());
+
+        }
+
+        return res;
+
+    }
+
+    /** @brief Llegeix el fitxer d'estats inicials amb el mateix format que InitialStateReader.
+     * @pre El format de l'arxiu és correcte.
+     * @param in Línies del fitxer INITIAL_STATE_FILE.
+     * @return La taula d'estats inicials.
+     */
+    private static InitialStateTable readInitialStates(Lines in) {
+
+        Columns states = new Columns();
+        Columns viruses = new Columns();
+        Columns percentages = new Columns();
+        String region_name = null;
+        int first = 0; // Primer virus de l'estat que s'està llegint
+
+        while (in.next()) {
+
+            if (in.isBlank() || in.isComment()) continue;
+
+            if (in.keyIs(NOM_VIRUS)) viruses.add(in.text(), 0f);
+            else if (in.keyIs(P_MALALTS)) percentages.add(null, in.floatValue() / 100);
+            else if (in.keyIs(REGIO)) region_name = in.text();
+            else if (in.keyIs(VIRUS_PRESENTS)) continue;
+            else if (in.keyIs(STAR)) {
+
+                if (percentages.size < viruses.size)
+                    throw new InputMismatchException("Falta el percentatge d'algun virus de la regió " + region_name);
+
+                percentages.size = viruses.size; // els percentatges sobrants no s'utilitzen
+
+                states.add(region_name, first, 0);
+                first = viruses.size;
+
+            }
+            else throw new InputMismatchException("Lectura inesperada: " + in.key());
+
+        }
+
+        InitialStateTable table = new InitialStateTable();
+
+        table.region_name = states.strings();
+        table.offset = Arrays.copyOf(states.ints(0), states.size + 1);
+        table.offset[states.size] = first;
+        table.virus = Arrays.copyOf(viruses.strings(), first);
+        table.percentage = Arrays.copyOf(percentages.floats(), first);
+
+        return table;
+
+    }
+
+    /** @brief Llegeix el fitxer de vacunes amb el mateix format que VaccineReader.
+     * @pre El format de l'arxiu és el correcte.
+     * @param in Línies del fitxer VACCINES_FILE.
+     * @return La llista de dades de vacunes.
+     */
+    private static ArrayList<VaccineReader.VaccineData> readVaccines(Lines in) {
+
+        if (!in.next()) throw new NoSuchElementException("No line found"); // Títol de la secció ("vacunes")
+
+        ArrayList<VaccineReader.VaccineData> res = new ArrayList<>();
+        VaccineReader.VaccineData vaccine = new VaccineReader.VaccineData();
+
+        while (in.next()) {
+
+            if (in.isBlank() || in.isComment()) continue;
+
+            if (in.keyIs(NOM)) vaccine.name = in.text();
+            else if (in.keyIs(TIPUS)) vaccine.type = in.text();
+            else if (in.keyIs(VIRUS_DESTI)) vaccine.virus = in.text();
+            else if (in.keyIs(EFECTIVITAT)) vaccine.effectiveness_ratio = in.floatValue() / 100;
+            else if (in.keyIs(TEMPS_ACTIVACIO)) vaccine.delay = in.intValue();
+            else if (in.keyIs(DURADA)) vaccine.effect_duration = in.intValue();
+            else if (in.keyIs(TPC_REDUCCIO_MORTALITAT)) vaccine.mortality_reduction = in.floatValue() / 100;
+            else if (in.keyIs(TPC_REDUCCIO_DURADA)) vaccine.duration_reduction = in.floatValue() / 100;
+            else if (in.keyIs(TPC_REDUCCIO_MALALTIA)) vaccine.sick_probability_reduction = in.floatValue() / 100;
+            else if (in.keyIs(TPC_REDUCCIO_CONTAGI)) vaccine.contagiousness_reduction = in.floatValue() / 100;
+            else if (in.keyIs(STAR)) {
+
+                res.add(vaccine);
+                vaccine = new VaccineReader.VaccineData();
+
+            }
+            else throw new InputMismatchException("Lectura inesperada: " + in.key());
+
+        }
+
+        return res;
+
+    }
+
+
+
+    // Private classes
+
+    /** @class VirusFile
+     * @brief Resultat de llegir el fitxer de virus.
+     */
+    private static class VirusFile {
+
+        final ArrayList<VirusReader.FamilyData> families = new ArrayList<>(); ///< Famílies llegides.
+        final ArrayList<VirusReader.VirusData> viruses = new ArrayList<>(); ///< Virus llegits.
+
+    }
+
+    /** @class Columns
+     * @brief Columnes creixents (un String, dos enters o un float per fila) per acumular dades sense encapsular-les.
+     * La primera columna d'enters és de 64 bits perquè hi caben els habitants d'una regió.
+     */
+    private static class Columns {
+
+        int size = 0; ///< Nombre de files.
+        String[] strings = new String[16]; ///< Columna de text.
+        long[] first = new long[16]; ///< Primera columna d'enters.
+        int[] second = new int[16]; ///< Segona columna d'enters.
+        float[] values = new float[16]; ///< Columna de floats.
+
+        /** @brief Afegeix una fila amb un text i dos enters. */
+        void add(String s, long a, int b) {
+            grow();
+            strings[size] = s;
+            first[size] = a;
+            second[size] = b;
+            size++;
+        }
+
+        /** @brief Afegeix una fila amb un text i un float. */
+        void add(String s, float value) {
+            grow();
+            strings[size] = s;
+            values[size] = value;
+            size++;
+        }
+
+        /** @brief Amplia les columnes si estan plenes. */
+        private void grow() {
+            if (size < strings.length) return;
+            int capacity = strings.length * 2;
+            strings = Arrays.copyOf(strings, capacity);
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        String[] strings() { return Arrays.copyOf(strings, size); }
+        long[] longs() { return Arrays.copyOf(first, size); }
+
+        int[] ints(int column) {
+            if (column == 1) return Arrays.copyOf(second, size);
+            int[] res = new int[size];
+            for (int i = 0; i < size; i++) res[i] = (int) first[i];
+            return res;
+        }
+        float[] floats() { return Arrays.copyOf(values, size); }
+
+    }
+
+    /** @class Lines
+     * @brief Tokenitzador de línies sobre un fitxer projectat a memòria. Reprodueix el comportament de
+     * Scanner.nextLine() i String.split(" ", 3) dels lectors originals, però sense crear cap String fins que no
+     * es demana el valor d'un camp de text.
+     */
+    private static final class Lines {
+
+        private static final float[] POW10 = {1f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+        ///< Potències de 10 representables exactament en un float.
+
+        private final ByteBuffer _buffer; ///< Contingut del fitxer.
+        private final int _limit; ///< Mida del fitxer.
+        private int _pos; ///< Inici de la següent línia.
+
+        private int _start, _end; ///< Límits de la línia actual (sense el salt de línia).
+        private int _first_end; ///< Final del primer camp de la línia actual.
+        private int _second_start, _second_end; ///< Límits del segon camp de la línia actual (-1 si no n'hi ha).
+
+        private byte[] _scratch = new byte[64]; ///< Memòria auxiliar per descodificar camps de text.
+
+        private String[] _symbols = new String[256]; ///< Taula de símbols (adreçament obert) dels camps de text.
+        private byte[][] _symbol_bytes = new byte[256][]; ///< Bytes de cada símbol de la taula.
+        private int[] _symbol_hashes = new int[256]; ///< Hash dels bytes de cada símbol de la taula.
+        private int _symbol_count = 0; ///< Nombre de símbols de la taula.
+
+        /** @brief Crea el tokenitzador a l'inici de \p buffer.
+         * @pre \p buffer.limit() < 2^31.
+         * @param buffer Contingut del fitxer.
+         */
+        Lines(ByteBuffer buffer) {
+            _buffer = buffer;
+            _limit = buffer.limit();
+            _pos = 0;
+        }
+
+        /** @brief Avança a la següent línia.
+         * @pre True.
+         * @post Els camps de la línia queden delimitats com faria line.split(" ", 3).
+         * @return Si hi havia una línia més per llegir.
+         */
+        boolean next() {
+
+            if (_pos >= _limit) return false;
+
+            int i = _start = _pos;
+            byte b = 0;
+
+            while (i < _limit && (b = _buffer.get(i)) != '\n' && b != '\r') i++;
+
+            _end = i;
+            _pos = i + 1;
+            if (b == '\r' && _pos < _limit && _buffer.get(_pos) == '\n') _pos++;
+
+            i = _start;
+            while (i < _end && _buffer.get(i) != ' ') i++;
+            _first_end = i;
+
+            if (i < _end) {
+                _second_start = ++i;
+                while (i < _end && _buffer.get(i) != ' ') i++;
+                _second_end = i;
+            } else {
+                _second_start = _second_end = -1;
+            }
+
+            return true;
+
+        }
+
+        /** @return Si la línia només conté espais en blanc (com String.isBlank()). */
+        boolean isBlank() {
+            for (int i = _start; i < _end; i++)
+                if (!isWhitespace(_buffer.get(i))) return false;
+            return true;
+        }
+
+        /** @return Si el primer caràcter no blanc de la línia és '#'. */
+        boolean isComment() {
+            int i = trimStart(_start, _end);
+            return i < _end && _buffer.get(i) == '#';
+        }
+
+        /** @return Si la línia sencera, sense espais als extrems, és igual a \p word. */
+        boolean lineIs(byte[] word) {
+            int s = trimStart(_start, _end);
+            return equals(s, trimEnd(s, _end), word);
+        }
+
+        /** @return Si el primer camp, sense espais als extrems, és igual a \p word. */
+        boolean keyIs(byte[] word) {
+            int s = trimStart(_start, _first_end);
+            return equals(s, trimEnd(s, _first_end), word);
+        }
+
+        /** @return Si el primer camp, tal com és, és igual a \p word. */
+        boolean rawKeyIs(byte[] word) {
+            return equals(_start, _first_end, word);
+        }
+
+        /** @return El primer camp sense espais als extrems. */
+        String key() {
+            int s = trimStart(_start, _first_end);
+            return string(s, trimEnd(s, _first_end));
+        }
+
+        /** @return El primer camp tal com és. */
+        String rawKey() {
+            return string(_start, _first_end);
+        }
+
+        /** @return El primer camp tal com és (el nom d'una regió a "limits_i_mobilitat"), com a símbol. */
+        String firstField() {
+            return symbol(_start, _first_end);
+        }
+
+        /** @return El segon camp com a text. Un mateix nom sempre retorna la mateixa instància de String. */
+        String text() {
+            requireValue();
+            return symbol(_second_start, _second_end);
+        }
+
+        /** @return El segon camp com a enter, amb el mateix resultat que Integer.parseInt(). */
+        int intValue() {
+
+            requireValue();
+
+            int i = _second_start, end = _second_end;
+            boolean negative = i < end && _buffer.get(i) == '-';
+            if (negative || i < end && _buffer.get(i) == '+') i++;
+
+            if (i == end || end - i > 9) return Integer.parseInt(string(_second_start, _second_end));
+
+            int value = 0;
+
+            for (; i < end; i++) {
+                int digit = _buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) return Integer.parseInt(string(_second_start, _second_end));
+                value = value * 10 + digit;
+            }
+
+            return negative ? -value : value;
+
+        }
+
+        /** @return El segon camp com a enter de 64 bits, amb el mateix resultat que Long.parseLong(). */
+        long longValue() {
+
+            requireValue();
+
+            int i = _second_start, end = _second_end;
+            boolean negative = i < end && _buffer.get(i) == '-';
+            if (negative || i < end && _buffer.get(i) == '+') i++;
+
+            if (i == end || end - i > 18) return Long.parseLong(string(_second_start, _second_end));
+
+            long value = 0;
+
+            for (; i < end; i++) {
+                int digit = _buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) return Long.parseLong(string(_second_start, _second_end));
+                value = value * 10 + digit;
+            }
+
+            return negative ? -value : value;
+
+        }
+
+        /** @return El segon camp com a float, amb el mateix resultat que Float.parseFloat(). */
+        float floatValue() {
+            requireValue();
+            return parseFloat(_second_start, _second_end);
+        }
+
+        /** @return El segon camp com a percentatge en tant per u, com el llegeix RegionReader ("20%" -> 0.2). */
+        float percentValue() {
+
+            requireValue();
+
+            int end = _second_end;
+            while (end > _second_start && _buffer.get(end - 1) == '%') end--;
+
+            for (int i = _second_start; i < end; i++) {
+                if (_buffer.get(i) == '%') // cas estrany: es reprodueix exactament el lector original
+                    return Float.parseFloat(string(_second_start, _second_end).replace('%', '\0')) / 100;
+            }
+
+            return parseFloat(_second_start, end) / 100;
+
+        }
+
+        /** @brief Converteix els bytes [s, e) en un float.
+         * Si la mantissa cap exactament en un float i hi ha 10 decimals o menys, tant la mantissa com la potència
+         * de 10 són exactes i la divisió IEEE queda arrodonida correctament, igual que Float.parseFloat().
+         * Altrament es delega a Float.parseFloat().
+         */
+        private float parseFloat(int s, int e) {
+
+            int i = s;
+            boolean negative = i < e && _buffer.get(i) == '-';
+            if (negative || i < e && _buffer.get(i) == '+') i++;
+
+            long mantissa = 0;
+            int decimals = -1, digits = 0;
+
+            for (; i < e; i++) {
+
+                byte b = _buffer.get(i);
+
+                if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                    continue;
+                }
+
+                int digit = b - '0';
+                if (digit < 0 || digit > 9 || ++digits > 9) return Float.parseFloat(string(s, e));
+
+                mantissa = mantissa * 10 + digit;
+                if (decimals >= 0) decimals++;
+
+            }
+
+            if (digits == 0 || mantissa >= (1 << 24) || decimals >= POW10.length)
+                return Float.parseFloat(string(s, e));
+
+            float value = decimals > 0 ? (float)mantissa / POW10[decimals] : (float)mantissa;
+
+            return negative ? -value : value;
+
+        }
+
+        /** @brief Llança una excepció si la línia no té segon camp. */
+        private void requireValue() {
+            if (_second_start < 0)
+                throw new InputMismatchException("Falta el valor de: " + key());
+        }
+
+        /** @return El primer índex de [s, e) que no és un caràcter eliminat per String.trim(). */
+        private int trimStart(int s, int e) {
+            while (s < e && (_buffer.get(s) & 0xff) <= ' ') s++;
+            return s;
+        }
+
+        /** @return El final de [s, e) sense els caràcters eliminats per String.trim(). */
+        private int trimEnd(int s, int e) {
+            while (e > s && (_buffer.get(e - 1) & 0xff) <= ' ') e--;
+            return e;
+        }
+
+        /** @return Si els bytes [s, e) són iguals a \p word. */
+        private boolean equals(int s, int e, byte[] word) {
+            if (e - s != word.length) return false;
+            for (int i = 0; i < word.length; i++)
+                if (_buffer.get(s + i) != word[i]) return false;
+            return true;
+        }
+
+        /** @brief Retorna el símbol dels bytes [s, e) i l'afegeix a la taula si encara no hi és.
+         * Els noms de regions i virus es repeteixen molt (sobretot a "limits_i_mobilitat" i a l'estat inicial):
+         * d'aquesta manera només es descodifiquen una vegada i tots comparteixen la mateixa instància.
+         */
+        private String symbol(int s, int e) {
+
+            int hash = 0;
+            for (int i = s; i < e; i++) hash = 31 * hash + _buffer.get(i);
+            hash ^= hash >>> 16;
+
+            int mask = _symbols.length - 1;
+            int slot = hash & mask;
+
+            while (_symbols[slot] != null) {
+
+                if (_symbol_hashes[slot] == hash && equals(s, e, _symbol_bytes[slot])) return _symbols[slot];
+                slot = (slot + 1) & mask;
+
+            }
+
+            String symbol = string(s, e);
+            byte[] bytes = new byte[e - s];
+            _buffer.get(s, bytes, 0, bytes.length);
+
+            _symbols[slot] = symbol;
+            _symbol_bytes[slot] = bytes;
+            _symbol_hashes[slot] = hash;
+
+            if (++_symbol_count * 2 > _symbols.length) rehash();
+
+            return symbol;
+
+        }
+
+        /** @brief Duplica la mida de la taula de símbols. */
+        private void rehash() {
+
+            String[] symbols = _symbols;
+            byte[][] symbol_bytes = _symbol_bytes;
+            int[] symbol_hashes = _symbol_hashes;
+
+            _symbols = new String[symbols.length * 2];
+            _symbol_bytes = new byte[symbols.length * 2][];
+            _symbol_hashes = new int[symbols.length * 2];
+
+            int mask = _symbols.length - 1;
+
+            for (int i = 0; i < symbols.length; i++) {
+
+                if (symbols[i] == null) continue;
+
+                int slot = symbol_hashes[i] & mask;
+                while (_symbols[slot] != null) slot = (slot + 1) & mask;
+
+                _symbols[slot] = symbols[i];
+                _symbol_bytes[slot] = symbol_bytes[i];
+                _symbol_hashes[slot] = symbol_hashes[i];
+
+            }
+
+        }
+
+        /** @return Els bytes [s, e) descodificats en UTF-8. */
+        private String string(int s, int e) {
+            int length = e - s;
+            if (length > _scratch.length) _scratch = new byte[Math.max(length, _scratch.length * 2)];
+            _buffer.get(s, _scratch, 0, length);
+            return new String(_scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /** @return Si \p b és un espai en blanc segons Character.isWhitespace(). */
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+        }
+
+    }
+
+}
@@ -13,6 +13,10 @@ import java.util.*;
  * @class Filter
  * @brief Classe encarregada de guardar un conjunt d'informació i filtrar-la per diferents criteris com virus, regió,
  * els dos o cap.
+ *
+ * Un Filter creat a partir d'una Simulation llegeix i acumula les dades de la simulació (updateDataNextTick) i només
+ * es pot fer servir des del Thread que la fa avançar. Un Filter creat a partir d'una SimulationSnapshot només filtra
+ * les dades de la instantània, que no canvien, i es pot fer servir des de qualsevol Thread.
  * @author Jordi Badia
  */
 public class Filter {
@@ -28,8 +32,10 @@ public class Filter {
     ///< Mapa de mapes que indexen objectes de tipus Data primer per VIRUS i després per REGIÓ.
     private final Map<Region, Map<Virus, Data>> _dataRV;
     ///< Mapa de mapes que indexen objectes de tipus Data primer per REGIÓ i després per VIRUS.
-    private Region _region_filter; ///< Regió pel qual es filtra (null si no hi ha filtre).
-    private Virus _virus_filter; ///< Virus pel qual es filtra (null si no hi ha filtre).
+    private final List<Data> _data_list; ///< Data de cada afectació en ordre d'aparició (null si és una instantània).
+    private final SimulationSnapshot _snapshot; ///< Instantània de la qual es filtren les dades (null si és la simulació).
+    private volatile Region _region_filter; ///< Regió pel qual es filtra (null si no hi ha filtre).
+    private volatile Virus _virus_filter; ///< Virus pel qual es filtra (null si no hi ha filtre).
     private int _last_virus_index; ///< Índex de l'últim virus aparegut a _virus_list (per controlar les mutacions).
 
 
@@ -47,6 +53,8 @@ public class Filter {
 
         _region_filter = null;
         _virus_filter = null;
+        _snapshot = null;
+        _data_list = new ArrayList<>();
         _dataVR = new HashMap<>();
         _dataRV = new HashMap<>();
         _virus_list = simulation.virusList();
@@ -67,6 +75,7 @@ public class Filter {
 
                 _dataVR.get(virus).put(region, new_data);
                 tmp.put(virus, new_data);
+                _data_list.add(new_data);
 
             }
 
@@ -76,6 +85,27 @@ public class Filter {
 
     }
 
+    /** @brief Constructor que filtra les dades d'una instantània de la simulació.
+     * @pre \p snapshot no és null. \p region i \p virus són null o de la instantània.
+     * @post El filtre llegeix les dades de \p snapshot, amb els filtres \p region i \p virus.
+     * @param snapshot Instantània de la simulació.
+     * @param region Regió per la qual es filtra (null si no hi ha filtre).
+     * @param virus Virus pel qual es filtra (null si no hi ha filtre).
+     */
+    public Filter(SimulationSnapshot snapshot, Region region, Virus virus) {
+
+        _region_filter = region;
+        _virus_filter = virus;
+        _snapshot = snapshot;
+        _data_list = null;
+        _dataVR = snapshot.dataByVirus();
+        _dataRV = snapshot.dataByRegion();
+        _virus_list = snapshot.viruses();
+        _region_list = snapshot.regions();
+        _last_virus_index = _virus_list.size();
+
+    }
+
 
 
     // Funcions públiques
@@ -90,6 +120,16 @@ public class Filter {
 
     }
 
+    /** @brief Getter de la instantània filtrada.
+     * @pre True.
+     * @return La instantània de la qual es filtren les dades (null si es filtren les de la simulació).
+     */
+    public SimulationSnapshot snapshot() {
+
+        return _snapshot;
+
+    }
+
     /** @brief Getter del filtre de virus.
      * @pre True.
      * @return El virus establert com a filtre (null si no n'hi ha).
@@ -102,17 +142,16 @@ public class Filter {
 
     /** @brief Actualitza els objectes Data d'aquest objecte al nou tick generat, i afegeix el de les noves afectacions.
      * @pre Des de l'última crida d'aquesta funció, la simulació de la qual llegeix aquest Filtre ha generat un nou tick.
+     * El filtre no és d'una instantània.
      * @post S'actualitzen tots els objectes de Data de \p _dataVR (i, per tant, de \p _dataRV), es llegeixen i
      * carreguen els nous virus apareguts per mutació i es generen nous objectes Data per les afectacions aparegudes.
      */
     public void updateDataNextTick() {
 
         // Actualització de la Data present
-        for (Map<Region, Data> map : _dataVR.values())
+        for (Data data : _data_list)
 
-            for (Data data : map.values())
-
-                data.updateData();
+            data.updateData();
 
 
         // Ampliació amb els nous virus apareguts per mutació
@@ -133,6 +172,7 @@ public class Filter {
 
                 _dataVR.get(virus).put(region, new_data);
                 _dataRV.get(region).put(virus, new_data);
+                _data_list.add(new_data);
 
             }
 
@@ -189,7 +229,18 @@ public class Filter {
      */
     public Data summary() {
 
-        return new Data(_region_filter, _virus_filter, log().iterator());
+        return summary(_region_filter, _virus_filter);
+
+    }
+
+    /** @brief Getter de les dades de cada afectació, en ordre d'aparició.
+     * @pre El filtre no és d'una instantània.
+     * @return Els objectes Data de totes les afectacions, en l'ordre en què han aparegut (els nous s'afegeixen al
+     * final). La llista és la interna: no s'ha de modificar.
+     */
+    public List<Data> dataList() {
+
+        return _data_list;
 
     }
 
@@ -200,33 +251,7 @@ public class Filter {
      */
     public List<Data> log() {
 
-        ArrayList<Data> res = new ArrayList<>();
-
-        if (_virus_filter != null && _region_filter != null) { //Filtre per virus i regions
-
-            Data to_add = _dataVR.get(_virus_filter).get(_region_filter);
-            res.add(to_add != null ? to_add : new Data(_region_filter,_virus_filter));
-
-        }
-        else if (_virus_filter != null) { //Filtre per virus
-
-            res.addAll(_dataVR.get(_virus_filter).values());
-
-        }
-        else if (_region_filter != null) { //Filtre per regions
-
-            res.addAll(_dataRV.get(_region_filter).values());
-
-        }
-        else { //Sense filtres
-
-            for (Map<Region, Data> virusData : _dataVR.values())
-
-                res.addAll(virusData.values());
-
-        }
-
-        return res;
+        return log(_region_filter, _virus_filter);
 
     }
 
@@ -246,11 +271,11 @@ public class Filter {
 
     /** @brief Retorna el conjunt d'informació genèrica dels elements del log()
      * @pre True.
-     * @return Un ArrayList de TreeMap de String i Integers amb la informació genèrica dels elements del log().
+     * @return Un ArrayList de TreeMap de String i Long amb la informació genèrica dels elements del log().
      */
-    public ArrayList<TreeMap<String, Integer>> generalData() {
+    public ArrayList<TreeMap<String, Long>> generalData() {
 
-        ArrayList<TreeMap<String, Integer>> res = new ArrayList<>();
+        ArrayList<TreeMap<String, Long>> res = new ArrayList<>();
 
         for (Data data : log())
             res.add(data.generalData());
@@ -261,11 +286,11 @@ public class Filter {
 
     /** @brief Retorna el conjunt d'informació dels malalts dels elements del log()
      * @pre True.
-     * @return Un ArrayList de TreeMap de String i Integers amb la informació dels malalts dels elements del log().
+     * @return Un ArrayList de TreeMap de String i Long amb la informació dels malalts dels elements del log().
      */
-    public ArrayList<TreeMap<String, Integer>> diseaseData() {
+    public ArrayList<TreeMap<String, Long>> diseaseData() {
 
-        ArrayList<TreeMap<String, Integer>> res = new ArrayList<>();
+        ArrayList<TreeMap<String, Long>> res = new ArrayList<>();
 
         for (Data data : log())
             res.add(data.diseaseData());
@@ -276,11 +301,11 @@ public class Filter {
 
     /** @brief Retorna el conjunt d'informació dels contagiosos dels elements del log()
      * @pre True.
-     * @return Un ArrayList de TreeMap de String i Integers amb la informació dels contagiosos dels elements del log().
+     * @return Un ArrayList de TreeMap de String i Long amb la informació dels contagiosos dels elements del log().
      */
-    public ArrayList<TreeMap<String, Integer>> contagiousData() {
+    public ArrayList<TreeMap<String, Long>> contagiousData() {
 
-        ArrayList<TreeMap<String, Integer>> res = new ArrayList<>();
+        ArrayList<TreeMap<String, Long>> res = new ArrayList<>();
 
         for (Data data : log())
             res.add(data.contagiousData());
@@ -295,20 +320,73 @@ public class Filter {
      */
     public boolean contagiousPopulation() {
 
-        // Guarda els filtres i els desactiva
-        Region old_region_filter = _region_filter;
-        Virus old_virus_filter = _virus_filter;
-        _region_filter = null;
-        _virus_filter = null;
+        return summary(null, null).virusPresence() != 0;
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Genera un objecte de tipus Data amb la suma de les dades que compleixen els filtres \p region i \p virus.
+     * @pre True.
+     * @return La suma de log(region, virus).
+     */
+    private Data summary(Region region, Virus virus) {
+
+        return new Data(region, virus, log(region, virus).iterator(), region == null ? 0 : inhabitants(region),
+                region == null ? 0 : foreign(region));
+
+    }
+
+    /** @brief Retorna una llista dels objectes de tipus Data que compleixen els filtres \p region i \p virus.
+     * @pre True.
+     * @return Una llista d'objectes de tipus Data que compleixen els filtres (null vol dir sense filtre).
+     */
+    private List<Data> log(Region region, Virus virus) {
+
+        ArrayList<Data> res = new ArrayList<>();
+
+        if (virus != null && region != null) { //Filtre per virus i regions
+
+            Data to_add = _dataVR.get(virus).get(region);
+            res.add(to_add != null ? to_add : new Data(region, virus, inhabitants(region), foreign(region)));
+
+        }
+        else if (virus != null) { //Filtre per virus
+
+            res.addAll(_dataVR.get(virus).values());
+
+        }
+        else if (region != null) { //Filtre per regions
+
+            res.addAll(_dataRV.get(region).values());
+
+        }
+        else { //Sense filtres
+
+            for (Map<Region, Data> virusData : _dataVR.values())
 
-        boolean res = summary().virusPresence() != 0;
+                res.addAll(virusData.values());
 
-        // Reactiva els filtres que hi havia en cridar la funció
-        _region_filter = old_region_filter;
-        _virus_filter = old_virus_filter;
+        }
 
         return res;
 
     }
 
+    /** @return Els habitants de \p region a la instantània o, si no n'hi ha, a la simulació. */
+    private double inhabitants(Region region) {
+
+        return _snapshot != null ? _snapshot.inhabitants(region) : region.inhabitants();
+
+    }
+
+    /** @return Els turistes de \p region a la instantània o, si no n'hi ha, a la simulació. */
+    private double foreign(Region region) {
+
+        return _snapshot != null ? _snapshot.foreign(region) : region.foreign();
+
+    }
+
 }
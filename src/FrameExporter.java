@@ -0,0 +1,152 @@
+/**
+ * @file FrameExporter.java
+ * @brief Classe FrameExporter
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/** @class FrameExporter
+ * @brief Etapa del canal de sortida (TickPipeline) que escriu els frames en un fitxer binari, per analitzar
+ * execucions llargues fora del programa.
+ *
+ * Format (big-endian, DataOutputStream):
+ *  - Capçalera: MAGIC, VERSION, Data.FIELDS, nombre de regions i el nom de cada regió.
+ *  - Un registre per frame: tick (int), número del frame (long), si queden contagiats o immunes (boolean), virus nous
+ *    (int) i el nom de cadascun, habitants, turistes (doubles) i confinament (booleans) de cada regió, afectacions
+ *    (int), afectacions noves (int) amb l'índex de la regió i del virus de cadascuna, i els Data.FIELDS valors de
+ *    cada afectació en l'ordre de Data.store.
+ *
+ * Els virus i les afectacions s'identifiquen per l'ordre en què han aparegut al fitxer. Amb una contrapressió que
+ * descarta ticks, el fitxer només té els ticks publicats.
+ */
+public class FrameExporter implements TickPipeline.Stage {
+
+    // Constants
+
+    private static final int MAGIC = 0x564C5446; ///< "VLTF".
+    private static final int VERSION = 1; ///< Versió del format.
+
+
+
+    // Private attributes
+
+    private final Path _path; ///< Fitxer de sortida.
+    private DataOutputStream _output; ///< Sortida (null si hi ha hagut un error).
+    private final Map<Region, Integer> _region_index = new IdentityHashMap<>(); ///< Índex de cada regió al fitxer.
+    private final Map<Virus, Integer> _virus_index = new IdentityHashMap<>(); ///< Índex de cada virus al fitxer.
+    private int _slots = 0; ///< Afectacions ja escrites al fitxer.
+
+
+
+    // Constructors
+
+    /** @brief Crea el fitxer de sortida.
+     * @pre True.
+     * @param path Fitxer on s'escriuen els frames (se sobreescriu si ja existeix).
+     * @throws IOException Si no es pot crear el fitxer.
+     */
+    public FrameExporter(Path path) throws IOException {
+
+        _path = path;
+        _output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @brief Escriu el registre de \p frame (i la capçalera, si és el primer).
+     * @pre Es crida des del Thread de l'etapa.
+     * @post Si no hi ha més frames esperant, tot el que s'ha escrit ja és al fitxer. Si hi ha un error d'escriptura,
+     * es mostra i no s'escriu res més.
+     */
+    @Override
+    public void accept(TickFrame frame, boolean more) {
+
+        if (_output == null) return;
+
+        try {
+
+            if (_region_index.isEmpty()) writeHeader(frame.regions());
+
+            write(frame);
+
+            if (!more) _output.flush();
+
+        } catch (IOException e) {
+
+            System.err.println("No s'ha pogut escriure a " + _path + ": " + e.getMessage());
+
+            try {
+                _output.close();
+            } catch (IOException ignored) {
+                // Ja s'ha mostrat l'error
+            }
+
+            _output = null;
+
+        }
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Escriu la capçalera amb les regions de \p regions. */
+    private void writeHeader(List<Region> regions) throws IOException {
+
+        _output.writeInt(MAGIC);
+        _output.writeInt(VERSION);
+        _output.writeInt(Data.FIELDS);
+        _output.writeInt(regions.size());
+
+        for (int i = 0; i < regions.size(); i++) {
+            _region_index.put(regions.get(i), i);
+            _output.writeUTF(regions.get(i).name());
+        }
+
+    }
+
+    /** @brief Escriu el registre de \p frame. */
+    private void write(TickFrame frame) throws IOException {
+
+        int n = frame.regions().size();
+
+        _output.writeInt(frame.tick());
+        _output.writeLong(frame.version());
+        _output.writeBoolean(frame.contagiousPopulation());
+
+        _output.writeInt(frame.virusCount() - _virus_index.size());
+        for (int k = _virus_index.size(); k < frame.virusCount(); k++) {
+            _virus_index.put(frame.virus(k), k);
+            _output.writeUTF(frame.virus(k).name());
+        }
+
+        for (int i = 0; i < n; i++) _output.writeDouble(frame.inhabitants(i));
+        for (int i = 0; i < n; i++) _output.writeDouble(frame.foreign(i));
+        for (int i = 0; i < n; i++) _output.writeBoolean(frame.isOnLockdown(i));
+
+        _output.writeInt(frame.slots());
+        _output.writeInt(frame.slots() - _slots);
+        for (int s = _slots; s < frame.slots(); s++) {
+            _output.writeInt(_region_index.get(frame.slotRegion(s)));
+            _output.writeInt(_virus_index.get(frame.slotVirus(s)));
+        }
+        _slots = frame.slots();
+
+        for (int s = 0; s < frame.slots(); s++)
+            for (int f = 0; f < Data.FIELDS; f++) _output.writeDouble(frame.value(s, f));
+
+    }
+
+}
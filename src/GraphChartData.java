@@ -2,12 +2,16 @@
  * @brief Classe GraphChartData
  */
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import com.brunomnsilva.smartgraph.graph.*;
 import com.brunomnsilva.smartgraph.graphview.SmartCircularSortedPlacementStrategy;
 import com.brunomnsilva.smartgraph.graphview.SmartGraphPanel;
 import com.brunomnsilva.smartgraph.graphview.SmartGraphProperties;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
@@ -19,10 +23,79 @@ import javafx.scene.input.MouseEvent;
  * @brief Classe encarregada de gestionar tota la interacció externa amb les dades del Graf i dels Charts.
  * Cada mètode modificador s'assegura que s'executi des del Thread del JavaFX (altrament no es pot modificar
  * i es llança una excepció).
+ *
+ * Les dades dels PieCharts no es dibuixen quan es publiquen (publishFrame): el Thread que les publica només deixa
+ * el quadre a \p pendingFrame i el Thread del JavaFX dibuixa l'últim quadre publicat com a molt
+ * MAX_FRAMES_PER_SECOND cops per segon. Els quadres que se substitueixen abans de dibuixar-se no es dibuixen mai.
+ *
+ * Els canvis d'estil del graf (lockEdge, hardLock...) tampoc no es dibuixen d'un en un: s'encuen a \p styleChanges i
+ * el mateix temporitzador els aplica tots junts abans de dibuixar el graf un sol cop. Amb LARGE_GRAPH_REGIONS regions o
+ * més, el graf es mostra amb una LargeGraphView en comptes del SmartGraphPanel (useLargeGraph).
  * @author Aniol Juanola
  */
 public class GraphChartData {
 
+    /** @class Frame
+     * @brief Dades i títols dels tres PieCharts en un moment de la simulació. No es modifiquen un cop publicades.
+     */
+    public static class Frame {
+
+        private final String title; ///< Títol del PieChart general.
+        private final String leftTitle; ///< Títol del PieChart inferior esquerre.
+        private final String rightTitle; ///< Títol del PieChart inferior dret.
+        private final ArrayList<String> titles; ///< Pool de títols.
+        private final ArrayList<TreeMap<String, Long>> top; ///< Pool de dades del PieChart superior.
+        private final ArrayList<TreeMap<String, Long>> left; ///< Pool de dades del PieChart inferior esquerre.
+        private final ArrayList<TreeMap<String, Long>> right; ///< Pool de dades del PieChart inferior dret.
+
+        /** @brief Crea un quadre.
+         * @pre top.size() == left.size() == right.size() i cap paràmetre és null.
+         * @post El quadre conté els paràmetres, que no s'han de modificar més.
+         */
+        public Frame(String title, String leftTitle, String rightTitle, ArrayList<String> titles,
+                     ArrayList<TreeMap<String, Long>> top, ArrayList<TreeMap<String, Long>> left,
+                     ArrayList<TreeMap<String, Long>> right) {
+            this.title = title;
+            this.leftTitle = leftTitle;
+            this.rightTitle = rightTitle;
+            this.titles = titles;
+            this.top = top;
+            this.left = left;
+            this.right = right;
+        }
+
+    }
+
+    private static final int MAX_FRAMES_PER_SECOND = 30; ///< Quadres dels PieCharts que es dibuixen per segon.
+    private static final long MIN_FRAME_NANOS = 1_000_000_000L / MAX_FRAMES_PER_SECOND; ///< Temps mínim entre quadres.
+
+    public static final int LARGE_GRAPH_REGIONS = 500; ///< Regions a partir de les quals es mostra una LargeGraphView.
+
+    private final AtomicReference<Frame> pendingFrame = new AtomicReference<>();
+    ///< Últim quadre publicat que encara no s'ha dibuixat (null si no n'hi ha cap).
+
+    private final ConcurrentLinkedQueue<Runnable> styleChanges = new ConcurrentLinkedQueue<>();
+    ///< Canvis d'estil del graf que encara no s'han aplicat.
+
+    private final AnimationTimer frameTimer = new AnimationTimer() {
+        private long lastFrame; ///< Instant en què s'ha dibuixat l'últim quadre.
+
+        @Override
+        public void handle(long now) {
+            if (now - lastFrame < MIN_FRAME_NANOS) return;
+            lastFrame = now;
+
+            applyStyleChanges();
+
+            Frame frame = pendingFrame.getAndSet(null);
+            if (frame != null) drawFrame(frame);
+
+            if (largeGraph != null) largeGraph.paint();
+            if (heatmap != null) heatmap.paint();
+        }
+    };
+    ///< Temporitzador del Thread del JavaFX que dibuixa els quadres publicats.
+
     private final Graph<String, String> graph = new GraphEdgeList<>(); ///< Objecte del graf.
 
     private final HashMap<Region, HashMap<Region, Edge<String, String>>> edgeMap = new HashMap<>();
@@ -39,6 +112,10 @@ public class GraphChartData {
 
     private final SmartGraphPanel<String, String> graphView; ///< Panell de JavaFX que conté el Graf.
 
+    private LargeGraphView largeGraph; ///< Vista del graf per a territoris grans (null si es fa servir graphView).
+
+    private HeatmapView heatmap; ///< Mapa de calor de les regions (null si no se n'ha creat cap).
+
     private final Button forwardButton = new Button(); ///< Botó que permet avançar en el pool de gràfics dels filtres
     ///seleccionats.
     private final Button backwardButton = new Button(); ///< Botó que permet retrocedir en el pool de gràfics dels
@@ -105,6 +182,8 @@ public class GraphChartData {
                 refreshData();
             }
         });
+
+        ensureFXThread(frameTimer::start);
     }
 
     /** @brief Mètode que assegura que el Runnable
@@ -129,6 +208,68 @@ public class GraphChartData {
      */
     public SmartGraphPanel<String, String> graphView() { return graphView; }
 
+    /** @brief Mostra el graf amb una LargeGraphView en comptes del SmartGraphPanel.
+     * @pre Es crida des del Thread del JavaFX, abans de cap canvi d'estil i en comptes d'addVertexs i addEdges.
+     * @param regions Regions del territori.
+     * @param width Amplada de la vista en píxels.
+     * @param height Alçada de la vista en píxels.
+     * @param layoutCache Fitxer on es desa la disposició del graf (null per no desar-la).
+     * @post Els canvis d'estil es dibuixen a la vista gran. La disposició es calcula (o es carrega) en un altre Thread.
+     */
+    public void useLargeGraph(List<Region> regions, double width, double height, Path layoutCache) {
+        largeGraph = new LargeGraphView(regions, width, height, layoutCache);
+    }
+
+    /** @brief Retorna la vista del graf per a territoris grans.
+     * @pre True.
+     * @return La LargeGraphView del graf, o null si es fa servir el SmartGraphPanel.
+     */
+    public LargeGraphView largeGraph() { return largeGraph; }
+
+    /** @brief Crea el mapa de calor de les regions, que es dibuixa amb el mateix temporitzador que els PieCharts.
+     * @pre Es crida des del Thread del JavaFX. \p regions no és buida.
+     * @param regions Regions del territori.
+     * @param width Amplada del mapa en píxels.
+     * @param height Alçada del mapa en píxels.
+     * @post Les publicacions de publishHeatmap es dibuixen al mapa de calor.
+     */
+    public void useHeatmap(List<Region> regions, double width, double height) {
+        heatmap = new HeatmapView(regions, width, height);
+    }
+
+    /** @brief Retorna el mapa de calor de les regions.
+     * @pre True.
+     * @return El HeatmapView, o null si no se n'ha creat cap.
+     */
+    public HeatmapView heatmap() { return heatmap; }
+
+    /** @brief Publica les dades del mapa de calor.
+     * @pre \p snapshot és una instantània de la simulació mostrada.
+     * @param snapshot Instantània de la simulació.
+     * @param virus Virus del qual es mostren les dades (null per sumar tots els virus).
+     * @param title Títol de les dades.
+     * @post Si hi ha mapa de calor, les dades es dibuixaran al quadre següent. No bloqueja mai el Thread que crida.
+     */
+    public void publishHeatmap(SimulationSnapshot snapshot, Virus virus, String title) {
+        if (heatmap != null) heatmap.publish(snapshot, virus, title);
+    }
+
+    /** @brief Aplica tots els canvis d'estil pendents i torna a dibuixar el graf un sol cop.
+     * @pre Es crida des del Thread del JavaFX.
+     * @post styleChanges és buida. Si hi havia canvis, el graf els mostra.
+     */
+    private void applyStyleChanges() {
+        Runnable change = styleChanges.poll();
+        if (change == null) return;
+
+        while (change != null) {
+            change.run();
+            change = styleChanges.poll();
+        }
+
+        if (largeGraph == null) graphView.update();
+    }
+
     /** @brief Donat un iterador de Regions, afegeix totes les regions com a vèrtexs del graf.
      * @pre True.
      * @param iterator Iterador d'una Collection de Regions.
@@ -171,24 +312,15 @@ public class GraphChartData {
      * @post El color de l'aresta que connecta r1 i r2 serà vermell (tancat).
      */
     public void lockEdge(Region r1, Region r2) {
-        if (edgeMap.get(r1).get(r2) == null) {
-            if (edgeMap.get(r2).get(r1) == null) {
-                throw new IllegalArgumentException("L'aresta entre les regions seleccionades (" + r1.name()
-                        + " i " + r2.name() + ") no existeix.");
-            }
-            ensureFXThread(() -> {
-                graphView.getStylableEdge(edgeMap.get(r2).get(r1)).setStyleClass("locked-edge");
-
-                graphView.update();
-            });
+        if (largeGraph != null) {
+            checkEdge(largeGraph.hasEdge(r1, r2), r1, r2);
+            styleChanges.add(() -> largeGraph.setEdgeLocked(r1, r2, true));
+            return;
         }
-        else {
-            ensureFXThread(() -> {
-                graphView.getStylableEdge(edgeMap.get(r1).get(r2)).setStyleClass("locked-edge");
 
-                graphView.update();
-            });
-        }
+        Edge<String, String> edge = edgeMap.get(r1).get(r2) != null ? edgeMap.get(r1).get(r2) : edgeMap.get(r2).get(r1);
+        checkEdge(edge != null, r1, r2);
+        styleChanges.add(() -> graphView.getStylableEdge(edge).setStyleClass("locked-edge"));
     }
 
     /** @brief Canvia el color de l'aresta que connecta r1 i r2 a blau (obert).
@@ -198,25 +330,34 @@ public class GraphChartData {
      * @post El color de l'aresta que connecta r1 i r2 serà el per defecte (obert).
      */
     public void unlockEdge(Region r1, Region r2) {
-        if (edgeMap.get(r1).get(r2) == null) {
-            if (edgeMap.get(r2).get(r1) == null) {
-                throw new IllegalArgumentException("L'aresta entre les regions seleccionades (" + r1.name()
-                        + " i " + r2.name() + ") no existeix.");
-            }
-            ensureFXThread(() -> {
-                graphView.getStylableEdge(edgeMap.get(r2).get(r1)).setStyleClass("edge");
-                graphView.getStylableVertex(r1.name()).setStyleClass("vertex");
-                graphView.getStylableVertex(r2.name()).setStyleClass("vertex");
-                graphView.update();
+        if (largeGraph != null) {
+            checkEdge(largeGraph.hasEdge(r1, r2), r1, r2);
+            styleChanges.add(() -> {
+                largeGraph.setEdgeLocked(r1, r2, false);
+                largeGraph.setRegionLocked(r1, false);
+                largeGraph.setRegionLocked(r2, false);
             });
+            return;
         }
-        else {
-            ensureFXThread(() -> {
-                graphView.getStylableEdge(edgeMap.get(r1).get(r2)).setStyleClass("edge");
-                graphView.getStylableVertex(r1.name()).setStyleClass("vertex");
-                graphView.getStylableVertex(r2.name()).setStyleClass("vertex");
-                graphView.update();
-            });
+
+        Edge<String, String> edge = edgeMap.get(r1).get(r2) != null ? edgeMap.get(r1).get(r2) : edgeMap.get(r2).get(r1);
+        checkEdge(edge != null, r1, r2);
+        styleChanges.add(() -> {
+            graphView.getStylableEdge(edge).setStyleClass("edge");
+            graphView.getStylableVertex(r1.name()).setStyleClass("vertex");
+            graphView.getStylableVertex(r2.name()).setStyleClass("vertex");
+        });
+    }
+
+    /** @brief Comprova que existeix l'aresta entre r1 i r2.
+     * @pre True.
+     * @param exists Si l'aresta existeix.
+     * @post Si no existeix, llança una IllegalArgumentException.
+     */
+    private static void checkEdge(boolean exists, Region r1, Region r2) {
+        if (!exists) {
+            throw new IllegalArgumentException("L'aresta entre les regions seleccionades (" + r1.name()
+                    + " i " + r2.name() + ") no existeix.");
         }
     }
 
@@ -226,10 +367,8 @@ public class GraphChartData {
      * @post La regió queda pintada de vermell.
      */
     public void hardLock(Region r1) {
-        ensureFXThread(() -> {
-            graphView.getStylableVertex(r1.name()).setStyleClass("locked-vertex");
-            graphView.update();
-        });
+        if (largeGraph != null) styleChanges.add(() -> largeGraph.setRegionLocked(r1, true));
+        else styleChanges.add(() -> graphView.getStylableVertex(r1.name()).setStyleClass("locked-vertex"));
     }
 
     /** @brief Desbloqueja la regió.
@@ -238,23 +377,21 @@ public class GraphChartData {
      * @post La regió queda del color original.
      */
     public void hardUnlock(Region r1) {
-        ensureFXThread(() -> {
-            graphView.getStylableVertex(r1.name()).setStyleClass("vertex");
-            graphView.update();
-        });
+        if (largeGraph != null) styleChanges.add(() -> largeGraph.setRegionLocked(r1, false));
+        else styleChanges.add(() -> graphView.getStylableVertex(r1.name()).setStyleClass("vertex"));
     }
 
 
     //========================================================================
 
-    private ArrayList<TreeMap<String, Integer>> topDataPool; ///< Conjunt de dades del PieChart superior.
+    private ArrayList<TreeMap<String, Long>> topDataPool; ///< Conjunt de dades del PieChart superior.
 
     /** @brief Substitueix el pool de dades del PieChart superior.
      * @pre newData != null
      * @param newData Nou pool de dades pel PieChart superior.
      * @post topDataPool és newData i l'índex = 0.
      */
-    public void updateTopDataPool(ArrayList<TreeMap<String, Integer>> newData) {
+    public void updateTopDataPool(ArrayList<TreeMap<String, Long>> newData) {
         topDataPool = newData;
         index = 0;
     }
@@ -268,9 +405,9 @@ public class GraphChartData {
 
     //======================================================
 
-    private ArrayList<TreeMap<String, Integer>> leftDataPool; ///< Conjunt de dades del PieChart inferior esquerra.
+    private ArrayList<TreeMap<String, Long>> leftDataPool; ///< Conjunt de dades del PieChart inferior esquerra.
 
-    private ArrayList<TreeMap<String, Integer>> rightDataPool; ///< Conjunt de dades del PieChart inferior dret.
+    private ArrayList<TreeMap<String, Long>> rightDataPool; ///< Conjunt de dades del PieChart inferior dret.
 
     private int index = 0; ///< Índex de la posició de les diferents dades dels PieCharts (és compartit).
 
@@ -278,11 +415,43 @@ public class GraphChartData {
 
     private String mainTitle; ///< Títol que es conserva independentment del conjunt de dades mostrat.
 
+    /** @brief Publica les dades i els títols dels PieCharts perquè es dibuixin.
+     * @pre \p frame no és null i no es modificarà més.
+     * @param frame Quadre a dibuixar.
+     * @post \p frame substitueix el quadre pendent, si n'hi havia cap. El Thread del JavaFX el dibuixarà com a molt
+     * MAX_FRAMES_PER_SECOND cops per segon. No bloqueja mai el Thread que crida.
+     */
+    public void publishFrame(Frame frame) {
+        pendingFrame.set(frame);
+    }
+
+    /** @brief Dibuixa un quadre publicat.
+     * @pre Es crida des del Thread del JavaFX.
+     * @param frame Quadre a dibuixar.
+     * @post Els pools de dades i de títols són els de \p frame, l'índex = 0 i els PieCharts el mostren.
+     */
+    private void drawFrame(Frame frame) {
+        variableTitlePool = frame.titles;
+        topDataPool = frame.top;
+        leftDataPool = frame.left;
+        rightDataPool = frame.right;
+        index = 0;
+
+        mainTitle = frame.title;
+        changeLeftPieChartTitle(frame.leftTitle);
+        changeRightPieChartTitle(frame.rightTitle);
+
+        refreshData();
+    }
+
     /** @brief Neteja les dades dels PieCharts i les actualitza per les marcades per la posició de la variable índex.
      * @pre 0 <= index < topDataPool.size() && topDataPool.size() == leftDataPool.size() == rightDataPool.size()
-     * @post Els tres PieCharts mostren les dades de les posicions índex de cada un dels pools de dades.
+     * @post Els tres PieCharts mostren les dades de les posicions índex de cada un dels pools de dades. Si encara
+     * no s'ha dibuixat cap quadre, no fa res.
      */
     public void refreshData() {
+        if (topDataPool == null) return;
+
         clearPieChart();
         clearRightPieChart();
         clearLeftPieChart();
@@ -290,17 +459,17 @@ public class GraphChartData {
         changePieChartTitle(mainTitle);
 
         //top
-        for (Map.Entry<String, Integer> d : topDataPool.get(index).entrySet()) {
+        for (Map.Entry<String, Long> d : topDataPool.get(index).entrySet()) {
             addDataToPieChart(d.getKey(), d.getValue());
         }
 
         //left
-        for (Map.Entry<String, Integer> d : leftDataPool.get(index).entrySet()) {
+        for (Map.Entry<String, Long> d : leftDataPool.get(index).entrySet()) {
             addDataToLeftPieChart(d.getKey(), d.getValue());
         }
 
         //right
-        for (Map.Entry<String, Integer> d : rightDataPool.get(index).entrySet()) {
+        for (Map.Entry<String, Long> d : rightDataPool.get(index).entrySet()) {
             addDataToRightPieChart(d.getKey(), d.getValue());
         }
     }
@@ -321,7 +490,7 @@ public class GraphChartData {
      * @param newData Nou pool de dades pel PieChart inferior esquerra.
      * @post leftDataPool és newData i l'índex = 0.
      */
-    public void updateLeftDataPool(ArrayList<TreeMap<String, Integer>> newData) {
+    public void updateLeftDataPool(ArrayList<TreeMap<String, Long>> newData) {
         leftDataPool = newData;
         index = 0;
     }
@@ -331,7 +500,7 @@ public class GraphChartData {
      * @param newData Nou pool de dades pel PieChart inferior dret.
      * @post rightDataPool és newData i l'índex = 0.
      */
-    public void updateRightDataPool(ArrayList<TreeMap<String, Integer>> newData) {
+    public void updateRightDataPool(ArrayList<TreeMap<String, Long>> newData) {
         rightDataPool = newData;
         index = 0;
     }
@@ -353,7 +522,7 @@ public class GraphChartData {
      * @post S'afegeix la categoria s amb valor i al PieChart general. Es redimensiona el PieChart i es col·loca a
      * l'esquerra de l'eix vertical (en última posició).
      */
-    public void addDataToPieChart(String s, int i) {
+    public void addDataToPieChart(String s, long i) {
         ensureFXThread(() -> {
             pieChartData.add( new PieChart.Data(s, i));
             pieChart.setData(pieChartData);
@@ -367,7 +536,7 @@ public class GraphChartData {
      * @post S'afegeix la categoria s amb valor i al PieChart inferior esquerre. Es redimensiona el PieChart i es
      * col·loca a l'esquerra de l'eix vertical (en última posició).
      */
-    public void addDataToLeftPieChart(String s, int i) {
+    public void addDataToLeftPieChart(String s, long i) {
         ensureFXThread(() -> {
             leftPieChartData.add( new PieChart.Data(s, i));
             leftPieChart.setData(leftPieChartData);
@@ -381,7 +550,7 @@ public class GraphChartData {
      * @post S'afegeix la categoria s amb valor i al PieChart inferior dret. Es redimensiona el PieChart i es col·loca
      * a l'esquerra de l'eix vertical (en última posició).
      */
-    public void addDataToRightPieChart(String s, int i) {
+    public void addDataToRightPieChart(String s, long i) {
         ensureFXThread(() -> {
             rightPieChartData.add( new PieChart.Data(s, i));
             rightPieChart.setData(rightPieChartData);
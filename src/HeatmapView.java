@@ -0,0 +1,344 @@
+/**
+ * @file HeatmapView.java
+ * @brief Classe HeatmapView
+ */
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/** @class HeatmapView
+ * @brief Mapa de calor de les regions: cada regió és una cel·la d'una graella (en l'ordre de la llista de regions)
+ * pintada segons la incidència, la prevalença o la mortalitat per 100.000 habitants del virus filtrat (o de tots els
+ * virus si no n'hi ha cap de filtrat).
+ *
+ * El Thread que rep les instantànies de la simulació omple una array de floats amb les tres mètriques de cada regió i
+ * la publica (publish);
+ * el Thread del JavaFX dibuixa l'última publicació (paint). Les arrays es reutilitzen entre publicacions, de manera que
+ * en règim estable no es crea cap objecte. Cada cel·la es classifica en un dels THRESHOLDS.length + 2 trams de color,
+ * i paint() només torna a pintar les cel·les que han canviat de tram, agrupades per color.
+ *
+ * Un clic canvia la mètrica mostrada i passar el ratolí per sobre d'una cel·la en mostra la regió i el valor.
+ */
+public class HeatmapView {
+
+    /** @enum Metric
+     * @brief Mètriques que es poden mostrar, totes per 100.000 habitants.
+     */
+    public enum Metric {
+
+        INCIDENCE("Incidència", "casos nous"),
+        PREVALENCE("Prevalença", "afectats"),
+        DEATHS("Mortalitat", "morts acumulades");
+
+        private final String _name; ///< Nom de la mètrica.
+        private final String _unit; ///< Què es compta per 100.000 habitants.
+
+        Metric(String name, String unit) {
+            _name = name;
+            _unit = unit;
+        }
+
+    }
+
+    /** @class Snapshot
+     * @brief Mètriques de totes les regions en un tick. Es reutilitza un cop el Thread del JavaFX ja no la fa servir.
+     */
+    private static class Snapshot {
+
+        private final float[] values; ///< Valor de la mètrica m de la regió i a values[m * regions + i].
+        private String title; ///< Títol de les dades (tick i virus).
+
+        private Snapshot(int regions) {
+            values = new float[Metric.values().length * regions];
+        }
+
+    }
+
+
+
+    // Constants
+
+    private static final float[] THRESHOLDS = {1, 10, 100, 1000, 10000}; ///< Límits dels trams per 100.000 hab.
+
+    private static final Color[] COLORS = {
+            Color.web("#e0e0e0"), // 0
+            Color.web("#ffffb2"), // < 1
+            Color.web("#fed976"), // < 10
+            Color.web("#feb24c"), // < 100
+            Color.web("#fd8d3c"), // < 1.000
+            Color.web("#f03b20"), // < 10.000
+            Color.web("#bd0026")  // >= 10.000
+    }; ///< Color de cada tram.
+
+    private static final String[] LABELS = {"0", "< 1", "< 10", "< 100", "< 1.000", "< 10.000", "≥ 10.000"};
+    ///< Llegenda de cada tram.
+
+    private static final double STATUS_HEIGHT = 44; ///< Alçada de la barra inferior (títol, regió i llegenda).
+    private static final double MIN_GAP_CELL = 4; ///< Mida de cel·la a partir de la qual es deixa 1 píxel de separació.
+    private static final Color BACKGROUND = Color.WHITE; ///< Color de fons.
+    private static final Color TEXT = Color.BLACK; ///< Color del text.
+
+
+
+    // Private attributes
+
+    private final Canvas _canvas; ///< Canvas on es dibuixa el mapa.
+    private final Pane _pane; ///< Contenidor del Canvas.
+
+    private final List<Region> _regions; ///< Regions, en l'ordre de les cel·les.
+    private final int _columns; ///< Columnes de la graella.
+    private final double _cell; ///< Costat d'una cel·la en píxels.
+
+    private final AtomicReference<Snapshot> _pending = new AtomicReference<>(); ///< Última publicació sense dibuixar.
+    private final AtomicReference<Snapshot> _spare = new AtomicReference<>(); ///< Publicació que es pot reutilitzar.
+    private Snapshot _shown; ///< Publicació que es mostra (Thread del JavaFX).
+
+    private Metric _metric = Metric.INCIDENCE; ///< Mètrica que es mostra.
+    private final byte[] _drawn; ///< Tram amb què està pintada cada cel·la (-1 si cal pintar-la).
+    private final int[] _changed; ///< Cel·les a pintar, agrupades per tram (buffer de paint()).
+    private final int[] _bucket_end; ///< Final del grup de cada tram a _changed (buffer de paint()).
+    private boolean _full_redraw = true; ///< Si cal tornar a pintar tot el mapa.
+    private boolean _status_dirty = true; ///< Si cal tornar a pintar la barra inferior.
+    private int _hovered = -1; ///< Cel·la sota el ratolí (-1 si no n'hi ha cap).
+
+
+
+    // Constructors
+
+    /** @brief Crea el mapa de calor de \p regions.
+     * @pre Es crida des del Thread del JavaFX. \p regions no és buida i no canvia.
+     * @param regions Regions del territori.
+     * @param width Amplada de la vista en píxels.
+     * @param height Alçada de la vista en píxels.
+     * @post El mapa és buit fins a la primera publicació.
+     */
+    public HeatmapView(List<Region> regions, double width, double height) {
+
+        int n = regions.size();
+        double map_height = height - STATUS_HEIGHT;
+
+        _regions = regions;
+        _columns = Math.max(1, (int) Math.ceil(Math.sqrt(n * width / map_height)));
+        int rows = (n + _columns - 1) / _columns;
+        _cell = Math.max(1, Math.min(Math.floor(width / _columns), Math.floor(map_height / rows)));
+
+        _drawn = new byte[n];
+        _changed = new int[n];
+        _bucket_end = new int[COLORS.length];
+
+        _canvas = new Canvas(width, height);
+        _pane = new Pane(_canvas);
+        _pane.setPrefSize(width, height);
+
+        _canvas.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
+            _metric = Metric.values()[(_metric.ordinal() + 1) % Metric.values().length];
+            _full_redraw = true;
+        });
+        _canvas.addEventHandler(MouseEvent.MOUSE_MOVED, event -> {
+            int hovered = cellAt(event.getX(), event.getY());
+            if (hovered != _hovered) {
+                _hovered = hovered;
+                _status_dirty = true;
+            }
+        });
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @return El node que conté la vista. */
+    public Pane node() { return _pane; }
+
+    /** @brief Calcula les mètriques de totes les regions a partir d'una instantània i les publica perquè es dibuixin.
+     * @pre \p state és una instantània de la simulació d'aquestes regions.
+     * @param state Instantània de la simulació.
+     * @param virus Virus del qual es mostren les dades (null per sumar tots els virus).
+     * @param title Títol de les dades.
+     * @post La publicació substitueix l'anterior si encara no s'havia dibuixat. No bloqueja mai el Thread que crida.
+     */
+    public void publish(SimulationSnapshot state, Virus virus, String title) {
+
+        Snapshot snapshot = _spare.getAndSet(null);
+        if (snapshot == null) snapshot = new Snapshot(_regions.size());
+
+        float[] values = snapshot.values;
+        int n = _regions.size();
+
+        for (int i = 0; i < n; i++) {
+
+            Region region = _regions.get(i);
+            double incidence = 0, affected = 0, deaths = 0;
+
+            for (Data data : state.dataByRegion().get(region).values()) {
+
+                if (virus != null && data.virus() != virus) continue;
+
+                incidence += data.newInfections();
+                affected += data.virusPresence();
+                deaths += data.deaths();
+
+            }
+
+            double inhabitants = state.inhabitants(region);
+            double per_100k = inhabitants > 0 ? 100000 / inhabitants : 0;
+
+            values[Metric.INCIDENCE.ordinal() * n + i] = (float) (incidence * per_100k);
+            values[Metric.PREVALENCE.ordinal() * n + i] = (float) (affected * per_100k);
+            values[Metric.DEATHS.ordinal() * n + i] = (float) (deaths * per_100k);
+
+        }
+
+        snapshot.title = title;
+
+        Snapshot replaced = _pending.getAndSet(snapshot);
+        if (replaced != null) _spare.set(replaced);
+
+    }
+
+    /** @brief Dibuixa l'última publicació.
+     * @pre Es crida des del Thread del JavaFX.
+     * @post Les cel·les que han canviat de tram des de l'últim cop (o totes, si ha canviat la mètrica) i la barra
+     * inferior mostren la publicació actual.
+     */
+    public void paint() {
+
+        Snapshot snapshot = _pending.getAndSet(null);
+
+        if (snapshot != null) {
+            if (_shown != null) _spare.set(_shown);
+            _shown = snapshot;
+            _status_dirty = true;
+        }
+
+        if (_shown == null) return;
+
+        GraphicsContext g = _canvas.getGraphicsContext2D();
+        int n = _regions.size();
+
+        if (_full_redraw) {
+
+            g.setFill(BACKGROUND);
+            g.fillRect(0, 0, _canvas.getWidth(), _canvas.getHeight());
+            Arrays.fill(_drawn, (byte) -1);
+
+            _full_redraw = false;
+            _status_dirty = true;
+
+        }
+
+        // Agrupa per tram les cel·les que han canviat (ordenació per recompte)
+        float[] values = _shown.values;
+        int offset = _metric.ordinal() * n;
+
+        Arrays.fill(_bucket_end, 0);
+        for (int i = 0; i < n; i++) {
+            int bucket = bucket(values[offset + i]);
+            if (bucket != _drawn[i]) _bucket_end[bucket]++;
+        }
+
+        for (int b = 1; b < _bucket_end.length; b++) _bucket_end[b] += _bucket_end[b - 1];
+        int total = _bucket_end[_bucket_end.length - 1];
+
+        for (int i = n - 1; i >= 0; i--) {
+            int bucket = bucket(values[offset + i]);
+            if (bucket != _drawn[i]) {
+                _changed[--_bucket_end[bucket]] = i;
+                _drawn[i] = (byte) bucket;
+            }
+        }
+
+        // Ara _bucket_end[b] és l'inici del grup del tram b a _changed
+        double size = _cell >= MIN_GAP_CELL ? _cell - 1 : _cell;
+
+        for (int b = 0; b < COLORS.length; b++) {
+
+            int start = _bucket_end[b], end = b + 1 < COLORS.length ? _bucket_end[b + 1] : total;
+            if (start == end) continue;
+
+            g.setFill(COLORS[b]);
+
+            for (int k = start; k < end; k++) {
+                int i = _changed[k];
+                g.fillRect((i % _columns) * _cell, (i / _columns) * _cell, size, size);
+            }
+
+        }
+
+        if (_status_dirty) paintStatus(g);
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @return El tram de color del valor \p value. */
+    private static int bucket(float value) {
+
+        if (value <= 0) return 0;
+
+        for (int b = 0; b < THRESHOLDS.length; b++) {
+            if (value < THRESHOLDS[b]) return b + 1;
+        }
+
+        return THRESHOLDS.length + 1;
+
+    }
+
+    /** @return La cel·la del punt (\p x, \p y) de la vista, o -1 si no n'hi ha cap. */
+    private int cellAt(double x, double y) {
+
+        if (x < 0 || y < 0 || x >= _columns * _cell) return -1;
+
+        int i = (int) (y / _cell) * _columns + (int) (x / _cell);
+        return i < _regions.size() ? i : -1;
+
+    }
+
+    /** @brief Pinta la barra inferior: títol, mètrica, regió sota el ratolí i llegenda. */
+    private void paintStatus(GraphicsContext g) {
+
+        double width = _canvas.getWidth(), top = _canvas.getHeight() - STATUS_HEIGHT;
+
+        g.setFill(BACKGROUND);
+        g.fillRect(0, top, width, STATUS_HEIGHT);
+
+        g.setFont(Font.font("sans-serif", 11));
+        g.setFill(TEXT);
+
+        String status = _shown.title + " · " + _metric._name + " (" + _metric._unit + " per 100.000 hab., clic per " +
+                "canviar)";
+        if (_hovered != -1) {
+            status += " · " + _regions.get(_hovered).name() + ": " +
+                    Math.round(_shown.values[_metric.ordinal() * _regions.size() + _hovered]);
+        }
+
+        g.fillText(status, 4, top + 14);
+
+        for (int b = 0; b < COLORS.length; b++) {
+
+            double x = 4 + b * 80;
+
+            g.setFill(COLORS[b]);
+            g.fillRect(x, top + 24, 12, 12);
+            g.setFill(TEXT);
+            g.fillText(LABELS[b], x + 16, top + 34);
+
+        }
+
+        _status_dirty = false;
+
+    }
+
+}
@@ -0,0 +1,291 @@
+/**
+ * @file Instrumentation.java
+ * @brief Classe Instrumentation
+ */
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/** @class Instrumentation
+ * @brief Mesures internes de la simulació: la durada de cada fase de Territory.propagateViruses (i del tick sencer),
+ * guardada en histogrames, i comptadors d'esdeveniments del motor (grups creats, fusionats i transferits, soques
+ * noves i recomptes d'afectacions).
+ *
+ * Està desactivada per defecte. Mentre ho està, cada punt de mesura només llegeix un booleà volàtil i no crida
+ * System.nanoTime ni modifica cap comptador, de manera que el cost és negligible. Les fases també es mesuren (sense
+ * omplir els histogrames) si s'ha iniciat la telemetria (Telemetry) o una gravació de JFR registra els ticks
+ * (SimulationEvents).
+ */
+public class Instrumentation {
+
+    // Public storage classes
+
+    /** @enum Phase
+     * @brief Fases mesurades d'un tick.
+     */
+    public enum Phase {
+
+        MOVEMENTS("Moviments"), ///< Region.movements de totes les regions.
+        PROPAGATE("Propagació"), ///< Region.propagate de totes les regions.
+        ROLLBACKS("Retorns"), ///< Region.rollbacks de totes les regions.
+        INFECT("Infecció"), ///< Region.infect de totes les regions.
+        TICK("Tick sencer"); ///< Totes les fases.
+
+        private final String _title; ///< Nom que es mostra a l'informe.
+
+        Phase(String title) { _title = title; }
+
+    }
+
+    /** @enum Counter
+     * @brief Esdeveniments comptats.
+     */
+    public enum Counter {
+
+        GROUPS_CREATED("Grups d'afectats creats"), ///< Objectes AffectedGroup creats (inclosos els subgrups).
+        GROUPS_REUSED("Grups d'afectats reutilitzats"), ///< Grups descartats reutilitzats en lloc de crear-ne.
+        GROUPS_MERGED("Grups d'afectats fusionats"), ///< Grups afegits a un grup existent a Affectation.pushGroups.
+        GROUPS_TRANSFERRED("Grups d'afectats transferits"), ///< Subgrups moguts d'una afectació a una altra.
+        GROUPS_PRUNED("Grups d'afectats buits descartats"), ///< Grups sense afectats ni morts eliminats.
+        GROUPS_COALESCED("Grups d'afectats coalescits"), ///< Grups semblants fusionats per Affectation.setCoalescing.
+        COALESCED_SHIFT("Persones·tic desplaçades"), ///< Error de la fusió: persones per tics que s'han avançat.
+        STRAINS_SPAWNED("Soques noves"), ///< Virus nous per mutació.
+        AFFECTATION_COUNTS("Crides a Affectation.count()"), ///< Recomptes de les persones d'una afectació.
+        ACTIVE_REGIONS("Regions actives calculades"); ///< Regions calculades amb Territory.setActiveRegions.
+
+        private final String _title; ///< Nom que es mostra a l'informe.
+
+        Counter(String title) { _title = title; }
+
+    }
+
+
+
+    // Private classes
+
+    /** @class Histogram
+     * @brief Histograma de durades en nanosegons amb cubetes logarítmiques: 8 cubetes per cada potència de dos,
+     * és a dir, un error relatiu màxim del 12,5 %. Registrar un valor és constant i no reserva memòria.
+     */
+    private static class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 3; ///< Bits de les cubetes de cada potència de dos.
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; ///< Cubetes per potència de dos.
+
+        private final long[] _counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS]; ///< Valors per cubeta.
+        private long _total; ///< Valors registrats.
+        private long _max; ///< Valor màxim registrat.
+
+        /** @brief Registra \p value. */
+        synchronized void record(long value) {
+
+            value = Math.max(0, value);
+
+            _counts[bucket(value)]++;
+            _total++;
+            _max = Math.max(_max, value);
+
+        }
+
+        /** @return El valor que no supera cap dels valors registrats en la proporció \p quantile (0 si buit). */
+        synchronized long quantile(double quantile) {
+
+            if (_total == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * _total)), seen = 0;
+
+            for (int i = 0; i < _counts.length; i++) {
+                seen += _counts[i];
+                if (seen >= rank) return Math.min(_max, upperBound(i));
+            }
+
+            return _max;
+
+        }
+
+        synchronized long total() { return _total; }
+
+        synchronized long max() { return _max; }
+
+        synchronized void reset() {
+
+            java.util.Arrays.fill(_counts, 0);
+            _total = _max = 0;
+
+        }
+
+        /** @return La cubeta de \p value. */
+        private static int bucket(long value) {
+
+            if (value < SUB_BUCKETS) return (int) value;
+
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS +
+                    (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+
+        }
+
+        /** @return El valor més gran de la cubeta \p bucket. */
+        private static long upperBound(int bucket) {
+
+            if (bucket < SUB_BUCKETS) return bucket;
+
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+            return lower + (1L << shift) - 1;
+
+        }
+
+    }
+
+
+
+    // Private attributes
+
+    // La instrumentació s'activa des del fil de l'usuari (CommandLine) i les durades les llegeixen els fils de la
+    // telemetria: els valors compartits es publiquen amb volatile i AtomicLongArray.
+    private static volatile boolean _enabled = false; ///< Si s'estan prenent mesures.
+
+    private static final Histogram[] _phases = new Histogram[Phase.values().length]; ///< Durada de cada fase.
+    private static final LongAdder[] _counters = new LongAdder[Counter.values().length]; ///< Valor de cada comptador.
+    private static final AtomicLongArray _last =
+            new AtomicLongArray(Phase.values().length); ///< Durada de cada fase a l'últim tick.
+
+    private static volatile long _since = System.nanoTime(); ///< Instant de l'última reinicialització.
+
+    static {
+
+        for (int i = 0; i < _phases.length; i++) _phases[i] = new Histogram();
+        for (int i = 0; i < _counters.length; i++) _counters[i] = new LongAdder();
+
+    }
+
+
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private Instrumentation() {}
+
+
+
+    // Funcions públiques
+
+    /** @return Si les mesures estan activades. */
+    public static boolean enabled() { return _enabled; }
+
+    /** @brief Activa o desactiva les mesures.
+     * @pre True.
+     * @post Si \p enabled, els punts de mesura registren durades i esdeveniments a partir d'ara. Les mesures
+     * anteriors es conserven fins que es cridi reset().
+     */
+    public static void setEnabled(boolean enabled) {
+
+        _enabled = enabled;
+
+    }
+
+    /** @brief Esborra totes les mesures.
+     * @pre True.
+     * @post Els histogrames i els comptadors són buits.
+     */
+    public static void reset() {
+
+        for (Histogram histogram : _phases) histogram.reset();
+        for (LongAdder counter : _counters) counter.reset();
+
+        _since = System.nanoTime();
+
+    }
+
+    /** @return L'instant actual per començar a mesurar una fase (0 si no cal mesurar-la). */
+    public static long start() {
+
+        return _enabled || Telemetry.active() || SimulationEvents.ticksEnabled() ? System.nanoTime() : 0;
+
+    }
+
+    /** @brief Registra la durada de \p phase, que ha començat a \p start.
+     * @pre \p start l'ha retornat start() o lap().
+     * @return L'instant actual, per començar a mesurar la fase següent (0 si no cal mesurar-la).
+     */
+    public static long lap(Phase phase, long start) {
+
+        if (start == 0) return start();
+
+        long now = System.nanoTime();
+        _last.lazySet(phase.ordinal(), now - start);
+        if (_enabled) _phases[phase.ordinal()].record(now - start);
+
+        return now;
+
+    }
+
+    /** @return La durada en nanosegons de \p phase a l'últim tick mesurat (0 si no se n'ha mesurat cap). */
+    public static long lastDuration(Phase phase) {
+
+        return _last.get(phase.ordinal());
+
+    }
+
+    /** @brief Incrementa \p counter en 1 si les mesures estan activades. */
+    public static void count(Counter counter) {
+
+        if (_enabled) _counters[counter.ordinal()].increment();
+
+    }
+
+    /** @return El valor de \p counter des de l'última reinicialització. */
+    public static long value(Counter counter) {
+
+        return _counters[counter.ordinal()].sum();
+
+    }
+
+    /** @brief Incrementa \p counter en \p amount si les mesures estan activades. */
+    public static void add(Counter counter, long amount) {
+
+        if (_enabled) _counters[counter.ordinal()].add(amount);
+
+    }
+
+    /** @brief Genera l'informe de les mesures des de l'última reinicialització.
+     * @pre True.
+     * @return Una taula amb el nombre de mesures i els percentils 50 i 99 i el màxim de cada fase (en
+     * mil·lisegons) i el valor de cada comptador.
+     */
+    public static String report() {
+
+        StringBuilder res = new StringBuilder();
+
+        res.append("Instrumentació ").append(_enabled ? "activada" : "desactivada")
+                .append(String.format(Locale.ROOT, " (mesures des de fa %.1f s)", (System.nanoTime() - _since) / 1e9))
+                .append(":\n");
+
+        res.append(String.format("\t%-14s %8s %10s %10s %10s%n", "Fase", "Ticks", "p50 (ms)", "p99 (ms)",
+                "màx (ms)"));
+
+        for (Phase phase : Phase.values()) {
+
+            Histogram histogram = _phases[phase.ordinal()];
+
+            res.append(String.format(Locale.ROOT, "\t%-14s %8d %10.3f %10.3f %10.3f%n", phase._title,
+                    histogram.total(), histogram.quantile(0.50) / 1e6, histogram.quantile(0.99) / 1e6,
+                    histogram.max() / 1e6));
+
+        }
+
+        res.append("\tComptadors:\n");
+
+        for (Counter counter : Counter.values())
+            res.append(String.format("\t\t%-36s %d%n", counter._title + ":", _counters[counter.ordinal()].sum()));
+
+        return res.toString();
+
+    }
+
+}
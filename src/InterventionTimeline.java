@@ -0,0 +1,356 @@
+/**
+ * @file InterventionTimeline.java
+ * @brief Classe InterventionTimeline
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+
+/** @class InterventionTimeline
+ * @brief Calendari d'intervencions (vacunes, confinaments i tancaments de fronteres) programades per tick, perquè una
+ * simulació es pugui executar sense que ningú les apliqui des de la línia d'ordres.
+ *
+ * Format (una intervenció per línia; # inicia un comentari):
+ *  - <tick> vacuna <vacuna> <regions> <percentatge>
+ *  - <tick> campanya <vacuna> <regions> <percentatge> <dosis>: vacuna les regions, en ordre, mentre hi ha dosis
+ *    (Simulation.applyCampaign).
+ *  - <tick> confinament <regions> <percentatge de mobilitat>
+ *  - <tick> desconfinament <regions>
+ *  - <tick> tancament <regions> <regions>
+ *  - <tick> obertura <regions> <regions>
+ *
+ * Les regions són un nom o un patró amb comodins (* qualsevol text, ? un caràcter), que s'aplica a totes les regions
+ * que hi coincideixen. Els tancaments i les obertures amb comodins només afecten les parelles de regions veïnes.
+ *
+ * Cada simulació l'ha de programar (schedule), que resol els noms i posa les intervencions en una cua amb prioritat
+ * per tick; a cada tick la simulació aplica les que toquen (applyDue), en O(log n) per intervenció. Les intervencions
+ * d'un mateix tick s'apliquen en l'ordre del fitxer.
+ */
+public class InterventionTimeline {
+
+    // Private classes
+
+    /** @class Entry
+     * @brief Línia del calendari, encara sense resoldre.
+     */
+    private static class Entry {
+
+        final int tick; ///< Tick en què s'aplica.
+        final String[] words; ///< Acció i arguments.
+
+        Entry(int tick, String[] words) {
+            this.tick = tick;
+            this.words = words;
+        }
+
+    }
+
+    /** @class Event
+     * @brief Intervenció resolta sobre regions concretes.
+     */
+    private static class Event {
+
+        final int tick; ///< Tick en què s'aplica.
+        final long order; ///< Ordre dins del tick (el del fitxer).
+        final Runnable action; ///< Intervenció.
+
+        Event(int tick, long order, Runnable action) {
+            this.tick = tick;
+            this.order = order;
+            this.action = action;
+        }
+
+    }
+
+
+
+    // Constants
+
+    private static final Comparator<Event> BY_TICK = Comparator.<Event>comparingInt(event -> event.tick)
+            .thenComparingLong(event -> event.order); ///< Ordre de la cua: per tick i, dins del tick, per línia.
+
+
+
+    // Private attributes
+
+    private final List<Entry> _entries = new ArrayList<>(); ///< Línies del calendari, en l'ordre del fitxer.
+    private final PriorityQueue<Event> _pending = new PriorityQueue<>(BY_TICK); ///< Intervencions per aplicar.
+
+
+
+    // Constructors
+
+    /** @brief Crea un calendari buit. */
+    public InterventionTimeline() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Llegeix un calendari d'un fitxer.
+     * @pre True
+     * @param path Fitxer del calendari.
+     * @return El calendari llegit.
+     * @throws InputMismatchException Si alguna línia no és vàlida.
+     */
+    public static InterventionTimeline read(Path path) throws IOException {
+
+        InterventionTimeline res = new InterventionTimeline();
+
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.strip();
+            if (!line.isEmpty()) res.add(line.split("\\s+"));
+
+        }
+
+        return res;
+
+    }
+
+    /** @return Si \p words és una línia d'intervenció (comença per un tick). */
+    public static boolean isIntervention(String[] words) {
+
+        return words.length > 0 && !words[0].isEmpty() && words[0].chars().allMatch(Character::isDigit);
+
+    }
+
+    /** @brief Afegeix una intervenció al final del calendari.
+     * @pre True
+     * @param words Paraules de la línia: tick, acció i arguments.
+     * @throws InputMismatchException Si la línia no és una intervenció vàlida.
+     * @post La intervenció s'aplicarà a les simulacions que es programin a partir d'ara.
+     */
+    public void add(String[] words) {
+
+        if (!isIntervention(words) || words.length < 3)
+            throw new InputMismatchException("Intervenció no vàlida: " + String.join(" ", words));
+
+        int arguments = switch (words[1]) {
+            case "campanya" -> 4;
+            case "vacuna" -> 3;
+            case "confinament", "tancament", "obertura" -> 2;
+            case "desconfinament" -> 1;
+            default -> throw new InputMismatchException("Acció desconeguda: " + words[1]);
+        };
+
+        if (words.length != arguments + 2)
+            throw new InputMismatchException("Nombre d'arguments incorrecte: " + String.join(" ", words));
+
+        int tick;
+
+        try {
+            tick = Integer.parseInt(words[0]);
+            if (words[1].equals("vacuna") || words[1].equals("campanya")) percentage(words[4]);
+            if (words[1].equals("campanya") && !(Double.parseDouble(words[5]) >= 0)) throw new NumberFormatException();
+            if (words[1].equals("confinament")) percentage(words[3]);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException("Nombre no vàlid: " + String.join(" ", words));
+        }
+
+        _entries.add(new Entry(tick, words));
+
+    }
+
+    /** @return El nombre de línies del calendari. */
+    public int size() { return _entries.size(); }
+
+    /** @brief Programa el calendari per a \p simulation.
+     * @pre True
+     * @param simulation Simulació on s'aplicaran les intervencions.
+     * @throws NoSuchElementException Si alguna regió, patró o vacuna no existeix a \p simulation.
+     * @post Es descarten les intervencions pendents d'una programació anterior i queden pendents totes les del
+     * calendari, amb els noms resolts a les regions i vacunes de \p simulation.
+     */
+    public void schedule(Simulation simulation) {
+
+        _pending.clear();
+        long order = 0;
+
+        for (Entry entry : _entries) {
+
+            String[] words = entry.words;
+
+            switch (words[1]) {
+                case "vacuna" -> {
+                    Vaccine vaccine = vaccine(simulation, words[2]);
+                    float percentage = percentage(words[4]);
+                    for (Region region : regions(simulation, words[3]))
+                        _pending.add(new Event(entry.tick, order++,
+                                () -> simulation.applyVaccine(vaccine, region, percentage)));
+                }
+                case "campanya" -> {
+                    Vaccine vaccine = vaccine(simulation, words[2]);
+                    List<Region> regions = regions(simulation, words[3]);
+                    float percentage = percentage(words[4]);
+                    double doses = Double.parseDouble(words[5]);
+                    _pending.add(new Event(entry.tick, order++,
+                            () -> simulation.applyCampaign(vaccine, regions, percentage, doses)));
+                }
+                case "confinament" -> {
+                    float rate = percentage(words[3]);
+                    for (Region region : regions(simulation, words[2]))
+                        _pending.add(new Event(entry.tick, order++,
+                                () -> simulation.setHarshLockdown(region, true, rate)));
+                }
+                case "desconfinament" -> {
+                    for (Region region : regions(simulation, words[2]))
+                        _pending.add(new Event(entry.tick, order++,
+                                () -> simulation.setHarshLockdown(region, false, 0)));
+                }
+                default -> {
+                    boolean open = words[1].equals("obertura");
+                    for (Region[] border : borders(simulation, words[2], words[3]))
+                        _pending.add(new Event(entry.tick, order++,
+                                () -> simulation.setBorderState(border[0], border[1], open)));
+                }
+            }
+
+        }
+
+    }
+
+    /** @brief Aplica les intervencions pendents fins al tick \p tick.
+     * @pre S'ha programat el calendari per a la simulació on s'apliquen.
+     * @param tick Tick actual de la simulació.
+     * @post S'han aplicat, en ordre, les intervencions pendents amb tick <= \p tick i ja no són pendents.
+     */
+    public void applyDue(int tick) {
+
+        while (!_pending.isEmpty() && _pending.peek().tick <= tick) _pending.poll().action.run();
+
+    }
+
+    /** @return El nombre d'intervencions pendents de la programació actual. */
+    public int pending() { return _pending.size(); }
+
+
+
+    // Funcions privades
+
+    /** @return El percentatge \p text (de 0 a 100) com a fracció.
+     * @throws NumberFormatException Si no és un nombre o no és entre 0 i 100.
+     */
+    private static float percentage(String text) {
+
+        float res = Float.parseFloat(text);
+        if (!(res >= 0 && res <= 100)) throw new NumberFormatException("Percentatge fora de rang: " + text);
+
+        return res / 100;
+
+    }
+
+    /** @return Si \p name és un patró amb comodins. */
+    private static boolean isPattern(String name) {
+
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0;
+
+    }
+
+    /** @return L'expressió regular equivalent al patró \p pattern. */
+    private static Pattern regex(String pattern) {
+
+        StringBuilder res = new StringBuilder();
+
+        for (String literal : pattern.split("(?<=[*?])|(?=[*?])")) {
+            switch (literal) {
+                case "*" -> res.append(".*");
+                case "?" -> res.append('.');
+                default -> res.append(Pattern.quote(literal));
+            }
+        }
+
+        return Pattern.compile(res.toString());
+
+    }
+
+    /** @return Les regions de \p simulation que coincideixen amb \p name (un nom o un patró), en l'ordre del
+     * territori.
+     * @throws NoSuchElementException Si no n'hi ha cap.
+     */
+    private static List<Region> regions(Simulation simulation, String name) {
+
+        if (!isPattern(name)) {
+            try {
+                return List.of(simulation.getRegion(name));
+            } catch (NoSuchElementException e) {
+                throw new NoSuchElementException("No existeix la regió " + name);
+            }
+        }
+
+        Pattern pattern = regex(name);
+        List<Region> res = new ArrayList<>();
+
+        for (Region region : simulation.regionList())
+            if (pattern.matcher(region.name()).matches()) res.add(region);
+
+        if (res.isEmpty()) throw new NoSuchElementException("Cap regió coincideix amb " + name);
+
+        return res;
+
+    }
+
+    /** @return Les parelles de regions (\p first, \p second) on s'aplica un tancament o una obertura: la parella
+     * indicada si tots dos són noms, o si no, les parelles de regions veïnes que hi coincideixen (cada frontera un
+     * sol cop).
+     * @throws NoSuchElementException Si alguna regió no existeix o si els patrons no tenen cap frontera en comú.
+     */
+    private static List<Region[]> borders(Simulation simulation, String first, String second) {
+
+        List<Region> firsts = regions(simulation, first), seconds = regions(simulation, second);
+
+        List<Region[]> res = new ArrayList<>();
+
+        if (!isPattern(first) && !isPattern(second)) {
+            res.add(new Region[] {firsts.get(0), seconds.get(0)});
+            return res;
+        }
+
+        Set<Region> first_set = new HashSet<>(firsts), second_set = new HashSet<>(seconds);
+
+        for (Region region : firsts) {
+            for (Region neighbour : region.neighbourList()) {
+
+                if (!second_set.contains(neighbour)) continue;
+
+                // si la frontera també hi és en sentit contrari, només es compta des de la primera regió
+                if (first_set.contains(neighbour) && second_set.contains(region) &&
+                        neighbour.position() < region.position())
+                    continue;
+
+                res.add(new Region[] {region, neighbour});
+
+            }
+        }
+
+        if (res.isEmpty()) throw new NoSuchElementException("Cap frontera entre " + first + " i " + second);
+
+        return res;
+
+    }
+
+    /** @return La vacuna de \p simulation amb nom \p name.
+     * @throws NoSuchElementException Si no n'hi ha cap.
+     */
+    private static Vaccine vaccine(Simulation simulation, String name) {
+
+        for (Vaccine vaccine : simulation.vaccineList()) if (vaccine.name().equals(name)) return vaccine;
+        throw new NoSuchElementException("No existeix la vacuna " + name);
+
+    }
+
+}
@@ -0,0 +1,573 @@
+/**
+ * @file LargeGraphView.java
+ * @brief Classe LargeGraphView
+ */
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+
+/** @class LargeGraphView
+ * @brief Vista del graf de regions per a territoris grans (milers de regions), on el SmartGraphPanel amb física no
+ * és usable. Dibuixa tot el graf en un sol Canvas: una crida de traç per a totes les arestes obertes, una per a les
+ * tancades i un rectangle o cercle per regió.
+ *
+ * La disposició es calcula fora del Thread del JavaFX (Fruchterman-Reingold amb una graella per a les repulsions,
+ * lineal en el nombre de regions per iteració) i es publica a mesura que avança. Quan acaba es desa a LAYOUT_FILE dins
+ * del directori d'entrada, i les execucions següents amb el mateix graf la carreguen directament.
+ *
+ * Les arestes fora de la vista o més curtes que MIN_EDGE_PIXELS a l'escala actual no es dibuixen (les tancades, sí).
+ * La roda del ratolí fa zoom, arrossegar desplaça la vista i un doble clic la torna a ajustar. Tots els canvis
+ * (d'estil, de disposició o de vista) només marquen la vista com a modificada: paint() la redibuixa com a molt un cop
+ * per quadre.
+ */
+public class LargeGraphView {
+
+    // Constants
+
+    public static final String LAYOUT_FILE = "disposicio.bin"; ///< Nom de la disposició desada al directori d'entrada.
+
+    private static final int MAGIC = 0x56474C59; ///< "VGLY".
+    private static final int VERSION = 1; ///< Versió del format de LAYOUT_FILE.
+
+    private static final int ITERATIONS = 300; ///< Iteracions de la disposició.
+    private static final int PUBLISH_EVERY = 25; ///< Iteracions entre dues publicacions de la disposició parcial.
+    private static final long LAYOUT_SEED = 1; ///< Llavor de la disposició inicial (la disposició és determinista).
+
+    private static final double MIN_EDGE_PIXELS = 1.5; ///< Longitud mínima en píxels d'una aresta oberta dibuixada.
+    private static final double VERTEX_SIZE = 0.004; ///< Mida d'una regió respecte al costat de la disposició.
+    private static final double MIN_VERTEX_PIXELS = 2; ///< Mida mínima d'una regió en píxels.
+    private static final double MAX_VERTEX_PIXELS = 16; ///< Mida màxima d'una regió en píxels.
+    private static final double LABEL_VERTEX_PIXELS = 8; ///< Mida a partir de la qual es mostren els noms.
+    private static final double ZOOM_PER_PIXEL = 1.002; ///< Factor de zoom per píxel de desplaçament de la roda.
+    private static final double MARGIN = 0.05; ///< Marge de la vista ajustada, en proporció de la mida del Canvas.
+
+    private static final Color BACKGROUND = Color.WHITE; ///< Color de fons (.graph a smartgraph.css).
+    private static final Color VERTEX = Color.web("#9acd32"); ///< Color d'una regió (.vertex).
+    private static final Color LOCKED_VERTEX = Color.web("#ff0000"); ///< Color d'una regió confinada (.locked-vertex).
+    private static final Color EDGE = Color.web("#4169e1", 0.8); ///< Color d'una aresta oberta (.edge).
+    private static final Color LOCKED_EDGE = Color.web("#ff0000", 0.8); ///< Color d'una aresta tancada (.locked-edge).
+    private static final Color TEXT = Color.BLACK; ///< Color dels noms i dels missatges.
+
+
+
+    // Private attributes
+
+    private final Canvas _canvas; ///< Canvas on es dibuixa el graf.
+    private final Pane _pane; ///< Contenidor del Canvas.
+
+    private final String[] _names; ///< Nom de cada regió.
+    private final IdentityHashMap<Region, Integer> _index = new IdentityHashMap<>(); ///< Índex de cada regió.
+    private final int[] _edges; ///< Extrems de cada aresta: _edges[2 * e] i _edges[2 * e + 1].
+    private final HashMap<Long, Integer> _edge_index = new HashMap<>(); ///< Aresta de cada parell d'índexs.
+
+    private final boolean[] _locked_vertices; ///< Si cada regió està confinada.
+    private final boolean[] _locked_edges; ///< Si cada aresta està tancada.
+
+    private volatile float[] _positions; ///< Disposició publicada: x i y de cada regió, entre 0 i 1.
+    private volatile boolean _layout_done = false; ///< Si la disposició ja és la definitiva.
+    private volatile boolean _dirty = true; ///< Si cal tornar a dibuixar.
+
+    private double _scale; ///< Píxels per unitat de la disposició.
+    private double _offset_x; ///< Posició en píxels de la x = 0 de la disposició.
+    private double _offset_y; ///< Posició en píxels de la y = 0 de la disposició.
+    private double _drag_x; ///< Última x del ratolí mentre s'arrossega.
+    private double _drag_y; ///< Última y del ratolí mentre s'arrossega.
+
+
+
+    // Constructors
+
+    /** @brief Crea la vista i comença a calcular la disposició en un Thread a part.
+     * @pre Es crida des del Thread del JavaFX. Les regions i les seves veïnes no canvien.
+     * @param regions Regions del territori.
+     * @param width Amplada de la vista en píxels.
+     * @param height Alçada de la vista en píxels.
+     * @param layout_cache Fitxer on es desa i d'on es carrega la disposició (null per no desar-la).
+     * @post La vista mostra una disposició provisional fins que la definitiva estigui calculada.
+     */
+    public LargeGraphView(List<Region> regions, double width, double height, Path layout_cache) {
+
+        int n = regions.size();
+
+        _names = new String[n];
+        for (int i = 0; i < n; i++) {
+            _names[i] = regions.get(i).name();
+            _index.put(regions.get(i), i);
+        }
+
+        int[] edges = new int[16];
+        int count = 0;
+
+        for (int i = 0; i < n; i++) {
+            for (Region neighbour : regions.get(i).neighbours()) {
+
+                Integer j = _index.get(neighbour);
+                if (j == null || _edge_index.containsKey(key(i, j))) continue;
+
+                if (2 * count + 2 > edges.length) edges = Arrays.copyOf(edges, edges.length * 2);
+                edges[2 * count] = i;
+                edges[2 * count + 1] = j;
+                _edge_index.put(key(i, j), count++);
+
+            }
+        }
+
+        _edges = Arrays.copyOf(edges, 2 * count);
+        _locked_vertices = new boolean[n];
+        _locked_edges = new boolean[count];
+
+        _positions = normalize(initialLayout(n));
+
+        _canvas = new Canvas(width, height);
+        _pane = new Pane(_canvas);
+        _pane.setPrefSize(width, height);
+
+        fit();
+
+        _canvas.addEventHandler(ScrollEvent.SCROLL, event -> zoom(event.getX(), event.getY(),
+                Math.pow(ZOOM_PER_PIXEL, event.getDeltaY())));
+        _canvas.addEventHandler(MouseEvent.MOUSE_PRESSED, event -> {
+            _drag_x = event.getX();
+            _drag_y = event.getY();
+        });
+        _canvas.addEventHandler(MouseEvent.MOUSE_DRAGGED, event -> {
+            _offset_x += event.getX() - _drag_x;
+            _offset_y += event.getY() - _drag_y;
+            _drag_x = event.getX();
+            _drag_y = event.getY();
+            _dirty = true;
+        });
+        _canvas.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
+            if (event.getClickCount() == 2) fit();
+        });
+
+        Thread thread = new Thread(() -> computeLayout(layout_cache), "Disposició del graf");
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @return El node que conté la vista. */
+    public Pane node() { return _pane; }
+
+    /** @return Si hi ha una aresta entre \p r1 i \p r2. Es pot cridar des de qualsevol Thread. */
+    public boolean hasEdge(Region r1, Region r2) {
+
+        Integer i = _index.get(r1), j = _index.get(r2);
+        return i != null && j != null && _edge_index.containsKey(key(i, j));
+
+    }
+
+    /** @brief Canvia l'estat de confinament d'una regió.
+     * @pre Es crida des del Thread del JavaFX. \p region és del territori.
+     * @post La regió es dibuixarà en vermell si \p locked, i del color normal altrament.
+     */
+    public void setRegionLocked(Region region, boolean locked) {
+
+        _locked_vertices[_index.get(region)] = locked;
+        _dirty = true;
+
+    }
+
+    /** @brief Canvia l'estat de la frontera entre dues regions.
+     * @pre Es crida des del Thread del JavaFX. \p r1 i \p r2 són veïnes.
+     * @post L'aresta es dibuixarà en vermell si \p locked, i del color normal altrament.
+     */
+    public void setEdgeLocked(Region r1, Region r2, boolean locked) {
+
+        _locked_edges[_edge_index.get(key(_index.get(r1), _index.get(r2)))] = locked;
+        _dirty = true;
+
+    }
+
+    /** @brief Dibuixa el graf si ha canviat des de l'últim cop.
+     * @pre Es crida des del Thread del JavaFX.
+     * @post El Canvas mostra la disposició publicada amb els estats i la vista actuals.
+     */
+    public void paint() {
+
+        if (!_dirty) return;
+        _dirty = false;
+
+        float[] positions = _positions;
+        double width = _canvas.getWidth(), height = _canvas.getHeight();
+        GraphicsContext g = _canvas.getGraphicsContext2D();
+
+        g.setFill(BACKGROUND);
+        g.fillRect(0, 0, width, height);
+
+        // Arestes obertes en un sol traç; les que no es veurien (fora de la vista o massa curtes) no es dibuixen
+        g.setStroke(EDGE);
+        g.setLineWidth(1);
+        g.beginPath();
+
+        for (int e = 0; e < _locked_edges.length; e++) {
+            if (!_locked_edges[e]) edgePath(g, positions, e, width, height, MIN_EDGE_PIXELS);
+        }
+
+        g.stroke();
+
+        g.setStroke(LOCKED_EDGE);
+        g.setLineWidth(2);
+        g.beginPath();
+
+        for (int e = 0; e < _locked_edges.length; e++) {
+            if (_locked_edges[e]) edgePath(g, positions, e, width, height, 0);
+        }
+
+        g.stroke();
+
+        double size = Math.max(MIN_VERTEX_PIXELS, Math.min(MAX_VERTEX_PIXELS, _scale * VERTEX_SIZE));
+        boolean labels = size >= LABEL_VERTEX_PIXELS;
+
+        g.setFont(Font.font("sans-serif", 9));
+
+        for (int pass = 0; pass < 2; pass++) {
+
+            boolean locked = pass == 1; // les confinades es dibuixen a sobre
+            g.setFill(locked ? LOCKED_VERTEX : VERTEX);
+
+            for (int i = 0; i < _names.length; i++) {
+
+                if (_locked_vertices[i] != locked) continue;
+
+                double x = _offset_x + positions[2 * i] * _scale, y = _offset_y + positions[2 * i + 1] * _scale;
+                if (x < -size || y < -size || x > width + size || y > height + size) continue;
+
+                if (size < 4) g.fillRect(x - size / 2, y - size / 2, size, size);
+                else g.fillOval(x - size / 2, y - size / 2, size, size);
+
+            }
+
+        }
+
+        if (labels) {
+
+            g.setFill(TEXT);
+
+            for (int i = 0; i < _names.length; i++) {
+
+                double x = _offset_x + positions[2 * i] * _scale, y = _offset_y + positions[2 * i + 1] * _scale;
+                if (x >= 0 && y >= 0 && x <= width && y <= height) g.fillText(_names[i], x + size / 2 + 1, y);
+
+            }
+
+        }
+
+        if (!_layout_done) {
+
+            g.setFill(TEXT);
+            g.fillText("Calculant la disposició de " + _names.length + " regions...", 10, 20);
+
+        }
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @return La clau de l'aresta entre les regions \p i i \p j (no dirigida). */
+    private static long key(int i, int j) {
+
+        return (long) Math.min(i, j) << 32 | Math.max(i, j);
+
+    }
+
+    /** @brief Afegeix l'aresta \p e al traç actual si és dins de la vista i fa almenys \p min_pixels. */
+    private void edgePath(GraphicsContext g, float[] positions, int e, double width, double height,
+                          double min_pixels) {
+
+        int i = _edges[2 * e], j = _edges[2 * e + 1];
+
+        double x1 = _offset_x + positions[2 * i] * _scale, y1 = _offset_y + positions[2 * i + 1] * _scale;
+        double x2 = _offset_x + positions[2 * j] * _scale, y2 = _offset_y + positions[2 * j + 1] * _scale;
+
+        if (Math.max(x1, x2) < 0 || Math.min(x1, x2) > width || Math.max(y1, y2) < 0 || Math.min(y1, y2) > height)
+            return;
+        if (Math.abs(x2 - x1) + Math.abs(y2 - y1) < min_pixels) return;
+
+        g.moveTo(x1, y1);
+        g.lineTo(x2, y2);
+
+    }
+
+    /** @brief Ajusta la vista perquè es vegi tota la disposició. */
+    private void fit() {
+
+        double width = _canvas.getWidth(), height = _canvas.getHeight();
+
+        _scale = Math.min(width, height) * (1 - 2 * MARGIN);
+        _offset_x = (width - _scale) / 2;
+        _offset_y = (height - _scale) / 2;
+        _dirty = true;
+
+    }
+
+    /** @brief Multiplica l'escala per \p factor mantenint fix el punt (\p x, \p y) de la vista. */
+    private void zoom(double x, double y, double factor) {
+
+        _offset_x = x - (x - _offset_x) * factor;
+        _offset_y = y - (y - _offset_y) * factor;
+        _scale *= factor;
+        _dirty = true;
+
+    }
+
+    /** @brief Carrega la disposició de \p cache o la calcula i la desa. S'executa fora del Thread del JavaFX. */
+    private void computeLayout(Path cache) {
+
+        long fingerprint = fingerprint();
+
+        try {
+
+            float[] cached = cache == null ? null : readLayout(cache, fingerprint);
+
+            if (cached != null) {
+                publish(cached, true);
+                return;
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            System.err.println("No s'ha pogut llegir la disposició " + cache + " (" + e.getMessage() +
+                    "), es torna a calcular");
+
+        }
+
+        float[] positions = layout();
+        publish(positions, true);
+
+        if (cache != null) {
+            try {
+                writeLayout(cache, fingerprint, positions);
+            } catch (IOException e) {
+                System.err.println("No s'ha pogut desar la disposició " + cache + " (" + e.getMessage() + ")");
+            }
+        }
+
+    }
+
+    /** @brief Publica una disposició perquè es dibuixi al quadre següent. */
+    private void publish(float[] positions, boolean done) {
+
+        _positions = positions;
+        _layout_done = done;
+        _dirty = true;
+
+    }
+
+    /** @return Una disposició inicial determinista: punts aleatoris dins d'un quadrat d'àrea igual a les regions. */
+    private static double[] initialLayout(int n) {
+
+        Random random = new Random(LAYOUT_SEED);
+        double side = Math.sqrt(Math.max(n, 1));
+        double[] res = new double[2 * n];
+
+        for (int i = 0; i < res.length; i++) res[i] = random.nextDouble() * side;
+
+        return res;
+
+    }
+
+    /** @brief Calcula la disposició amb l'algorisme de Fruchterman-Reingold, amb distància ideal 1 entre veïnes.
+     * Les repulsions només es calculen entre regions a menys de 2 unitats, que es troben amb una graella de cel·les
+     * de 2 unitats, de manera que cada iteració és lineal en el nombre de regions i d'arestes.
+     * @return La disposició normalitzada entre 0 i 1.
+     */
+    private float[] layout() {
+
+        int n = _names.length;
+        double[] pos = initialLayout(n);
+        double[] disp = new double[2 * n];
+
+        double side = Math.sqrt(Math.max(n, 1));
+        int cells = Math.max(1, (int) Math.ceil(side / 2));
+        int[] head = new int[cells * cells], next = new int[n];
+
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+
+            double temperature = side / 10 * (1 - (double) iteration / ITERATIONS);
+            Arrays.fill(disp, 0);
+
+            // Graella: cada cel·la enllaça les regions que hi ha
+            Arrays.fill(head, -1);
+            for (int i = 0; i < n; i++) {
+                int c = cell(pos[2 * i], cells) * cells + cell(pos[2 * i + 1], cells);
+                next[i] = head[c];
+                head[c] = i;
+            }
+
+            // Repulsió k² / d amb les regions de les cel·les veïnes (k = 1)
+            for (int i = 0; i < n; i++) {
+
+                int cx = cell(pos[2 * i], cells), cy = cell(pos[2 * i + 1], cells);
+
+                for (int x = Math.max(0, cx - 1); x <= Math.min(cells - 1, cx + 1); x++) {
+                    for (int y = Math.max(0, cy - 1); y <= Math.min(cells - 1, cy + 1); y++) {
+                        for (int j = head[x * cells + y]; j != -1; j = next[j]) {
+
+                            if (j == i) continue;
+
+                            double dx = pos[2 * i] - pos[2 * j], dy = pos[2 * i + 1] - pos[2 * j + 1];
+                            double d2 = Math.max(dx * dx + dy * dy, 1e-6);
+                            if (d2 > 4) continue;
+
+                            disp[2 * i] += dx / d2;
+                            disp[2 * i + 1] += dy / d2;
+
+                        }
+                    }
+                }
+
+            }
+
+            // Atracció d² / k entre veïnes
+            for (int e = 0; e < _edges.length / 2; e++) {
+
+                int i = _edges[2 * e], j = _edges[2 * e + 1];
+                double dx = pos[2 * i] - pos[2 * j], dy = pos[2 * i + 1] - pos[2 * j + 1];
+                double d = Math.sqrt(dx * dx + dy * dy);
+
+                disp[2 * i] -= dx * d;
+                disp[2 * i + 1] -= dy * d;
+                disp[2 * j] += dx * d;
+                disp[2 * j + 1] += dy * d;
+
+            }
+
+            // Desplaçament limitat per la temperatura i pel quadrat
+            for (int i = 0; i < n; i++) {
+
+                double dx = disp[2 * i], dy = disp[2 * i + 1];
+                double d = Math.sqrt(dx * dx + dy * dy);
+                if (d == 0) continue;
+
+                double step = Math.min(d, temperature) / d;
+                pos[2 * i] = Math.max(0, Math.min(side, pos[2 * i] + dx * step));
+                pos[2 * i + 1] = Math.max(0, Math.min(side, pos[2 * i + 1] + dy * step));
+
+            }
+
+            if ((iteration + 1) % PUBLISH_EVERY == 0) publish(normalize(pos), false);
+
+        }
+
+        return normalize(pos);
+
+    }
+
+    /** @return La cel·la de la graella de la coordenada \p value. */
+    private static int cell(double value, int cells) {
+
+        return Math.min(cells - 1, Math.max(0, (int) (value / 2)));
+
+    }
+
+    /** @return Les posicions \p pos escalades perquè la disposició càpiga entre 0 i 1, centrada i sense deformar-la. */
+    private static float[] normalize(double[] pos) {
+
+        double min_x = Double.MAX_VALUE, min_y = Double.MAX_VALUE, max_x = -Double.MAX_VALUE, max_y = -Double.MAX_VALUE;
+
+        for (int i = 0; i < pos.length; i += 2) {
+            min_x = Math.min(min_x, pos[i]);
+            max_x = Math.max(max_x, pos[i]);
+            min_y = Math.min(min_y, pos[i + 1]);
+            max_y = Math.max(max_y, pos[i + 1]);
+        }
+
+        double extent = Math.max(Math.max(max_x - min_x, max_y - min_y), 1e-9);
+        double shift_x = (1 - (max_x - min_x) / extent) / 2, shift_y = (1 - (max_y - min_y) / extent) / 2;
+        float[] res = new float[pos.length];
+
+        for (int i = 0; i < pos.length; i += 2) {
+            res[i] = (float) ((pos[i] - min_x) / extent + shift_x);
+            res[i + 1] = (float) ((pos[i + 1] - min_y) / extent + shift_y);
+        }
+
+        return res;
+
+    }
+
+    /** @return L'empremta del graf (noms i arestes), per saber si una disposició desada hi correspon. */
+    private long fingerprint() {
+
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+
+        for (String name : _names) {
+            for (byte b : name.getBytes(StandardCharsets.UTF_8)) hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ 0xff) * 0x100000001b3L;
+        }
+
+        for (int value : _edges) hash = (hash ^ value) * 0x100000001b3L;
+
+        return hash;
+
+    }
+
+    /** @return La disposició desada a \p file si correspon al graf, o null si no existeix o és d'un altre graf.
+     * @throws IOException si el fitxer existeix però no es pot llegir.
+     */
+    private float[] readLayout(Path file, long fingerprint) throws IOException {
+
+        if (!Files.isRegularFile(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint ||
+                    in.readInt() != _names.length) return null;
+
+            float[] res = new float[2 * _names.length];
+            for (int i = 0; i < res.length; i++) res[i] = in.readFloat();
+
+            return res;
+
+        }
+
+    }
+
+    /** @brief Desa la disposició \p positions a \p file (a través d'un fitxer temporal). */
+    private void writeLayout(Path file, long fingerprint, float[] positions) throws IOException {
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(_names.length);
+            for (float value : positions) out.writeFloat(value);
+
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+
+    }
+
+}
@@ -17,7 +17,11 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
 
 
 /**
@@ -33,6 +37,10 @@ public class Launcher extends Application {
 
     private AnchorPane pieAnchorPane; ///< AnchorPane on es col·locaran els PieCharts.
 
+    private static TickPipeline pipeline; ///< Canal de sortida dels ticks, amb les etapes demanades als arguments.
+
+    private static InterventionTimeline timeline; ///< Calendari d'intervencions dels arguments (null si no n'hi ha).
+
 
     /** @brief Genera l'AnchorPane dels PieCharts.
      * @pre Els tres PieCharts de data s'han generat.
@@ -70,7 +78,7 @@ public class Launcher extends Application {
      *  - Genera tots els PieCharts amb el constructor de GraphChartData.
      *  - Obté el directori dels fitxers d'entrada del projecte.
      *  - Crea l'objecte Simulation a partir dels fitxers a llegir.
-     *  - Crea el Filter i la UI per la interconnexió de la GUI i la CLI.
+     *  - Crea el motor de la simulació (SimulationRunner) i la UI per la interconnexió de la GUI i la CLI.
      *  - Afegeix els vèrtexs i les arestes al graf de regions.
      *  - Crea les subescenes i panells i genera l'escena de la interfície gràfica.
      *  - Prepara els esdeveniments que reaccionen als clics de l'usuari (pels PieCharts).
@@ -85,17 +93,34 @@ public class Launcher extends Application {
         ///< Simulació de tot el programa.
         Simulation simulation = readFiles(input_directory);
 
-        ///< Objecte Filter.
-        Filter filter = new Filter(simulation);
+        try {
+            simulation.setTimeline(timeline);
+        } catch (NoSuchElementException e) {
+            System.out.println("El calendari d'intervencions no és vàlid: " + e.getMessage());
+            System.exit(-1);
+        }
+
+        ///< Motor que fa avançar la simulació en el seu Thread.
+        SimulationRunner runner = new SimulationRunner(simulation, pipeline);
 
         ///< Mitjà de comunicació entre la GUI i la CLI.
         UI ui = new UI(data);
 
-        data.addVertexs(simulation.regionList().iterator());
-        data.addEdges(simulation.regionList().iterator());
+        ///< Si el territori és massa gran pel SmartGraphPanel.
+        boolean large_graph = simulation.regionList().size() >= GraphChartData.LARGE_GRAPH_REGIONS;
+
+        if (large_graph) {
+            data.useLargeGraph(simulation.regionList(), 702, 755,
+                    Path.of(input_directory, LargeGraphView.LAYOUT_FILE));
+        }
+        else {
+            data.addVertexs(simulation.regionList().iterator());
+            data.addEdges(simulation.regionList().iterator());
+        }
 
         ///< Subescena del Graf.
-        SubScene graphSubScene = new SubScene(new SmartGraphDemoContainer(data.graphView()), 702, 755); //passar a constants
+        SubScene graphSubScene = new SubScene(large_graph ? data.largeGraph().node() :
+                new SmartGraphDemoContainer(data.graphView()), 702, 755); //passar a constants
 
         generatePieAnchorPane();
 
@@ -125,21 +150,171 @@ public class Launcher extends Application {
         stage.setScene(mainScene);
         stage.show();
 
-        data.graphView().init(); //inicialitza la visualització del graph
+        data.useHeatmap(simulation.regionList(), 702, 755);
+
+        ///< Finestra del mapa de calor.
+        Stage heatmapStage = new Stage(StageStyle.DECORATED);
+        heatmapStage.setTitle("Mapa de calor de les regions");
+        heatmapStage.setScene(new Scene(data.heatmap().node(), 702, 755));
+        heatmapStage.show();
+
+        if (!large_graph) data.graphView().init(); //inicialitza la visualització del graph
 
-        CommandLine cli = new CommandLine(ui, simulation, filter);
+        CommandLine cli = new CommandLine(ui, simulation, runner);
         Thread cliThread = new Thread(cli::processCmd);
         cliThread.setDaemon(true);
         cliThread.start(); // es crea el thread de la part de la línia d'ordres.
-        data.graphView().update(); // s'actualitza la visualització del graph abans d'acabar (necessari)
+        if (!large_graph) data.graphView().update(); // s'actualitza la visualització del graph abans d'acabar (necessari)
     }
 
     /** @brief Funció principal
      * @pre True
-     * @post Executa tot el programa.
-     * @param args Arguments de funcionament del programa. No en té cap.
+     * @post Executa tot el programa. Amb els arguments "--compile <directori> [imatge]" no obre la interfície: compila
+     * els fitxers d'entrada del directori en una imatge binària (per defecte, ScenarioImage.IMAGE_FILE dins del
+     * mateix directori) que es carregarà en lloc dels fitxers de text mentre estigui actualitzada. Amb els arguments
+     * "--telemetria [port]" publica la telemetria de la simulació (Telemetry) abans d'obrir la interfície. Amb
+     * l'argument "--fraccional" (en qualsevol posició) la simulació es fa en mode fraccional
+     * (Affectation.setFractional), i amb "--regions-actives" només es calculen les regions actives i les seves veïnes
+     * (Territory.setActiveRegions). Amb els arguments "--estocastic [llavor]" (en qualsevol posició) les transicions
+     * se sortegen (Affectation.setStochastic) amb la llavor indicada o, si no n'hi ha, una d'aleatòria. Amb els
+     * arguments "--nuclis escalar|vectorial|verifica" (en qualsevol posició) es tria la implementació de
+     * CohortKernels. Amb els arguments "--contrapressio bloqueja|descarta|mostreja[:període]" (en
+     * qualsevol posició) es tria la contrapressió del canal de sortida dels ticks (TickPipeline.Backpressure), i amb
+     * "--exporta <fitxer>" s'hi afegeix una etapa que escriu els ticks al fitxer (FrameExporter). Amb els arguments
+     * "--intervencions <fitxer>" (en qualsevol posició) les intervencions del fitxer s'apliquen soles al tick
+     * programat (InterventionTimeline).
+     * @param args Arguments de funcionament del programa.
      */
     public static void main(String[] args) {
+
+        if (args.length >= 2 && args[0].equals("--compile")) {
+
+            String output = args.length >= 3 ? args[2] : args[1] + File.separator + ScenarioImage.IMAGE_FILE;
+
+            try {
+                ScenarioImage.compile(args[1], output);
+                System.out.println("Imatge de l'escenari escrita a " + output);
+            } catch (IOException e) {
+                System.out.println("No s'ha pogut compilar l'escenari: " + e.getMessage());
+                System.exit(-1);
+            }
+
+            return;
+
+        }
+
+        if (Arrays.asList(args).contains("--fraccional")) Affectation.setFractional(true);
+        if (Arrays.asList(args).contains("--regions-actives")) Territory.setActiveRegions(true);
+
+        int option = Arrays.asList(args).indexOf("--estocastic");
+
+        if (option != -1) {
+
+            if (Affectation.fractional()) {
+                System.out.println("El mode estocàstic no es pot combinar amb el mode fraccional");
+                System.exit(-1);
+            }
+
+            long seed = System.nanoTime();
+
+            try {
+                if (option + 1 < args.length && !args[option + 1].startsWith("--")) seed = Long.parseLong(args[option + 1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Llavor no vàlida: " + args[option + 1]);
+                System.exit(-1);
+            }
+
+            Affectation.setStochastic(true, seed);
+            MutableVirus.setSeed(seed);
+
+        }
+
+        option = Arrays.asList(args).indexOf("--nuclis");
+
+        if (option != -1 && option + 1 < args.length) {
+
+            CohortKernels.Mode mode = switch (args[option + 1]) {
+                case "escalar" -> CohortKernels.Mode.SCALAR;
+                case "vectorial" -> CohortKernels.Mode.VECTOR;
+                case "verifica" -> CohortKernels.Mode.VERIFY;
+                default -> null;
+            };
+
+            if (mode == null) {
+                System.out.println("Nuclis no vàlids: " + args[option + 1]);
+                System.exit(-1);
+            }
+
+            if (!CohortKernels.setMode(mode)) {
+                System.out.println("Els nuclis vectorials necessiten --add-modules jdk.incubator.vector");
+                System.exit(-1);
+            }
+
+        }
+
+        TickPipeline.Backpressure policy = TickPipeline.Backpressure.BLOCK;
+        int sample_period = TickPipeline.DEFAULT_SAMPLE_PERIOD;
+        option = Arrays.asList(args).indexOf("--contrapressio");
+
+        if (option != -1 && option + 1 < args.length) {
+
+            String[] value = args[option + 1].split(":", 2);
+
+            try {
+                policy = TickPipeline.Backpressure.fromName(value[0]);
+                if (value.length == 2) sample_period = Integer.parseInt(value[1]);
+                if (sample_period <= 0) throw new InputMismatchException("El període ha de ser positiu");
+            } catch (InputMismatchException | NumberFormatException e) {
+                System.out.println("Contrapressió no vàlida: " + e.getMessage());
+                System.exit(-1);
+            }
+
+        }
+
+        pipeline = new TickPipeline(TickPipeline.DEFAULT_CAPACITY, policy, sample_period);
+        option = Arrays.asList(args).indexOf("--exporta");
+
+        if (option != -1 && option + 1 < args.length) {
+
+            try {
+                pipeline.addStage("Exportació dels ticks", new FrameExporter(Path.of(args[option + 1])));
+            } catch (IOException e) {
+                System.out.println("No s'ha pogut crear el fitxer d'exportació: " + e.getMessage());
+                System.exit(-1);
+            }
+
+        }
+
+        option = Arrays.asList(args).indexOf("--intervencions");
+
+        if (option != -1 && option + 1 < args.length) {
+
+            try {
+                timeline = InterventionTimeline.read(Path.of(args[option + 1]));
+            } catch (IOException | InputMismatchException e) {
+                System.out.println("No s'ha pogut llegir el calendari d'intervencions: " + e.getMessage());
+                System.exit(-1);
+            }
+
+        }
+
+        option = Arrays.asList(args).indexOf("--telemetria");
+
+        if (option != -1) {
+
+            int port = Telemetry.DEFAULT_PORT;
+
+            try {
+                if (option + 1 < args.length && !args[option + 1].startsWith("--")) port = Integer.parseInt(args[option + 1]);
+                port = Telemetry.start(port);
+                System.out.println("Mètriques de la simulació a http://127.0.0.1:" + port + "/metrics");
+            } catch (NumberFormatException | IOException e) {
+                System.out.println("No s'ha pogut iniciar la telemetria: " + e.getMessage());
+                System.exit(-1);
+            }
+
+        }
+
         launch(args);
     }
 
@@ -154,23 +329,16 @@ public class Launcher extends Application {
      */
     private static Simulation readFiles(String input_directory) {
 
-        VirusReader virusReader = null;
-        RegionReader regionReader = null;
-        InitialStateReader initialStateReader = null;
-        VaccineReader vaccineReader = null;
+        FastInputReader input = null;
         try {
-            virusReader = new VirusReader(input_directory);
-            regionReader = new RegionReader(input_directory);
-            initialStateReader = new InitialStateReader(input_directory);
-            vaccineReader = new VaccineReader(input_directory);
-        } catch (FileNotFoundException e) {
+            input = ScenarioImage.read(input_directory);
+        } catch (IOException e) {
             System.out.println("No s'ha pogut obrir un fitxer");
             System.exit(-1);
         }
 
         //Crea instància de simulació
-        return new Simulation(virusReader.families(), virusReader.viruses(), regionReader.regions(),
-                regionReader.neighbours(), initialStateReader.affectedGroups(), vaccineReader.vaccines());
+        return new Simulation(input);
 
     }
 }
@@ -5,6 +5,7 @@
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 /**
  * @class MutableVirus
@@ -20,8 +21,16 @@ public class MutableVirus extends Virus {
      */
     private static final Map<MutableVirus, Integer> _mutation_count = new HashMap<>();
 
+    /**
+     * Generador del qual es divideix el generador de mutacions de cada regió. Es pot fixar la llavor amb setSeed per
+     * reproduir una simulació.
+     */
+    private static SplittableRandom _random = new SplittableRandom();
+
     private final MutableVirus _v1; ///< Primer parentesc del virus (pot ser null).
     private final MutableVirus _v2; ///< Segon parentesc del virus (si vé d'una mutació familiar, pot ser null).
+    private MutableVirus _crossed1; ///< Primer virus de la coincidència que ha creat el virus (null si no en vé).
+    private MutableVirus _crossed2; ///< Segon virus de la coincidència que ha creat el virus (null si no en vé).
     private final float _mutate_error_probability; ///< Probabilitat que es produeixi una mutació per error de còpia.
     private final float _mutate_family_probability; ///< Probabilitat que es produeixi una mutació per coincidència
     ///< de dos virus de la mateixa família.
@@ -61,22 +70,54 @@ public class MutableVirus extends Virus {
                  int latencyTime, int immunityDuration, int infectionDuration,
                  float mutateErrorProbability, float mutateFamilyProbability, MutableVirus parent1,
                  MutableVirus parent2) {
+        this(name, family, fallSickProbability, deathRate, spreadRate, symptomDuration, incubationTime, latencyTime,
+                immunityDuration, infectionDuration, mutateErrorProbability, mutateFamilyProbability, parent1, parent2,
+                true);
+    }
+
+    /** @brief Constructor que permet deixar el virus sense identificador.
+     * @pre Les mateixes que el constructor anterior.
+     * @param numbered Si el virus rep ara el seu identificador; les mutacions no en reben fins que es registren.
+     * @post S'ha creat el virus amb les dades corresponents.
+     */
+    private MutableVirus(String name, VirusFamily family, float fallSickProbability, float deathRate,
+                         float spreadRate, int symptomDuration, int incubationTime,
+                         int latencyTime, int immunityDuration, int infectionDuration,
+                         float mutateErrorProbability, float mutateFamilyProbability, MutableVirus parent1,
+                         MutableVirus parent2, boolean numbered) {
         super(name, family, fallSickProbability, deathRate, spreadRate, symptomDuration, incubationTime, latencyTime,
-                immunityDuration, infectionDuration);
+                immunityDuration, infectionDuration, numbered);
         _mutate_error_probability = mutateErrorProbability;
         _mutate_family_probability = mutateFamilyProbability;
         _v1 = parent1;
         _v2 = parent2;
     }
 
+    /** @brief Fixa la llavor dels valors aleatoris de les mutacions.
+     * @pre True
+     * @param seed Llavor del generador.
+     * @post Les regions que es creïn a partir d'ara, si es creen en el mateix ordre, tindran els mateixos generadors
+     * de mutacions que en qualsevol altra execució amb la mateixa llavor, sigui quin sigui el nombre de fils.
+     */
+    public static void setSeed(long seed) {
+        _random = new SplittableRandom(seed);
+    }
+
+    /** @brief Retorna un generador de mutacions independent per a una regió nova.
+     * @pre True
+     * @return Retorna un generador dividit del de la llavor.
+     */
+    public static SplittableRandom regionStream() { return _random.split(); }
+
     /** @brief Genera un float entre min (exclusiu) i max (inclusiu)
      * @pre True
+     * @param random Generador de la regió on neix la mutació.
      * @param min Valor mínim que es generarà (inclòs)
      * @param max Valor màxim que es generarà (no inclòs)
      * @return Retorna un float generat aleatòriament que compleix min <= valor < max
      */
-    private float generateRandomFloat(float min, float max) {
-        return (float) ((Math.random() * (max - min)) + min);
+    private static float generateRandomFloat(SplittableRandom random, float min, float max) {
+        return (float) ((random.nextDouble() * (max - min)) + min);
     }
 
     /** @brief Retorna el pare d'error de còpia.
@@ -92,7 +133,7 @@ public class MutableVirus extends Virus {
     }
 
     /** @brief Genera el nom del nou virus a causa d'error de còpia.
-     * @pre True
+     * @pre Només es crida en registrar la mutació (register).
      * @return Retorna el nom en format: NOM_ORIGINAL+(quantitat de còpies existents)
      */
     private String generateMutateCopyErrorName() {
@@ -109,6 +150,26 @@ public class MutableVirus extends Virus {
         return parent._name + count;
     }
 
+    /** @brief Dona el nom i l'identificador definitius a una mutació i l'afegeix a la simulació.
+     * Les mutacions neixen durant la propagació, que pot anar en paral·lel, amb un nom provisional i sense
+     * identificador; la regió on han nascut les registra després, en l'ordre en què les ha creat, i les regions es
+     * registren en ordre (Territory.propagateViruses), de manera que els noms i els identificadors no depenen dels fils.
+     * @pre La mutació ha nascut a \p region i no s'ha registrat; les mutacions creades abans ja s'han registrat.
+     * @param region Regió on ha nascut la mutació.
+     * @post La mutació té el nom i l'identificador definitius i és a la llista de virus de la simulació.
+     */
+    void register(Region region) {
+        if (_crossed1 != null) {
+            _name = _crossed1._name + '_' + _crossed2._name;
+            SimulationEvents.mutation(this, "coincidència", _crossed1, _crossed2, region);
+        } else {
+            _name = generateMutateCopyErrorName();
+            SimulationEvents.mutation(this, "error de còpia", _v1, null, region);
+        }
+        assignId();
+        Simulation.addVirus(this);
+    }
+
     /**
      * @brief Determina el funcionament en cas de coincidència de virus de la mateixa família en un grup de persones.
      * En la classe derivada mutable, aquesta funció genera un virus nou per coincidència en una part del solapament,
@@ -127,16 +188,17 @@ public class MutableVirus extends Virus {
         else
             proportion = 0f;
 
-        int total = (int)(overlap * region.inhabitants());
+        double total = Affectation.part(region.inhabitants(), overlap);
 
         overlap -= proportion;
 
         super.onVirusOverlap(region, my_affectation, affectation, overlap);
 
-        int mutations = total - (int)(overlap * region.inhabitants());
+        // una mutació és d'una persona sencera, també en mode fraccional
+        double mutations = Math.floor(total - Affectation.part(region.inhabitants(), overlap));
         if (mutations > 0) {
 
-            MutableVirus newMutableVirus = createMutationByFamily(this, (MutableVirus)affectation.virus());
+            MutableVirus newMutableVirus = createMutationByFamily(region, this, (MutableVirus)affectation.virus());
 
             Affectation.transfer(my_affectation, region.affectation(newMutableVirus), mutations);
             Affectation.transfer(affectation, null, mutations);
@@ -153,16 +215,16 @@ public class MutableVirus extends Virus {
      * es calculen i afegeixen les mutacions per error de còpia i error de família.
      */
     @Override
-    public void propagateVirus(Region r, int affected) {
+    public void propagateVirus(Region r, double affected) {
 
-        int mutationErrors = (int) (affected * _mutate_error_probability);
+        double mutationErrors = Math.floor(Affectation.draw(r, affected, _mutate_error_probability));
         affected -= mutationErrors;
 
         super.propagateVirus(r, affected);
 
         if (mutationErrors > 0) {
 
-            MutableVirus newMutableVirus = createMutationByError();
+            MutableVirus newMutableVirus = createMutationByError(r);
 
             // és l'equivalent de fer super.propagateVirus però pel nou virus
             newMutableVirus.generateAffectedGroup(r, mutationErrors);
@@ -174,16 +236,19 @@ public class MutableVirus extends Virus {
     
     /** @brief Crea una mutació per família donats dos MutableVirus.
      * @pre v1.family() == v2.family()
+     * @param region Regió on neix la mutació.
      * @param v1 Primer virus de la mutació.
      * @param v2 Segon virus de la mutació.
-     * @return Retorna el nou MutableVirus generat per la recombinació aleatòria de v1 i v2.
+     * @return Retorna el nou MutableVirus generat per la recombinació aleatòria de v1 i v2, pendent de registrar a
+     * \p region (register).
      */
-    private static MutableVirus createMutationByFamily(MutableVirus v1, MutableVirus v2) {
+    private static MutableVirus createMutationByFamily(Region region, MutableVirus v1, MutableVirus v2) {
 
+        SplittableRandom random = region.mutationRandom();
         float[] randomVals = new float[10];
 
         for (int i = 0; i < 10; i++) {
-            randomVals[i] = (float) Math.random(); //generem 10 valors aleatoris pels 10 paràmetres
+            randomVals[i] = random.nextFloat(); //generem 10 valors aleatoris pels 10 paràmetres
         }
 
         MutableVirus newMutableVirus = new MutableVirus(
@@ -199,32 +264,37 @@ public class MutableVirus extends Virus {
                 Math.round( randomVals[7]*v1._infection_duration + (1 - randomVals[7]) * v2._infection_duration),
                 randomVals[8]*v1._mutate_error_probability + (1 - randomVals[8]) * v2._mutate_error_probability,
                 randomVals[9]*v1._mutate_family_probability + (1 - randomVals[9]) * v2._mutate_family_probability,
-                null, null
+                null, null, false
                 );
 
-        Simulation.addVirus(newMutableVirus);
+        newMutableVirus._crossed1 = v1;
+        newMutableVirus._crossed2 = v2;
+        region.addMutation(newMutableVirus);
 
         return newMutableVirus;
     }
 
     /** @brief Crea una mutació per error de còpia.
      * @pre True
-     * @return Retorna el nou MutableVirus generat aleatòriament per l'error de còpia.
+     * @param region Regió on neix la mutació.
+     * @return Retorna el nou MutableVirus generat aleatòriament per l'error de còpia, pendent de registrar a
+     * \p region (register).
      */
-    private MutableVirus createMutationByError() {
+    private MutableVirus createMutationByError(Region region) {
         //SUPOSAREM QUE EL PARÀMETRE ALEATORI ÉS EL MATEIX PER TOTS ELS VALORS DEL VIRUS.
-        float multiplier = 1f + generateRandomFloat(-_family.maximumVariation(), _family.maximumVariation());
+        float multiplier = 1f + generateRandomFloat(region.mutationRandom(), -_family.maximumVariation(),
+                _family.maximumVariation());
 
 
-        MutableVirus newMutation = new MutableVirus(generateMutateCopyErrorName(), _family,
+        MutableVirus newMutation = new MutableVirus(getErrorCopyParent()._name, _family,
                 _fall_sick_probability * multiplier, _death_rate * multiplier,
                 _spread_rate * multiplier, Math.round(_symptom_duration * multiplier),
                 Math.round(_incubation_time * multiplier), Math.round(_latency_time * multiplier),
                 Math.round(_immunity_duration * multiplier), Math.round(_infection_duration * multiplier),
                 Math.round(_mutate_error_probability * multiplier), Math.round(_mutate_family_probability * multiplier),
-                this, null);
+                this, null, false);
 
-        Simulation.addVirus(newMutation);
+        region.addMutation(newMutation);
 
         return newMutation;
     }
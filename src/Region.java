@@ -24,7 +24,7 @@ public class Region {
         /**
          * El nombre de persones que s'han mogut en el tic actual.
          */
-        public int movement;
+        public double movement;
 
         /**
          * Si la frontera està oberta o tancada.
@@ -46,19 +46,44 @@ public class Region {
     }
 
     /**
-     * Mapeja les regions veïnes al seu objecte neighbour.
+     * Mapeja les regions veïnes al seu objecte neighbour
+     * (en ordre d'inserció, perquè la simulació sigui reproduïble).
      */
-	private final HashMap<Region, Neighbour> _neighbours;
+	private final LinkedHashMap<Region, Neighbour> _neighbours;
 
     /**
-     * Mapeja els virus a les seves afectacions.
+     * Regions veïnes, en el mateix ordre que _neighbours
+     * (per recórrer-les sense crear iteradors).
      */
-    private final HashMap<Virus, Affectation> _affectations;
+    private final ArrayList<Region> _neighbour_regions;
+
+    /**
+     * Objectes neighbour de les regions de _neighbour_regions, en el mateix ordre.
+     */
+    private final ArrayList<Neighbour> _neighbour_states;
+
+    /**
+     * Posició de cada regió veïna a _neighbour_regions.
+     */
+    private final HashMap<Region, Integer> _neighbour_index;
+
+    /**
+     * Afectacions de la regió indexades per l'identificador del virus (Virus.id),
+     * null per als virus que no hi són. Creix quan apareix un virus amb un
+     * identificador més gran.
+     */
+    private Affectation[] _affectations;
+
+    /**
+     * Afectacions de la regió en ordre d'inserció (les mateixes que _affectations,
+     * per recórrer-les en un ordre determinista i sense forats).
+     */
+    private final ArrayList<Affectation> _affectation_list;
 
     /**
      * Llista de vacunes que afecten la regió.
      */
-    private final List<Affectation.VaccineStepper> _vaccines;
+    private final ArrayList<Affectation.VaccineStepper> _vaccines;
 
     /**
      * Llista d'afectacions afegides en aquest tic.
@@ -84,45 +109,84 @@ public class Region {
     /**
      * Habitants actual de la regió.
      */
-    private int _inhabitants;
+    private double _inhabitants;
 
     /**
      * Els habitants abans de retornar-los.
      */
-    private int _pre_rollback_inhabitants;
+    private double _pre_rollback_inhabitants;
 
     /**
      * Habitants natals de la regió.
      */
-    private final int _natal;
+    private final double _natal;
 
     /**
      * Habitants natals de la regió que són fora.
      */
-    private int _abroad;
+    private double _abroad;
+
+    /**
+     * Generador de les transicions de la regió en mode estocàstic (null si no ho és).
+     */
+    private final SplittableRandom _random;
+
+    /**
+     * Generador dels valors aleatoris de les mutacions que neixen a la regió (MutableVirus.setSeed).
+     */
+    private final SplittableRandom _mutation_random;
+
+    /**
+     * Mutacions nascudes a la regió que encara no s'han registrat, en l'ordre en què s'han creat.
+     */
+    private final ArrayList<MutableVirus> _mutations;
+
+    /**
+     * Afectacions de les mutacions que encara no s'han registrat (i, per tant, no tenen identificador).
+     */
+    private final ArrayList<Affectation> _unindexed;
+
+    /**
+     * Posició de la regió a la llista del territori (Territory).
+     */
+    private int _position;
+
+    /**
+     * Últim tic en què la regió s'ha afegit a les regions actives del territori (-1 si mai).
+     */
+    private long _active_tick = -1;
 
     /**
      * @brief Constructor genèric de la regió.
      */
-    public Region(String name, int inside_mobility, int inhabitants) {
+    public Region(String name, int inside_mobility, long inhabitants) {
 
         _name = name;
         _inside_mobility = inside_mobility;
         _natal = _pre_rollback_inhabitants = _inhabitants = inhabitants;
 
-        _neighbours = new HashMap<>();
-        _affectations = new HashMap<>();
-        _vaccines = new LinkedList<>();
-        _recent_affectations = new LinkedList<>();
+        _neighbours = new LinkedHashMap<>();
+        _neighbour_regions = new ArrayList<>();
+        _neighbour_states = new ArrayList<>();
+        _neighbour_index = new HashMap<>();
+        _affectations = new Affectation[0];
+        _affectation_list = new ArrayList<>();
+        _vaccines = new ArrayList<>();
+        _recent_affectations = new ArrayList<>();
+        _mutations = new ArrayList<>();
+        _unindexed = new ArrayList<>();
 
         _mobility_state = new Neighbour(1f, true);
 
+        _random = Affectation.regionStream();
+        _mutation_random = MutableVirus.regionStream();
+
     }
 
     /**
      * @return habitants de la regió.
      */
-    public int inhabitants() {
+    public double inhabitants() {
 
         return _inhabitants;
 
@@ -131,7 +195,7 @@ public class Region {
     /**
      * @return els habitants que són estrangers.
      */
-    public int foreign() {
+    public double foreign() {
 
         return _pre_rollback_inhabitants - _natal + _abroad;
 
@@ -142,19 +206,93 @@ public class Region {
      */
     public float insideMobility() { return _inside_mobility; }
 
+    /**
+     * @return el generador de les transicions de la regió (Affectation.setStochastic).
+     */
+    public SplittableRandom random() { return _random; }
+
+    /**
+     * @return el generador de les mutacions que neixen a la regió.
+     */
+    public SplittableRandom mutationRandom() { return _mutation_random; }
+
+    /**
+     * @return la posició de la regió a la llista del territori.
+     */
+    public int position() { return _position; }
+
+    /**
+     * @brief Estableix la posició de la regió a la llista del territori.
+     */
+    public void setPosition(int position) { _position = position; }
+
+    /**
+     * @brief Marca la regió com a activa en el tic tick.
+     * @return si no ho estava encara en aquest tic.
+     */
+    public boolean markActive(long tick) {
+
+        if (_active_tick == tick) return false;
+
+        _active_tick = tick;
+
+        return true;
+
+    }
+
+    /**
+     * @return si la regió s'ha marcat com a activa en el tic tick.
+     */
+    public boolean isMarkedActive(long tick) { return _active_tick == tick; }
+
+    /**
+     * @return si la regió té persones afectades o vacunes en curs, és a dir,
+     * si un tic la pot fer canviar.
+     */
+    public boolean isActive() {
+
+        if (!_vaccines.isEmpty()) return true;
+
+        for (int i = 0; i < _affectation_list.size(); i++) {
+
+            if (_affectation_list.get(i).affected() > 0) return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * @brief Deixa la regió com si hagués fet un tic sense moviments, quan el
+     * territori deixa de calcular-la perquè no està activa.
+     */
+    public void idle() {
+
+        _abroad = 0;
+        _pre_rollback_inhabitants = _inhabitants;
+
+    }
+
     /**
      * @brief Si no existeix crea l'afectació
      * @return l'afectació assignada al virus
      */
     public Affectation affectation(Virus virus) {
 
-        Affectation affectation = _affectations.get(virus);
+        int id = virus.id();
+        Affectation affectation = id < 0 ? unindexed(virus) : id < _affectations.length ? _affectations[id] : null;
 
         if (affectation == null) {
 
             affectation = new Affectation(this, virus);
 
-            _affectations.put(virus, affectation);
+            if (id < 0)
+                _unindexed.add(affectation);
+            else
+                index(affectation);
+
+            _affectation_list.add(affectation);
 
             _recent_affectations.add(affectation);
 
@@ -166,6 +304,55 @@ public class Region {
 
     }
 
+    /**
+     * @return l'afectació de la mutació sense registrar \p virus, o null si no en té.
+     */
+    private Affectation unindexed(Virus virus) {
+
+        for (int i = 0; i < _unindexed.size(); i++)
+            if (_unindexed.get(i).virus() == virus) return _unindexed.get(i);
+
+        return null;
+
+    }
+
+    /**
+     * @brief Desa l'afectació a la posició de l'identificador del seu virus.
+     */
+    private void index(Affectation affectation) {
+
+        int id = affectation.virus().id();
+
+        if (id >= _affectations.length)
+            _affectations = Arrays.copyOf(_affectations, Math.max(id + 1, 2 * _affectations.length));
+
+        _affectations[id] = affectation;
+
+    }
+
+    /**
+     * @brief Afegeix una mutació nascuda a la regió, que es registrarà a registerMutations.
+     */
+    public void addMutation(MutableVirus virus) { _mutations.add(virus); }
+
+    /**
+     * @brief Dona el nom i l'identificador definitius a les mutacions nascudes a la regió,
+     * en l'ordre en què s'han creat, i n'indexa les afectacions.
+     * @pre No s'està propagant cap regió; les regions anteriors ja han registrat les seves.
+     */
+    public void registerMutations() {
+
+        for (int i = 0; i < _mutations.size(); i++)
+            _mutations.get(i).register(this);
+
+        for (int i = 0; i < _unindexed.size(); i++)
+            index(_unindexed.get(i));
+
+        _mutations.clear();
+        _unindexed.clear();
+
+    }
+
     /**
      * @brief Funciona com el pop d'un stack,
      * cada crida a aquesta funció esborra les entrades
@@ -174,14 +361,26 @@ public class Region {
      */
     public List<Affectation> recentlyAddedAffectations() {
 
-        List<Affectation> result = _recent_affectations;;
+        if (_recent_affectations.isEmpty()) return Collections.emptyList();
 
-        _recent_affectations = new LinkedList<>();
+        List<Affectation> result = _recent_affectations;
+
+        _recent_affectations = new ArrayList<>();
 
         return result;
 
     }
 
+    /**
+     * @return les afectacions de la regió en ordre d'inserció.
+     * La llista és la interna: no s'ha de modificar.
+     */
+    public List<Affectation> affectations() {
+
+        return _affectation_list;
+
+    }
+
     /**
      * @brief Filtra les afectacions per família.
      * @return les coincidències d'afectacions segons la família.
@@ -190,7 +389,7 @@ public class Region {
 
         List<Affectation> matches = new ArrayList<>();
         
-        for (Affectation affectation : _affectations.values()) {
+        for (Affectation affectation : _affectation_list) {
 
             if (affectation.virus().family() == family) {
 
@@ -203,9 +402,30 @@ public class Region {
         return matches;
     }
 
+    /**
+     * @return el nombre d'afectacions de la regió.
+     */
+    public int affectationCount() {
+
+        return _affectation_list.size();
+
+    }
+
+    /**
+     * @return el nombre de grups d'afectats de totes les afectacions de la regió.
+     */
+    public int groupCount() {
+
+        int res = 0;
+        for (int i = 0; i < _affectation_list.size(); i++) res += _affectation_list.get(i).groupCount();
+
+        return res;
+
+    }
+
     public String toString() {
 
-        return _name + " (" + _inhabitants + " inhab.)";
+        return _name + " (" + Math.round(_inhabitants) + " inhab.)";
 
     }
 
@@ -218,12 +438,45 @@ public class Region {
 
     }
 
+    /**
+     * @return els veïns de la regió en ordre d'inserció.
+     * La llista és la interna: no s'ha de modificar.
+     */
+    public List<Region> neighbourList() {
+
+        return _neighbour_regions;
+
+    }
+
     /**
      * @brief Afegeix un veí a la regió.
      */
     public void addNeighbour(Region region, Neighbour neighbour) {
 
-        _neighbours.put(region, neighbour);
+        Neighbour previous = _neighbours.put(region, neighbour);
+
+        if (previous == null) {
+
+            _neighbour_index.put(region, _neighbour_regions.size());
+            _neighbour_regions.add(region);
+            _neighbour_states.add(neighbour);
+
+        } else {
+
+            _neighbour_states.set(_neighbour_index.get(region), neighbour);
+
+        }
+
+    }
+
+    /**
+     * @return la posició de la regió region a neighbourList(), o -1 si no és veïna.
+     */
+    public int neighbourIndex(Region region) {
+
+        Integer index = _neighbour_index.get(region);
+
+        return index == null ? -1 : index;
 
     }
 
@@ -233,19 +486,20 @@ public class Region {
 	public String name() { return _name; }
 
     /**
-     * @brief Aplica la vacuna a la regió.
+     * @brief Aplica la vacuna a la regió. Les fases de la vacuna les avança
+     * el calendari del territori (VaccinationScheduler), que la treu de la
+     * regió quan acaba.
      */
-    public void addVaccine(Vaccine vaccine, float proportion) {
-
-        Affectation.VaccineStepper vaccineStepper = new Affectation.VaccineStepper(vaccine, proportion);
+    public void addVaccine(Affectation.VaccineStepper vaccineStepper) {
 
         _vaccines.add(vaccineStepper);
 
-        for (Map.Entry<Virus, Affectation> entry : _affectations.entrySet()) {
+        for (int i = 0; i < _affectation_list.size(); i++) {
+            Affectation affectation = _affectation_list.get(i);
 
-            if (vaccine.isEffective(entry.getKey())) {
+            if (vaccineStepper.vaccine().isEffective(affectation.virus())) {
 
-                entry.getValue().applyVaccine(vaccineStepper);
+                affectation.applyVaccine(vaccineStepper);
 
             }
 
@@ -253,6 +507,15 @@ public class Region {
 
     }
 
+    /**
+     * @brief Treu de la regió una vacuna que ha acabat.
+     */
+    public void removeVaccine(Affectation.VaccineStepper vaccineStepper) {
+
+        _vaccines.remove(vaccineStepper);
+
+    }
+
     /**
      * @brief Comprova si hi ha alguna vacuna que afectaria aquesta afectació,
      * i si es dona el cas, l'aplica. Alhora, si la vacuna ha deixat de tenir
@@ -293,6 +556,24 @@ public class Region {
 
     }
 
+    /**
+     * @return si la frontera amb la regió region està oberta.
+     */
+    public boolean isBorderOpen(Region region) {
+
+        return _neighbours.get(region).is_open;
+
+    }
+
+    /**
+     * @return si la frontera amb el veí index (en l'ordre de neighbourList()) està oberta.
+     */
+    public boolean isBorderOpen(int index) {
+
+        return _neighbour_states.get(index).is_open;
+
+    }
+
     public boolean isOnLockdown() {
 
         return !_mobility_state.is_open;
@@ -315,43 +596,21 @@ public class Region {
 
     }
 
-    /**
-     * @brief Avança un tic a les vacunes i, si escau, les esborra.
-     */
-    private void nextStepVaccines() {
-
-        Iterator<Affectation.VaccineStepper> iterator;
-        for (iterator = _vaccines.iterator(); iterator.hasNext();) {
-            Affectation.VaccineStepper vaccine = iterator.next();
-
-            vaccine.nextStep();
-
-            if (vaccine.isOver()) {
-
-
-
-                iterator.remove();
-
-            }
-
-        }
-
-    }
-
     /**
      * @brief Transfereix una proporció de persones afectades de la regió from a la regió to.
      * @return les transferències exitoses.
      */
-    private static int transfer(Region from, Region to, int total_movement) {
+    private static double transfer(Region from, Region to, double total_movement) {
 
-        int original_inhabitants = from._inhabitants;
+        double original_inhabitants = from._inhabitants;
 
         from._inhabitants -= total_movement;
         to._inhabitants += total_movement;
 
-        for (Affectation affectation : from._affectations.values()) {
+        for (int i = 0; i < from._affectation_list.size(); i++) {
+            Affectation affectation = from._affectation_list.get(i);
 
-            int people = affectation.affected() * total_movement / original_inhabitants;
+            double people = Affectation.apportion(affectation.affected(), total_movement, original_inhabitants);
 
             if (people > 0) {
 
@@ -371,9 +630,9 @@ public class Region {
      * @brief Transfereix una proporció de persones afectades de la regió from a la regió to.
      * @return les transferències exitoses.
      */
-    private static int transfer(Region from, Region to, float proportion) {
+    private static double transfer(Region from, Region to, float proportion) {
 
-        int total_movement = (int)(from._inhabitants * proportion);
+        double total_movement = Affectation.part(from._inhabitants, proportion);
 
         return transfer(from, to, total_movement);
     }
@@ -383,26 +642,26 @@ public class Region {
      */
     public void movements() {
 
-        nextStepVaccines();
-
         _abroad = 0;
 
         if (isOnLockdown())
             return; // harsh lockdown, cap moviment
 
-        for (Map.Entry<Region, Neighbour> entry : _neighbours.entrySet()) {
+        for (int i = 0; i < _neighbour_regions.size(); i++) {
+            Region region = _neighbour_regions.get(i);
+            Neighbour neighbour = _neighbour_states.get(i);
 
-            if (entry.getValue().is_open && !entry.getKey().isOnLockdown()) {
+            if (neighbour.is_open && !region.isOnLockdown()) {
 
-                int movement = transfer(this, entry.getKey(), entry.getValue().flow_rate);
+                double movement = transfer(this, region, neighbour.flow_rate);
 
-                entry.getValue().movement = movement;
+                neighbour.movement = movement;
 
                 _abroad += movement;
 
             } else {
 
-                entry.getValue().movement = 0;
+                neighbour.movement = 0;
 
             }
 
@@ -415,9 +674,9 @@ public class Region {
      */
     public void propagate() {
 
-        List<Affectation> affectations = new ArrayList<>(_affectations.values());
-
-        for (Affectation affectation : affectations) {
+        // les afectacions que es creïn durant la propagació (mutacions) no es propaguen fins al tic següent
+        for (int i = 0, count = _affectation_list.size(); i < count; i++) {
+            Affectation affectation = _affectation_list.get(i);
 
             affectation.nextStep();
             
@@ -437,15 +696,16 @@ public class Region {
         if (isOnLockdown())
             return; // harsh lockdown, cap moviment
 
-        for (Map.Entry<Region, Neighbour> entry : _neighbours.entrySet()) {
+        for (int i = 0; i < _neighbour_regions.size(); i++) {
+            Neighbour neighbour = _neighbour_states.get(i);
 
-            int movement = entry.getValue().movement;
+            double movement = neighbour.movement;
 
-            if (entry.getValue().is_open && movement > 0) {
+            if (neighbour.is_open && movement > 0) {
 
-                transfer(entry.getKey(), this, movement);
+                transfer(_neighbour_regions.get(i), this, movement);
 
-                entry.getValue().movement = 0;
+                neighbour.movement = 0;
 
             }
 
@@ -458,9 +718,9 @@ public class Region {
      */
     public void infect() {
 
-        for (Affectation affectation : _affectations.values()) {
+        for (int i = 0; i < _affectation_list.size(); i++) {
 
-            affectation.pushGroups();
+            _affectation_list.get(i).pushGroups();
 
         }
 
@@ -477,9 +737,9 @@ public class Region {
         int symptom_duration = virus.symptomDuration();
         int incubation_time = virus.incubationTime();
 
-        int affected = (int)(sick_percentage * _inhabitants);
-        int sick_div = affected / symptom_duration;
-        int sick_min = symptom_duration - affected % symptom_duration;
+        double affected = Affectation.part(_inhabitants, sick_percentage);
+        long sick_div = (long)affected / symptom_duration;
+        long sick_min = symptom_duration - (long)affected % symptom_duration;
 
         for (int i = 0; i < symptom_duration; i++) {
 
@@ -487,10 +747,12 @@ public class Region {
              *  La divisió d'affected / symptom_duration, al ser una divisió entera, es pot deixar n persones
              *  pel camí, on n és symptom_duration. Aleshores, mitjançant sick_min sumem les persones individuals
              *  que queden a cada grup per omplir-ho al màxim. Si no ho fes així, els grups no sumarien affected.
+             *  En mode fraccional no cal: cada grup rep exactament la seva part.
              */
-            int cur_affected = sick_div + (i >= sick_min ? 1 : 0);
+            double cur_affected = Affectation.fractional() ? affected / symptom_duration :
+                    sick_div + (i >= sick_min ? 1 : 0);
 
-            AffectedGroup group = new AffectedGroup(affectation, virus, cur_affected);
+            AffectedGroup group = AffectedGroup.obtain(affectation, virus, cur_affected);
 
             affectation.addGroup(group);
 
@@ -506,6 +768,7 @@ public class Region {
         }
 
         affectation.propagateVirus(); // primera propagació ha d'ocórrer ara
+        registerMutations();
 
     }
 
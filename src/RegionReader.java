@@ -25,7 +25,7 @@ public class RegionReader {
     public static class RegionData {
 
         public String name; ///< Nom.
-        public int inhabitants; ///< Total d'habitants.
+        public long inhabitants; ///< Total d'habitants.
         public int inside_mobility; ///< Mobilitat interna.
 
     }
@@ -133,7 +133,7 @@ public class RegionReader {
             switch (line_elements[0].trim()) {
 
                 case "nom" -> new_element.name = line_elements[1];
-                case "habitants" -> new_element.inhabitants = Integer.parseInt(line_elements[1]);
+                case "habitants" -> new_element.inhabitants = Long.parseLong(line_elements[1]);
                 case "mob_interna" -> new_element.inside_mobility = Integer.parseInt(line_elements[1]);
                 case "*" -> {
 
@@ -0,0 +1,572 @@
+/**
+ * @file ScenarioImage.java
+ * @brief Classe ScenarioImage
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+
+/** @class ScenarioImage
+ * @brief Imatge binària precompilada d'un directori d'entrada. Conté la taula de cadenes, els paràmetres de les
+ * famílies, virus i vacunes, les regions amb identificadors densos, les relacions de veïnatge en format CSR i els
+ * estats inicials ja resolts, de manera que carregar-la no requereix tokenitzar text ni buscar cap nom.
+ *
+ * Format (big-endian):
+ *  - Capçalera: MAGIC, VERSION, mida de les dades (int) i CRC32 de les dades (int).
+ *  - Dades: empremta dels fitxers de text (mida i data de modificació de cadascun), taula de cadenes, famílies,
+ *    virus, vacunes, regions, relacions de veïnatge i estats inicials.
+ *
+ * La imatge només s'utilitza si la capçalera, la versió, el checksum i l'empremta coincideixen; en cas contrari es
+ * tornen a llegir els fitxers de text.
+ */
+public class ScenarioImage {
+
+    // Constants
+
+    public static final String IMAGE_FILE = "escenari.bin"; ///< Nom per defecte de la imatge dins del directori d'entrada.
+
+    private static final int MAGIC = 0x564C4E44; ///< "VLND".
+    private static final int VERSION = 2; ///< Versió del format. S'ha d'incrementar a cada canvi de format.
+    private static final int HEADER_SIZE = 16; ///< Mida de la capçalera en bytes.
+    private static final int NO_STRING = -1; ///< Identificador d'una cadena nul·la.
+
+
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private ScenarioImage() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Llegeix les dades d'entrada de \p input_directory. Si hi ha una imatge vàlida i actualitzada la
+     * carrega; altrament llegeix els fitxers de text.
+     * @pre True.
+     * @param input_directory Directori que conté els fitxers d'entrada (i potser la imatge IMAGE_FILE).
+     * @return Les dades d'entrada.
+     * @throws IOException si no hi ha imatge vàlida i no es poden llegir els fitxers de text.
+     */
+    public static FastInputReader read(String input_directory) throws IOException {
+
+        Path image = Path.of(input_directory, IMAGE_FILE);
+
+        if (Files.isRegularFile(image)) {
+
+            try {
+
+                FastInputReader res = load(image, input_directory);
+                if (res != null) return res;
+
+            } catch (IOException | RuntimeException e) {
+
+                System.err.println("La imatge " + image + " no és vàlida (" + e.getMessage() +
+                        "), es llegeixen els fitxers de text");
+
+            }
+
+        }
+
+        return new FastInputReader(input_directory);
+
+    }
+
+    /** @brief Compila els fitxers de text de \p input_directory en una imatge binària.
+     * @pre True.
+     * @post S'ha escrit la imatge a \p output_file (de manera atòmica si el sistema de fitxers ho permet).
+     * @param input_directory Directori que conté els fitxers d'entrada.
+     * @param output_file Fitxer on s'escriurà la imatge.
+     * @throws IOException si no es poden llegir els fitxers d'entrada o escriure la imatge.
+     * @throws NoSuchElementException si alguna relació de veïnatge o estat inicial fa referència a una regió o un
+     * virus que no existeix.
+     */
+    public static void compile(String input_directory, String output_file) throws IOException {
+
+        FastInputReader input = new FastInputReader(input_directory);
+        ImageWriter out = new ImageWriter();
+
+        // Empremta dels fitxers de text
+        for (String file_name : FastInputReader.INPUT_FILES) {
+
+            File file = new File(input_directory, file_name);
+            out.putLong(file.length());
+            out.putLong(file.lastModified());
+
+        }
+
+        // Famílies
+        out.putInt(input.families().size());
+
+        for (VirusReader.FamilyData data : input.families()) {
+
+            out.putString(data.name);
+            out.putFloat(data.mutate_max_var);
+
+        }
+
+        // Virus
+        out.putInt(input.viruses().size());
+
+        for (VirusReader.VirusData data : input.viruses()) {
+
+            out.putString(data.name);
+            out.putString(data.type);
+            out.putString(data.family);
+            out.putFloat(data.fall_sick_probability);
+            out.putInt(data.incubation_time);
+            out.putInt(data.latency_time);
+            out.putInt(data.symptom_duration);
+            out.putInt(data.infection_duration);
+            out.putInt(data.immunity_duration);
+            out.putFloat(data.death_rate);
+            out.putFloat(data.spread_rate);
+            out.putFloat(data.mutate_error_probability);
+            out.putFloat(data.mutate_family_probability);
+
+        }
+
+        // Vacunes
+        out.putInt(input.vaccines().size());
+
+        for (VaccineReader.VaccineData data : input.vaccines()) {
+
+            out.putString(data.name);
+            out.putString(data.type);
+            out.putString(data.virus);
+            out.putFloat(data.effectiveness_ratio);
+            out.putInt(data.delay);
+            out.putInt(data.effect_duration);
+            out.putFloat(data.mortality_reduction);
+            out.putFloat(data.duration_reduction);
+            out.putFloat(data.sick_probability_reduction);
+            out.putFloat(data.contagiousness_reduction);
+
+        }
+
+        // Regions
+        FastInputReader.RegionTable regions = input.regions();
+        HashMap<String, Integer> region_ids = ids(regions.name);
+
+        out.putInt(regions.name.length);
+        for (String name : regions.name) out.putString(name);
+        out.putLongs(regions.inhabitants);
+        out.putInts(regions.inside_mobility);
+
+        // Relacions de veïnatge (CSR)
+        out.putInt(regions.limit_region.length);
+        out.putInt(regions.neighbour.length);
+        out.putInts(resolve(regions.limit_region, region_ids, "No existeix la regió "));
+        out.putInts(regions.limit_offset);
+        out.putInts(resolve(regions.neighbour, region_ids, "No existeix la regió "));
+        out.putFloats(regions.flow_rate);
+
+        // Estats inicials
+        FastInputReader.InitialStateTable states = input.initialStates();
+        String[] virus_names = new String[input.viruses().size()];
+        for (int i = 0; i < virus_names.length; i++) virus_names[i] = input.viruses().get(i).name;
+
+        out.putInt(states.region_name.length);
+        out.putInt(states.virus.length);
+        out.putInts(resolve(states.region_name, region_ids, "No existeix la regió "));
+        out.putInts(states.offset);
+        out.putInts(resolve(states.virus, ids(virus_names), "No existeix el virus "));
+        out.putFloats(states.percentage);
+
+        out.writeTo(Path.of(output_file));
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Carrega la imatge \p image si és vàlida i està actualitzada respecte als fitxers de \p input_directory.
+     * @pre \p image existeix.
+     * @param image Fitxer de la imatge.
+     * @param input_directory Directori dels fitxers de text dels quals s'ha compilat la imatge.
+     * @return Les dades de la imatge, o null si la imatge és d'una altra versió o està desactualitzada.
+     * @throws IOException si la imatge no es pot llegir o està corrupta.
+     */
+    private static FastInputReader load(Path image, String input_directory) throws IOException {
+
+        MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IOException("mida incorrecta");
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        }
+
+        if (buffer.getInt() != MAGIC) throw new IOException("no és una imatge d'escenari");
+        if (buffer.getInt() != VERSION) return null;
+
+        int size = buffer.getInt();
+        int checksum = buffer.getInt();
+
+        if (size != buffer.remaining()) throw new IOException("mida incorrecta");
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) throw new IOException("checksum incorrecte");
+
+        // Empremta dels fitxers de text
+        for (String file_name : FastInputReader.INPUT_FILES) {
+
+            File file = new File(input_directory, file_name);
+            long length = buffer.getLong(), last_modified = buffer.getLong();
+
+            if (file.exists() && (file.length() != length || file.lastModified() != last_modified)) return null;
+
+        }
+
+        ImageReader in = new ImageReader(buffer);
+
+        // Famílies
+        ArrayList<VirusReader.FamilyData> families = new ArrayList<>();
+
+        for (int i = in.getInt(); i > 0; i--) {
+
+            VirusReader.FamilyData data = new VirusReader.FamilyData();
+            data.name = in.getString();
+            data.mutate_max_var = in.getFloat();
+            families.add(data);
+
+        }
+
+        // Virus
+        ArrayList<VirusReader.VirusData> viruses = new ArrayList<>();
+
+        for (int i = in.getInt(); i > 0; i--) {
+
+            VirusReader.VirusData data = new VirusReader.VirusData();
+            data.name = in.getString();
+            data.type = in.getString();
+            data.family = in.getString();
+            data.fall_sick_probability = in.getFloat();
+            data.incubation_time = in.getInt();
+            data.latency_time = in.getInt();
+            data.symptom_duration = in.getInt();
+            data.infection_duration = in.getInt();
+            data.immunity_duration = in.getInt();
+            data.death_rate = in.getFloat();
+            data.spread_rate = in.getFloat();
+            data.mutate_error_probability = in.getFloat();
+            data.mutate_family_probability = in.getFloat();
+            viruses.add(data);
+
+        }
+
+        // Vacunes
+        ArrayList<VaccineReader.VaccineData> vaccines = new ArrayList<>();
+
+        for (int i = in.getInt(); i > 0; i--) {
+
+            VaccineReader.VaccineData data = new VaccineReader.VaccineData();
+            data.name = in.getString();
+            data.type = in.getString();
+            data.virus = in.getString();
+            data.effectiveness_ratio = in.getFloat();
+            data.delay = in.getInt();
+            data.effect_duration = in.getInt();
+            data.mortality_reduction = in.getFloat();
+            data.duration_reduction = in.getFloat();
+            data.sick_probability_reduction = in.getFloat();
+            data.contagiousness_reduction = in.getFloat();
+            vaccines.add(data);
+
+        }
+
+        // Regions
+        FastInputReader.RegionTable regions = new FastInputReader.RegionTable();
+        int region_count = in.getInt();
+
+        regions.name = new String[region_count];
+        for (int i = 0; i < region_count; i++) regions.name[i] = in.getString();
+        regions.inhabitants = in.getLongs(region_count);
+        regions.inside_mobility = in.getInts(region_count);
+
+        // Relacions de veïnatge
+        int blocks = in.getInt(), neighbours = in.getInt();
+
+        regions.limit_region_id = in.getInts(blocks, region_count);
+        regions.limit_offset = in.getOffsets(blocks + 1, neighbours);
+        regions.neighbour_id = in.getInts(neighbours, region_count);
+        regions.flow_rate = in.getFloats(neighbours);
+        regions.limit_region = names(regions.limit_region_id, regions.name);
+        regions.neighbour = names(regions.neighbour_id, regions.name);
+
+        // Estats inicials
+        FastInputReader.InitialStateTable states = new FastInputReader.InitialStateTable();
+        int state_count = in.getInt(), affectations = in.getInt();
+
+        states.region_id = in.getInts(state_count, region_count);
+        states.offset = in.getOffsets(state_count + 1, affectations);
+        states.virus_id = in.getInts(affectations, viruses.size());
+        states.percentage = in.getFloats(affectations);
+        states.region_name = names(states.region_id, regions.name);
+        states.virus = new String[affectations];
+        for (int i = 0; i < affectations; i++) states.virus[i] = viruses.get(states.virus_id[i]).name;
+
+        if (buffer.hasRemaining()) throw new IOException("dades sobrants");
+
+        return new FastInputReader(regions, states, families, viruses, vaccines);
+
+    }
+
+    /** @brief Assigna a cada nom de \p names el seu índex (el primer, si està repetit).
+     * @pre names != null.
+     * @param names Noms a indexar.
+     * @return Un mapa de cada nom al seu índex dins de \p names.
+     */
+    private static HashMap<String, Integer> ids(String[] names) {
+
+        HashMap<String, Integer> res = new HashMap<>();
+        for (int i = 0; i < names.length; i++) res.putIfAbsent(names[i], i);
+
+        return res;
+
+    }
+
+    /** @brief Tradueix cada nom de \p names al seu identificador dens.
+     * @pre names != null && ids != null.
+     * @param names Noms a traduir.
+     * @param ids Identificador de cada nom.
+     * @param error Missatge de l'excepció si un nom no té identificador.
+     * @return L'identificador de cada nom.
+     * @throws NoSuchElementException si algun nom no té identificador.
+     */
+    private static int[] resolve(String[] names, HashMap<String, Integer> ids, String error) {
+
+        int[] res = new int[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+
+            Integer id = ids.get(names[i]);
+            if (id == null) throw new NoSuchElementException(error + names[i]);
+            res[i] = id;
+
+        }
+
+        return res;
+
+    }
+
+    /** @return El nom de cada identificador de \p ids segons \p names. */
+    private static String[] names(int[] ids, String[] names) {
+
+        String[] res = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) res[i] = names[ids[i]];
+
+        return res;
+
+    }
+
+
+
+    // Private classes
+
+    /** @class ImageWriter
+     * @brief Escriptor de les dades de la imatge. Les cadenes es guarden en una taula i les dades en fan referència
+     * pel seu identificador; la taula s'escriu davant de les dades en tancar la imatge.
+     */
+    private static class ImageWriter {
+
+        private ByteBuffer _data = ByteBuffer.allocate(1 << 16); ///< Dades escrites fins ara.
+        private final HashMap<String, Integer> _string_ids = new HashMap<>(); ///< Identificador de cada cadena.
+        private final ArrayList<byte[]> _strings = new ArrayList<>(); ///< Cadenes en UTF-8, per identificador.
+
+        void putInt(int value) { ensure(4).putInt(value); }
+        void putLong(long value) { ensure(8).putLong(value); }
+        void putFloat(float value) { ensure(4).putFloat(value); }
+
+        void putInts(int[] values) {
+            ensure(4L * values.length).asIntBuffer().put(values);
+            _data.position(_data.position() + 4 * values.length);
+        }
+
+        void putLongs(long[] values) {
+            ensure(8L * values.length).asLongBuffer().put(values);
+            _data.position(_data.position() + 8 * values.length);
+        }
+
+        void putFloats(float[] values) {
+            ensure(4L * values.length).asFloatBuffer().put(values);
+            _data.position(_data.position() + 4 * values.length);
+        }
+
+        void putString(String s) {
+
+            if (s == null) {
+                putInt(NO_STRING);
+                return;
+            }
+
+            Integer id = _string_ids.get(s);
+
+            if (id == null) {
+                id = _strings.size();
+                _string_ids.put(s, id);
+                _strings.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+
+            putInt(id);
+
+        }
+
+        /** @brief Escriu la imatge a \p file: capçalera, empremta, taula de cadenes i dades. */
+        void writeTo(Path file) throws IOException {
+
+            // L'empremta (els primers 4 parells de longs) va davant de la taula de cadenes
+            int fingerprint = 16 * FastInputReader.INPUT_FILES.length;
+
+            long table_size = 4;
+            for (byte[] bytes : _strings) table_size += 4 + bytes.length;
+
+            long size = _data.position() + table_size;
+            if (size > Integer.MAX_VALUE - HEADER_SIZE) throw new IOException("L'escenari és massa gran per a una imatge");
+
+            ByteBuffer image = ByteBuffer.allocate(HEADER_SIZE + (int) size);
+            image.position(HEADER_SIZE);
+            image.put(_data.array(), 0, fingerprint);
+            image.putInt(_strings.size());
+
+            for (byte[] bytes : _strings) {
+                image.putInt(bytes.length);
+                image.put(bytes);
+            }
+
+            image.put(_data.array(), fingerprint, _data.position() - fingerprint);
+
+            CRC32 crc = new CRC32();
+            crc.update(image.array(), HEADER_SIZE, (int) size);
+
+            image.putInt(0, MAGIC);
+            image.putInt(4, VERSION);
+            image.putInt(8, (int) size);
+            image.putInt(12, (int) crc.getValue());
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, image.array());
+
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+        }
+
+        /** @brief Assegura que hi ha \p bytes lliures a les dades i les retorna. */
+        private ByteBuffer ensure(long bytes) {
+
+            if (_data.remaining() < bytes) {
+
+                long capacity = Math.max(_data.capacity() * 2L, _data.position() + bytes);
+                if (capacity > Integer.MAX_VALUE - 8) throw new IllegalStateException("L'escenari és massa gran per a una imatge");
+
+                ByteBuffer data = ByteBuffer.allocate((int) capacity);
+                data.put(_data.array(), 0, _data.position());
+                _data = data;
+
+            }
+
+            return _data;
+
+        }
+
+    }
+
+    /** @class ImageReader
+     * @brief Lector de les dades d'una imatge projectada a memòria, a partir de la taula de cadenes.
+     */
+    private static class ImageReader {
+
+        private final ByteBuffer _buffer; ///< Dades de la imatge (just després de l'empremta).
+        private final String[] _strings; ///< Taula de cadenes.
+
+        ImageReader(ByteBuffer buffer) {
+
+            _buffer = buffer;
+            _strings = new String[count(buffer.getInt(), 4)];
+
+            for (int i = 0; i < _strings.length; i++) {
+                byte[] bytes = new byte[count(buffer.getInt(), 1)];
+                buffer.get(bytes);
+                _strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+        }
+
+        int getInt() { return _buffer.getInt(); }
+        float getFloat() { return _buffer.getFloat(); }
+
+        String getString() {
+            int id = _buffer.getInt();
+            return id == NO_STRING ? null : _strings[id];
+        }
+
+        /** @return Els següents \p n enters. */
+        int[] getInts(int n) {
+            int[] res = new int[count(n, 4)];
+            _buffer.asIntBuffer().get(res);
+            _buffer.position(_buffer.position() + 4 * n);
+            return res;
+        }
+
+        /** @return Els següents \p n enters, comprovant que siguin identificadors vàlids de [0, \p bound). */
+        int[] getInts(int n, int bound) {
+            int[] res = getInts(n);
+            for (int id : res) if (id < 0 || id >= bound) throw new IllegalStateException("identificador incorrecte");
+            return res;
+        }
+
+        /** @return Els següents \p n desplaçaments CSR, comprovant que siguin creixents i acabin a \p total. */
+        int[] getOffsets(int n, int total) {
+            int[] res = getInts(n);
+            for (int i = 1; i < n; i++) if (res[i] < res[i - 1]) throw new IllegalStateException("desplaçament incorrecte");
+            if (res[0] != 0 || res[n - 1] != total) throw new IllegalStateException("desplaçament incorrecte");
+            return res;
+        }
+
+        /** @return Els següents \p n enters de 64 bits. */
+        long[] getLongs(int n) {
+            long[] res = new long[count(n, 8)];
+            _buffer.asLongBuffer().get(res);
+            _buffer.position(_buffer.position() + 8 * n);
+            return res;
+        }
+
+        /** @return Els següents \p n floats. */
+        float[] getFloats(int n) {
+            float[] res = new float[count(n, 4)];
+            _buffer.asFloatBuffer().get(res);
+            _buffer.position(_buffer.position() + 4 * n);
+            return res;
+        }
+
+        /** @brief Comprova que hi hagi prou dades per llegir \p n elements de \p size bytes. */
+        private int count(int n, int size) {
+            if (n < 0 || (long) n * size > _buffer.remaining()) throw new IllegalStateException("mida incorrecta");
+            return n;
+        }
+
+    }
+
+}
@@ -4,6 +4,7 @@
  */
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * @class Simulation
@@ -18,7 +19,12 @@ public class Simulation {
     private static List<VirusFamily> _families; ///< Llista de families de virus de la simulació.
     private static List<Vaccine> _vaccines; ///< Llista de vacunes de la simulació.
 
+    private static HashMap<String, VirusFamily> _family_index; ///< Famílies de virus indexades pel nom.
+    private static HashMap<String, Virus> _virus_index; ///< Virus indexats pel nom (el primer amb cada nom).
+    private static Set<Virus> _virus_set; ///< Virus de la simulació, per comprovar la pertinença en temps constant.
+
     private static int _tick; ///< Últim tick de la simulació.
+    private static InterventionTimeline _timeline; ///< Calendari d'intervencions (null si no n'hi ha).
 
     //CONSTRUCTOR
 
@@ -38,12 +44,51 @@ public class Simulation {
                       ArrayList<RegionReader.RegionData> regions, ArrayList<RegionReader.NeighbourData> neighbours,
                       ArrayList<InitialStateReader.InitialStateData> initialStates, ArrayList<VaccineReader.VaccineData> vaccines) {
 
+        this(families, viruses, FastInputReader.RegionTable.of(regions, neighbours),
+                FastInputReader.InitialStateTable.of(initialStates), vaccines);
+
+    }
+
+    /**
+     * @brief Constructor de la simulació a partir de les dades llegides per un FastInputReader.
+     * @pre input != null
+     * @param input Dades llegides dels fitxers d'entrada.
+     * @post Amb les dades d'input s'instancien tots els nous Objectes del tipus respectiu, es guarden a les
+     * respectives estructures de dades i s'inicialitza el tick inicial de la simulació a 0.
+     */
+    public Simulation(FastInputReader input) {
+
+        this(input.families(), input.viruses(), input.regions(), input.initialStates(), input.vaccines());
+
+    }
+
+    /**
+     * @brief Constructor comú de la simulació, amb les regions i els estats inicials organitzats en taules.
+     * @pre Cap paràmetre és null.
+     * @param families Col·lecció de les dades llegides de les famílies de virus.
+     * @param viruses Col·lecció de les dades llegides dels virus.
+     * @param regions Taula de les regions i dels seus veïns.
+     * @param initialStates Taula de l'estat inicial de la simulació.
+     * @param vaccines Col·lecció de les dades llegides de les vacunes.
+     * @post Amb les dades dels diferents paràmetres s'instancien tots els nous Objectes del tipus respectiu,
+     * es guarden a les respectives estructures de dades i s'inicialitza el tick inicial de la simulació a 0.
+     */
+    private Simulation(ArrayList<VirusReader.FamilyData> families, ArrayList<VirusReader.VirusData> viruses,
+                       FastInputReader.RegionTable regions, FastInputReader.InitialStateTable initialStates,
+                       ArrayList<VaccineReader.VaccineData> vaccines) {
+
         _families = assemblyFamilies(families);
+        _family_index = index(_families, VirusFamily::name);
+        Virus.resetIds();
+        Affectation.resetTotals();
         _viruses = assemblyViruses(viruses);
+        _virus_index = index(_viruses, Virus::name);
+        _virus_set = new HashSet<>(_viruses);
         _vaccines = assemblyVaccines(vaccines);
-        _territory = new Territory(assemblyRegions(regions, neighbours, initialStates));
+        _territory = new Territory(assemblyRegions(regions, initialStates));
 
         _tick = 0;
+        _timeline = null;
 
     }
 
@@ -62,6 +107,14 @@ public class Simulation {
      */
     public List<Region> regionList() { return _territory.regionList(); }
 
+    /**
+     * @brief Cerca una regió pel nom.
+     * @pre True
+     * @return Retorna la regió amb nom name.
+     * @throws NoSuchElementException Si no n'hi ha cap.
+     */
+    public Region getRegion(String name) { return _territory.getRegion(name); }
+
     /**
      * @brief Getter de la llista de famílies de virus.
      * @pre True
@@ -81,9 +134,12 @@ public class Simulation {
      * @param v Virus a inserir a la llista.
      * @post v s'ha afegit a la llista de virus de la simulació.
      */
-    public static void addVirus(Virus v) {
-        if (!_viruses.contains(v))
+    public static synchronized void addVirus(Virus v) {
+        if (_virus_set.add(v)) {
             _viruses.add(v);
+            _virus_index.putIfAbsent(v.name(), v);
+            Instrumentation.count(Instrumentation.Counter.STRAINS_SPAWNED);
+        }
     }
 
 
@@ -97,8 +153,49 @@ public class Simulation {
      */
     public void simulateNextTick() {
 
+        // l'esdeveniment només es crea si es registra, perquè un tic sense gravació no reservi memòria
+        SimulationEvents.TickEvent event = SimulationEvents.ticksEnabled() ? new SimulationEvents.TickEvent() : null;
+        if (event != null) event.begin();
+
+        if (_timeline != null) _timeline.applyDue(_tick);
+
         _territory.propagateViruses();
         _tick++;
+
+        SimulationEvents.commitTick(event, _tick);
+
+        // els totals es mantenen a mesura que es creen i es descarten, sense recórrer el mapa
+        if (SimulationEvents.gaugesEnabled())
+            SimulationEvents.publishGauges(_tick, _territory.regionList().size(), _viruses.size(),
+                    Affectation.totalAffectations(), Affectation.totalGroups());
+
+        if (Telemetry.active())
+            Telemetry.publish(_tick, _viruses.size(), _territory.regionList().size(), Affectation.totalAffectations(),
+                    Affectation.totalGroups());
+    }
+
+    /** @brief Estableix el nombre de fils amb què es calculen les fases locals de cada regió.
+     * @pre threads >= 1
+     * @param threads Nombre de fils (1 per calcular-ho tot seqüencialment).
+     */
+    public void setThreads(int threads) {
+
+        _territory.setThreads(threads);
+
+    }
+
+    /** @brief Estableix el calendari d'intervencions de la simulació.
+     * @pre timeline == null o les seves regions, patrons i vacunes existeixen a la simulació.
+     * @param timeline Calendari (null per no aplicar-ne cap).
+     * @throws NoSuchElementException Si alguna regió, patró o vacuna de timeline no existeix.
+     * @post Abans de calcular cada tick s'apliquen les intervencions de timeline programades fins al tick actual,
+     * incloses les d'abans d'ara.
+     */
+    public void setTimeline(InterventionTimeline timeline) {
+
+        if (timeline != null) timeline.schedule(this);
+        _timeline = timeline;
+
     }
 
     /**
@@ -123,6 +220,7 @@ public class Simulation {
     public void setBorderState(Region region1, Region region2, boolean state) {
         region1.setBorderState(region2, state);
         region2.setBorderState(region1, state);
+        SimulationEvents.border(region1, region2, state);
     }
 
     /**
@@ -136,6 +234,7 @@ public class Simulation {
      */
     public void setHarshLockdown(Region region, boolean state, float new_rate) {
         region.setHarshLockdown(state, new_rate);
+        SimulationEvents.lockdown(region, state, new_rate);
     }
 
     /**
@@ -147,7 +246,26 @@ public class Simulation {
      * @post S'ha aplicat la vacuna vac al percentatge % d'habitants de region.
      */
     public void applyVaccine(Vaccine vac, Region region, float percentage) {
-        region.addVaccine(vac, percentage);
+        _territory.addVaccine(vac, percentage, region);
+        SimulationEvents.vaccination(vac, region, percentage);
+    }
+
+    /**
+     * @brief Aplica una campanya de vacunació amb un nombre limitat de dosis a diverses regions.
+     * @pre vac pertany a _vaccines && les regions pertanyen a _regions && percentage >= 0 && percentage <= 1 &&
+     * doses >= 0
+     * @param vac Vacuna a aplicar.
+     * @param regions Regions de la campanya, en ordre de prioritat.
+     * @param percentage Percentatge de població que es vol vacunar a cada regió.
+     * @param doses Dosis disponibles (una per persona vacunada).
+     * @post Les regions, en ordre, s'han vacunat com amb applyVaccine mentre hi ha hagut dosis
+     * (VaccinationScheduler.allocate); la primera que no n'ha tingut prou s'ha vacunat amb les que quedaven.
+     */
+    public void applyCampaign(Vaccine vac, List<Region> regions, float percentage, double doses) {
+        float[] proportions = VaccinationScheduler.allocate(regions, percentage, doses);
+
+        for (int i = 0; i < proportions.length; i++)
+            if (proportions[i] > 0) applyVaccine(vac, regions.get(i), proportions[i]);
     }
 
 
@@ -186,7 +304,7 @@ public class Simulation {
         for (VirusReader.VirusData data : input) {
 
             //Busca la familia
-            VirusFamily virus_family = findFamilyByName(data.family, _families);
+            VirusFamily virus_family = findFamilyByName(data.family, _family_index);
 
             Virus new_virus; //Virus a inserir
 
@@ -228,7 +346,7 @@ public class Simulation {
 
         for (VaccineReader.VaccineData data : input) {
 
-            Virus virus = findVirusByName(data.virus, _viruses);
+            Virus virus = findVirusByName(data.virus, _virus_index);
 
             Vaccine new_vaccine; //Vacuna a inserir
 
@@ -261,54 +379,55 @@ public class Simulation {
 
     /** @brief A partir de les dades de les families crea la llista d'objectes de tipus Region.
      * @pre True
-     * @param regions Conté les dades de totes les regions a inserir.
-     * @param neighbours Conté les dades del veïnatge de les regions inserides.
+     * @param regions Conté les dades de totes les regions a inserir i del seu veïnatge.
      * @param initialStates Conté les dades de l'estat inicial de les regions en la simulació.
      * @return Retorna la llista de Region amb les dades d'input.
      * @author Jordi Badia
      */
-    private ArrayList<Region> assemblyRegions(ArrayList<RegionReader.RegionData> regions,
-                                              ArrayList<RegionReader.NeighbourData> neighbours,
-                                              ArrayList<InitialStateReader.InitialStateData> initialStates) {
+    private ArrayList<Region> assemblyRegions(FastInputReader.RegionTable regions,
+                                              FastInputReader.InitialStateTable initialStates) {
 
-        ArrayList<Region> res = new ArrayList<>(); //Estructura a retornar
+        ArrayList<Region> res = new ArrayList<>(regions.name.length); //Estructura a retornar
 
         //Inserta les regions cridant els contructors per totes les dades
-        for (RegionReader.RegionData data : regions) {
+        for (int r = 0; r < regions.name.length; r++) {
 
-            res.add(new Region(data.name, data.inside_mobility, data.inhabitants));
+            res.add(new Region(regions.name[r], regions.inside_mobility[r], regions.inhabitants[r]));
 
         }
 
-        //Inserta les relacions de veïnatge a la regió pertinent
-        for (RegionReader.NeighbourData data : neighbours) {
+        //Si les taules ja porten els índexs resolts (ScenarioImage) no cal buscar cap nom
+        boolean resolved = regions.limit_region_id != null && regions.neighbour_id != null
+                && initialStates.region_id != null;
+        HashMap<String, Region> region_index = resolved ? null : index(res, Region::name);
 
-            Region region = findRegionByName(data.region_name, res);
+        //Inserta les relacions de veïnatge a la regió pertinent
+        for (int b = 0; b < regions.limit_region.length; b++) {
 
-            ArrayList<String> neighbour_names = data.neighbour;
-            ArrayList<Float> neighbour_mobilities = data.flow_rate;
+            Region region = regions.limit_region_id != null ? res.get(regions.limit_region_id[b])
+                    : findRegionByName(regions.limit_region[b], region_index);
 
-            for (int i = 0; i < neighbour_names.size(); i++) {
+            for (int i = regions.limit_offset[b]; i < regions.limit_offset[b + 1]; i++) {
 
-                Region neighbour = findRegionByName(neighbour_names.get(i), res);
-                region.addNeighbour(neighbour, new Region.Neighbour(neighbour_mobilities.get(i), true));
+                Region neighbour = regions.neighbour_id != null ? res.get(regions.neighbour_id[i])
+                        : findRegionByName(regions.neighbour[i], region_index);
+                region.addNeighbour(neighbour, new Region.Neighbour(regions.flow_rate[i], true));
 
             }
 
         }
 
         //Inserta els grups d'afectats a la regió pertinent
-        for (InitialStateReader.InitialStateData data : initialStates) {
+        for (int s = 0; s < initialStates.region_name.length; s++) {
 
-            Region region = findRegionByName(data.region_name, res);
+            Region region = initialStates.region_id != null ? res.get(initialStates.region_id[s])
+                    : findRegionByName(initialStates.region_name[s], region_index);
 
-            ArrayList<String> present_viruses = data.virus_affectation;
-            ArrayList<Float> sick_percentage = data.percentage_affectation;
+            for (int i = initialStates.offset[s]; i < initialStates.offset[s + 1]; i++) {
 
-            for (int i = 0 ; i < present_viruses.size(); i++) {
-
-                Virus virus = findVirusByName(present_viruses.get(i), _viruses);
-                region.distributeAffectedGroup(virus, sick_percentage.get(i));
+                Virus virus = initialStates.virus_id != null ? _viruses.get(initialStates.virus_id[i])
+                        : findVirusByName(initialStates.virus[i], _virus_index);
+                region.distributeAffectedGroup(virus, initialStates.percentage[i]);
 
             }
 
@@ -318,69 +437,69 @@ public class Simulation {
 
     }
 
-    /** @brief Retorna l'objecte VirusFamily de la llista de families donat el nom de la família.
-     * @pre families conté una família amb nom == name && name != ""
-     * @param name Nom de la família a buscar.
-     * @param families Llista que conté la família a buscar
-     * @return Retorna l'objecte VirusFamily de la família amb nom name de la llista families.
+    /** @brief Indexa una llista d'elements pel seu nom.
+     * @pre elements != null
+     * @param elements Llista d'elements a indexar.
+     * @param name Funció que retorna el nom d'un element.
+     * @return Retorna un mapa de cada nom al primer element de la llista amb aquest nom.
      */
-    private VirusFamily findFamilyByName(String name, List<VirusFamily> families) {
+    private static <T> HashMap<String, T> index(List<T> elements, Function<T, String> name) {
+
+        HashMap<String, T> res = new HashMap<>(Math.max(16, (int) (elements.size() / 0.75f) + 1));
 
-        VirusFamily virus_family = null;
-        int i = 0;
+        for (T element : elements) {
+
+            res.putIfAbsent(name.apply(element), element);
 
-        while (i < families.size() && virus_family == null) {
-            VirusFamily fam = families.get(i);
-            if (fam.name().equals(name))
-                virus_family = fam;
-            i++;
         }
+
+        return res;
+
+    }
+
+    /** @brief Retorna l'objecte VirusFamily donat el nom de la família.
+     * @pre families conté una família amb nom == name && name != ""
+     * @param name Nom de la família a buscar.
+     * @param families Famílies indexades pel nom.
+     * @return Retorna l'objecte VirusFamily de la família amb nom name.
+     */
+    private VirusFamily findFamilyByName(String name, Map<String, VirusFamily> families) {
+
+        VirusFamily virus_family = families.get(name);
         if (virus_family == null) throw new NoSuchElementException("No existeix la familia " + name);
 
         return virus_family;
 
     }
 
-    /** @brief Retorna l'objecte Region de la llista de regions donat el nom de la regió.
+    /** @brief Retorna l'objecte Region donat el nom de la regió.
      * @pre regions conté una regió amb nom == name && name != ""
      * @param name Nom de la regió a buscar.
-     * @param regions Llista que conté la regió a buscar
-     * @return Retorna l'objecte Region de la regió amb nom name de la llista regions.
+     * @param regions Regions indexades pel nom.
+     * @return Retorna l'objecte Region de la regió amb nom name.
      */
-    private Region findRegionByName(String name, List<Region> regions) {
-        Region region = null;
-        int i = 0;
-
-        while (i < regions.size() && region == null) {
-            Region reg = regions.get(i);
-            if (reg.name().equals(name))
-                region = reg;
-            i++;
-        }
+    private Region findRegionByName(String name, Map<String, Region> regions) {
+
+        Region region = regions.get(name);
         if (region == null) throw new NoSuchElementException("No existeix la regió " + name);
 
         return region;
+
     }
 
-    /** @brief Retorna l'objecte Virus de la llista de virus donat el nom del virus.
+    /** @brief Retorna l'objecte Virus donat el nom del virus.
      * @pre viruses conté un virus amb nom == name && name != ""
      * @param name Nom del virus a buscar.
-     * @param viruses Llista que conté el virus a buscar
-     * @return Retorna l'objecte Virus amb nom name de la llista viruses.
+     * @param viruses Virus indexats pel nom.
+     * @return Retorna l'objecte Virus amb nom name.
      */
-    private Virus findVirusByName(String name, List<Virus> viruses) {
-        Virus virus = null;
-        int i = 0;
-
-        while (i < viruses.size() && virus == null) {
-            Virus vir = viruses.get(i);
-            if (vir.name().equals(name))
-                virus = vir;
-            i++;
-        }
+    private Virus findVirusByName(String name, Map<String, Virus> viruses) {
+
+        Virus virus = viruses.get(name);
         if (virus == null) throw new NoSuchElementException("No existeix el virus " + name);
 
         return virus;
+
     }
 
 } 
@@ -0,0 +1,298 @@
+/**
+ * @file SimulationEvents.java
+ * @brief Classe SimulationEvents
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/** @class SimulationEvents
+ * @brief Esdeveniments de Java Flight Recorder (JFR) de la simulació, perquè una gravació situï els ticks, les
+ * mutacions i les intervencions de l'usuari a la mateixa línia de temps que el recol·lector i els perfils de CPU.
+ *
+ * Hi ha un esdeveniment per tick (amb la durada de cada fase), un per cada MutableVirus creat, un per cada canvi de
+ * confinament o de frontera, un per cada vacunació i un de periòdic amb el nombre de regions, virus, afectacions i
+ * grups d'afectats. Mentre no hi ha cap gravació amb l'esdeveniment activat, cada punt només comprova
+ * Event.isEnabled(), que el JIT redueix a la lectura d'un camp, i l'objecte de l'esdeveniment no arriba a existir.
+ */
+public class SimulationEvents {
+
+    // Constants
+
+    private static final String CATEGORY = "Virusland"; ///< Categoria de tots els esdeveniments.
+
+
+
+    // Public storage classes
+
+    /** @class TickEvent
+     * @brief Càlcul d'un tick (Simulation.simulateNextTick), amb la durada de cada fase.
+     */
+    @Name("virusland.Tick")
+    @Label("Tick")
+    @Category(CATEGORY)
+    @Description("Càlcul d'un tick de la simulació")
+    @StackTrace(false)
+    public static class TickEvent extends Event {
+
+        @Label("Tick") public int tick; ///< Tick calculat.
+        @Label("Moviments") @Timespan public long movements; ///< Durada dels moviments.
+        @Label("Propagació") @Timespan public long propagate; ///< Durada de la propagació.
+        @Label("Retorns") @Timespan public long rollbacks; ///< Durada dels retorns.
+        @Label("Infecció") @Timespan public long infect; ///< Durada de la infecció.
+
+    }
+
+    /** @class MutationEvent
+     * @brief Creació d'un MutableVirus per mutació.
+     */
+    @Name("virusland.Mutation")
+    @Label("Mutació")
+    @Category(CATEGORY)
+    @Description("Creació d'un virus nou per mutació")
+    @StackTrace(false)
+    public static class MutationEvent extends Event {
+
+        @Label("Virus") public String virus; ///< Nom del virus nou.
+        @Label("Causa") public String cause; ///< "error de còpia" o "coincidència".
+        @Label("Primer pare") public String parent1; ///< Virus que ha mutat.
+        @Label("Segon pare") public String parent2; ///< Virus amb què ha coincidit (null si error de còpia).
+        @Label("Regió") public String region; ///< Regió on s'ha produït la mutació.
+
+    }
+
+    /** @class LockdownEvent
+     * @brief Canvi de confinament d'una regió (Simulation.setHarshLockdown).
+     */
+    @Name("virusland.Lockdown")
+    @Label("Confinament")
+    @Category(CATEGORY)
+    @Description("Aplicació o extinció del confinament d'una regió")
+    @StackTrace(false)
+    public static class LockdownEvent extends Event {
+
+        @Label("Regió") public String region; ///< Regió confinada o desconfinada.
+        @Label("Confinada") public boolean state; ///< Si la regió queda confinada.
+        @Label("Mobilitat") @Percentage public float rate; ///< Ràtio de mobilitat interna durant el confinament.
+
+    }
+
+    /** @class BorderEvent
+     * @brief Canvi de l'estat de la frontera entre dues regions (Simulation.setBorderState).
+     */
+    @Name("virusland.Border")
+    @Label("Frontera")
+    @Category(CATEGORY)
+    @Description("Obertura o tancament de la frontera entre dues regions")
+    @StackTrace(false)
+    public static class BorderEvent extends Event {
+
+        @Label("Regió 1") public String region1; ///< Primera regió.
+        @Label("Regió 2") public String region2; ///< Segona regió.
+        @Label("Oberta") public boolean open; ///< Si la frontera queda oberta.
+
+    }
+
+    /** @class VaccinationEvent
+     * @brief Aplicació d'una vacuna a una regió (Simulation.applyVaccine).
+     */
+    @Name("virusland.Vaccination")
+    @Label("Vacunació")
+    @Category(CATEGORY)
+    @Description("Aplicació d'una vacuna a una proporció de la població d'una regió")
+    @StackTrace(false)
+    public static class VaccinationEvent extends Event {
+
+        @Label("Vacuna") public String vaccine; ///< Vacuna aplicada.
+        @Label("Regió") public String region; ///< Regió vacunada.
+        @Label("Proporció") @Percentage public float proportion; ///< Proporció de la població vacunada.
+
+    }
+
+    /** @class GaugeEvent
+     * @brief Mida de la simulació al final de l'últim tick calculat.
+     */
+    @Name("virusland.Gauges")
+    @Label("Mida de la simulació")
+    @Category(CATEGORY)
+    @Description("Regions, virus, afectacions i grups d'afectats al final de l'últim tick")
+    @Period("1 s")
+    @StackTrace(false)
+    public static class GaugeEvent extends Event {
+
+        @Label("Tick") public int tick; ///< Últim tick calculat.
+        @Label("Regions") public int regions; ///< Regions del territori.
+        @Label("Virus") public int viruses; ///< Virus de la simulació (inclosos els mutats).
+        @Label("Afectacions") public long affectations; ///< Afectacions de totes les regions.
+        @Label("Grups d'afectats") public long groups; ///< Grups d'afectats de totes les afectacions.
+        @Label("Memòria usada") @DataAmount public long used_heap; ///< Memòria del heap en ús.
+
+    }
+
+
+
+    // Private attributes
+
+    private static final EventType _tick_type = EventType.getEventType(TickEvent.class); ///< Tipus de TickEvent.
+    private static final EventType _gauge_type = EventType.getEventType(GaugeEvent.class); ///< Tipus de GaugeEvent.
+
+    private static volatile int _tick; ///< Últim tick publicat.
+    private static volatile int _regions; ///< Regions publicades.
+    private static volatile int _viruses; ///< Virus publicats.
+    private static volatile long _affectations; ///< Afectacions publicades.
+    private static volatile long _groups; ///< Grups d'afectats publicats.
+
+    static {
+
+        FlightRecorder.addPeriodicEvent(GaugeEvent.class, SimulationEvents::emitGauges);
+
+    }
+
+
+
+    // Constructors
+
+    /** @brief Classe d'utilitat: no s'instancia. */
+    private SimulationEvents() {}
+
+
+
+    // Funcions públiques
+
+    /** @return Si alguna gravació registra els ticks (i, per tant, s'han de mesurar les fases). */
+    public static boolean ticksEnabled() {
+
+        return _tick_type.isEnabled();
+
+    }
+
+    /** @return Si alguna gravació registra la mida de la simulació. */
+    public static boolean gaugesEnabled() {
+
+        return _gauge_type.isEnabled();
+
+    }
+
+    /** @brief Registra el tick calculat, que ha començat amb \p event.begin().
+     * @pre \p event.begin() s'ha cridat abans de calcular el tick, o \p event és null.
+     * @param event Esdeveniment del tick (null si no s'ha de registrar).
+     * @param tick Tick calculat.
+     * @post Si l'esdeveniment està activat, s'ha enregistrat amb la durada de les fases de Instrumentation.
+     */
+    public static void commitTick(TickEvent event, int tick) {
+
+        if (event == null || !event.shouldCommit()) return;
+
+        event.tick = tick;
+        event.movements = Instrumentation.lastDuration(Instrumentation.Phase.MOVEMENTS);
+        event.propagate = Instrumentation.lastDuration(Instrumentation.Phase.PROPAGATE);
+        event.rollbacks = Instrumentation.lastDuration(Instrumentation.Phase.ROLLBACKS);
+        event.infect = Instrumentation.lastDuration(Instrumentation.Phase.INFECT);
+        event.commit();
+
+    }
+
+    /** @brief Registra la creació del virus \p virus per mutació.
+     * @param virus Virus nou.
+     * @param cause Causa de la mutació.
+     * @param parent1 Virus que ha mutat.
+     * @param parent2 Virus amb què ha coincidit (null si és un error de còpia).
+     * @param region Regió on s'ha produït la mutació.
+     */
+    public static void mutation(Virus virus, String cause, Virus parent1, Virus parent2, Region region) {
+
+        MutationEvent event = new MutationEvent();
+        if (!event.isEnabled()) return;
+
+        event.virus = virus.name();
+        event.cause = cause;
+        event.parent1 = parent1.name();
+        event.parent2 = parent2 == null ? null : parent2.name();
+        event.region = region.name();
+        event.commit();
+
+    }
+
+    /** @brief Registra el canvi de confinament de \p region. */
+    public static void lockdown(Region region, boolean state, float rate) {
+
+        LockdownEvent event = new LockdownEvent();
+        if (!event.isEnabled()) return;
+
+        event.region = region.name();
+        event.state = state;
+        event.rate = rate;
+        event.commit();
+
+    }
+
+    /** @brief Registra el canvi de la frontera entre \p region1 i \p region2. */
+    public static void border(Region region1, Region region2, boolean open) {
+
+        BorderEvent event = new BorderEvent();
+        if (!event.isEnabled()) return;
+
+        event.region1 = region1.name();
+        event.region2 = region2.name();
+        event.open = open;
+        event.commit();
+
+    }
+
+    /** @brief Registra l'aplicació de \p vaccine a la proporció \p proportion de \p region. */
+    public static void vaccination(Vaccine vaccine, Region region, float proportion) {
+
+        VaccinationEvent event = new VaccinationEvent();
+        if (!event.isEnabled()) return;
+
+        event.vaccine = vaccine.name();
+        event.region = region.name();
+        event.proportion = proportion;
+        event.commit();
+
+    }
+
+    /** @brief Publica la mida de la simulació perquè l'esdeveniment periòdic la registri.
+     * @pre Es crida des del fil que calcula els ticks, entre dos ticks.
+     */
+    public static void publishGauges(int tick, int regions, int viruses, long affectations, long groups) {
+
+        _tick = tick;
+        _regions = regions;
+        _viruses = viruses;
+        _affectations = affectations;
+        _groups = groups;
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Registra l'esdeveniment periòdic amb l'última mida publicada. */
+    private static void emitGauges() {
+
+        GaugeEvent event = new GaugeEvent();
+
+        event.tick = _tick;
+        event.regions = _regions;
+        event.viruses = _viruses;
+        event.affectations = _affectations;
+        event.groups = _groups;
+        event.used_heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        event.commit();
+
+    }
+
+}
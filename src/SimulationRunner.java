@@ -0,0 +1,358 @@
+/**
+ * @file SimulationRunner.java
+ * @brief Classe SimulationRunner
+ */
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/** @class SimulationRunner
+ * @brief Motor de la simulació en un Thread propi. És l'únic Thread que modifica la simulació: calcula els ticks,
+ * manté les dades de les afectacions (un Filter de la simulació) i executa les ordres que li arriben (execute), sempre
+ * entre dos ticks.
+ *
+ * Al final de cada tick (i després de cada ordre) el motor copia l'estat a un TickFrame del canal de sortida
+ * (TickPipeline) i continua amb el tick següent; la resta de la feina es fa a les etapes del canal, en altres Threads.
+ * L'etapa d'instantànies crea una SimulationSnapshot i la publica a \p _snapshot (AtomicReference); els lectors (línia
+ * d'ordres, interfície gràfica) només llegeixen instantànies, sense cap bloqueig. Si l'etapa va endarrerida, crea com a
+ * molt MAX_SNAPSHOTS_PER_SECOND instantànies per segon, perquè cap lector no veuria les intermèdies; la de l'últim
+ * frame es crea sempre. L'últim tick abans que el motor s'aturi es publica sempre al canal, sigui quina sigui la
+ * contrapressió.
+ *
+ * pause(), resume() i cancel() només canvien l'estat que el motor consulta entre dos ticks: no esperen que el tick en
+ * curs acabi.
+ */
+public class SimulationRunner implements Executor {
+
+    // Constants
+
+    private static final int MAX_SNAPSHOTS_PER_SECOND = 30; ///< Instantànies per segon si l'etapa va endarrerida.
+    private static final long MIN_SNAPSHOT_NANOS = 1_000_000_000L / MAX_SNAPSHOTS_PER_SECOND;
+    ///< Temps mínim entre dues instantànies si l'etapa va endarrerida.
+
+    private static final Runnable WAKE_UP = () -> {}; ///< Ordre buida que només desperta el motor.
+
+
+
+    // Private attributes
+
+    private final Simulation _simulation; ///< Simulació.
+    private final Filter _data; ///< Dades de les afectacions, actualitzades a cada tick.
+    private final Map<Region, Integer> _index = new IdentityHashMap<>(); ///< Índex de cada regió.
+    private final TickPipeline _pipeline; ///< Canal de sortida dels ticks.
+
+    private final LinkedBlockingQueue<Runnable> _commands = new LinkedBlockingQueue<>(); ///< Ordres pendents.
+    private final AtomicReference<SimulationSnapshot> _snapshot = new AtomicReference<>(); ///< Última instantània.
+    private final Object _published = new Object(); ///< Monitor on esperen els lectors de noves instantànies.
+
+    private final AtomicInteger _remaining = new AtomicInteger(); ///< Ticks pendents de l'execució en segon pla.
+    private volatile boolean _paused = false; ///< Si l'execució en segon pla està en pausa.
+
+    private long _version = 0; ///< Número de l'últim frame publicat (Thread del motor).
+    private boolean _contagious; ///< Si queden contagiats o immunes (Thread del motor).
+    private boolean _unpublished = false; ///< Si la simulació ha canviat des de l'últim frame (Thread del motor).
+    private long _last_snapshot; ///< Instant de l'última instantània (Thread de l'etapa d'instantànies).
+
+
+
+    // Constructors
+
+    /** @brief Crea el motor amb un canal de sortida que només té l'etapa d'instantànies i que espera l'etapa si va
+     * endarrerida (TickPipeline.Backpressure.BLOCK).
+     * @pre Com a SimulationRunner(Simulation, TickPipeline).
+     * @param simulation Simulació.
+     * @post Com a SimulationRunner(Simulation, TickPipeline).
+     */
+    public SimulationRunner(Simulation simulation) {
+
+        this(simulation, new TickPipeline(TickPipeline.DEFAULT_CAPACITY, TickPipeline.Backpressure.BLOCK, 1));
+
+    }
+
+    /** @brief Crea el motor i n'inicia el Thread.
+     * @pre No s'ha creat cap Filter de \p simulation (el motor en té l'únic) i, a partir d'ara, cap altre Thread la
+     * modifica. \p pipeline no s'ha iniciat.
+     * @param simulation Simulació.
+     * @param pipeline Canal de sortida, amb les etapes que hi hagi d'haver a més de la d'instantànies.
+     * @post Ja hi ha una instantània de l'estat inicial, que també s'ha publicat al canal, i el motor espera ordres.
+     */
+    public SimulationRunner(Simulation simulation, TickPipeline pipeline) {
+
+        _simulation = simulation;
+        _data = new Filter(simulation);
+        _contagious = _data.contagiousPopulation();
+        _pipeline = pipeline;
+
+        List<Region> regions = simulation.regionList();
+        for (int i = 0; i < regions.size(); i++) _index.put(regions.get(i), i);
+
+        TickFrame initial = new TickFrame();
+        initial.capture(++_version, _simulation, _data, _contagious);
+        _snapshot.set(new SimulationSnapshot(initial, _index));
+
+        _pipeline.addStage("Instantànies de la simulació", this::buildSnapshot);
+        _pipeline.start();
+
+        TickFrame frame = claimUninterruptibly();
+        frame.capture(_version, _simulation, _data, _contagious);
+        _pipeline.publish();
+
+        Thread thread = new Thread(this::loop, "Motor de simulació");
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @return L'última instantània publicada. */
+    public SimulationSnapshot snapshot() {
+
+        return _snapshot.get();
+
+    }
+
+    /** @brief Espera una instantània diferent de \p last.
+     * @pre True.
+     * @param last Última instantània que ha llegit qui crida (pot ser null).
+     * @param timeout_millis Temps màxim d'espera en mil·lisegons.
+     * @return L'última instantània publicada, que és \p last si no se n'ha publicat cap de nova en \p timeout_millis.
+     * @throws InterruptedException Si s'interromp el Thread mentre espera.
+     */
+    public SimulationSnapshot awaitSnapshot(SimulationSnapshot last, long timeout_millis) throws InterruptedException {
+
+        synchronized (_published) {
+            if (_snapshot.get() == last) _published.wait(timeout_millis);
+        }
+
+        return _snapshot.get();
+
+    }
+
+    /** @brief Encua una ordre per executar-la al Thread del motor, entre dos ticks.
+     * @pre \p command només modifica la simulació.
+     * @param command Ordre a executar.
+     * @post L'ordre s'executarà abans del tick següent (o de seguida, si el motor està aturat), i la instantània
+     * següent en mostrarà l'efecte. No espera que s'executi.
+     */
+    @Override
+    public void execute(Runnable command) {
+
+        _commands.add(command);
+
+    }
+
+    /** @brief Calcula un tick i espera que s'hagi publicat.
+     * @pre True.
+     * @post Si quedaven contagiats o immunes, s'ha calculat un tick més (a més dels de l'execució en segon pla) i
+     * snapshot() ja el mostra.
+     */
+    public void step() {
+
+        long version = CompletableFuture.supplyAsync(() -> {
+            tick();
+            return _version + 1;
+        }, this).join();
+
+        try {
+            SimulationSnapshot last = _snapshot.get();
+            while (last.version() < version) last = awaitSnapshot(last, Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    /** @brief Afegeix ticks a l'execució en segon pla.
+     * @pre ticks > 0.
+     * @post El motor calcularà \p ticks ticks més, un darrere l'altre, mentre quedin contagiats o immunes i no es
+     * posi en pausa o es cancel·li. No espera cap tick.
+     */
+    public void run(int ticks) {
+
+        _remaining.addAndGet(ticks);
+        _commands.add(WAKE_UP);
+
+    }
+
+    /** @brief Posa en pausa l'execució en segon pla.
+     * @post El motor no començarà cap més tick de l'execució fins que es cridi resume(). No espera el tick en curs.
+     */
+    public void pause() {
+
+        _paused = true;
+
+    }
+
+    /** @brief Reprèn l'execució en segon pla.
+     * @post Si quedaven ticks pendents, el motor els continua calculant.
+     */
+    public void resume() {
+
+        _paused = false;
+        _commands.add(WAKE_UP);
+
+    }
+
+    /** @brief Cancel·la l'execució en segon pla.
+     * @post No queden ticks pendents i l'execució no està en pausa. No espera el tick en curs.
+     */
+    public void cancel() {
+
+        _remaining.set(0);
+        _paused = false;
+        _commands.add(WAKE_UP);
+
+    }
+
+    /** @return Els ticks pendents de l'execució en segon pla. */
+    public int remainingTicks() {
+
+        return _remaining.get();
+
+    }
+
+    /** @return Si l'execució en segon pla està en pausa. */
+    public boolean paused() {
+
+        return _paused;
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Bucle del Thread del motor: executa les ordres pendents, calcula els ticks de l'execució en segon pla i
+     * en publica els frames al canal de sortida.
+     */
+    private void loop() {
+
+        try {
+
+            while (true) {
+
+                Runnable command = running() ? _commands.poll() : _commands.take();
+
+                try {
+
+                    while (command != null) {
+
+                        if (command != WAKE_UP) {
+                            command.run();
+                            _contagious = _data.contagiousPopulation();
+                            _unpublished = true;
+                        }
+
+                        command = _commands.poll();
+
+                    }
+
+                    if (running()) {
+                        if (tick()) _remaining.updateAndGet(remaining -> Math.max(0, remaining - 1));
+                        else _remaining.set(0);
+                    }
+
+                } catch (RuntimeException e) {
+
+                    // Una ordre incorrecta no ha d'aturar el motor
+                    System.err.println("Error al motor de simulació: " + e);
+                    _remaining.set(0);
+                    _unpublished = true;
+
+                }
+
+                if (_unpublished) publish(!running());
+
+            }
+
+        } catch (InterruptedException e) {
+
+            // S'atura el motor
+
+        }
+
+    }
+
+    /** @return Si s'han de calcular ticks de l'execució en segon pla. */
+    private boolean running() {
+
+        return _remaining.get() > 0 && !_paused;
+
+    }
+
+    /** @brief Calcula un tick i actualitza les dades, si encara és útil.
+     * @return Si quedaven contagiats o immunes (i, per tant, s'ha calculat el tick).
+     */
+    private boolean tick() {
+
+        if (!_contagious) return false;
+
+        _simulation.simulateNextTick();
+        _data.updateDataNextTick();
+        _contagious = _data.contagiousPopulation();
+        _unpublished = true;
+
+        return true;
+
+    }
+
+    /** @brief Copia l'estat actual a un frame del canal de sortida i el publica, si la contrapressió ho permet.
+     * @param last Si el motor s'atura després d'aquest frame (es publica sempre).
+     * @throws InterruptedException Si s'interromp el motor mentre espera un frame lliure.
+     */
+    private void publish(boolean last) throws InterruptedException {
+
+        TickFrame frame = _pipeline.claim(last);
+        if (frame == null) return;
+
+        frame.capture(++_version, _simulation, _data, _contagious);
+        _pipeline.publish();
+        _unpublished = false;
+
+    }
+
+    /** @brief Demana un frame per publicar l'estat inicial, encara que s'hagi d'esperar.
+     * @return El frame a omplir.
+     */
+    private TickFrame claimUninterruptibly() {
+
+        while (true) {
+            try {
+                return _pipeline.claim(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    /** @brief Etapa d'instantànies: crea la instantània d'un frame i la publica, si no n'hi ha cap de més nou esperant
+     * o ja fa 1 / MAX_SNAPSHOTS_PER_SECOND segons de l'última.
+     * @param frame Frame publicat.
+     * @param more Si hi ha frames més nous esperant l'etapa.
+     */
+    private void buildSnapshot(TickFrame frame, boolean more) {
+
+        if (more && System.nanoTime() - _last_snapshot < MIN_SNAPSHOT_NANOS) return;
+        if (frame.version() <= _snapshot.get().version()) return;
+
+        _snapshot.set(new SimulationSnapshot(frame, _index));
+        _last_snapshot = System.nanoTime();
+
+        synchronized (_published) {
+            _published.notifyAll();
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * @file SimulationSnapshot.java
+ * @brief Classe SimulationSnapshot
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/** @class SimulationSnapshot
+ * @brief Estat de la simulació al final d'un tick, tal com el veuen els lectors (línia d'ordres, interfície gràfica):
+ * habitants i estat de confinament de cada regió, virus existents i una còpia de les dades (Data) de cada afectació.
+ *
+ * L'etapa d'instantànies de SimulationRunner la crea a partir d'un TickFrame i la publica; un cop publicada no es
+ * modifica mai, de manera que es pot llegir des de qualsevol Thread sense sincronització mentre la simulació continua
+ * avançant.
+ */
+public class SimulationSnapshot {
+
+    // Private attributes
+
+    private final long _version; ///< Número de la instantània (creix amb cada publicació).
+    private final int _tick; ///< Tick de la simulació.
+    private final boolean _contagious_population; ///< Si queden contagiats o immunes (Filter.contagiousPopulation).
+
+    private final List<Region> _regions; ///< Regions del territori.
+    private final Map<Region, Integer> _index; ///< Índex de cada regió a \p _regions (compartit, no es modifica).
+    private final List<Virus> _viruses; ///< Virus existents en aquest tick.
+
+    private final double[] _inhabitants; ///< Habitants de cada regió.
+    private final double[] _foreign; ///< Turistes de cada regió.
+    private final boolean[] _lockdown; ///< Estat de confinament de cada regió (Region.isOnLockdown).
+    private final boolean[][] _open_borders; ///< Estat de les fronteres de cada regió, en l'ordre de Region.neighbourList().
+
+    private final Map<Virus, Map<Region, Data>> _dataVR; ///< Dades de cada afectació, per virus i regió.
+    private final Map<Region, Map<Virus, Data>> _dataRV; ///< Les mateixes dades, per regió i virus.
+
+
+
+    // Constructors
+
+    /** @brief Crea la instantània d'un frame del canal de sortida.
+     * @pre \p index conté l'índex de cada regió a frame.regions() i no es modificarà més.
+     * @param frame Frame amb l'estat de la simulació al final d'un tick.
+     * @param index Índex de cada regió.
+     * @post La instantània té el número i l'estat de \p frame i no en depèn.
+     */
+    public SimulationSnapshot(TickFrame frame, Map<Region, Integer> index) {
+
+        _version = frame.version();
+        _tick = frame.tick();
+        _contagious_population = frame.contagiousPopulation();
+
+        _regions = frame.regions();
+        _index = index;
+
+        ArrayList<Virus> viruses = new ArrayList<>(frame.virusCount());
+        for (int k = 0; k < frame.virusCount(); k++) viruses.add(frame.virus(k));
+        _viruses = Collections.unmodifiableList(viruses);
+
+        int n = _regions.size();
+
+        _inhabitants = new double[n];
+        _foreign = new double[n];
+        _lockdown = new boolean[n];
+        _open_borders = new boolean[n][];
+
+        HashMap<Virus, Map<Region, Data>> dataVR = new HashMap<>();
+        HashMap<Region, Map<Virus, Data>> dataRV = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+
+            _inhabitants[i] = frame.inhabitants(i);
+            _foreign[i] = frame.foreign(i);
+            _lockdown[i] = frame.isOnLockdown(i);
+            _open_borders[i] = new boolean[_regions.get(i).neighbourList().size()];
+
+            for (int j = 0; j < _open_borders[i].length; j++) _open_borders[i][j] = frame.isBorderOpen(i, j);
+
+            dataRV.put(_regions.get(i), new HashMap<>());
+
+        }
+
+        for (Virus virus : _viruses) dataVR.put(virus, new HashMap<>());
+
+        for (int s = 0; s < frame.slots(); s++) {
+
+            Data data = frame.data(s, index);
+
+            dataVR.get(data.virus()).put(data.region(), data);
+            dataRV.get(data.region()).put(data.virus(), data);
+
+        }
+
+        dataVR.replaceAll((virus, map) -> Collections.unmodifiableMap(map));
+        dataRV.replaceAll((region, map) -> Collections.unmodifiableMap(map));
+
+        _dataVR = Collections.unmodifiableMap(dataVR);
+        _dataRV = Collections.unmodifiableMap(dataRV);
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @return El número de la instantània (dues instantànies diferents tenen números diferents). */
+    public long version() { return _version; }
+
+    /** @return El tick de la simulació. */
+    public int tick() { return _tick; }
+
+    /** @return Si queden contagiats o immunes a la simulació, sense tenir en compte cap filtre. */
+    public boolean contagiousPopulation() { return _contagious_population; }
+
+    /** @return Les regions del territori. */
+    public List<Region> regions() { return _regions; }
+
+    /** @return Els virus existents en aquest tick. */
+    public List<Virus> viruses() { return _viruses; }
+
+    /** @return Els habitants de \p region. */
+    public double inhabitants(Region region) { return _inhabitants[_index.get(region)]; }
+
+    /** @return Els turistes de \p region. */
+    public double foreign(Region region) { return _foreign[_index.get(region)]; }
+
+    /** @return Si \p region està confinada (Region.isOnLockdown). */
+    public boolean isOnLockdown(Region region) { return _lockdown[_index.get(region)]; }
+
+    /** @return Si la frontera entre \p region i \p neighbour està oberta.
+     * @pre \p neighbour és veïna de \p region.
+     */
+    public boolean isBorderOpen(Region region, Region neighbour) {
+
+        return _open_borders[_index.get(region)][region.neighbourIndex(neighbour)];
+
+    }
+
+    /** @return Les dades de les afectacions, per virus i regió (no modificable). */
+    public Map<Virus, Map<Region, Data>> dataByVirus() { return _dataVR; }
+
+    /** @return Les dades de les afectacions, per regió i virus (no modificable). */
+    public Map<Region, Map<Virus, Data>> dataByRegion() { return _dataRV; }
+
+}
@@ -0,0 +1,258 @@
+/**
+ * @file Telemetry.java
+ * @brief Classe Telemetry
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/** @class Telemetry
+ * @brief Telemetria en viu de la simulació per a execucions llargues: ticks per segon, tick actual, soques, grups
+ * d'afectats, memòria per regió i durada de les fases. Es publica com a MBean de JMX ("virusland:type=Simulation") i
+ * com a pàgina de text en format Prometheus a http://127.0.0.1:<port>/metrics.
+ *
+ * El fil que calcula els ticks publica els valors al final de cada tick (Simulation.simulateNextTick) amb escriptures
+ * atòmiques, sense blocs sincronitzats; els lectors (JMX i HTTP) només llegeixen aquests valors. Mentre la telemetria
+ * no s'ha iniciat, la simulació només comprova un booleà per tick.
+ */
+public class Telemetry implements TelemetryMBean {
+
+    // Constants
+
+    public static final int DEFAULT_PORT = 9464; ///< Port per defecte de la pàgina de mètriques.
+    public static final String OBJECT_NAME = "virusland:type=Simulation"; ///< Nom de l'MBean.
+
+    private static final double RATE_SMOOTHING = 0.2; ///< Pes de l'últim tick a la mitjana dels ticks per segon.
+
+    private static final int TICK = 0; ///< Índex de l'últim tick a _values.
+    private static final int TICKS_TOTAL = 1; ///< Índex dels ticks calculats a _values.
+    private static final int STRAINS = 2; ///< Índex de les soques a _values.
+    private static final int REGIONS = 3; ///< Índex de les regions a _values.
+    private static final int AFFECTATIONS = 4; ///< Índex de les afectacions a _values.
+    private static final int GROUPS = 5; ///< Índex dels grups d'afectats a _values.
+    private static final int LAST_TICK_END = 6; ///< Índex de l'instant en què ha acabat l'últim tick a _values.
+    private static final int TICK_INTERVAL = 7; ///< Índex de la mitjana del temps entre ticks (ns) a _values.
+    private static final int PHASES = 8; ///< Índex de la durada de la primera fase a _values.
+    private static final int VALUES = PHASES + Instrumentation.Phase.values().length; ///< Mida de _values.
+
+
+
+    // Private attributes
+
+    private static volatile boolean _active = false; ///< Si la telemetria s'ha iniciat.
+    private static final AtomicLongArray _values = new AtomicLongArray(VALUES); ///< Valors publicats.
+    private static HttpServer _server; ///< Servidor de la pàgina de mètriques (null si no s'ha iniciat).
+
+
+
+    // Constructors
+
+    /** @brief Crea l'MBean (només el crea start()). */
+    private Telemetry() {}
+
+
+
+    // Funcions públiques
+
+    /** @brief Inicia la telemetria: registra l'MBean i obre la pàgina de mètriques a \p port de la interfície local.
+     * @pre port >= 0 (0 per triar un port lliure).
+     * @param port Port de la pàgina de mètriques.
+     * @return El port on s'escolta.
+     * @post Els ticks que es calculin a partir d'ara es publiquen. Si ja s'havia iniciat, no fa res.
+     * @throws IOException Si no es pot obrir el port.
+     */
+    public static synchronized int start(int port) throws IOException {
+
+        if (_server != null) return _server.getAddress().getPort();
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Telemetry(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IOException("No s'ha pogut registrar l'MBean " + OBJECT_NAME, e);
+        }
+
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        _server.createContext("/metrics", Telemetry::serveMetrics);
+        _server.setExecutor(null);
+
+        Thread thread = new Thread(_server::start, "Telemetria");
+        thread.setDaemon(true);
+        thread.start();
+
+        _active = true;
+
+        return _server.getAddress().getPort();
+
+    }
+
+    /** @return Si la telemetria s'ha iniciat. */
+    public static boolean active() { return _active; }
+
+    /** @brief Publica l'estat de la simulació després de calcular un tick.
+     * @pre Es crida des del fil que calcula els ticks, just després de calcular el tick \p tick.
+     * @post Els lectors veuen els valors nous. La durada de les fases es llegeix de Instrumentation.
+     */
+    public static void publish(int tick, int strains, int regions, long affectations, long groups) {
+
+        long now = System.nanoTime(), last = _values.get(LAST_TICK_END);
+
+        if (last != 0) {
+
+            long interval = now - last, average = _values.get(TICK_INTERVAL);
+            _values.lazySet(TICK_INTERVAL, average == 0 ? interval :
+                    (long) (average + RATE_SMOOTHING * (interval - average)));
+
+        }
+
+        for (Instrumentation.Phase phase : Instrumentation.Phase.values())
+            _values.lazySet(PHASES + phase.ordinal(), Instrumentation.lastDuration(phase));
+
+        _values.lazySet(STRAINS, strains);
+        _values.lazySet(REGIONS, regions);
+        _values.lazySet(AFFECTATIONS, affectations);
+        _values.lazySet(GROUPS, groups);
+        _values.lazySet(LAST_TICK_END, now);
+        _values.incrementAndGet(TICKS_TOTAL);
+        _values.set(TICK, tick);
+
+    }
+
+    /** @brief Genera la pàgina de mètriques en format de text de Prometheus.
+     * @pre True.
+     * @return Les mètriques actuals.
+     */
+    public static String metrics() {
+
+        Telemetry telemetry = new Telemetry();
+        StringBuilder res = new StringBuilder();
+
+        metric(res, "virusland_tick", "gauge", "Ultim tick calculat.", telemetry.getTick());
+        metric(res, "virusland_ticks_total", "counter", "Ticks calculats.", telemetry.getTicksTotal());
+        metric(res, "virusland_ticks_per_second", "gauge", "Ticks per segon recents.", telemetry.getTicksPerSecond());
+        metric(res, "virusland_strains", "gauge", "Virus de la simulacio (inclosos els mutats).",
+                telemetry.getStrains());
+        metric(res, "virusland_regions", "gauge", "Regions del territori.", telemetry.getRegions());
+        metric(res, "virusland_affectations", "gauge", "Afectacions de totes les regions.",
+                telemetry.getAffectations());
+        metric(res, "virusland_affected_groups", "gauge", "Grups d'afectats de totes les afectacions.",
+                telemetry.getAffectedGroups());
+        metric(res, "virusland_bytes_per_region", "gauge", "Memoria del heap en us per regio.",
+                telemetry.getBytesPerRegion());
+
+        res.append("# HELP virusland_phase_seconds Durada de cada fase a l'ultim tick.\n");
+        res.append("# TYPE virusland_phase_seconds gauge\n");
+
+        for (Instrumentation.Phase phase : Instrumentation.Phase.values())
+            res.append(String.format(Locale.ROOT, "virusland_phase_seconds{phase=\"%s\"} %.9f%n",
+                    phase.name().toLowerCase(Locale.ROOT), _values.get(PHASES + phase.ordinal()) / 1e9));
+
+        return res.toString();
+
+    }
+
+    @Override
+    public int getTick() { return (int) _values.get(TICK); }
+
+    @Override
+    public long getTicksTotal() { return _values.get(TICKS_TOTAL); }
+
+    @Override
+    public double getTicksPerSecond() {
+
+        long average = _values.get(TICK_INTERVAL), last = _values.get(LAST_TICK_END);
+        if (average == 0) return 0;
+
+        // Si la simulació s'ha aturat, el temps des de l'últim tick limita la mitjana
+        return 1e9 / Math.max(average, System.nanoTime() - last);
+
+    }
+
+    @Override
+    public int getStrains() { return (int) _values.get(STRAINS); }
+
+    @Override
+    public int getRegions() { return (int) _values.get(REGIONS); }
+
+    @Override
+    public long getAffectations() { return _values.get(AFFECTATIONS); }
+
+    @Override
+    public long getAffectedGroups() { return _values.get(GROUPS); }
+
+    @Override
+    public long getBytesPerRegion() {
+
+        long regions = _values.get(REGIONS);
+        if (regions == 0) return 0;
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / regions;
+
+    }
+
+    @Override
+    public double getMovementsMillis() { return phaseMillis(Instrumentation.Phase.MOVEMENTS); }
+
+    @Override
+    public double getPropagateMillis() { return phaseMillis(Instrumentation.Phase.PROPAGATE); }
+
+    @Override
+    public double getRollbacksMillis() { return phaseMillis(Instrumentation.Phase.ROLLBACKS); }
+
+    @Override
+    public double getInfectMillis() { return phaseMillis(Instrumentation.Phase.INFECT); }
+
+    @Override
+    public double getTickMillis() { return phaseMillis(Instrumentation.Phase.TICK); }
+
+
+
+    // Funcions privades
+
+    /** @return La durada de \p phase a l'últim tick, en mil·lisegons. */
+    private static double phaseMillis(Instrumentation.Phase phase) {
+
+        return _values.get(PHASES + phase.ordinal()) / 1e6;
+
+    }
+
+    /** @brief Afegeix a \p out una mètrica sense etiquetes. */
+    private static void metric(StringBuilder out, String name, String type, String help, double value) {
+
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ');
+
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) out.append((long) value);
+        else out.append(String.format(Locale.ROOT, "%.3f", value));
+
+        out.append('\n');
+
+    }
+
+    /** @brief Respon una petició de la pàgina de mètriques. */
+    private static void serveMetrics(HttpExchange exchange) throws IOException {
+
+        byte[] body = metrics().getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * @file TelemetryMBean.java
+ * @brief Interfície TelemetryMBean
+ */
+
+/** @interface TelemetryMBean
+ * @brief Atributs de la telemetria de la simulació que es publiquen per JMX (objecte "virusland:type=Simulation").
+ * Tots són de només lectura i corresponen a l'últim tick calculat, excepte TicksPerSecond i BytesPerRegion, que es
+ * calculen en el moment de llegir-los.
+ */
+public interface TelemetryMBean {
+
+    /** @return L'últim tick calculat. */
+    int getTick();
+
+    /** @return Ticks calculats des que s'ha iniciat la telemetria (en totes les simulacions). */
+    long getTicksTotal();
+
+    /** @return Ticks per segon recents (mitjana mòbil exponencial del temps entre ticks). */
+    double getTicksPerSecond();
+
+    /** @return Virus de la simulació (inclosos els mutats). */
+    int getStrains();
+
+    /** @return Regions del territori. */
+    int getRegions();
+
+    /** @return Afectacions de totes les regions. */
+    long getAffectations();
+
+    /** @return Grups d'afectats de totes les afectacions. */
+    long getAffectedGroups();
+
+    /** @return Memòria del heap en ús dividida pel nombre de regions. */
+    long getBytesPerRegion();
+
+    /** @return Durada dels moviments a l'últim tick, en mil·lisegons. */
+    double getMovementsMillis();
+
+    /** @return Durada de la propagació a l'últim tick, en mil·lisegons. */
+    double getPropagateMillis();
+
+    /** @return Durada dels retorns a l'últim tick, en mil·lisegons. */
+    double getRollbacksMillis();
+
+    /** @return Durada de la infecció a l'últim tick, en mil·lisegons. */
+    double getInfectMillis();
+
+    /** @return Durada de l'últim tick sencer, en mil·lisegons. */
+    double getTickMillis();
+
+}
@@ -2,8 +2,14 @@
 * @file Territory.java
 * @author Guillem Vidal
 */
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * @brief Classe que engloba totes les regions,
@@ -12,37 +18,111 @@ import java.util.NoSuchElementException;
 public class Territory {
 
 	/**
-	 * Llista de regions.
+	 * Llista de regions (d'accés directe, per recórrer-la sense crear iteradors).
 	 */
 	private final List<Region> _regions;
 
+	/**
+	 * Regions indexades pel nom (la primera de la llista amb cada nom).
+	 */
+	private final HashMap<String, Region> _index;
+
+	/**
+	 * Fils per a les fases locals de cada regió (null si es fan seqüencialment).
+	 */
+	private ForkJoinPool _pool;
+
+	/**
+	 * Calendari de les vacunes aplicades a les regions.
+	 */
+	private final VaccinationScheduler _vaccinations = new VaccinationScheduler();
+
+	/**
+	 * Ordre de les regions a la llista.
+	 */
+	private static final Comparator<Region> BY_POSITION = Comparator.comparingInt(Region::position);
+
+	/**
+	 * Si només es calculen les regions actives i les seves veïnes.
+	 */
+	private static boolean _active_only = false;
+
+	/**
+	 * Regions actives al final del tic anterior (null si s'han de tornar a cercar).
+	 */
+	private ArrayList<Region> _active;
+
+	/**
+	 * Regions que es calculen en el tic en curs.
+	 */
+	private ArrayList<Region> _worklist = new ArrayList<>();
+
+	/**
+	 * Regions que es van calcular en el tic anterior.
+	 */
+	private ArrayList<Region> _previous = new ArrayList<>();
+
+	/**
+	 * Tics calculats, per marcar les regions de cada llista de treball.
+	 */
+	private long _tick;
+
 	/**
 	 * @brief Constructor principal.
 	 */
 	public Territory(List<Region> regions) {
 
-		_regions = regions;
+		_regions = regions instanceof RandomAccess ? regions : new ArrayList<>(regions);
+		_index = new HashMap<>(Math.max(16, (int) (regions.size() / 0.75f) + 1));
+
+		for (Region region : regions) _index.putIfAbsent(region.name(), region);
+
+		for (int i = 0; i < _regions.size(); i++) _regions.get(i).setPosition(i);
 
 	}
 
 	/**
-	 * @brief Cerca de la regió segons el nom.
-	 * @return la regió amb el nom name.
+	 * @brief Configura si els territoris només calculen les regions actives.
+	 * Una regió és activa si té persones afectades o vacunes en curs
+	 * (Region.isActive). Cada tic es calculen les regions actives, les seves
+	 * veïnes i les regions on arriben afectats durant els moviments; les
+	 * altres no es visiten, de manera que el cost d'un tic depèn de la mida
+	 * del front de l'epidèmia i no del mapa. A diferència del càlcul
+	 * complet, els habitants de les regions no calculades no es mouen, i
+	 * les regions que reben visitants d'aquestes en tenen menys. Les regions
+	 * que s'afegeixen durant els moviments fan els seus moviments després de
+	 * les altres, però la resta de fases es fan en l'ordre de la llista de
+	 * regions, com en el càlcul complet.
+	 * @pre True
 	 */
-	public Region getRegion(String name) {
+	public static void setActiveRegions(boolean active_only) {
+
+		_active_only = active_only;
 
-		Region region = null;
+	}
 
-		for (Region r : _regions) {
+	/**
+	 * @return si només es calculen les regions actives.
+	 */
+	public static boolean activeRegions() { return _active_only; }
 
-			if (r.name().equals(name)) {
+	/**
+	 * @brief Avisa que la regió region pot haver esdevingut activa fora
+	 * d'un tic (per exemple, perquè s'hi ha aplicat una vacuna).
+	 */
+	public void activate(Region region) {
 
-				region = r;
-				break;
+		if (_active != null) _active.add(region);
 
-			}
+	}
 
-		}
+	/**
+	 * @brief Cerca de la regió segons el nom.
+	 * @return la regió amb el nom name.
+	 */
+	public Region getRegion(String name) {
+
+		Region region = _index.get(name);
 
 		if (region == null) {
 
@@ -58,21 +138,249 @@ public class Territory {
 	 */
 	public void addVaccine(Vaccine vaccine, float proportion, String region_name) {
 
-		Region region = getRegion(region_name);
+		addVaccine(vaccine, proportion, getRegion(region_name));
+
+	}
+
+	/**
+	 * @brief Afegeix una vacuna a la regió region, programant-ne les fases
+	 * al calendari de vacunes del territori.
+	 */
+	public void addVaccine(Vaccine vaccine, float proportion, Region region) {
+
+		_vaccinations.vaccinate(region, vaccine, proportion);
+		activate(region);
+
+	}
+
+	/**
+	 * @return el calendari de vacunes del territori.
+	 */
+	public VaccinationScheduler vaccinations() { return _vaccinations; }
+
+	/**
+	 * @brief Estableix el nombre de fils amb què es fan les fases que només
+	 * modifiquen la pròpia regió (propagació i infecció). Els moviments i els
+	 * retorns modifiquen les regions veïnes i sempre es fan seqüencialment.
+	 * @pre threads >= 1.
+	 */
+	public void setThreads(int threads) {
 
-		region.addVaccine(vaccine, proportion);
+		if (_pool != null) _pool.shutdown();
+
+		_pool = threads > 1 ? new ForkJoinPool(threads) : null;
 
 	}
 
 	/**
-	 * @brief Propaga i infecta les regions.
+	 * @brief Propaga i infecta les regions. Si la instrumentació està
+	 * activada, registra la durada de cada fase.
 	 */
 	public void propagateViruses() {
 
-		for (Region region : _regions) region.movements();
-		for (Region region : _regions) region.propagate();
-		for (Region region : _regions) region.rollbacks();
-		for (Region region : _regions) region.infect();
+		long tick_start = Instrumentation.start(), start = tick_start;
+
+		_vaccinations.advance();
+
+		List<Region> regions = _active_only ? startWorklist() : _regions;
+		int listed = regions.size();
+
+		for (int i = 0; i < regions.size(); i++) {
+
+			Region region = regions.get(i);
+			region.movements();
+
+			if (_active_only) enlistInfected(region);
+
+		}
+
+		// les regions afegides durant els moviments són al final de la llista
+		if (regions.size() > listed) _worklist.sort(BY_POSITION);
+
+		assert ordered(regions) : "les regions no són en l'ordre del territori";
+
+		start = Instrumentation.lap(Instrumentation.Phase.MOVEMENTS, start);
+
+		forEachRegion(regions, Region::propagate);
+
+		// les mutacions reben el nom i l'identificador en l'ordre de les regions, no en el dels fils
+		for (int i = 0; i < regions.size(); i++) regions.get(i).registerMutations();
+		start = Instrumentation.lap(Instrumentation.Phase.PROPAGATE, start);
+
+		for (int i = 0; i < regions.size(); i++) regions.get(i).rollbacks();
+		start = Instrumentation.lap(Instrumentation.Phase.ROLLBACKS, start);
+
+		forEachRegion(regions, Region::infect);
+
+		if (_active_only) {
+
+			finishWorklist();
+
+		} else if (_active != null) {
+
+			_active = null; // si es torna a activar, s'han de tornar a cercar
+			_previous.clear();
+
+		}
+
+		Instrumentation.lap(Instrumentation.Phase.INFECT, start);
+
+		Instrumentation.lap(Instrumentation.Phase.TICK, tick_start);
+
+	}
+
+	/**
+	 * @brief Prepara la llista de regions d'aquest tic: les actives
+	 * i les seves veïnes, en l'ordre de la llista de regions.
+	 * @return la llista.
+	 */
+	private List<Region> startWorklist() {
+
+		_tick++;
+
+		if (_active == null) {
+
+			_active = new ArrayList<>();
+
+			for (int i = 0; i < _regions.size(); i++) {
+
+				if (_regions.get(i).isActive()) _active.add(_regions.get(i));
+
+			}
+
+		}
+
+		_worklist.clear();
+
+		for (int i = 0; i < _active.size(); i++) {
+			Region region = _active.get(i);
+
+			if (region.markActive(_tick)) _worklist.add(region);
+
+			List<Region> neighbours = region.neighbourList();
+
+			for (int j = 0; j < neighbours.size(); j++) {
+
+				if (neighbours.get(j).markActive(_tick)) _worklist.add(neighbours.get(j));
+
+			}
+
+		}
+
+		_worklist.sort(BY_POSITION);
+
+		Instrumentation.add(Instrumentation.Counter.ACTIVE_REGIONS, _worklist.size());
+
+		return _worklist;
+
+	}
+
+	/**
+	 * @brief Afegeix a la llista d'aquest tic les veïnes de region que
+	 * han rebut afectats en els seus moviments.
+	 */
+	private void enlistInfected(Region region) {
+
+		List<Region> neighbours = region.neighbourList();
+
+		for (int i = 0; i < neighbours.size(); i++) {
+			Region neighbour = neighbours.get(i);
+
+			if (!neighbour.isMarkedActive(_tick) && neighbour.isActive()) {
+
+				neighbour.markActive(_tick);
+				_worklist.add(neighbour);
+
+				Instrumentation.count(Instrumentation.Counter.ACTIVE_REGIONS);
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * @brief Desa les regions que continuen actives per al tic següent i
+	 * deixa en repòs les que s'han deixat de calcular.
+	 */
+	private void finishWorklist() {
+
+		_active.clear();
+
+		for (int i = 0; i < _worklist.size(); i++) {
+
+			if (_worklist.get(i).isActive()) _active.add(_worklist.get(i));
+
+		}
+
+		for (int i = 0; i < _previous.size(); i++) {
+
+			if (!_previous.get(i).isMarkedActive(_tick)) _previous.get(i).idle();
+
+		}
+
+		ArrayList<Region> previous = _previous;
+		_previous = _worklist;
+		_worklist = previous;
+
+	}
+
+	/**
+	 * @return si les regions regions són en l'ordre de la llista de regions.
+	 */
+	private static boolean ordered(List<Region> regions) {
+
+		for (int i = 1; i < regions.size(); i++) {
+
+			if (regions.get(i - 1).position() >= regions.get(i).position()) return false;
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * @brief Aplica action a les regions regions, en paral·lel si s'han
+	 * configurat fils.
+	 */
+	private void forEachRegion(List<Region> regions, Consumer<Region> action) {
+
+		if (_pool == null) {
+
+			for (int i = 0; i < regions.size(); i++) action.accept(regions.get(i));
+
+		} else {
+
+			_pool.submit(() -> regions.parallelStream().forEach(action)).join();
+
+		}
+
+	}
+
+	/**
+	 * @return el nombre d'afectacions de totes les regions, recorrent-les
+	 * (Affectation.totalAffectations el dona sense recórrer-les).
+	 */
+	public long affectationCount() {
+
+		long res = 0;
+		for (int i = 0; i < _regions.size(); i++) res += _regions.get(i).affectationCount();
+
+		return res;
+
+	}
+
+	/**
+	 * @return el nombre de grups d'afectats de totes les regions, recorrent-les
+	 * (Affectation.totalGroups el dona sense recórrer-les).
+	 */
+	public long groupCount() {
+
+		long res = 0;
+		for (int i = 0; i < _regions.size(); i++) res += _regions.get(i).groupCount();
+
+		return res;
 
 	}
 
@@ -0,0 +1,199 @@
+/**
+ * @file TickFrame.java
+ * @brief Classe TickFrame
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/** @class TickFrame
+ * @brief Mètriques d'un tick en format compacte: arrays de primitives amb les dades (Data) de cada afectació i els
+ * habitants, turistes i estat de confinament de cada regió. És l'element de l'anell de TickPipeline.
+ *
+ * El Thread del motor omple el frame (capture) al final de cada tick copiant valors, sense crear objectes en règim
+ * estable; les etapes de TickPipeline el llegeixen després en els seus Threads. Cada frame conté l'estat sencer, de
+ * manera que una etapa que se'n salti uns quants (segons la contrapressió) continua tenint dades correctes. Els frames
+ * es reutilitzen: una etapa no n'ha de guardar cap referència un cop l'ha processat.
+ */
+public class TickFrame {
+
+    // Private attributes
+
+    private long _version; ///< Número del frame (creix amb cada frame publicat).
+    private int _tick; ///< Tick de la simulació.
+    private boolean _contagious_population; ///< Si queden contagiats o immunes (Filter.contagiousPopulation).
+
+    private List<Region> _regions; ///< Regions del territori (no canvien).
+    private int[] _border_offset; ///< Posició de la primera frontera de cada regió a \p _open_borders.
+    private double[] _inhabitants; ///< Habitants de cada regió.
+    private double[] _foreign; ///< Turistes de cada regió.
+    private boolean[] _lockdown; ///< Estat de confinament de cada regió (Region.isOnLockdown).
+    private boolean[] _open_borders; ///< Estat de les fronteres de totes les regions, en l'ordre de neighbourList().
+
+    private int _virus_count; ///< Virus existents.
+    private Virus[] _viruses = new Virus[0]; ///< Virus existents (les primeres \p _virus_count posicions).
+
+    private int _slots; ///< Afectacions.
+    private Region[] _slot_region = new Region[0]; ///< Regió de cada afectació.
+    private Virus[] _slot_virus = new Virus[0]; ///< Virus de cada afectació.
+    private Vaccine[] _slot_vaccine = new Vaccine[0]; ///< Vacuna de cada afectació (null si no en té).
+    private int[] _slot_vaccine_ticks = new int[0]; ///< Ticks restants de la vacuna de cada afectació.
+    private double[] _values = new double[0]; ///< Data.FIELDS valors de cada afectació (Data.store).
+
+
+
+    // Funcions públiques
+
+    /** @brief Copia l'estat actual de la simulació al frame.
+     * @pre Es crida des del Thread que fa avançar \p simulation, entre dos ticks. \p data és el Filter de la
+     * simulació, actualitzat fins al tick actual.
+     * @param version Número del frame.
+     * @param simulation Simulació.
+     * @param data Filter amb les dades de les afectacions.
+     * @param contagious_population Si queden contagiats o immunes (data.contagiousPopulation()).
+     * @post El frame té l'estat actual i no depèn de cap objecte que la simulació modifiqui. Només crea objectes si hi ha
+     * més afectacions o virus que a l'última captura d'aquest frame.
+     */
+    public void capture(long version, Simulation simulation, Filter data, boolean contagious_population) {
+
+        _version = version;
+        _tick = simulation.getTick();
+        _contagious_population = contagious_population;
+
+        if (_regions == null) allocateRegions(simulation.regionList());
+
+        int n = _regions.size();
+
+        for (int i = 0; i < n; i++) {
+
+            Region region = _regions.get(i);
+            int borders = region.neighbourList().size();
+
+            _inhabitants[i] = region.inhabitants();
+            _foreign[i] = region.foreign();
+            _lockdown[i] = region.isOnLockdown();
+
+            for (int j = 0; j < borders; j++) _open_borders[_border_offset[i] + j] = region.isBorderOpen(j);
+
+        }
+
+        List<Virus> viruses = simulation.virusList();
+        _virus_count = viruses.size();
+        if (_viruses.length < _virus_count) _viruses = new Virus[Math.max(_virus_count, 2 * _viruses.length)];
+        for (int k = 0; k < _virus_count; k++) _viruses[k] = viruses.get(k);
+
+        List<Data> list = data.dataList();
+        _slots = list.size();
+        if (_slot_region.length < _slots) allocateSlots(Math.max(_slots, 2 * _slot_region.length));
+
+        for (int s = 0; s < _slots; s++) {
+
+            Data slot = list.get(s);
+
+            _slot_region[s] = slot.region();
+            _slot_virus[s] = slot.virus();
+            _slot_vaccine[s] = slot.vaccine();
+            _slot_vaccine_ticks[s] = slot.vaccineRemainingTicks();
+            slot.store(_values, s * Data.FIELDS);
+
+        }
+
+    }
+
+    /** @return El número del frame. */
+    public long version() { return _version; }
+
+    /** @return El tick de la simulació. */
+    public int tick() { return _tick; }
+
+    /** @return Si queden contagiats o immunes a la simulació. */
+    public boolean contagiousPopulation() { return _contagious_population; }
+
+    /** @return Les regions del territori. */
+    public List<Region> regions() { return _regions; }
+
+    /** @return Els habitants de la regió \p i. */
+    public double inhabitants(int i) { return _inhabitants[i]; }
+
+    /** @return Els turistes de la regió \p i. */
+    public double foreign(int i) { return _foreign[i]; }
+
+    /** @return Si la regió \p i està confinada (Region.isOnLockdown). */
+    public boolean isOnLockdown(int i) { return _lockdown[i]; }
+
+    /** @return Si està oberta la frontera de la regió \p i amb la seva veïna \p j (en l'ordre de Region.neighbourList()). */
+    public boolean isBorderOpen(int i, int j) { return _open_borders[_border_offset[i] + j]; }
+
+    /** @return El nombre de virus existents. */
+    public int virusCount() { return _virus_count; }
+
+    /** @return El virus \p k (en l'ordre de Simulation.virusList()). */
+    public Virus virus(int k) { return _viruses[k]; }
+
+    /** @return El nombre d'afectacions. */
+    public int slots() { return _slots; }
+
+    /** @return La regió de l'afectació \p s. */
+    public Region slotRegion(int s) { return _slot_region[s]; }
+
+    /** @return El virus de l'afectació \p s. */
+    public Virus slotVirus(int s) { return _slot_virus[s]; }
+
+    /** @return El valor \p field (0 <= field < Data.FIELDS, en l'ordre de Data.store) de l'afectació \p s. */
+    public double value(int s, int field) { return _values[s * Data.FIELDS + field]; }
+
+    /** @brief Crea la Data de l'afectació \p s.
+     * @pre 0 <= s < slots(). \p index conté l'índex de cada regió a regions().
+     * @param s Afectació.
+     * @param index Índex de cada regió.
+     * @return Una Data amb les dades de l'afectació, que no depèn del frame.
+     */
+    public Data data(int s, Map<Region, Integer> index) {
+
+        int i = index.get(_slot_region[s]);
+
+        return new Data(_slot_region[s], _slot_virus[s], _slot_vaccine[s], _slot_vaccine_ticks[s], _inhabitants[i],
+                _foreign[i], _values, s * Data.FIELDS);
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Reserva les arrays de les regions de \p regions. */
+    private void allocateRegions(List<Region> regions) {
+
+        int n = regions.size();
+
+        _regions = regions;
+        _border_offset = new int[n];
+        _inhabitants = new double[n];
+        _foreign = new double[n];
+        _lockdown = new boolean[n];
+
+        int borders = 0;
+
+        for (int i = 0; i < n; i++) {
+            _border_offset[i] = borders;
+            borders += regions.get(i).neighbourList().size();
+        }
+
+        _open_borders = new boolean[borders];
+
+    }
+
+    /** @brief Amplia les arrays de les afectacions fins a \p capacity. */
+    private void allocateSlots(int capacity) {
+
+        _slot_region = Arrays.copyOf(_slot_region, capacity);
+        _slot_virus = Arrays.copyOf(_slot_virus, capacity);
+        _slot_vaccine = Arrays.copyOf(_slot_vaccine, capacity);
+        _slot_vaccine_ticks = Arrays.copyOf(_slot_vaccine_ticks, capacity);
+        _values = Arrays.copyOf(_values, capacity * Data.FIELDS);
+
+    }
+
+}
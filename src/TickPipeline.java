@@ -0,0 +1,259 @@
+/**
+ * @file TickPipeline.java
+ * @brief Classe TickPipeline
+ */
+
+import java.util.ArrayList;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+
+/** @class TickPipeline
+ * @brief Canal de sortida dels ticks: un anell de TickFrame de mida fixa entre el Thread del motor (l'únic productor)
+ * i les etapes que en consumeixen els frames (instantànies per a la interfície, exportació binària...), cadascuna en el
+ * seu Thread i al seu ritme.
+ *
+ * El motor demana un frame lliure (claim), l'omple i el publica (publish), i mentrestant ja pot calcular el tick
+ * següent. Cada etapa té el seu cursor i llegeix els frames en ordre; un frame només es torna a fer servir quan totes
+ * les etapes l'han processat. Quan l'anell és ple, la contrapressió (Backpressure) decideix què fa el motor.
+ *
+ * Publicar un frame no agafa cap monitor: el motor només desperta (LockSupport.unpark) les etapes aturades esperant
+ * frames, i una etapa només avisa el motor quan aquest espera un frame lliure.
+ */
+public class TickPipeline {
+
+    /** @enum Backpressure
+     * @brief Què fa el motor quan l'anell és ple o el tick no s'ha de publicar.
+     */
+    public enum Backpressure {
+
+        BLOCK("bloqueja"), ///< Espera que l'etapa més lenta alliberi un frame: les etapes veuen tots els ticks.
+        DROP("descarta"), ///< No publica els ticks intermedis que no caben a l'anell: el motor no espera mai.
+        SAMPLE("mostreja"); ///< Només publica un de cada \p _sample_period ticks i, si no cap, espera.
+
+        private final String _name; ///< Nom de la política als arguments del programa.
+
+        Backpressure(String name) {
+            _name = name;
+        }
+
+        /** @return La política de nom \p name.
+         * @throws InputMismatchException Si no n'hi ha cap amb aquest nom.
+         */
+        public static Backpressure fromName(String name) {
+
+            for (Backpressure policy : values())
+                if (policy._name.equals(name)) return policy;
+
+            throw new InputMismatchException("Contrapressió desconeguda: " + name);
+
+        }
+
+    }
+
+    /** @interface Stage
+     * @brief Etapa del canal: processa els frames publicats, en ordre, al seu Thread.
+     */
+    public interface Stage {
+
+        /** @brief Processa un frame.
+         * @pre \p frame no es modificarà fins que aquesta crida acabi; després, no se n'ha de guardar cap referència.
+         * @param frame Frame publicat.
+         * @param more Si ja hi ha frames més nous esperant aquesta etapa (es pot saltar el treball que només
+         * serveix per mostrar l'últim).
+         */
+        void accept(TickFrame frame, boolean more);
+
+    }
+
+    /** @class Consumer
+     * @brief Etapa afegida al canal, amb el seu cursor i el seu Thread.
+     */
+    private class Consumer {
+
+        private final Stage stage; ///< Etapa.
+        private final Thread thread; ///< Thread de l'etapa.
+        private volatile long cursor = 0; ///< Seqüència del següent frame a processar.
+        private volatile boolean parked = false; ///< Si el Thread s'atura (o està a punt) esperant un frame.
+
+        private Consumer(String name, Stage stage) {
+            this.stage = stage;
+            thread = new Thread(this::loop, name);
+            thread.setDaemon(true);
+        }
+
+        /** @brief Bucle del Thread de l'etapa: processa els frames a mesura que es publiquen. */
+        private void loop() {
+
+            while (true) {
+
+                long next = cursor;
+
+                // Es marca abans de tornar a mirar _head: o bé es veu el frame nou o bé publish() veu la marca
+                while (_head == next) {
+
+                    parked = true;
+                    if (_head == next) LockSupport.park(this);
+                    parked = false;
+
+                    if (Thread.interrupted()) return; // s'atura l'etapa
+
+                }
+
+                try {
+                    stage.accept(_ring[(int) (next % _ring.length)], next + 1 < _head);
+                } catch (RuntimeException e) {
+                    // Una etapa que falla no ha de bloquejar el motor
+                    System.err.println("Error a l'etapa " + thread.getName() + ": " + e);
+                }
+
+                cursor = next + 1;
+
+                // Només si el motor espera un frame lliure (l'ha marcat abans de tornar a mirar els cursors)
+                if (_producer_waiting) {
+                    synchronized (_lock) {
+                        _lock.notifyAll();
+                    }
+                }
+
+            }
+
+        }
+
+    }
+
+
+
+    // Constants
+
+    public static final int DEFAULT_CAPACITY = 16; ///< Frames de l'anell per defecte.
+    public static final int DEFAULT_SAMPLE_PERIOD = 10; ///< Període de mostreig per defecte (Backpressure.SAMPLE).
+
+
+
+    // Private attributes
+
+    private final TickFrame[] _ring; ///< Anell de frames.
+    private final Backpressure _policy; ///< Contrapressió.
+    private final int _sample_period; ///< Període de mostreig (Backpressure.SAMPLE).
+    private final List<Consumer> _consumers = new ArrayList<>(); ///< Etapes.
+    private final Object _lock = new Object(); ///< Monitor on espera el motor quan l'anell és ple.
+    private volatile boolean _producer_waiting = false; ///< Si el motor espera un frame lliure a _lock.
+
+    private volatile long _head = 0; ///< Frames publicats (seqüència del següent frame).
+    private int _unsampled = 0; ///< Ticks sense publicar des de l'últim frame (Thread del motor).
+    private boolean _started = false; ///< Si ja s'han iniciat les etapes.
+
+
+
+    // Constructors
+
+    /** @brief Crea el canal, sense cap etapa.
+     * @pre capacity > 0 i sample_period > 0.
+     * @param capacity Frames de l'anell.
+     * @param policy Contrapressió.
+     * @param sample_period Període de mostreig (només per a Backpressure.SAMPLE).
+     * @post Tots els frames de l'anell estan lliures.
+     */
+    public TickPipeline(int capacity, Backpressure policy, int sample_period) {
+
+        _ring = new TickFrame[capacity];
+        for (int i = 0; i < capacity; i++) _ring[i] = new TickFrame();
+
+        _policy = policy;
+        _sample_period = sample_period;
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @brief Afegeix una etapa al canal.
+     * @pre No s'ha cridat start().
+     * @param name Nom del Thread de l'etapa.
+     * @param stage Etapa.
+     * @post L'etapa rebrà tots els frames que es publiquin des de start().
+     */
+    public void addStage(String name, Stage stage) {
+
+        if (_started) throw new IllegalStateException("El canal ja s'ha iniciat");
+
+        _consumers.add(new Consumer(name, stage));
+
+    }
+
+    /** @brief Inicia els Threads de les etapes.
+     * @pre No s'ha cridat mai.
+     */
+    public void start() {
+
+        _started = true;
+
+        for (Consumer consumer : _consumers) consumer.thread.start();
+
+    }
+
+    /** @brief Demana el frame on el motor ha d'escriure el tick acabat.
+     * @pre Es crida des del Thread del motor, i després de cada frame retornat es crida publish() abans de tornar-la a
+     * cridar.
+     * @param last Si és l'últim tick abans que el motor s'aturi (aquest es publica sempre, esperant si cal).
+     * @return El frame a omplir, o null si segons la contrapressió aquest tick no es publica.
+     * @throws InterruptedException Si s'interromp el motor mentre espera un frame lliure.
+     */
+    public TickFrame claim(boolean last) throws InterruptedException {
+
+        if (!last && _policy == Backpressure.SAMPLE && ++_unsampled < _sample_period) return null;
+
+        if (!last && _policy == Backpressure.DROP && full()) return null;
+
+        if (full()) {
+            synchronized (_lock) {
+                _producer_waiting = true;
+                try {
+                    while (full()) _lock.wait();
+                } finally {
+                    _producer_waiting = false;
+                }
+            }
+        }
+
+        _unsampled = 0;
+
+        return _ring[(int) (_head % _ring.length)];
+
+    }
+
+    /** @brief Publica el frame retornat per l'última crida a claim().
+     * @pre Es crida des del Thread del motor, i el frame ja està omplert.
+     * @post Les etapes el processaran.
+     */
+    public void publish() {
+
+        _head = _head + 1;
+
+        for (int i = 0; i < _consumers.size(); i++) {
+            Consumer consumer = _consumers.get(i);
+            if (consumer.parked) LockSupport.unpark(consumer.thread);
+        }
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @return Si tots els frames de l'anell estan pendents d'alguna etapa. */
+    private boolean full() {
+
+        long head = _head;
+
+        for (Consumer consumer : _consumers)
+            if (head - consumer.cursor >= _ring.length) return true;
+
+        return false;
+
+    }
+
+}
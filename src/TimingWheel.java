@@ -0,0 +1,130 @@
+/**
+ * @file TimingWheel.java
+ * @brief Classe TimingWheel
+ */
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+
+/** @class TimingWheel
+ * @brief Roda de temporitzadors: elements programats per a un tick concret que es recuperen quan el rellotge de la
+ * roda hi arriba.
+ *
+ * La roda té un nombre fix de caselles (potència de 2) i un element programat per al tick t va a la casella
+ * t mod caselles. Avançar un tick només visita la casella del tick nou: hi troba els elements d'aquest tick i els
+ * que són una o més voltes més enllà, que s'hi queden. Així el cost d'un tick és proporcional als elements que hi
+ * vencen (més els llunyans de la mateixa casella), i no al total d'elements programats.
+ * @param <T> Tipus dels elements.
+ */
+public class TimingWheel<T> {
+
+    // Private classes
+
+    /** @class Timer
+     * @brief Element programat.
+     */
+    private static class Timer<T> {
+
+        final long tick; ///< Tick en què venç.
+        final T item; ///< Element.
+
+        Timer(long tick, T item) {
+            this.tick = tick;
+            this.item = item;
+        }
+
+    }
+
+
+
+    // Private attributes
+
+    private final ArrayList<ArrayList<Timer<T>>> _slots; ///< Caselles de la roda.
+    private final int _mask; ///< Caselles - 1.
+    private long _now = 0; ///< Tick actual del rellotge.
+    private int _size = 0; ///< Elements programats.
+
+
+
+    // Constructors
+
+    /** @brief Crea una roda buida amb el rellotge a 0.
+     * @pre \p slots és una potència de 2 positiva.
+     * @param slots Caselles de la roda.
+     */
+    public TimingWheel(int slots) {
+
+        if (slots <= 0 || Integer.bitCount(slots) != 1)
+            throw new IllegalArgumentException("Les caselles han de ser una potència de 2: " + slots);
+
+        _slots = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) _slots.add(new ArrayList<>());
+        _mask = slots - 1;
+
+    }
+
+
+
+    // Funcions públiques
+
+    /** @return El tick actual del rellotge. */
+    public long now() { return _now; }
+
+    /** @return El nombre d'elements programats. */
+    public int size() { return _size; }
+
+    /** @brief Programa \p item per al tick \p tick.
+     * @pre \p tick > now().
+     * @post \p item es recuperarà quan el rellotge arribi a \p tick.
+     */
+    public void schedule(long tick, T item) {
+
+        if (tick <= _now) throw new IllegalArgumentException("El tick " + tick + " ja ha passat (" + _now + ")");
+
+        _slots.get((int) (tick & _mask)).add(new Timer<>(tick, item));
+        _size++;
+
+    }
+
+    /** @brief Avança el rellotge un tick.
+     * @param action Acció que s'aplica a cada element que venç, en l'ordre en què s'han programat. Pot programar-ne
+     * de nous.
+     * @post now() ha augmentat en 1 i s'ha aplicat \p action als elements programats per al tick nou, que ja no hi
+     * són.
+     */
+    public void advance(Consumer<? super T> action) {
+
+        _now++;
+
+        ArrayList<Timer<T>> slot = _slots.get((int) (_now & _mask));
+
+        // els elements que action programi una volta més enllà s'afegeixen al final i es conserven
+        int count = slot.size(), kept = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            Timer<T> timer = slot.get(i);
+
+            if (timer.tick == _now) {
+
+                _size--;
+                action.accept(timer.item);
+
+            } else {
+
+                slot.set(kept++, timer);
+
+            }
+
+        }
+
+        // compacta: els conservats i els nous, sense els que han vençut (traient-los des del final, perquè subList
+        // crearia un objecte a cada tick fins que el JIT l'elimini)
+        int added = slot.size() - count;
+        for (int i = 0; i < added; i++) slot.set(kept + i, slot.get(count + i));
+        for (int i = slot.size() - 1; i >= kept + added; i--) slot.remove(i);
+
+    }
+
+}
@@ -31,58 +31,36 @@ public class UI {
     }
 
 
-    /**
-     * @brief Donades tres llistes de dades pels Charts i el conjunt de títolsle, actualitza cadascun dels PieCharts amb les dades corresponents
-     * i habilita els botons de -> i de <- de la interfície gràfica per iterar circularment al llarg de les dades
-     * enviades. Col·loca els tres charts a la primera posició de cadascuna de les arrays.
-     * @pre top.size() == left.size() == right.size() && top != null && left != null && right != null
+    /** @brief Publica les dades i els títols dels tres PieCharts. Els botons de -> i de <- de la interfície gràfica
+     * iteren circularment al llarg de les dades enviades, començant per la primera posició de cada array.
+     * @pre top.size() == left.size() == right.size() i cap paràmetre és null. Les arrays no es modificaran més.
+     * @param title Títol del PieChart superior.
+     * @param leftTitle Títol del PieChart inferior esquerre.
+     * @param rightTitle Títol del PieChart inferior dret.
      * @param titles Array de títols
      * @param top Array de dades del PieChart superior.
      * @param left Array de dades del PieChart inferior esquerra.
      * @param right Array de dades del PieChart inferior dret.
-     * @post S'han actualitzat les dades de GraphChartData i els PieCharts mostren les dades de la primera posició de
-     * cadascuna de les arrays. Els botons de -> i de <- de la interfície iteren per les dades.
+     * @post Les dades queden publicades sense esperar el Thread del JavaFX, que només dibuixa l'última publicació
+     * amb un màxim de quadres per segon (GraphChartData.publishFrame).
      */
-    public void updateChartsData(ArrayList<String> titles, ArrayList<TreeMap<String, Integer>> top, ArrayList<TreeMap<String,Integer>> left, ArrayList<TreeMap<String, Integer>> right) {
-        data.updateVariableTitlePool(titles);
-        data.updateTopDataPool(top);
-        data.updateLeftDataPool(left);
-        data.updateRightDataPool(right);
-        data.refreshData();
+    public void publishCharts(String title, String leftTitle, String rightTitle, ArrayList<String> titles,
+                              ArrayList<TreeMap<String, Long>> top, ArrayList<TreeMap<String,Long>> left,
+                              ArrayList<TreeMap<String, Long>> right) {
+        data.publishFrame(new GraphChartData.Frame(title, leftTitle, rightTitle, titles, top, left, right));
     }
 
-    /** @brief Canvia el títol del PieChart central.
-     * @pre True.
-     * @post El títol del PieChart passa a ser \p s.
-     * @param s Nou títol del PieChart.
-     */
-    public void changePieChartTitle(String s) {
-
-        data.changePieChartTitle(s);
-
-    }
-
-    /** @brief Canvia el títol del PieChart esquerre.
-     * @pre True.
-     * @post El títol del PieChart passa a ser \p s.
-     * @param s Nou títol del PieChart.
+    /** @brief Publica les dades del mapa de calor de les regions.
+     * @pre \p snapshot és una instantània de la simulació mostrada.
+     * @param snapshot Instantània de la simulació.
+     * @param virus Virus del qual es mostren les dades (null per sumar tots els virus).
+     * @param title Títol de les dades.
+     * @post Les dades queden publicades sense esperar el Thread del JavaFX (GraphChartData.publishHeatmap).
      */
-    public void changeLeftPieChartTitle(String s) {
-
-        data.changeLeftPieChartTitle(s);
-
+    public void publishHeatmap(SimulationSnapshot snapshot, Virus virus, String title) {
+        data.publishHeatmap(snapshot, virus, title);
     }
 
-    /** @brief Canvia el títol del PieChart dret.
-     * @pre True.
-     * @post El títol del PieChart passa a ser \p s.
-     * @param s Nou títol del PieChart.
-     */
-    public void changeRightPieChartTitle(String s) {
-        data.changeRightPieChartTitle(s);
-    }
-
-
     /** @brief Tanca visualment una frontera entre dues regions.
      * @pre \p r1 i \p r2 han de ser veïns.
      * @post La aresta queda de color vermell.
@@ -0,0 +1,121 @@
+/**
+ * @file VaccinationScheduler.java
+ * @brief Classe VaccinationScheduler
+ */
+
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/** @class VaccinationScheduler
+ * @brief Calendari de les vacunes aplicades a totes les regions d'un territori.
+ *
+ * Una vacuna aplicada passa per tres fases (Affectation.VaccineStepper.Phase): pendent durant el retard, activa
+ * mentre fa efecte i acabada. En aplicar-la ja se sap a quin tick canviarà de fase, de manera que en lloc d'avançar
+ * cada vacuna a cada tick es programa el canvi següent en una roda de temporitzadors (TimingWheel). A cada tick
+ * (advance) només es visiten les vacunes que canvien de fase: el cost és proporcional als canvis i no a les
+ * vacunes en curs. Quan una vacuna acaba es treu de la seva regió.
+ */
+public class VaccinationScheduler {
+
+    // Constants
+
+    private static final int SLOTS = 64; ///< Caselles de la roda (ticks d'una volta).
+
+
+
+    // Private attributes
+
+    private final TimingWheel<Affectation.VaccineStepper> _wheel = new TimingWheel<>(SLOTS); ///< Canvis de fase.
+    private final Consumer<Affectation.VaccineStepper> _change = this::changePhase; ///< Es desa per no crear-la cada tick.
+
+
+
+    // Funcions públiques
+
+    /** @return El tick del calendari: el nombre de vegades que s'ha cridat advance. */
+    public long tick() { return _wheel.now(); }
+
+    /** @return El nombre de vacunes en curs (pendents de canviar de fase o de treure's de la regió). */
+    public int live() { return _wheel.size(); }
+
+    /** @brief Aplica una vacuna a una regió a partir del tick actual.
+     * @pre \p vaccine != null, 0 <= \p proportion <= 1.
+     * @param region Regió vacunada.
+     * @param vaccine Vacuna.
+     * @param proportion Proporció dels habitants vacunats.
+     * @return La vacuna aplicada.
+     * @post La vacuna s'ha afegit a \p region (Region.addVaccine) i en canviarà de fase als ticks que toqui.
+     */
+    public Affectation.VaccineStepper vaccinate(Region region, Vaccine vaccine, float proportion) {
+
+        Affectation.VaccineStepper stepper = new Affectation.VaccineStepper(vaccine, proportion, region, this);
+
+        region.addVaccine(stepper);
+        scheduleNext(stepper);
+
+        return stepper;
+
+    }
+
+    /** @brief Reparteix les dosis d'una campanya de vacunació entre diverses regions.
+     * @pre 0 <= \p proportion <= 1, \p doses >= 0.
+     * @param regions Regions de la campanya, en ordre de prioritat.
+     * @param proportion Proporció dels habitants de cada regió que es vol vacunar.
+     * @param doses Dosis disponibles (una per persona vacunada).
+     * @return La proporció dels habitants que es pot vacunar a cada regió: \p proportion mentre hi ha dosis, les
+     * que queden a la primera regió que no en té prou, i 0 a les següents.
+     */
+    public static float[] allocate(List<Region> regions, float proportion, double doses) {
+
+        float[] res = new float[regions.size()];
+        double left = doses;
+
+        for (int i = 0; i < res.length && left > 0; i++) {
+
+            double inhabitants = regions.get(i).inhabitants();
+            if (inhabitants <= 0) continue;
+
+            res[i] = inhabitants * proportion <= left ? proportion : (float) (left / inhabitants);
+            left -= Math.min(left, inhabitants * res[i]);
+
+        }
+
+        return res;
+
+    }
+
+    /** @brief Avança el calendari un tick.
+     * @post tick() ha augmentat en 1, les vacunes que canvien de fase en aquest tick ho han fet i les que han
+     * acabat ja no són a la seva regió.
+     */
+    public void advance() {
+
+        _wheel.advance(_change);
+
+    }
+
+
+
+    // Funcions privades
+
+    /** @brief Actualitza la fase d'una vacuna que ha arribat al tick d'un canvi programat. */
+    private void changePhase(Affectation.VaccineStepper stepper) {
+
+        stepper.updatePhase();
+
+        if (stepper.phase() == Affectation.VaccineStepper.Phase.OVER) stepper.region().removeVaccine(stepper);
+        else scheduleNext(stepper);
+
+    }
+
+    /** @brief Programa el canvi de fase següent d'una vacuna que no ha acabat o la seva retirada, si ha acabat en
+     * aplicar-la.
+     */
+    private void scheduleNext(Affectation.VaccineStepper stepper) {
+
+        _wheel.schedule(Math.max(stepper.nextChange(), _wheel.now() + 1), stepper);
+
+    }
+
+}
@@ -24,6 +24,9 @@ public class Virus implements Comparable<Virus> {
     protected int _infection_duration; ///< Durada en ticks de la infecció.
     protected VirusFamily _family; ///< Família a la qual pertany el virus.
 
+    private static int _next_id = 0; ///< Proper identificador.
+    private int _id = -1; ///< Identificador dens, que indexa les afectacions de les regions (-1 si no en té).
+
 
     //CONSTRUCTOR
 
@@ -55,6 +58,18 @@ public class Virus implements Comparable<Virus> {
     Virus(String name, VirusFamily family, float fallSickProbability, float deathRate,
           float spreadRate, int symptomDuration, int incubationTime,
           int latencyTime, int immunityDuration, int infectionDuration) {
+        this(name, family, fallSickProbability, deathRate, spreadRate, symptomDuration, incubationTime, latencyTime,
+                immunityDuration, infectionDuration, true);
+    }
+
+    /** @brief Constructor que permet deixar el virus sense identificador.
+     * @pre Les mateixes que el constructor anterior.
+     * @param numbered Si el virus rep ara el seu identificador; si no, el rebrà en registrar-lo (assignId).
+     * @post S'ha creat el virus amb les dades corresponents.
+     */
+    protected Virus(String name, VirusFamily family, float fallSickProbability, float deathRate,
+                    float spreadRate, int symptomDuration, int incubationTime,
+                    int latencyTime, int immunityDuration, int infectionDuration, boolean numbered) {
         _name = name;
         _family = family;
         _fall_sick_probability = fallSickProbability;
@@ -65,6 +80,7 @@ public class Virus implements Comparable<Virus> {
         _latency_time = latencyTime;
         _immunity_duration = immunityDuration;
         _infection_duration = infectionDuration;
+        if (numbered) assignId();
     }
 
     /** @brief Converteix l'objecte en un String.
@@ -77,6 +93,29 @@ public class Virus implements Comparable<Virus> {
 
     //GETTERS
 
+    /** @brief Retorna l'identificador del virus.
+     * @pre True
+     * @return Retorna l'identificador del virus: els virus es numeren des de 0 en l'ordre en què reben l'identificador
+     * (els dels fitxers en crear-se i les mutacions en registrar-se), i la numeració torna a començar a cada
+     * simulació (resetIds). Una mutació que encara no s'ha registrat no en té (-1).
+     */
+    public int id() { return _id; }
+
+    /** @brief Dona al virus el proper identificador, si encara no en té.
+     * @pre Només es crida des del fil que calcula la simulació, fora de les fases paral·leles.
+     * @post id() >= 0.
+     */
+    void assignId() {
+        if (_id < 0) _id = _next_id++;
+    }
+
+    /** @brief Torna a numerar els virus des de 0, perquè els vectors d'afectacions de les regions no creixin d'una
+     * simulació a la següent.
+     * @pre Els virus creats abans no es faran servir amb regions creades després.
+     * @post El proper virus creat tindrà l'identificador 0.
+     */
+    static void resetIds() { _next_id = 0; }
+
     /** @brief Retorna el nom del virus.
      * @pre True
      * @return Retorna el nom del virus.
@@ -145,11 +184,11 @@ public class Virus implements Comparable<Virus> {
      * @param affected Nombre de persones infectades del virus en el tick inicial.
      * @post S'ha afegit a la regió r un AffectedGroup que conté affected afectats del virus en el primer tick.
      */
-    protected void generateAffectedGroup(Region r, int affected) {
+    protected void generateAffectedGroup(Region r, double affected) {
 
         Affectation affectation = r.affectation(this);
 
-        AffectedGroup newGroup = new AffectedGroup(affectation, this, affected);
+        AffectedGroup newGroup = AffectedGroup.obtain(affectation, this, affected);
 
         affectation.addGroup(newGroup);
     }
@@ -164,7 +203,7 @@ public class Virus implements Comparable<Virus> {
      */
     protected void onVirusOverlap(Region region, Affectation my_affectation, Affectation affectation, float overlap) {
 
-        int shared = (int)(overlap * region.inhabitants());
+        double shared = Affectation.part(region.inhabitants(), overlap);
 
         // esborrem la part que se solapa de l'afectació més fluixa,
         // perquè l'afectació més forta ja conté la part de la població
@@ -186,17 +225,19 @@ public class Virus implements Comparable<Virus> {
      * @brief Comprova si hi ha coincidències de virus de la mateixa família en un grup de persones.
      * @param affected el grup de persones del virus this.
      */
-    protected void checkVirusOverlap(Region region, int affected) {
+    protected void checkVirusOverlap(Region region, double affected) {
 
         Affectation my_affectation = region.affectation(this);
-        List<Affectation> affectations = region.affectationsByFamily(_family);
+        List<Affectation> affectations = region.affectations();
 
-        for (Affectation affectation : affectations) {
+        // les afectacions que es creïn durant el bucle (mutacions) no es comproven
+        for (int i = 0, count = affectations.size(); i < count; i++) {
+            Affectation affectation = affectations.get(i);
 
-            if (my_affectation == affectation) continue;
+            if (my_affectation == affectation || affectation.virus().family() != _family) continue;
 
-            float prop1 = (float)affected / region.inhabitants(); prop1 = Math.min(prop1, 1f);
-            float prop2 = (float)affectation.affected() / region.inhabitants(); prop2 = Math.min(prop2, 1f);
+            float prop1 = (float)affected / (float)region.inhabitants(); prop1 = Math.min(prop1, 1f);
+            float prop2 = (float)affectation.affected() / (float)region.inhabitants(); prop2 = Math.min(prop2, 1f);
             float shared = prop1 * prop2;
 
             if (shared > 0f) {
@@ -215,7 +256,7 @@ public class Virus implements Comparable<Virus> {
      * @param affected Nombre de persones infectades del virus en el tick inicial.
      * @post S'ha propagat el virus actual en la regió r amb el nombre affected de nous afectats.
      */
-    public void propagateVirus(Region r, int affected) {
+    public void propagateVirus(Region r, double affected) {
         
         generateAffectedGroup(r, affected);
     
@@ -116,7 +116,69 @@ public class Writer {
         System.out.println("5. Actualitzar un confinament");
         System.out.println("6. Veure " + (sum_or_log == 's' ? "log" : "resum"));
         System.out.println("7. Consultar llistes");
-        System.out.println("8. Sortir");
+        System.out.println("8. Instrumentació");
+        System.out.println("9. Execució en segon pla");
+        System.out.println("10. Sortir");
+
+    }
+
+    /**
+     * @param tick Tick de l'última instantània de la simulació.
+     * @param remaining Ticks pendents de l'execució en segon pla.
+     * @param paused Si l'execució està en pausa.
+     * @brief Mostra l'estat de l'execució en segon pla.
+     * @pre tick >= 0 && remaining >= 0
+     * @post Es mostra per pantalla el tick mostrat i quants ticks queden per calcular, o que no n'hi ha cap en curs.
+     */
+    public static void writeRunState(int tick, int remaining, boolean paused) {
+
+        if (remaining == 0)
+            System.out.println("Execució en segon pla: cap en curs (tick " + tick + ")");
+        else
+            System.out.println("Execució en segon pla: tick " + tick + ", " + remaining + " ticks pendents" +
+                    (paused ? " (en pausa)" : ""));
+
+    }
+
+    /**
+     * @param paused Si l'execució en segon pla està en pausa.
+     * @brief Mostra el menú d'execució en segon pla.
+     * @pre True
+     * @post Mostra per pantalla el menú d'execució, amb l'opció de posar-la en pausa o reprendre-la segons \p paused.
+     */
+    public static void showRunMenu(boolean paused) {
+
+        System.out.println("Menú d'execució en segon pla:");
+        System.out.println("1. " + (paused ? "Reprendre" : "Posar en pausa") + " l'execució");
+        System.out.println("2. Cancel·lar l'execució");
+        System.out.println("0. Tornar al menú principal (l'execució continua)");
+
+    }
+
+    /**
+     * @param report Informe de la instrumentació.
+     * @brief Mostra per pantalla les mesures de la instrumentació.
+     * @pre report != null
+     * @post Es mostra per pantalla l'informe amb el format de `Instrumentation.report()`.
+     */
+    public static void writeInstrumentation(String report) {
+
+        System.out.println(report);
+
+    }
+
+    /**
+     * @param enabled Si la instrumentació està activada.
+     * @brief Mostra el menú d'instrumentació.
+     * @pre True
+     * @post Mostra per pantalla el menú d'instrumentació, amb l'opció d'activar-la o desactivar-la segons \p enabled.
+     */
+    public static void showInstrumentationMenu(boolean enabled) {
+
+        System.out.println("Menú d'instrumentació:");
+        System.out.println("1. " + (enabled ? "Desactivar" : "Activar") + " instrumentació");
+        System.out.println("2. Reiniciar mesures");
+        System.out.println("0. Tornar al menú principal");
 
     }
 
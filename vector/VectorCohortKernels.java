@@ -0,0 +1,103 @@
+/**
+ * @file VectorCohortKernels.java
+ * @brief Classe VectorCohortKernels
+ */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/** @class VectorCohortKernels
+ * @brief Implementació dels nuclis de CohortKernels amb l'API de vectors (jdk.incubator.vector).
+ *
+ * Cada suma és una passada pels grups que carrega els afectats i les màscares de tants grups com elements té un
+ * vector de doubles de la mida preferida de la màquina (4 amb AVX2, 8 amb AVX-512) i hi acumula els afectats dels
+ * grups del compartiment i zero dels altres, de manera que no hi ha cap salt que depengui de l'estat dels grups.
+ * Els grups que no omplen un vector sencer se sumen com a la implementació escalar, i Affectation només la fa
+ * servir per a les afectacions amb prou grups (minGroups).
+ *
+ * Només es carrega per reflexió des de CohortKernels. És en un directori de fonts a part (vector) perquè la resta
+ * del programa es pugui compilar sense el mòdul: per compilar-la i executar-la cal "--add-modules
+ * jdk.incubator.vector".
+ */
+final class VectorCohortKernels extends CohortKernels {
+
+    // Constants
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED; ///< Vectors de doubles.
+    private static final VectorSpecies<Long> LONGS =
+            VectorSpecies.of(long.class, DOUBLES.vectorShape()); ///< Vectors de longs amb els mateixos elements.
+
+    private static final int MIN_VECTORS = 4; ///< Vectors sencers a partir dels quals surt a compte no sumar-los un a un.
+
+
+
+    // Funcions protegides
+
+    @Override
+    protected void sumCompartments(double[] affected, double[] deaths, long[] compartments, int from, int to,
+                                   double[] sums) {
+
+        int bound = from + DOUBLES.loopBound(to - from);
+
+        // una passada per suma: amb totes les sumes en un sol bucle el compilador no l'arriba a vectoritzar
+        sums[DEATHS] += sum(deaths, from, bound);
+
+        for (int index = 0; index < SUMS; index++) {
+
+            if (index != DEATHS) sums[index] += sum(affected, compartments, index, from, bound);
+
+        }
+
+        // els grups que no omplen un vector sencer
+        super.sumCompartments(affected, deaths, compartments, bound, to, sums);
+
+    }
+
+    @Override
+    protected int minGroups() { return MIN_VECTORS * DOUBLES.length(); }
+
+
+
+    // Funcions privades
+
+    /** @return La suma de values[from, bound).
+     * @pre bound - from és múltiple dels elements d'un vector.
+     */
+    private static double sum(double[] values, int from, int bound) {
+
+        DoubleVector res = DoubleVector.zero(DOUBLES);
+
+        for (int i = from; i < bound; i += DOUBLES.length())
+            res = res.add(DoubleVector.fromArray(DOUBLES, values, i));
+
+        return res.reduceLanes(VectorOperators.ADD);
+
+    }
+
+    /** @return La suma dels afectats dels grups de [from, bound) que pertanyen al compartiment de la suma \p index.
+     * El bit de la màscara s'estén a tota la paraula (0 o -1) i es fa una AND amb els bits del double, que dona els
+     * afectats o +0.0, sense comparacions ni conversions de màscares, que a JDK 17 no es compilen a instruccions
+     * vectorials.
+     * @pre bound - from és múltiple dels elements d'un vector.
+     */
+    private static double sum(double[] affected, long[] compartments, int index, int from, int bound) {
+
+        DoubleVector res = DoubleVector.zero(DOUBLES);
+
+        for (int i = from; i < bound; i += DOUBLES.length()) {
+
+            LongVector people = DoubleVector.fromArray(DOUBLES, affected, i).reinterpretAsLongs();
+            LongVector mask = LongVector.fromArray(LONGS, compartments, i);
+
+            res = res.add(people.and(mask.lanewise(VectorOperators.LSHR, index).and(1L).neg()).reinterpretAsDoubles());
+
+        }
+
+        return res.reduceLanes(VectorOperators.ADD);
+
+    }
+
+}